@@ -0,0 +1,44 @@
+import java.util.List;                   // List interface
+
+// ===== SHARDING =====
+// One partition of the account book. Every mutation of a shard's accounts is
+// executed by that shard's single writer, so implementations never need locks
+// around balances. Cross-shard transfers use prepareDebit/credit/commitDebit,
+// with abortDebit returning the reserved funds if the credit side fails.
+
+interface AccountShard {
+    int getShardId();
+
+    // Account book: an account number that is already open is refused (false)
+    // and nothing is posted for it
+    boolean openAccount(BankAccount account, BankTransaction openingTransaction);
+    // Bulk onboarding: openingTransactions line up with accounts and may hold nulls;
+    // false where the account number was already open
+    boolean[] openAccounts(List<BankAccount> accounts, List<BankTransaction> openingTransactions);
+    BankAccount getAccount(String accountNumber);
+    List<BankAccount> getAccounts();
+
+    // Fast path: both accounts live on this shard
+    boolean transfer(String fromAccount, String toAccount, double amount, String description);
+    boolean[] transferAll(List<TransferRequest> requests);
+
+    // Two-phase path: source shard reserves, target shard credits, source commits or aborts
+    boolean prepareDebit(String transferId, String fromAccount, double amount);
+    void commitDebit(String transferId, String toAccount, String description);
+    void abortDebit(String transferId);
+    boolean credit(String toAccount, String fromAccount, double amount, String description);
+
+    // Funds holds: reserve against the available balance, then capture part or
+    // all of it as a withdrawal, or release it
+    boolean placeHold(String accountNumber, double amount);
+    boolean captureHold(String accountNumber, double heldAmount, double amount, String description);
+    void releaseHold(String accountNumber, double amount);
+
+    // Replica path: install a record committed elsewhere, keeping its sequence
+    void apply(LedgerRecord record);
+    // Recovery: installs a run of records in one writer task without publishing
+    // them; the caller commits the run in sequence order
+    void applyAll(List<LedgerRecord> records);
+
+    void shutdown();
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+
+// ===== MVCC READ PATH =====
+// Immutable state of one account as of a commit sequence. Versions link back to
+// older versions still needed by open snapshots; history is a persistent list
+// shared between versions, newest first. Transactions tiered out of memory are
+// read back from the archive segments named by `cold`, ahead of the hot list.
+
+class AccountVersion {
+    private final BankAccount account;      // static metadata only: number, holder, type, profile
+    private final long sequence;
+    private final double balance;
+    private final HistoryNode history;
+    private final ColdHistory cold;         // null until the account has archived transactions
+    private volatile AccountVersion previous;
+
+    AccountVersion(BankAccount account, long sequence, double balance, HistoryNode history, ColdHistory cold,
+                   AccountVersion previous) {
+        this.account = account;
+        this.sequence = sequence;
+        this.balance = balance;
+        this.history = history;
+        this.cold = cold;
+        this.previous = previous;
+    }
+
+    // A version received from a server: history oldest first, nothing archived
+    static AccountVersion received(BankAccount account, long sequence, double balance, List<BankTransaction> history) {
+        HistoryNode newest = null;
+        for (BankTransaction transaction : history) {
+            newest = new HistoryNode(transaction, newest);
+        }
+        return new AccountVersion(account, sequence, balance, newest, null, null);
+    }
+
+    // Same state with the history from `oldest` onward moved to the archive
+    AccountVersion withArchived(HistoryNode oldest, LedgerArchive archive, int segmentId) {
+        List<BankTransaction> kept = new ArrayList<>();
+        for (HistoryNode node = history; node != oldest; node = node.next) {
+            kept.add(node.transaction);
+        }
+        HistoryNode hot = null;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            hot = new HistoryNode(kept.get(i), hot);
+        }
+        return new AccountVersion(account, sequence, balance, hot, ColdHistory.append(cold, archive, segmentId),
+            previous);
+    }
+
+    // Newest version visible at the given sequence, or null if the account did not exist yet
+    AccountVersion asOf(long snapshotSequence) {
+        AccountVersion version = this;
+        while (version != null && version.sequence > snapshotSequence) {
+            version = version.previous;
+        }
+        return version;
+    }
+
+    // Drops versions no snapshot at or after the horizon can reach
+    void pruneBefore(long horizon) {
+        AccountVersion version = this;
+        while (version != null && version.sequence > horizon) {
+            version = version.previous;
+        }
+        if (version != null) {
+            version.previous = null;
+        }
+    }
+
+    public List<BankTransaction> getTransactionHistory() {
+        return getTransactionHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Oldest first; archive blocks outside the period are never read
+    public List<BankTransaction> getTransactionHistory(long fromMillis, long toMillis) {
+        List<BankTransaction> hot = new ArrayList<>();
+        for (HistoryNode node = history; node != null; node = node.next) {
+            long time = node.transaction.getTimestamp().getTime();
+            if (time >= fromMillis && time <= toMillis) {
+                hot.add(node.transaction);
+            }
+        }
+        List<BankTransaction> transactions = cold != null
+            ? cold.archive.read(account.getAccountNumber(), cold.segments, fromMillis, toMillis)
+            : new ArrayList<>(hot.size());
+        for (int i = hot.size() - 1; i >= 0; i--) {
+            transactions.add(hot.get(i));
+        }
+        return transactions;
+    }
+
+    // Paging, newest first: up to limit transactions that come before the one at
+    // (beforeTime, beforeId), or the newest when beforeId is null. The hot list
+    // is walked from the newest end without copying, and the archive is read
+    // only for what the page still lacks.
+    public List<BankTransaction> getTransactionsBefore(long beforeTime, String beforeId, int limit) {
+        List<BankTransaction> page = new ArrayList<>(Math.min(limit, 256));
+        HistoryCursor cursor = new HistoryCursor(beforeTime, beforeId);
+        for (HistoryNode node = history; node != null && page.size() < limit; node = node.next) {
+            if (cursor.older(node.transaction)) {
+                page.add(node.transaction);
+            }
+        }
+        if (page.size() < limit && cold != null) {
+            page.addAll(cursor.passed()
+                ? cold.archive.readBefore(account.getAccountNumber(), cold.segments, Long.MAX_VALUE, null,
+                    limit - page.size())
+                : cold.archive.readBefore(account.getAccountNumber(), cold.segments, beforeTime, beforeId,
+                    limit - page.size()));
+        }
+        return page;
+    }
+
+    // Getters
+    public BankAccount getAccount() { return account; }
+    public String getAccountNumber() { return account.getAccountNumber(); }
+    public String getAccountHolder() { return account.getAccountHolder(); }
+    public String getAccountType() { return account.getAccountType(); }
+    public long getSequence() { return sequence; }
+    public double getBalance() { return balance; }
+    HistoryNode getHistory() { return history; }
+    ColdHistory getCold() { return cold; }
+
+    static final class HistoryNode {
+        final BankTransaction transaction;
+        final HistoryNode next;
+        final int size;
+
+        HistoryNode(BankTransaction transaction, HistoryNode next) {
+            this.transaction = transaction;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    // Archive segments holding this account's older transactions, oldest first
+    static final class ColdHistory {
+        final LedgerArchive archive;
+        final int[] segments;
+
+        private ColdHistory(LedgerArchive archive, int[] segments) {
+            this.archive = archive;
+            this.segments = segments;
+        }
+
+        static ColdHistory append(ColdHistory cold, LedgerArchive archive, int segmentId) {
+            int[] segments = cold == null ? new int[1] : java.util.Arrays.copyOf(cold.segments, cold.segments.length + 1);
+            segments[segments.length - 1] = segmentId;
+            return new ColdHistory(archive, segments);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+import com.sun.net.httpserver.Headers;   // Response headers
+import com.sun.net.httpserver.HttpExchange; // One request/response
+import com.sun.net.httpserver.HttpServer; // JDK HTTP server
+import java.io.*;                        // Request and response streams
+import java.net.InetSocketAddress;       // Listen address
+import java.net.URLDecoder;              // Path and query decoding
+import java.nio.charset.StandardCharsets; // UTF-8 bodies
+import java.security.SecureRandom;       // Session tokens
+import java.util.Base64;                 // Opaque cursors
+import java.util.HashMap;                // Query parameters
+import java.util.HashSet;                // Owned account numbers
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.Set;                    // Set interface
+import java.util.concurrent.*;           // Handler executor, sessions, sweeper
+
+// ===== HTTP API GATEWAY =====
+// JSON over HTTP for the mobile and web channels, served by the JDK's built-in
+// HttpServer on bank.api.port (default 8080), bound to bank.api.bindAddress
+// (loopback unless set; 0.0.0.0 for every interface). Connections are
+// kept alive between requests. Handlers run on virtual threads when the
+// runtime has them, otherwise on a fixed pool of bank.api.threads.
+//   POST /api/login                      {"username","password"} -> token, user and accounts
+//   POST /api/logout
+//   GET  /api/accounts                   the caller's accounts with balances
+//   GET  /api/accounts/{n}               one account
+//   GET  /api/accounts/{n}/transactions  newest first; ?limit=50&cursor=<nextCursor>
+//   POST /api/transfers                  {"from","to","amount","description"}
+//   GET  /api/standing-instructions      the caller's standing instructions
+//   POST /api/standing-instructions      {"from","to","amount","description","frequency","firstFireTime"}
+//   DELETE /api/standing-instructions/{id}
+//   GET  /api/health
+// Every other call needs "Authorization: Bearer <token>". Rate-limited calls
+// get 429 with Retry-After. History pages are streamed with chunked encoding,
+// so a large page is never held in memory as a whole.
+class ApiGateway {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_PAGE = 50;
+    private static final int MAX_PAGE = 1000;
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+
+    private final BankingService bankingService;
+    private final StandingInstructionScheduler scheduler;   // null when the scheduler could not start
+    private final RateLimiter rateLimiter;
+    private final long sessionMillis;
+    private final Map<String, ApiSession> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private HttpServer server;
+    private ExecutorService handlers;
+    private ScheduledExecutorService sweeper;
+
+    // A logged-in caller; expiry slides with every request
+    private static final class ApiSession {
+        final String userId;
+        volatile long expiresAt;
+
+        ApiSession(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Thrown by handlers to answer with an error status
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+        final long retryAfterMillis;
+
+        ApiException(int status, String message) {
+            this(status, message, 0);
+        }
+
+        ApiException(int status, String message, long retryAfterMillis) {
+            super(message);
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private interface JsonBody {
+        void write(Json.Writer json) throws IOException;
+    }
+
+    public ApiGateway(BankingService bankingService, StandingInstructionScheduler scheduler) {
+        this.bankingService = bankingService;
+        this.scheduler = scheduler;
+        this.rateLimiter = bankingService.getRateLimiter();
+        this.sessionMillis = TimeUnit.MINUTES.toMillis(Long.getLong("bank.api.sessionMinutes", 30));
+    }
+
+    public void start(int port) throws IOException {
+        // Small JSON replies should not wait on Nagle's algorithm
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(BankServer.bindAddress("bank.api.bindAddress"), port), 1024);
+        handlers = newHandlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext("/api/", this::handle);
+        server.start();
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "api-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(session -> session.expiresAt < now);
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (handlers != null) {
+            handlers.shutdownNow();
+        }
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // Virtual threads arrived after the Java version this code targets, so
+    // they are looked up at run time
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            int threads = Integer.getInteger("bank.api.threads",
+                Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "api-handler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // ----- dispatch -----
+
+    private void handle(HttpExchange exchange) {
+        try {
+            String[] path = exchange.getRequestURI().getRawPath().substring("/api/".length()).split("/");
+            for (int i = 0; i < path.length; i++) {
+                path[i] = URLDecoder.decode(path[i], StandardCharsets.UTF_8);
+            }
+            String method = exchange.getRequestMethod();
+            switch (path[0]) {
+                case "health":
+                    requireMethod(method, "GET");
+                    send(exchange, 200, json -> json.beginObject()
+                        .field("status", bankingService.isReadOnly() ? "READ_ONLY" : "UP")
+                        .field("sequence", bankingService.getLastCommittedSequence())
+                        .endObject());
+                    break;
+                case "login":
+                    requireMethod(method, "POST");
+                    login(exchange);
+                    break;
+                case "logout":
+                    requireMethod(method, "POST");
+                    String token = token(exchange);
+                    if (token != null) {
+                        sessions.remove(token);
+                    }
+                    sendEmpty(exchange, 204);
+                    break;
+                case "accounts":
+                    requireMethod(method, "GET");
+                    ApiSession session = authenticate(exchange);
+                    if (path.length == 1) {
+                        accounts(exchange, session);
+                    } else if (path.length == 2) {
+                        account(exchange, session, path[1]);
+                    } else if (path.length == 3 && "transactions".equals(path[2])) {
+                        transactions(exchange, session, path[1]);
+                    } else {
+                        throw new ApiException(404, "Not found");
+                    }
+                    break;
+                case "transfers":
+                    requireMethod(method, "POST");
+                    transfer(exchange, authenticate(exchange));
+                    break;
+                case "standing-instructions":
+                    if (path.length == 1 && "GET".equals(method)) {
+                        standingInstructions(exchange, authenticate(exchange));
+                    } else if (path.length == 1) {
+                        requireMethod(method, "POST");
+                        scheduleInstruction(exchange, authenticate(exchange));
+                    } else if (path.length == 2) {
+                        requireMethod(method, "DELETE");
+                        cancelInstruction(exchange, authenticate(exchange), path[1]);
+                    } else {
+                        throw new ApiException(404, "Not found");
+                    }
+                    break;
+                default:
+                    throw new ApiException(404, "Not found");
+            }
+        } catch (ApiException e) {
+            sendError(exchange, e.status, e.getMessage(), e.retryAfterMillis);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage(), 0);
+        } catch (IOException e) {
+            // Client went away mid-response
+            exchange.close();
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, String.valueOf(e.getMessage()), 0);
+        }
+    }
+
+    // ----- endpoints -----
+
+    private void login(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String username = stringField(body, "username");
+        String password = stringField(body, "password");
+        long retryAfter = rateLimiter.acquireLogin(username,
+            exchange.getRemoteAddress().getAddress().getHostAddress());
+        if (retryAfter > 0) {
+            throw new ApiException(429, "Too many login attempts", retryAfter);
+        }
+        BankUser user = bankingService.authenticateUser(username, password);
+        if (user == null) {
+            throw new ApiException(401, "Invalid credentials");
+        }
+        String token = newToken();
+        sessions.put(token, new ApiSession(user.getUserId(), System.currentTimeMillis() + sessionMillis));
+        List<BankAccount> accounts = bankingService.getUserAccounts(user.getUserId());
+        try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+            send(exchange, 200, json -> {
+                json.beginObject()
+                    .field("token", token)
+                    .field("userId", user.getUserId())
+                    .field("username", user.getUsername())
+                    .name("accounts").beginArray();
+                for (BankAccount account : accounts) {
+                    writeAccount(json, account, snapshot);
+                }
+                json.endArray().endObject();
+            });
+        }
+    }
+
+    private void accounts(HttpExchange exchange, ApiSession session) throws IOException {
+        acquireRead(session);
+        List<BankAccount> accounts = bankingService.getUserAccounts(session.userId);
+        // One snapshot so every balance is from the same moment
+        try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+            send(exchange, 200, json -> {
+                json.beginObject().name("accounts").beginArray();
+                for (BankAccount account : accounts) {
+                    writeAccount(json, account, snapshot);
+                }
+                json.endArray().endObject();
+            });
+        }
+    }
+
+    private void account(HttpExchange exchange, ApiSession session, String accountNumber) throws IOException {
+        acquireRead(session);
+        BankAccount account = ownedAccount(session, accountNumber);
+        try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+            send(exchange, 200, json -> writeAccount(json, account, snapshot));
+        }
+    }
+
+    // Pages run newest first. The cursor names the last transaction a page
+    // returned by its timestamp and id, and the next page is read from just
+    // before it: only the page's own rows are taken from memory or the archive,
+    // and since history only grows at the new end a cursor keeps its place
+    // however much is posted between pages.
+    private void transactions(HttpExchange exchange, ApiSession session, String accountNumber) throws IOException {
+        acquireRead(session);
+        ownedAccount(session, accountNumber);
+        Map<String, String> query = query(exchange);
+        int limit = DEFAULT_PAGE;
+        if (query.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(query.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "Bad limit");
+            }
+            if (limit < 1 || limit > MAX_PAGE) {
+                throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE);
+            }
+        }
+
+        // One more than the page, to learn whether another page follows
+        Object[] cursor = query.containsKey("cursor") ? decodeCursor(query.get("cursor")) : null;
+        List<BankTransaction> page;
+        try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+            page = cursor != null
+                ? snapshot.getTransactionsBefore(accountNumber, (Long) cursor[0], (String) cursor[1], limit + 1)
+                : snapshot.getTransactionsBefore(accountNumber, Long.MAX_VALUE, null, limit + 1);
+        }
+        boolean more = page.size() > limit;
+        int rows = Math.min(page.size(), limit);
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(200, 0);          // chunked
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+            Json.Writer json = new Json.Writer(out);
+            json.beginObject()
+                .field("accountNumber", accountNumber)
+                .field("nextCursor", more ? encodeCursor(page.get(rows - 1)) : null)
+                .name("transactions").beginArray();
+            for (int i = 0; i < rows; i++) {
+                BankTransaction t = page.get(i);
+                json.beginObject()
+                    .field("id", t.getTransactionId())
+                    .field("type", t.getType())
+                    .name("amount").money(t.getAmount())
+                    .field("timestamp", t.getTimestamp().getTime())
+                    .field("description", t.getDescription())
+                    .endObject();
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private void transfer(HttpExchange exchange, ApiSession session) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String from = stringField(body, "from");
+        String to = stringField(body, "to");
+        Object amountField = body.get("amount");
+        if (!(amountField instanceof Double)) {
+            throw new ApiException(400, "amount must be a number");
+        }
+        double amount = (Double) amountField;
+        Object description = body.get("description");
+        if (amount <= 0) {
+            throw new ApiException(400, "amount must be positive");
+        }
+        if (from.equals(to)) {
+            throw new ApiException(400, "Cannot transfer to the same account");
+        }
+        ownedAccount(session, from);
+        long retryAfter = rateLimiter.acquireTransfer(session.userId, from);
+        if (retryAfter > 0) {
+            throw new ApiException(429, "Too many transfers", retryAfter);
+        }
+        if (bankingService.isReadOnly()) {
+            throw new ApiException(503, "Service is read-only");
+        }
+        boolean completed = bankingService.transferMoney(from, to, amount,
+            description instanceof String ? (String) description : "");
+        if (!completed) {
+            throw new ApiException(422, "Transfer declined");
+        }
+        send(exchange, 200, json -> json.beginObject()
+            .field("status", "COMPLETED")
+            .field("from", from)
+            .field("to", to)
+            .name("amount").money(amount)
+            .endObject());
+    }
+
+    private void standingInstructions(HttpExchange exchange, ApiSession session) throws IOException {
+        acquireRead(session);
+        List<StandingInstruction> instructions = requireScheduler().getInstructionsFrom(ownedAccountNumbers(session));
+        send(exchange, 200, json -> {
+            json.beginObject().name("instructions").beginArray();
+            for (StandingInstruction instruction : instructions) {
+                writeInstruction(json, instruction);
+            }
+            json.endArray().endObject();
+        });
+    }
+
+    private void scheduleInstruction(HttpExchange exchange, ApiSession session) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String from = stringField(body, "from");
+        String to = stringField(body, "to");
+        String frequency = stringField(body, "frequency");
+        Object amount = body.get("amount");
+        Object firstFireTime = body.get("firstFireTime");
+        Object description = body.get("description");
+        if (!(amount instanceof Double) || !(firstFireTime instanceof Double)) {
+            throw new ApiException(400, "amount and firstFireTime must be numbers");
+        }
+        ownedAccount(session, from);
+        if (bankingService.isReadOnly()) {
+            throw new ApiException(503, "Service is read-only");
+        }
+        StandingInstructionScheduler instructions = requireScheduler();
+        String instructionId;
+        try {
+            instructionId = instructions.schedule(from, to, (Double) amount,
+                description instanceof String ? (String) description : "", frequency,
+                ((Double) firstFireTime).longValue());
+        } catch (IOException e) {
+            throw new ApiException(500, "Standing instruction not saved: " + e.getMessage());
+        }
+        StandingInstruction instruction = instructions.getInstruction(instructionId);
+        send(exchange, 201, json -> writeInstruction(json, instruction));
+    }
+
+    private void cancelInstruction(HttpExchange exchange, ApiSession session, String instructionId) throws IOException {
+        StandingInstructionScheduler instructions = requireScheduler();
+        StandingInstruction instruction = instructions.getInstruction(instructionId);
+        if (instruction == null || !ownedAccountNumbers(session).contains(instruction.getFromAccount())) {
+            throw new ApiException(404, "No such standing instruction");
+        }
+        try {
+            instructions.cancel(instructionId);
+        } catch (IOException e) {
+            throw new ApiException(500, "Cancellation not saved: " + e.getMessage());
+        }
+        sendEmpty(exchange, 204);
+    }
+
+    // ----- helpers -----
+
+    private static void writeInstruction(Json.Writer json, StandingInstruction instruction) throws IOException {
+        json.beginObject()
+            .field("instructionId", instruction.getInstructionId())
+            .field("from", instruction.getFromAccount())
+            .field("to", instruction.getToAccount())
+            .name("amount").money(instruction.getAmount())
+            .field("description", instruction.getDescription())
+            .field("frequency", instruction.getFrequency())
+            .field("nextFireTime", instruction.getNextFireTime())
+            .field("failures", instruction.getFailures())
+            .endObject();
+    }
+
+    private StandingInstructionScheduler requireScheduler() {
+        if (scheduler == null) {
+            throw new ApiException(503, "Standing instructions are unavailable");
+        }
+        return scheduler;
+    }
+
+    private static void writeAccount(Json.Writer json, BankAccount account, LedgerSnapshot snapshot) throws IOException {
+        json.beginObject()
+            .field("accountNumber", account.getAccountNumber())
+            .field("accountType", account.getAccountType())
+            .field("accountHolder", account.getAccountHolder())
+            .name("balance").money(snapshot.getBalance(account.getAccountNumber()))
+            .endObject();
+    }
+
+    private ApiSession authenticate(HttpExchange exchange) {
+        String token = token(exchange);
+        ApiSession session = token != null ? sessions.get(token) : null;
+        long now = System.currentTimeMillis();
+        if (session == null || session.expiresAt < now) {
+            throw new ApiException(401, "Login required");
+        }
+        session.expiresAt = now + sessionMillis;
+        return session;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return null;
+        }
+        return authorization.substring(7).trim();
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[18];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private void acquireRead(ApiSession session) {
+        long retryAfter = rateLimiter.acquireRead(session.userId);
+        if (retryAfter > 0) {
+            throw new ApiException(429, "Too many requests", retryAfter);
+        }
+    }
+
+    // Callers only see their own accounts; others look the same as missing ones
+    private BankAccount ownedAccount(ApiSession session, String accountNumber) {
+        for (BankAccount account : bankingService.getUserAccounts(session.userId)) {
+            if (account.getAccountNumber().equals(accountNumber)) {
+                return account;
+            }
+        }
+        throw new ApiException(404, "No such account");
+    }
+
+    private Set<String> ownedAccountNumbers(ApiSession session) {
+        Set<String> numbers = new HashSet<>();
+        for (BankAccount account : bankingService.getUserAccounts(session.userId)) {
+            numbers.add(account.getAccountNumber());
+        }
+        return numbers;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!expected.equals(method)) {
+            throw new ApiException(405, "Use " + expected);
+        }
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body too large");
+        }
+        return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static String stringField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String) || ((String) value).isEmpty()) {
+            throw new ApiException(400, name + " is required");
+        }
+        return (String) value;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return parameters;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    // "t<timestamp>:<transaction id>", opaque to clients
+    private static String encodeCursor(BankTransaction last) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            ("t" + last.getTimestamp().getTime() + ":" + last.getTransactionId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // {Long timestamp, String transaction id}
+    private static Object[] decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            if (decoded.startsWith("t") && colon > 1) {
+                return new Object[]{Long.parseLong(decoded.substring(1, colon)), decoded.substring(colon + 1)};
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the error below
+        }
+        throw new ApiException(400, "Bad cursor");
+    }
+
+    // Small replies are sized up front so the connection stays reusable
+    // without chunking
+    private static void send(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+        body.write(new Json.Writer(writer));
+        writer.flush();
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            bytes.writeTo(out);
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message, long retryAfterMillis) {
+        try {
+            if (retryAfterMillis > 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+            }
+            send(exchange, status, json -> json.beginObject().field("error", message).endObject());
+        } catch (IOException | RuntimeException e) {
+            // Headers already went out or the client is gone
+            exchange.close();
+        }
+    }
+}
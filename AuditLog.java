@@ -0,0 +1,396 @@
+import java.io.*;                        // Input/Output operations
+import java.nio.charset.StandardCharsets; // Text records
+import java.util.Arrays;                 // Ordering files for retention
+import java.util.Comparator;             // Oldest file first
+import java.util.concurrent.atomic.AtomicLong; // Ring cursors and drop counter
+import java.util.concurrent.locks.LockSupport; // Writer idling and producer back-pressure
+
+// ===== AUDIT LOG =====
+// Replaces per-call console tracing. Producers copy an event code, two string
+// references and two numbers into a preallocated ring slot and return; a single
+// background writer drains the ring in batches to rolling files under
+// bank.audit.dir. Recording allocates nothing: slots are reused and every
+// argument is a primitive or a reference the caller already holds.
+//   bank.audit.dir           data/audit
+//   bank.audit.format        text (millis|EVENT|a|b|x|y lines) or binary
+//   bank.audit.bufferSize    ring slots, rounded up to a power of two (65536)
+//   bank.audit.overflow      block (wait for the writer) or drop (count and discard)
+//   bank.audit.maxFileBytes  roll to a new file past this size (64 MB)
+//   bank.audit.maxFiles      files kept in the directory, across every process
+//                            that writes there; the oldest go first (16)
+//   bank.audit.enabled       false discards every record
+class AuditLog {
+    enum Event {
+        TRANSFER_ATTEMPT,           // a=from b=to x=amount
+        TRANSFER_READ_ONLY,         // a=from b=to x=amount
+        TRANSFER_UNKNOWN_ACCOUNT,   // a=account
+        TRANSFER_SAME_ACCOUNT,      // a=account
+        TRANSFER_BALANCES,          // a=from b=to x=from balance y=to balance
+        TRANSFER_COMMITTED,         // a=from b=to x=amount
+        TRANSFER_DECLINED,          // a=from b=to x=amount
+        BATCH_TRANSFER,             // x=succeeded y=requested
+        TRANSACTION_SAVED,          // a=transaction id b=description x=amount
+        BULK_REGISTERED,            // x=registered y=requested
+        BULK_IMPORT_PROGRESS,       // a=file x=rows done y=rows failed
+        NOTIFICATIONS_SENT,         // x=messages y=alerts coalesced into them
+        NOTIFICATIONS_FAILED,       // a=reason x=messages y=retry in millis
+        NOTIFICATIONS_SPILLED,      // x=first sequence left in the journal y=still queued
+        NOTIFICATIONS_RESUMED,      // x=sequence resumed from y=last sequence
+        HOLD_PLACED,                // a=hold b=account x=amount
+        HOLD_CAPTURED,              // a=hold b=account x=amount captured
+        HOLD_RELEASED,              // a=hold b=account x=amount
+        HOLDS_EXPIRED,              // x=expired y=still open
+        LOAN_ASSESSED,              // a=user b=scheme x=limit y=score
+        LOANS_RESCORED,             // x=accounts y=millis
+        LOANS_RESCORE_FAILED,       // a=reason
+        DATABASE_STARTED,
+        DATABASE_RECOVERED,         // x=last sequence y=millis
+        DATABASE_TORN_TAIL,         // a=journal segment x=bytes cut off
+        DATABASE_ROLLED_FORWARD,    // a=from b=to x=amount debited to complete the transfer
+        DATABASE_SNAPSHOT,          // x=sequence y=millis
+        DATABASE_SNAPSHOT_FAILED,   // a=reason
+        SHARD_LISTENING,            // a=shard x=port
+        SHARD_ACCEPT_FAILED,        // a=shard b=reason
+        SERVER_STARTED,
+        SERVER_LISTENING,           // x=port
+        SERVER_NO_LISTENER,         // a=reason
+        SERVER_ACCEPT_FAILED,       // a=reason
+        SERVER_STOPPED,
+        API_LISTENING,              // x=port
+        API_UNAVAILABLE,            // a=reason
+        REPLICATION_UNAVAILABLE,    // a=reason
+        REPLICATION_LISTENING,      // x=port
+        REPLICATION_ACCEPT_FAILED,  // a=reason
+        REPLICATION_FOLLOWER_LOST,  // a=follower
+        REPLICATION_PRIMARY_LOST,   // a=primary b=reason
+        REPLICATION_FOLLOWING,      // x=from sequence
+        REPLICATION_PROMOTED,       // a=follower b=reason if the listener failed x=sequence
+        REPLICATION_SPILL_FAILED,   // a=segment b=reason x=lines kept in memory
+        CDC_LISTENING,              // x=port y=epoch
+        CDC_ACCEPT_FAILED,          // a=reason
+        CDC_SUBSCRIBED,             // a=consumer x=after sequence
+        CDC_CONSUMER_LOST,          // a=consumer
+        CDC_CATCH_UP,               // a=epoch x=after sequence, read from the segments
+        CDC_WRITE_FAILED,           // a=segment b=reason x=lines to retry
+        SCHEDULER_STARTED,          // x=instructions
+        SCHEDULER_UNAVAILABLE,      // a=reason
+        SCHEDULER_FIRED,            // x=fired y=failed
+        SCHEDULER_BATCH_FAILED,     // a=reason
+        SEQUENCER_STOPPED,          // a=stage b=reason
+        LEDGER_LISTENER_FAILED,     // a=reason
+        LEDGER_TIERED,              // x=transactions archived y=segments
+        LEDGER_TIERING_FAILED,      // a=reason
+        STARTUP_PHASE,              // a=phase b=launch mode x=millis since process start
+        RECORDS_DROPPED             // x=records dropped since the last report (written by the writer)
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    private static AuditLog instance;
+
+    // One reusable record; `sequence` is published last so the writer never
+    // sees a half-written slot
+    private static final class Slot {
+        volatile long sequence = -1;
+        long timestamp;
+        Event event;
+        String a;
+        String b;
+        double x;
+        double y;
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    private final boolean enabled;
+    private final boolean blockOnOverflow;
+    private final boolean binary;
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final String filePrefix;
+    private final AtomicLong claimed = new AtomicLong();     // next sequence to hand to a producer
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long consumed;                           // everything below has been written
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    // Writer-thread state
+    private OutputStream out;
+    private long fileBytes;
+    private int fileIndex;
+    private long droppedReported;
+
+    private AuditLog() {
+        int requested = Math.max(2, Integer.getInteger("bank.audit.bufferSize", 65536));
+        int size = Integer.highestOneBit(requested - 1) << 1;
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        mask = size - 1;
+        enabled = Boolean.parseBoolean(System.getProperty("bank.audit.enabled", "true"));
+        blockOnOverflow = !"drop".equals(System.getProperty("bank.audit.overflow", "block"));
+        binary = "binary".equals(System.getProperty("bank.audit.format", "text"));
+        directory = new File(System.getProperty("bank.audit.dir", "data/audit"));
+        maxFileBytes = Long.getLong("bank.audit.maxFileBytes", 64L << 20);
+        maxFiles = Integer.getInteger("bank.audit.maxFiles", 16);
+        filePrefix = "audit-" + ProcessHandle.current().pid() + "-";
+
+        writer = new Thread(this::drain, "audit-writer");
+        writer.setDaemon(true);
+        if (enabled) {
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, "audit-shutdown"));
+        }
+    }
+
+    public static synchronized AuditLog getInstance() {
+        if (instance == null) {
+            instance = new AuditLog();
+        }
+        return instance;
+    }
+
+    public void log(Event event) {
+        record(event, null, null, 0, 0);
+    }
+
+    public void log(Event event, String a) {
+        record(event, a, null, 0, 0);
+    }
+
+    public void log(Event event, String a, String b, double x) {
+        record(event, a, b, x, 0);
+    }
+
+    public void log(Event event, double x, double y) {
+        record(event, null, null, x, y);
+    }
+
+    public void log(Event event, String a, String b, double x, double y) {
+        record(event, a, b, x, y);
+    }
+
+    private void record(Event event, String a, String b, double x, double y) {
+        if (!enabled || !running) {
+            return;
+        }
+        long sequence;
+        if (blockOnOverflow) {
+            sequence = claimed.getAndIncrement();
+            while (sequence - consumed >= ring.length) {
+                LockSupport.parkNanos(1000);
+                if (!running) {
+                    return;
+                }
+            }
+        } else {
+            do {
+                sequence = claimed.get();
+                if (sequence - consumed >= ring.length) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.event = event;
+        slot.a = a;
+        slot.b = b;
+        slot.x = x;
+        slot.y = y;
+        slot.sequence = sequence;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Records claimed but not yet handed to the file system
+    public long getBacklog() {
+        return claimed.get() - consumed;
+    }
+
+    // Waits for everything recorded so far to reach the file system
+    public void flush() {
+        long target = claimed.get();
+        while (consumed < target && writer.isAlive()) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    public void close() {
+        if (!running) {
+            return;
+        }
+        flush();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ----- writer thread -----
+
+    private void drain() {
+        long next = 0;
+        long idleNanos = 0;
+        StringBuilder line = new StringBuilder(256);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream data = new DataOutputStream(buffer);
+        while (true) {
+            int batch = 0;
+            Slot slot;
+            while ((slot = ring[(int) next & mask]).sequence == next) {
+                try {
+                    encode(slot, line, buffer, data);
+                } catch (IOException e) {
+                    // ByteArrayOutputStream does not fail
+                }
+                slot.a = null;
+                slot.b = null;
+                next++;
+                if (++batch == ring.length || buffer.size() >= 1 << 16) {
+                    break;
+                }
+            }
+            long droppedNow = dropped.get();
+            if (droppedNow != droppedReported) {
+                Slot report = new Slot();
+                report.timestamp = System.currentTimeMillis();
+                report.event = Event.RECORDS_DROPPED;
+                report.x = droppedNow - droppedReported;
+                droppedReported = droppedNow;
+                try {
+                    encode(report, line, buffer, data);
+                } catch (IOException e) {
+                    // ByteArrayOutputStream does not fail
+                }
+            }
+            if (buffer.size() > 0) {
+                writeBatch(buffer, batch);
+            }
+            consumed = next;
+
+            if (batch == 0) {
+                if (!running && claimed.get() <= next) {
+                    closeFile();
+                    return;
+                }
+                // Back off gradually while idle so a quiet service costs nothing
+                idleNanos = Math.min(Math.max(idleNanos * 2, 50_000), 10_000_000);
+                LockSupport.parkNanos(idleNanos);
+            } else {
+                idleNanos = 0;
+            }
+        }
+    }
+
+    private void encode(Slot slot, StringBuilder line, ByteArrayOutputStream buffer, DataOutputStream data)
+            throws IOException {
+        if (binary) {
+            // [long millis][byte event][flag+UTF a][flag+UTF b][double x][double y]
+            data.writeLong(slot.timestamp);
+            data.writeByte(slot.event.ordinal());
+            writeString(data, slot.a);
+            writeString(data, slot.b);
+            data.writeDouble(slot.x);
+            data.writeDouble(slot.y);
+            return;
+        }
+        line.setLength(0);
+        line.append(WireFormat.encode(slot.timestamp, slot.event.name(), slot.a, slot.b, slot.x, slot.y)).append('\n');
+        buffer.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    private void writeBatch(ByteArrayOutputStream buffer, int records) {
+        try {
+            if (out == null || fileBytes >= maxFileBytes) {
+                rollFile();
+            }
+            buffer.writeTo(out);
+            out.flush();
+            fileBytes += buffer.size();
+        } catch (IOException e) {
+            // Disk trouble must not stop the service; the batch is counted as dropped
+            dropped.addAndGet(records);
+            closeFile();
+        }
+        buffer.reset();
+    }
+
+    private void rollFile() throws IOException {
+        closeFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String suffix = binary ? ".bin" : ".log";
+        File file;
+        do {
+            file = new File(directory, filePrefix + String.format("%05d", ++fileIndex) + suffix);
+        } while (file.exists());
+        out = new FileOutputStream(file);
+        fileBytes = 0;
+        expireFiles(file);
+    }
+
+    // Other processes (shard servers, earlier runs) write to the same
+    // directory, so retention counts every audit file there, not just ours
+    private void expireFiles(File current) {
+        File[] files = directory.listFiles((dir, name) ->
+            name.startsWith("audit-") && (name.endsWith(".log") || name.endsWith(".bin")));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+        int excess = files.length - Math.max(1, maxFiles);
+        for (int i = 0; i < files.length && excess > 0; i++) {
+            if (!files[i].equals(current)) {
+                files[i].delete();
+                excess--;
+            }
+        }
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Nothing more to write to it
+            }
+            out = null;
+        }
+    }
+
+    // Prints binary audit files as text: java AuditLog <file>...
+    public static void main(String[] args) throws IOException {
+        for (String name : args) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(name)))) {
+                while (true) {
+                    long timestamp;
+                    try {
+                        timestamp = in.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    Event event = EVENTS[in.readUnsignedByte()];
+                    String a = in.readBoolean() ? in.readUTF() : null;
+                    String b = in.readBoolean() ? in.readUTF() : null;
+                    System.out.println(WireFormat.encode(timestamp, event.name(), a, b, in.readDouble(), in.readDouble()));
+                }
+            }
+        }
+    }
+}
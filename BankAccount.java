@@ -0,0 +1,135 @@
+import java.util.Date;                   // Date handling
+
+// ===== OBJECT-ORIENTED DESIGN =====
+
+abstract class BankAccount {
+    protected String accountNumber;
+    protected String accountHolder;
+    protected volatile double balance;     // written by the owning shard's writer only
+    protected volatile double held;        // reserved by open holds; owning shard's writer only
+    protected String accountType;
+    protected Date createdDate;
+    protected String email;
+    protected String phone;
+    protected String address;
+    protected String dob;
+    protected String gender;
+
+    public BankAccount(String accountNumber, String accountHolder, double initialBalance, String accountType) {
+        this.accountNumber = accountNumber;
+        this.accountHolder = accountHolder;
+        this.balance = initialBalance;
+        this.accountType = accountType;
+        this.createdDate = new Date();
+    }
+
+    // Enhanced constructor with additional fields
+    public BankAccount(String accountNumber, String accountHolder, double initialBalance, String accountType, 
+                      String email, String phone, String address, String dob, String gender) {
+        this(accountNumber, accountHolder, initialBalance, accountType);
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+        this.dob = dob;
+        this.gender = gender;
+    }
+
+    // Abstract methods
+    public abstract double calculateInterest();
+    public abstract double getInterestRate();   // annual
+    public abstract double getMinimumBalance();
+
+    // Replicas and ledger replay set the balance a primary already computed
+    void restoreBalance(double balance) {
+        this.balance = balance;
+    }
+
+    // Ledger replay: the profile an OPEN record does not carry
+    void restoreProfile(String email, String phone, String address, String dob, String gender) {
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+        this.dob = dob;
+        this.gender = gender;
+    }
+
+    // Detached copy for readers outside the owning shard: same profile and
+    // creation date, the given balance and held amount
+    BankAccount copy(double balance, double held) {
+        BankAccount copy = "Current".equals(accountType)
+            ? new CurrentAccount(accountNumber, accountHolder, balance, email, phone, address, dob, gender)
+            : new SavingsAccount(accountNumber, accountHolder, balance, email, phone, address, dob, gender);
+        copy.createdDate = createdDate;
+        copy.held = held;
+        return copy;
+    }
+
+    // Concrete methods
+    public boolean deposit(double amount) {
+        if (amount > 0) {
+            balance += amount;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean withdraw(double amount) {
+        if (amount > 0 && (balance - held - amount) >= getMinimumBalance()) {
+            balance -= amount;
+            return true;
+        }
+        return false;
+    }
+
+    // Holds: funds reserved now and captured or released later. Held funds
+    // stay in the balance but cannot be withdrawn.
+    public boolean hold(double amount) {
+        if (amount > 0 && (balance - held - amount) >= getMinimumBalance()) {
+            held += amount;
+            return true;
+        }
+        return false;
+    }
+
+    public void releaseHold(double amount) {
+        held = Math.max(0.0, held - amount);
+    }
+
+    // Debits up to the held amount, releasing the whole hold
+    public boolean captureHold(double heldAmount, double amount) {
+        if (amount <= 0 || amount > heldAmount) {
+            return false;
+        }
+        releaseHold(heldAmount);
+        balance -= amount;
+        return true;
+    }
+
+    public boolean transfer(BankAccount toAccount, double amount) {
+        if (this.withdraw(amount)) {
+            toAccount.deposit(amount);
+            return true;
+        }
+        return false;
+    }
+
+    // Getters
+    public String getAccountNumber() { return accountNumber; }
+    public String getAccountHolder() { return accountHolder; }
+    public double getBalance() { return balance; }
+    public double getHeldAmount() { return held; }
+    public double getAvailableBalance() { return balance - held; }
+    public String getAccountType() { return accountType; }
+    public Date getCreatedDate() { return createdDate; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public String getAddress() { return address; }
+    public String getDob() { return dob; }
+    public String getGender() { return gender; }
+
+    @Override
+    public String toString() {
+        return String.format("Account[%s, Holder: %s, Balance: Rs%.2f, Type: %s]", 
+                           accountNumber, accountHolder, balance, accountType);
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.*;                        // Client and file I/O
+import java.net.Socket;                  // Live console client
+import java.nio.file.*;                  // Recording files
+import java.time.Duration;               // Recording length
+import java.time.LocalDateTime;          // Recording names
+import java.time.format.DateTimeFormatter; // Recording names
+import java.util.*;                      // Collections
+import jdk.jfr.Recording;                // In-process recording
+import jdk.jfr.consumer.RecordedEvent;   // Recording contents
+import jdk.jfr.consumer.RecordingFile;   // Recording reader
+
+// ===== DIAGNOSTICS =====
+// Turns a Flight Recorder recording into a short latency report: percentiles
+// per banking operation, the slowest individual calls, the accounts whose
+// calls spent the most time (where writers queue up), ledger flushes, panel
+// switches, and the monitors threads blocked on longest. A recording can come
+// from -XX:StartFlightRecording or be taken on demand: the DIAGNOSTICS|seconds
+// session command records the running server for that long into
+// bank.diagnostics.dir (data/diagnostics) and replies with the report.
+//   java BankDiagnostics <recording.jfr> [top]
+//   java BankDiagnostics --live [seconds] [host] [port]
+class BankDiagnostics {
+    private static final String OPERATION = "bank.Operation";
+    private static final String LEDGER_FLUSH = "bank.LedgerFlush";
+    private static final String PANEL = "bank.PanelSwitch";
+    private static final String MONITOR_ENTER = "jdk.JavaMonitorEnter";
+
+    private BankDiagnostics() {
+    }
+
+    // Per-key latency and outcome counts
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long totalNanos;
+        long failures;
+        long items;
+
+        void add(long nanos) {
+            latency.record(nanos);
+            totalNanos += nanos;
+        }
+    }
+
+    // Records the running process for the given time with every banking
+    // event and monitor contention over 10 ms, and returns the dump
+    public static synchronized Path record(Duration length) throws IOException, InterruptedException {
+        Path directory = Paths.get(System.getProperty("bank.diagnostics.dir", "data/diagnostics"));
+        Files.createDirectories(directory);
+        Path file = directory.resolve("bank-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.setName("bank-diagnostics");
+            recording.enable(OPERATION).withThreshold(Duration.ZERO);
+            recording.enable(LEDGER_FLUSH).withThreshold(Duration.ZERO);
+            recording.enable(PANEL).withThreshold(Duration.ZERO);
+            recording.enable(MONITOR_ENTER).withThreshold(Duration.ofMillis(10)).withStackTrace();
+            recording.start();
+            Thread.sleep(length.toMillis());
+            recording.stop();
+            recording.dump(file);
+        }
+        return file;
+    }
+
+    public static List<String> summarize(Path recording, int top) throws IOException {
+        Map<String, Stats> operations = new TreeMap<>();
+        Map<String, Stats> accounts = new HashMap<>();
+        Map<String, Stats> flushes = new TreeMap<>();
+        Map<String, Stats> panels = new TreeMap<>();
+        Map<String, Stats> monitors = new HashMap<>();
+        PriorityQueue<RecordedEvent> slowest = new PriorityQueue<>(Comparator.comparing(RecordedEvent::getDuration));
+        long events = 0;
+
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                long nanos = event.getDuration().toNanos();
+                switch (event.getEventType().getName()) {
+                    case OPERATION: {
+                        events++;
+                        String operation = event.getString("operation");
+                        Stats stats = operations.computeIfAbsent(operation, k -> new Stats());
+                        stats.add(nanos);
+                        stats.items += event.getInt("items");
+                        if (!BankEvents.OK.equals(event.getString("outcome"))) {
+                            stats.failures++;
+                        }
+                        // Both sides of a transfer wait on their writers
+                        String account = event.getString("account");
+                        if (account != null) {
+                            accounts.computeIfAbsent(account, k -> new Stats()).add(nanos);
+                        }
+                        if ("transferMoney".equals(operation)) {
+                            accounts.computeIfAbsent(event.getString("counterparty"), k -> new Stats()).add(nanos);
+                        }
+                        slowest.add(event);
+                        if (slowest.size() > top) {
+                            slowest.poll();
+                        }
+                        break;
+                    }
+                    case LEDGER_FLUSH: {
+                        Stats stats = flushes.computeIfAbsent(event.getString("stage"), k -> new Stats());
+                        stats.add(nanos);
+                        stats.items += event.getInt("records");
+                        break;
+                    }
+                    case PANEL:
+                        panels.computeIfAbsent(event.getString("panel"), k -> new Stats()).add(nanos);
+                        break;
+                    case MONITOR_ENTER: {
+                        Object monitorClass = event.getValue("monitorClass.name");
+                        monitors.computeIfAbsent(String.valueOf(monitorClass), k -> new Stats()).add(nanos);
+                        break;
+                    }
+                    default:
+                }
+            }
+        }
+
+        List<String> report = new ArrayList<>();
+        report.add(String.format("Recording %s: %d banking operations", recording.getFileName(), events));
+        report.add("Operations (count, failed, p50, p99, max, items):");
+        for (Map.Entry<String, Stats> entry : operations.entrySet()) {
+            Stats s = entry.getValue();
+            report.add(String.format("  %-26s %8d %6d %9s %9s %9s %8d", entry.getKey(), s.latency.getCount(), s.failures,
+                time(s.latency.percentile(50)), time(s.latency.percentile(99)), time(s.latency.getMax()), s.items));
+        }
+
+        List<RecordedEvent> slow = new ArrayList<>(slowest);
+        slow.sort((a, b) -> b.getDuration().compareTo(a.getDuration()));
+        report.add("Slowest operations:");
+        for (RecordedEvent event : slow) {
+            report.add(String.format("  %9s %-22s %s %s%s %s on %s", time(event.getDuration().toNanos()),
+                event.getString("operation"), Objects.toString(event.getString("account"), "-"),
+                Objects.toString(event.getString("accountType"), ""),
+                event.getString("counterparty") != null ? " -> " + event.getString("counterparty") : "",
+                event.getString("outcome"), event.getThread() != null ? event.getThread().getJavaName() : "?"));
+        }
+
+        report.add("Busiest accounts (calls, total time, p99):");
+        accounts.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos))
+            .limit(top)
+            .forEach(entry -> report.add(String.format("  %-20s %8d %9s %9s", entry.getKey(),
+                entry.getValue().latency.getCount(), time(entry.getValue().totalNanos),
+                time(entry.getValue().latency.percentile(99)))));
+
+        addSection(report, "Ledger flushes (count, records, p99, max):", flushes, true);
+        addSection(report, "Panel switches (count, p99, max):", panels, false);
+
+        if (!monitors.isEmpty()) {
+            report.add("Contended monitors over 10 ms (blocks, total time, max):");
+            monitors.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos))
+                .limit(top)
+                .forEach(entry -> report.add(String.format("  %-40s %6d %9s %9s", entry.getKey(),
+                    entry.getValue().latency.getCount(), time(entry.getValue().totalNanos),
+                    time(entry.getValue().latency.getMax()))));
+        }
+        return report;
+    }
+
+    private static void addSection(List<String> report, String title, Map<String, Stats> stats, boolean items) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        report.add(title);
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            report.add(String.format("  %-26s %8d %s%9s %9s", entry.getKey(), s.latency.getCount(),
+                items ? String.format("%8d ", s.items) : "", time(s.latency.percentile(99)), time(s.latency.getMax())));
+        }
+    }
+
+    private static String time(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format("%.1fus", nanos / 1_000.0);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1fms", nanos / 1_000_000.0);
+        }
+        return String.format("%.2fs", nanos / 1_000_000_000.0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java BankDiagnostics <recording.jfr> [top] | --live [seconds] [host] [port]");
+            System.exit(2);
+        }
+        if (!args[0].equals("--live")) {
+            for (String line : summarize(Paths.get(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 10)) {
+                System.out.println(line);
+            }
+            return;
+        }
+        String seconds = args.length > 1 ? args[1] : "30";
+        String host = args.length > 2 ? args[2] : "localhost";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 7070;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true)) {
+            out.println(WireFormat.encode("DIAGNOSTICS", seconds));
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("END")) {
+                String[] reply = WireFormat.decode(line);
+                System.out.println(reply.length > 1 ? reply[1] : reply[0]);
+            }
+            out.println("QUIT");
+        }
+    }
+}
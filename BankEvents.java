@@ -0,0 +1,126 @@
+import java.util.function.Function;      // Deferred account type lookup
+import jdk.jfr.Category;                 // Event grouping in JMC
+import jdk.jfr.Description;              // Event documentation
+import jdk.jfr.Event;                    // Flight Recorder event base
+import jdk.jfr.Label;                    // Display names
+import jdk.jfr.Name;                     // Stable event ids
+import jdk.jfr.StackTrace;               // Stack capture switch
+
+// ===== FLIGHT RECORDER EVENTS =====
+// Custom JFR events for banking operations, ledger flushes and panel
+// switches. Callers create an event, begin() it, and finish it with the
+// fields; fields are only looked up and the event only written when a
+// recording has it enabled and over its threshold, so with no recording
+// running an instrumented call costs a couple of checks. BankDiagnostics
+// summarizes recordings of these events. Stack traces are off to keep
+// recordings small; durations come from begin/end.
+final class BankEvents {
+    static final String OK = "OK";
+    static final String DECLINED = "DECLINED";
+    static final String ERROR = "ERROR";
+
+    private BankEvents() {
+    }
+
+    @Name("bank.Operation")
+    @Label("Banking Operation")
+    @Category({"Banking", "Service"})
+    @Description("One BankingService call")
+    @StackTrace(false)
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Account")
+        String account;
+
+        @Label("Account Type")
+        String accountType;
+
+        @Label("Counterparty")
+        @Description("Other account of a transfer, username of a sign-in")
+        String counterparty;
+
+        @Label("Amount")
+        double amount;
+
+        @Label("Items")
+        @Description("Transactions, accounts or matches returned, or requests in a batch")
+        int items;
+
+        @Label("Outcome")
+        String outcome;
+
+        // accountType is resolved only for events that will be written
+        void finish(String operation, String account, Function<String, String> accountType,
+                    String counterparty, double amount, int items, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.account = account;
+                this.accountType = account != null ? accountType.apply(account) : null;
+                this.counterparty = counterparty;
+                this.amount = amount;
+                this.items = items;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("bank.LedgerFlush")
+    @Label("Ledger Flush")
+    @Category({"Banking", "Ledger"})
+    @Description("Records published by the ledger committer")
+    @StackTrace(false)
+    static final class LedgerFlushEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Records")
+        int records;
+
+        @Label("First Sequence")
+        long firstSequence;
+
+        @Label("Last Sequence")
+        long lastSequence;
+
+        @Label("Synced")
+        boolean synced;
+
+        void finish(String stage, int records, long firstSequence, long lastSequence, boolean synced) {
+            end();
+            if (shouldCommit()) {
+                this.stage = stage;
+                this.records = records;
+                this.firstSequence = firstSequence;
+                this.lastSequence = lastSequence;
+                this.synced = synced;
+                commit();
+            }
+        }
+    }
+
+    @Name("bank.PanelSwitch")
+    @Label("Panel Switch")
+    @Category({"Banking", "Swing"})
+    @Description("Building, refreshing and showing a NetApp panel on the event dispatch thread")
+    @StackTrace(false)
+    static final class PanelEvent extends Event {
+        @Label("Panel")
+        String panel;
+
+        @Label("First Build")
+        boolean built;
+
+        void finish(String panel, boolean built) {
+            end();
+            if (shouldCommit()) {
+                this.panel = panel;
+                this.built = built;
+                commit();
+            }
+        }
+    }
+}
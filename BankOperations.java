@@ -0,0 +1,38 @@
+import java.util.List;                   // List interface
+
+// ===== SERVICE OPERATIONS =====
+// What the Swing front ends need from the bank. BankingService serves it in
+// process; RemoteBankClient serves it from a shared BankServer, so NetApp and
+// RegistrationPage run unchanged as thin clients. Accounts returned by a
+// remote implementation are copies.
+
+interface BankOperations {
+    // Users
+    BankUser authenticateUser(String username, String password);
+    // Opens one Savings or Current account for the new user; the bank assigns its
+    // number and opening balance. The account number, or null if refused.
+    String registerUser(String username, String password, String email, String phone, String accountType,
+                        String holder, String address, String dob, String gender);
+
+    // Accounts
+    BankAccount getAccount(String accountNumber);
+    List<BankAccount> getUserAccounts(String userId);
+    List<BankAccount> getAllAccounts();
+    AccountVersion getAccountVersion(String accountNumber);     // balance and history as of one commit
+    double[] getBalances(List<String> accountNumbers);          // all as of one commit, 0 if unknown
+
+    // Money movement
+    boolean transferMoney(String fromAccount, String toAccount, double amount, String description);
+
+    // Analytics
+    PortfolioAggregates.Totals getPortfolio(String userId);    // null for an unknown user
+    List<SpendingRollups.Bucket> getSpendingBuckets(String accountNumber, SpendingRollups.Granularity granularity,
+                                                    int fromPeriod, int toPeriod);
+
+    // Loans: decision for one of LoanScoring.SCHEMES, null for an unknown user or scheme
+    LoanScoring.Decision assessLoan(String userId, int scheme);
+
+    // Front-end throttling: milliseconds to wait before trying, 0 to go ahead
+    long acquireLogin(String username);
+    long acquireTransfer(String userId, String accountNumber);
+}
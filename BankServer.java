@@ -0,0 +1,178 @@
+import java.io.File;                     // Standing instruction store
+import java.io.IOException;              // Listener failures
+import java.net.InetAddress;             // Bind address
+import java.net.ServerSocket;            // Client listener
+import java.net.UnknownHostException;    // Bad bind address
+import java.util.HashMap;                // Map implementation
+import java.util.Map;                    // Map interface
+
+// BankServer: socket front end plus background services
+class BankServer {
+    private BankingService bankingService;
+    private boolean running;
+    private ReplicationPrimary replicationPrimary;
+    private ChangeFeedServer changeFeedServer;
+    private StandingInstructionScheduler scheduler;
+    private ApiGateway apiGateway;
+    private ServerSocket serverSocket;
+    private java.util.concurrent.ExecutorService sessions;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public BankServer() {
+        this(BankingService.getInstance());
+    }
+
+    // A follower passes its replica
+    public BankServer(BankingService bankingService) {
+        this.bankingService = bankingService;
+        running = true;
+        audit.log(AuditLog.Event.SERVER_STARTED);
+    }
+
+    public void startServer() {
+        // Sessions and the gateway create and cancel standing instructions
+        startScheduler();
+        startClientListener();
+        // Log shipping to hot standbys when -Dbank.replication.port is set
+        if (bankingService.getReplicationLog() != null) {
+            replicationPrimary = new ReplicationPrimary(bankingService.getReplicationLog(),
+                Integer.getInteger("bank.replication.port"));
+            try {
+                replicationPrimary.start();
+            } catch (IOException e) {
+                audit.log(AuditLog.Event.REPLICATION_UNAVAILABLE, e.getMessage());
+                replicationPrimary = null;
+            }
+        }
+        // Change data capture for downstream consumers when -Dbank.cdc.port is set
+        if (bankingService.getChangeFeed() != null) {
+            changeFeedServer = new ChangeFeedServer(bankingService.getChangeFeed(), Integer.getInteger("bank.cdc.port"));
+            try {
+                changeFeedServer.start();
+            } catch (IOException e) {
+                audit.log(AuditLog.Event.CDC_ACCEPT_FAILED, e.getMessage());
+                changeFeedServer = null;
+            }
+        }
+        startApiGateway();
+    }
+
+    // HTTP/JSON for web and mobile channels on -Dbank.api.port (8080);
+    // -Dbank.api.enabled=false leaves it off
+    private void startApiGateway() {
+        if (!Boolean.parseBoolean(System.getProperty("bank.api.enabled", "true"))) {
+            return;
+        }
+        apiGateway = new ApiGateway(bankingService, scheduler);
+        try {
+            apiGateway.start(Integer.getInteger("bank.api.port", 8080));
+            audit.log(AuditLog.Event.API_LISTENING, apiGateway.getPort(), 0);
+        } catch (IOException e) {
+            audit.log(AuditLog.Event.API_UNAVAILABLE, e.getMessage());
+            apiGateway = null;
+        }
+    }
+
+    public ApiGateway getApiGateway() {
+        return apiGateway;
+    }
+
+    // The line protocol alone on -Dbank.server.port (7070); a follower's replica
+    // declines writes until it is promoted. -Dbank.server.bindAddress picks the
+    // interface (loopback by default, 0.0.0.0 for all); sessions still take
+    // operator commands only from loopback clients.
+    public void startClientListener() {
+        startListener(Integer.getInteger("bank.server.port", 7070));
+    }
+
+    // Clients speak the line protocol described in BankServerSession
+    private void startListener(int port) {
+        try {
+            serverSocket = new ServerSocket(port, 200, bindAddress("bank.server.bindAddress"));
+        } catch (IOException e) {
+            audit.log(AuditLog.Event.SERVER_NO_LISTENER, e.getMessage());
+            return;
+        }
+        sessions = java.util.concurrent.Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "bank-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    sessions.execute(new BankServerSession(serverSocket.accept(), bankingService, scheduler));
+                } catch (IOException e) {
+                    if (running) {
+                        audit.log(AuditLog.Event.SERVER_ACCEPT_FAILED, e.getMessage());
+                    }
+                }
+            }
+        }, "bank-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        audit.log(AuditLog.Event.SERVER_LISTENING, serverSocket.getLocalPort(), 0);
+    }
+
+    // The address named by the property, or loopback when it is unset
+    static InetAddress bindAddress(String property) throws UnknownHostException {
+        String address = System.getProperty(property);
+        return address == null || address.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address);
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    // Standing instructions (recurring transfers) persist under -Dbank.scheduler.file
+    private void startScheduler() {
+        scheduler = new StandingInstructionScheduler(bankingService,
+            new File(System.getProperty("bank.scheduler.file", "data/standing-instructions.log")));
+        try {
+            scheduler.start();
+        } catch (IOException e) {
+            audit.log(AuditLog.Event.SCHEDULER_UNAVAILABLE, e.getMessage());
+            scheduler = null;
+        }
+    }
+
+    public StandingInstructionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public Map<String, Long> getReplicationLag() {
+        return replicationPrimary != null ? replicationPrimary.getFollowerLag() : new HashMap<>();
+    }
+
+    public Map<String, Long> getChangeFeedLag() {
+        return changeFeedServer != null ? changeFeedServer.getConsumerLag() : new HashMap<>();
+    }
+
+    public void stopServer() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Shutting down anyway
+        }
+        if (sessions != null) {
+            sessions.shutdownNow();
+        }
+        if (replicationPrimary != null) {
+            replicationPrimary.stop();
+        }
+        if (changeFeedServer != null) {
+            changeFeedServer.stop();
+        }
+        if (apiGateway != null) {
+            apiGateway.stop();
+        }
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        bankingService.shutdown();
+        audit.log(AuditLog.Event.SERVER_STOPPED);
+    }
+}
@@ -0,0 +1,451 @@
+import java.io.*;                        // Input/Output operations
+import java.net.Socket;                  // Client connection
+import java.util.HashSet;                // Owned account numbers
+import java.util.List;                   // List interface
+import java.util.Set;                    // Set interface
+
+// ===== BANK SERVER PROTOCOL =====
+// One client connection to BankServer. Requests are WireFormat lines answered
+// in order, so a client may pipeline several requests before reading replies.
+//   LOGIN|user|password          -> USER|id|username|email|phone|accounts  or FAIL
+//   REGISTER|user|password|email|phone|type|holder|address|dob|gender -> OK|account number or FAIL
+//                                (the server picks the number and the opening balance)
+//   ACCOUNTS|userId              -> ACCOUNT|<account fields> ... END
+//   ALLACCOUNTS                  -> ACCOUNT|<account fields> ... END
+//   ACCOUNT|number               -> ACCOUNT|<account fields> or NONE
+//   BALANCE|number               -> BALANCE|amount or NONE
+//   BALANCES|number|number...    -> BALANCES|sequence|amount|amount...  (one snapshot)
+//   HISTORY|number               -> TX|<transaction fields> ... END
+//   VERSION|number               -> VERSION|sequence|balance|<account fields>, TX|... ... END  or NONE
+//   ROLLUP|number|granularity|from|to -> BUCKET|period|income|spending|<categories>|count ... END
+//   PORTFOLIO|userId             -> PORTFOLIO|accounts|total|available|interest accrued|as of millis  or NONE
+//   LOAN|userId|scheme           -> LOAN|scheme|eligible|limit|score|months with income|monthly income|average balance|bounces|reason  or NONE
+//   TRANSFER|from|to|amount|desc -> OK or FAIL
+//   HOLD|account|amount|ttlSeconds|desc -> HOLD|id or FAIL
+//   CAPTURE|holdId|amount        -> OK or FAIL
+//   RELEASE|holdId               -> OK or FAIL
+//   AVAILABLE|number             -> AVAILABLE|amount or NONE
+//   SCHEDULE|from|to|amount|desc|frequency|first fire millis -> INSTRUCTION|<instruction fields> or FAIL
+//   UNSCHEDULE|instructionId     -> OK or FAIL
+//   INSTRUCTIONS|number          -> INSTRUCTION|id|from|to|amount|desc|frequency|next fire millis|failures ... END
+//   SEARCH|query|limit           -> MATCH|account|userId|holder|email|phone|score ... END
+//   RECONCILE                    -> REPORT|summary, DISCREPANCY|description ... END
+//   DIAGNOSTICS|seconds          -> LINE|text ... END  (Flight Recorder report, see BankDiagnostics)
+//   IMPORT|server-side csv path  -> PROGRESS|summary ... END|summary  (see BulkImporter)
+//   DATABASE                     -> DATABASE|journaled|snapshot|snapshot age|recovered|recovery ms|rolled forward  or NONE
+//   PING                         -> PONG
+// Rate-limited requests are answered RETRY|milliseconds instead.
+//
+// PING, LOGIN and REGISTER are open to anyone; REGISTER only ever opens a new
+// account under a number the server assigns. ALLACCOUNTS, SEARCH, RECONCILE,
+// DIAGNOSTICS, IMPORT and DATABASE are operator commands, accepted only on a
+// loopback connection. Everything else needs a successful LOGIN on the same
+// connection and may name only the logged-in user and that user's accounts
+// (for CAPTURE, RELEASE and UNSCHEDULE, the account the hold or instruction
+// debits); anything else is answered ERROR, and a failed LOGIN logs the
+// connection out.
+
+class BankServerSession implements Runnable {
+    private final Socket socket;
+    private final BankingService bankingService;
+    private final StandingInstructionScheduler scheduler;   // null when standing instructions are off
+    private final RateLimiter rateLimiter;
+    private String userKey;                  // user id once logged in, else the client address
+    private String userId;                   // set by a successful LOGIN on this connection
+    private Set<String> ownedAccounts;       // the user's account numbers, re-read on a miss
+
+    public BankServerSession(Socket socket, BankingService bankingService, StandingInstructionScheduler scheduler) {
+        this.socket = socket;
+        this.bankingService = bankingService;
+        this.scheduler = scheduler;
+        this.rateLimiter = bankingService.getRateLimiter();
+        this.userKey = String.valueOf(socket.getInetAddress());
+    }
+
+    @Override
+    public void run() {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] request = WireFormat.decode(line);
+                if ("QUIT".equals(request[0])) {
+                    break;
+                }
+                try {
+                    handle(request, out);
+                } catch (RuntimeException e) {
+                    out.println(WireFormat.encode("ERROR", String.valueOf(e.getMessage())));
+                }
+                // Replies to pipelined requests go out together
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Client disconnected
+        }
+    }
+
+    private void handle(String[] f, PrintWriter out) {
+        authorize(f);
+        long retryAfter;
+        switch (f[0]) {
+            case "LOGIN":
+                retryAfter = rateLimiter.acquireLogin(f[1], socket.getInetAddress().getHostAddress());
+                break;
+            case "TRANSFER":
+            case "HOLD":
+            case "SCHEDULE":
+                retryAfter = rateLimiter.acquireTransfer(userKey, f[1]);
+                break;
+            case "PING":
+                retryAfter = 0;
+                break;
+            default:
+                retryAfter = rateLimiter.acquireRead(userKey);
+        }
+        if (retryAfter > 0) {
+            out.println(WireFormat.encode("RETRY", retryAfter));
+            return;
+        }
+
+        switch (f[0]) {
+            case "LOGIN": {
+                BankUser user = bankingService.authenticateUser(f[1], f[2]);
+                userId = user != null ? user.getUserId() : null;
+                userKey = user != null ? user.getUserId() : String.valueOf(socket.getInetAddress());
+                ownedAccounts = null;
+                out.println(user == null ? "FAIL"
+                    : WireFormat.encode(WireFormat.concat(new Object[]{"USER"}, WireFormat.profileFields(user))));
+                break;
+            }
+            case "REGISTER": {
+                String accountNumber = bankingService.registerUser(f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8], f[9]);
+                out.println(accountNumber != null ? WireFormat.encode("OK", accountNumber) : "FAIL");
+                break;
+            }
+            case "ACCOUNTS":
+                for (BankAccount account : bankingService.getUserAccounts(f[1])) {
+                    writeAccount(out, account);
+                }
+                out.println("END");
+                break;
+            case "ALLACCOUNTS":
+                for (BankAccount account : bankingService.getAllAccounts()) {
+                    writeAccount(out, account);
+                }
+                out.println("END");
+                break;
+            case "ACCOUNT": {
+                BankAccount account = bankingService.getAccount(f[1]);
+                if (account == null) {
+                    out.println("NONE");
+                } else {
+                    writeAccount(out, account);
+                }
+                break;
+            }
+            case "BALANCE": {
+                AccountVersion version = bankingService.getAccountVersion(f[1]);
+                out.println(version == null ? "NONE" : WireFormat.encode("BALANCE", version.getBalance()));
+                break;
+            }
+            case "BALANCES": {
+                Object[] reply = new Object[f.length + 1];
+                reply[0] = "BALANCES";
+                try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+                    reply[1] = snapshot.getSequence();
+                    for (int i = 1; i < f.length; i++) {
+                        reply[i + 1] = snapshot.getBalance(f[i]);
+                    }
+                }
+                out.println(WireFormat.encode(reply));
+                break;
+            }
+            case "VERSION": {
+                AccountVersion version = bankingService.getAccountVersion(f[1]);
+                if (version == null) {
+                    out.println("NONE");
+                    break;
+                }
+                out.println(WireFormat.encode(WireFormat.concat(
+                    new Object[]{"VERSION", version.getSequence(), version.getBalance()},
+                    WireFormat.accountFields(version.getAccount()))));
+                for (BankTransaction t : version.getTransactionHistory()) {
+                    out.println(WireFormat.encode(WireFormat.concat(new Object[]{"TX"}, WireFormat.transactionFields(t))));
+                }
+                out.println("END");
+                break;
+            }
+            case "ROLLUP": {
+                for (SpendingRollups.Bucket bucket : bankingService.getSpendingBuckets(f[1],
+                        SpendingRollups.Granularity.valueOf(f[2]), Integer.parseInt(f[3]), Integer.parseInt(f[4]))) {
+                    Object[] reply = new Object[5 + SpendingRollups.CATEGORIES.length];
+                    reply[0] = "BUCKET";
+                    reply[1] = bucket.getPeriod();
+                    reply[2] = bucket.getIncome();
+                    reply[3] = bucket.getSpending();
+                    for (int c = 0; c < SpendingRollups.CATEGORIES.length; c++) {
+                        reply[4 + c] = bucket.getCategory(c);
+                    }
+                    reply[reply.length - 1] = bucket.getTransactionCount();
+                    out.println(WireFormat.encode(reply));
+                }
+                out.println("END");
+                break;
+            }
+            case "PORTFOLIO": {
+                PortfolioAggregates.Totals totals = bankingService.getPortfolio(f[1]);
+                out.println(totals == null ? "NONE"
+                    : WireFormat.encode("PORTFOLIO", totals.getAccounts(), totals.getTotalBalance(),
+                        totals.getAvailableBalance(), totals.getInterestAccrued(), totals.getAsOf()));
+                break;
+            }
+            case "LOAN": {
+                LoanScoring.Decision decision = bankingService.assessLoan(f[1], Integer.parseInt(f[2]));
+                out.println(decision == null ? "NONE"
+                    : WireFormat.encode("LOAN", decision.getScheme(), decision.isEligible(), decision.getLimit(),
+                        decision.getScore(), decision.getMonthsWithIncome(), decision.getAverageMonthlyIncome(),
+                        decision.getAverageBalance(), decision.getBounces(), decision.getReason()));
+                break;
+            }
+            case "HISTORY": {
+                List<BankTransaction> history = bankingService.getTransactionHistory(f[1]);
+                for (BankTransaction t : history) {
+                    out.println(WireFormat.encode(WireFormat.concat(new Object[]{"TX"}, WireFormat.transactionFields(t))));
+                }
+                out.println("END");
+                break;
+            }
+            case "TRANSFER":
+                out.println(bankingService.transferMoney(f[1], f[2], Double.parseDouble(f[3]), f[4]) ? "OK" : "FAIL");
+                break;
+            case "HOLD": {
+                // A ttl past bank.holds.maxTtlSeconds, or too large to count in millis, is refused
+                long ttlMillis;
+                try {
+                    ttlMillis = Math.multiplyExact(Long.parseLong(f[3]), 1000L);
+                } catch (ArithmeticException e) {
+                    out.println("FAIL");
+                    break;
+                }
+                String holdId = bankingService.placeHold(f[1], Double.parseDouble(f[2]), ttlMillis, f[4]);
+                out.println(holdId == null ? "FAIL" : WireFormat.encode("HOLD", holdId));
+                break;
+            }
+            case "CAPTURE":
+                out.println(bankingService.captureHold(f[1], Double.parseDouble(f[2])) ? "OK" : "FAIL");
+                break;
+            case "RELEASE":
+                out.println(bankingService.releaseHold(f[1]) ? "OK" : "FAIL");
+                break;
+            case "AVAILABLE": {
+                AccountVersion version = bankingService.getAccountVersion(f[1]);
+                out.println(version == null ? "NONE"
+                    : WireFormat.encode("AVAILABLE", bankingService.getAvailableBalance(f[1])));
+                break;
+            }
+            case "SCHEDULE": {
+                if (scheduler == null || bankingService.isReadOnly()) {
+                    out.println("FAIL");
+                    break;
+                }
+                String instructionId;
+                try {
+                    instructionId = scheduler.schedule(f[1], f[2], Double.parseDouble(f[3]), f[4], f[5],
+                        Long.parseLong(f[6]));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Standing instruction not saved: " + e.getMessage());
+                }
+                writeInstruction(out, scheduler.getInstruction(instructionId));
+                break;
+            }
+            case "UNSCHEDULE": {
+                boolean cancelled;
+                try {
+                    cancelled = scheduler != null && scheduler.cancel(f[1]);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cancellation not saved: " + e.getMessage());
+                }
+                out.println(cancelled ? "OK" : "FAIL");
+                break;
+            }
+            case "INSTRUCTIONS":
+                if (scheduler != null) {
+                    for (StandingInstruction instruction
+                            : scheduler.getInstructionsFrom(java.util.Collections.singleton(f[1]))) {
+                        writeInstruction(out, instruction);
+                    }
+                }
+                out.println("END");
+                break;
+            case "SEARCH":
+                for (CustomerIndex.Match match : bankingService.searchCustomers(f[1], Integer.parseInt(f[2]))) {
+                    out.println(WireFormat.encode("MATCH", match.getAccountNumber(), match.getUserId(),
+                        match.getAccountHolder(), match.getEmail(), match.getPhone(), match.getScore()));
+                }
+                out.println("END");
+                break;
+            case "RECONCILE": {
+                LedgerReconciler.Report report;
+                try {
+                    report = new LedgerReconciler(bankingService).reconcile();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Reconciliation interrupted");
+                }
+                out.println(WireFormat.encode("REPORT", report.summary()));
+                for (String discrepancy : report.getDiscrepancies()) {
+                    out.println(WireFormat.encode("DISCREPANCY", discrepancy));
+                }
+                out.println("END");
+                break;
+            }
+            case "DIAGNOSTICS": {
+                java.util.List<String> report;
+                try {
+                    report = BankDiagnostics.summarize(
+                        BankDiagnostics.record(java.time.Duration.ofSeconds(Long.parseLong(f[1]))), 10);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Diagnostics failed: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Diagnostics interrupted");
+                }
+                for (String text : report) {
+                    out.println(WireFormat.encode("LINE", text));
+                }
+                out.println("END");
+                break;
+            }
+            case "IMPORT": {
+                BulkImporter.Progress result;
+                try {
+                    result = new BulkImporter(bankingService, new File(f[1])).run(progress -> {
+                        out.println(WireFormat.encode("PROGRESS", progress.summary()));
+                        out.flush();
+                    });
+                } catch (IOException e) {
+                    throw new IllegalStateException("Import failed: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Import interrupted");
+                }
+                out.println(WireFormat.encode("END", result.summary()));
+                break;
+            }
+            case "DATABASE": {
+                DatabaseService database = bankingService.getDatabase();
+                out.println(database == null ? "NONE"
+                    : WireFormat.encode("DATABASE", database.getJournaledSequence(), database.getSnapshotSequence(),
+                        database.getSnapshotAge(), database.getRecoveredRecords(), database.getRecoveryMillis(),
+                        database.getRolledForward()));
+                break;
+            }
+            case "PING":
+                out.println("PONG");
+                break;
+            default:
+                out.println(WireFormat.encode("ERROR", "Unknown command " + f[0]));
+        }
+    }
+
+    // Throws unless the connection may run the request; see the header
+    private void authorize(String[] f) {
+        switch (f[0]) {
+            case "PING":
+            case "LOGIN":
+            case "REGISTER":
+            case "QUIT":
+                return;
+            case "ALLACCOUNTS":
+            case "SEARCH":
+            case "RECONCILE":
+            case "DIAGNOSTICS":
+            case "IMPORT":
+            case "DATABASE":
+                if (!socket.getInetAddress().isLoopbackAddress()) {
+                    throw new IllegalStateException(f[0] + " is only accepted from the server host");
+                }
+                return;
+            default:
+                break;
+        }
+        if (userId == null) {
+            throw new IllegalStateException("Login required");
+        }
+        switch (f[0]) {
+            case "ACCOUNTS":
+            case "PORTFOLIO":
+            case "LOAN":
+                if (!userId.equals(f[1])) {
+                    throw new IllegalStateException("No such user");
+                }
+                break;
+            case "BALANCES":
+                for (int i = 1; i < f.length; i++) {
+                    requireOwned(f[i]);
+                }
+                break;
+            case "CAPTURE":
+            case "RELEASE": {
+                // An unknown hold is answered FAIL as before
+                FundsHolds.Hold hold = bankingService.getHold(f[1]);
+                if (hold != null) {
+                    requireOwned(hold.getAccountNumber());
+                }
+                break;
+            }
+            case "UNSCHEDULE": {
+                StandingInstruction instruction = scheduler != null ? scheduler.getInstruction(f[1]) : null;
+                if (instruction != null) {
+                    requireOwned(instruction.getFromAccount());
+                }
+                break;
+            }
+            case "ACCOUNT":
+            case "BALANCE":
+            case "VERSION":
+            case "ROLLUP":
+            case "HISTORY":
+            case "TRANSFER":
+            case "HOLD":
+            case "AVAILABLE":
+            case "SCHEDULE":
+            case "INSTRUCTIONS":
+                requireOwned(f[1]);
+                break;
+            default:
+                break;               // unknown commands are answered ERROR below
+        }
+    }
+
+    // Other users' accounts look the same as missing ones
+    private void requireOwned(String accountNumber) {
+        if (ownedAccounts != null && ownedAccounts.contains(accountNumber)) {
+            return;
+        }
+        Set<String> numbers = new HashSet<>();
+        for (BankAccount account : bankingService.getUserAccounts(userId)) {
+            numbers.add(account.getAccountNumber());
+        }
+        ownedAccounts = numbers;
+        if (!numbers.contains(accountNumber)) {
+            throw new IllegalStateException("No such account " + accountNumber);
+        }
+    }
+
+    private static void writeInstruction(PrintWriter out, StandingInstruction instruction) {
+        out.println(WireFormat.encode("INSTRUCTION", instruction.getInstructionId(), instruction.getFromAccount(),
+            instruction.getToAccount(), instruction.getAmount(), instruction.getDescription(),
+            instruction.getFrequency(), instruction.getNextFireTime(), instruction.getFailures()));
+    }
+
+    private static void writeAccount(PrintWriter out, BankAccount account) {
+        out.println(WireFormat.encode(WireFormat.concat(new Object[]{"ACCOUNT"}, WireFormat.accountFields(account))));
+    }
+}
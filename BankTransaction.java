@@ -0,0 +1,39 @@
+import java.util.Date;                   // Date handling
+import java.util.UUID;                   // Transaction ids
+
+class BankTransaction {
+    private String transactionId;
+    private String accountNumber;
+    private String type;
+    private double amount;
+    private Date timestamp;
+    private String description;
+
+    public BankTransaction(String accountNumber, String type, double amount, String description) {
+        this.transactionId = UUID.randomUUID().toString().substring(0, 8);
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amount = amount;
+        this.timestamp = new Date();
+        this.description = description;
+    }
+
+    // Rebuilds a transaction received from another process
+    public BankTransaction(String transactionId, String accountNumber, String type, double amount,
+                           Date timestamp, String description) {
+        this.transactionId = transactionId;
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.description = description;
+    }
+
+    // Getters
+    public String getTransactionId() { return transactionId; }
+    public String getAccountNumber() { return accountNumber; }
+    public String getType() { return type; }
+    public double getAmount() { return amount; }
+    public Date getTimestamp() { return timestamp; }
+    public String getDescription() { return description; }
+}
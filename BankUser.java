@@ -0,0 +1,61 @@
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Map implementation
+import java.util.Map;                    // Map interface
+
+class BankUser {
+    private String userId;
+    private String username;
+    private String passwordHash;             // see PasswordHash; never the password itself
+    private String email;
+    private String phone;
+    private java.util.List<BankAccount> accounts;
+    private Map<String, BankAccount> accountsByNumber;   // same accounts, for lookups by number
+
+    // Registration: keeps a salted hash of the password
+    public BankUser(String userId, String username, String password, String email, String phone) {
+        this(userId, username, email, phone);
+        this.passwordHash = PasswordHash.create(password);
+    }
+
+    // Journal, snapshot and replication replay keep the stored hash; a plain
+    // password written before hashing is hashed on the way in. Thin clients
+    // pass null, as the server never sends it.
+    static BankUser withPasswordHash(String userId, String username, String passwordHash, String email,
+                                     String phone) {
+        BankUser user = new BankUser(userId, username, email, phone);
+        user.passwordHash = passwordHash == null || PasswordHash.isHash(passwordHash)
+            ? passwordHash : PasswordHash.create(passwordHash);
+        return user;
+    }
+
+    private BankUser(String userId, String username, String email, String phone) {
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.phone = phone;
+        this.accounts = new ArrayList<>();
+        this.accountsByNumber = new HashMap<>();
+    }
+
+    public void addAccount(BankAccount account) {
+        if (accountsByNumber.putIfAbsent(account.getAccountNumber(), account) == null) {
+            accounts.add(account);
+        }
+    }
+
+    public BankAccount getAccount(String accountNumber) {
+        return accountsByNumber.get(accountNumber);
+    }
+
+    public boolean checkPassword(String password) {
+        return PasswordHash.matches(passwordHash, password);
+    }
+
+    // Getters
+    public String getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public String getPasswordHash() { return passwordHash; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public java.util.List<BankAccount> getAccounts() { return java.util.Collections.unmodifiableList(accounts); }
+}
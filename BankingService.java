@@ -0,0 +1,854 @@
+import java.io.File;                     // Archive and database directories
+import java.io.IOException;              // Archive and database failures
+import java.util.ArrayList;              // List implementation
+import java.util.Arrays;                 // Read-only batch results
+import java.util.HashMap;                // Map implementation
+import java.util.Map;                    // Map interface
+import java.util.UUID;                   // Transfer ids
+
+class BankingService implements BankOperations {
+    private static BankingService instance;
+    private Map<String, BankUser> users;
+    private Map<String, String> userIdsByUsername;
+    private int userCount;                   // guarded by this; source of new user ids
+    private int accountCount;                // guarded by this; source of new account numbers
+    private final java.util.Set<String> reservedAccounts = new java.util.HashSet<>(); // guarded by this; claimed, not yet open
+    private ShardRouter router;
+    private LedgerCommitter committer;
+    private VersionStore versionStore;
+    private RateLimiter rateLimiter;
+    private CustomerIndex customerIndex;
+    private SpendingRollups spendingRollups;
+    private PortfolioAggregates portfolios;
+    private LoanScoring loanScoring;
+    private NotificationOutbox notificationOutbox;
+    private FundsHolds fundsHolds;
+    private LedgerArchive ledgerArchive;
+    private java.util.concurrent.ScheduledExecutorService tiering;
+    private final AuditLog audit = AuditLog.getInstance();
+    private ReplicationLog replicationLog;   // retained for followers when replication is on
+    private ChangeFeed changeFeed;           // downstream change feed when bank.cdc.port is set
+    private DatabaseService database;       // journal and snapshots when bank.db.dir is set
+    private volatile boolean readOnly;
+    private final java.util.function.Function<String, String> accountTypes = this::accountTypeOf;
+
+    private static final double OPENING_BONUS = 10000.0;
+
+    private BankingService() {
+        users = new java.util.concurrent.ConcurrentHashMap<>();
+        userIdsByUsername = new java.util.concurrent.ConcurrentHashMap<>();
+        committer = new LedgerCommitter();
+        versionStore = new VersionStore();
+        committer.addListener(versionStore);
+        spendingRollups = new SpendingRollups();
+        committer.addListener(spendingRollups);
+        portfolios = new PortfolioAggregates();
+        committer.addListener(portfolios);
+        loanScoring = new LoanScoring();
+        committer.addListener(loanScoring);
+        notificationOutbox = NotificationOutbox.fromSystemProperties();
+        committer.addListener(notificationOutbox);
+        rateLimiter = new RateLimiter();
+        customerIndex = new CustomerIndex();
+        if (Integer.getInteger("bank.replication.port", 0) > 0) {
+            replicationLog = new ReplicationLog(new File(System.getProperty("bank.replication.dir", "data/replication")));
+            committer.addListener(replicationLog);
+        }
+        if (Integer.getInteger("bank.cdc.port", 0) > 0) {
+            changeFeed = new ChangeFeed(new File(System.getProperty("bank.cdc.dir", "data/cdc")));
+            committer.addListener(changeFeed);
+        }
+        if (System.getProperty("bank.db.dir") != null && ShardRouter.usesShardProcesses()) {
+            // Shard processes cannot replay a recovered ledger, and a restarted
+            // parent could reach a shard process left over from before the crash
+            throw new IllegalStateException("bank.db.dir requires in-process shards;"
+                + " unset bank.shard.mode=process or bank.db.dir");
+        }
+        router = ShardRouter.fromSystemProperties(committer);
+        fundsHolds = new FundsHolds(router, portfolios, committer);
+        if (System.getProperty("bank.db.dir") != null) {
+            // Last listener: a batch is journaled once everything else has seen it
+            database = new DatabaseService(this, committer, new File(System.getProperty("bank.db.dir")));
+            committer.addListener(database);
+            notificationOutbox.useJournal(database);
+        }
+        try {
+            if (database == null || !database.recover()) {
+                initializeSampleData();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot recover the ledger from " + System.getProperty("bank.db.dir"), e);
+        }
+        notificationOutbox.start(committer);
+        startTiering(new File(System.getProperty("bank.ledger.archiveDir", "data/ledger-archive")));
+        loanScoring.scheduleNightly(versionStore);
+    }
+
+    // Replica: starts empty and is filled from a primary's replication stream
+    private BankingService(String name, int shardCount) {
+        users = new java.util.concurrent.ConcurrentHashMap<>();
+        userIdsByUsername = new java.util.concurrent.ConcurrentHashMap<>();
+        committer = new LedgerCommitter();
+        versionStore = new VersionStore();
+        committer.addListener(versionStore);
+        spendingRollups = new SpendingRollups();
+        committer.addListener(spendingRollups);
+        portfolios = new PortfolioAggregates();
+        committer.addListener(portfolios);
+        loanScoring = new LoanScoring();
+        committer.addListener(loanScoring);
+        notificationOutbox = NotificationOutbox.fromSystemProperties();
+        committer.addListener(notificationOutbox);
+        rateLimiter = new RateLimiter();
+        customerIndex = new CustomerIndex();
+        replicationLog = new ReplicationLog(
+            new File(System.getProperty("bank.replication.dir", "data/replication"), "replica-" + name));
+        committer.addListener(replicationLog);
+        router = ShardRouter.local(shardCount, committer);
+        fundsHolds = new FundsHolds(router, portfolios, committer);
+        fundsHolds.setFollowing(true);
+        readOnly = true;
+        // A replica tiers its own copy of the ledger, apart from the primary's segments;
+        // the follower's name keeps the directory the same from run to run
+        startTiering(new File(System.getProperty("bank.ledger.archiveDir", "data/ledger-archive"),
+            "replica-" + name));
+    }
+
+    // Transactions older than -Dbank.ledger.hotDays (90) move to compressed archive
+    // segments every -Dbank.ledger.tierIntervalSec (3600)
+    private void startTiering(File archiveDirectory) {
+        ledgerArchive = new LedgerArchive(archiveDirectory);
+        long hotMillis = java.util.concurrent.TimeUnit.DAYS.toMillis(Long.getLong("bank.ledger.hotDays", 90));
+        long interval = Long.getLong("bank.ledger.tierIntervalSec", 3600);
+        tiering = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ledger-tiering");
+                thread.setDaemon(true);
+                return thread;
+            });
+        tiering.scheduleWithFixedDelay(() -> archiveTransactionsBefore(System.currentTimeMillis() - hotMillis),
+            interval, interval, java.util.concurrent.TimeUnit.SECONDS);
+    }
+
+    // Archives everything committed before the cutoff out of the version store;
+    // history reads keep returning the full, merged history
+    public int archiveTransactionsBefore(long cutoffMillis) {
+        try {
+            int archived = versionStore.archiveBefore(cutoffMillis, ledgerArchive);
+            if (archived > 0) {
+                audit.log(AuditLog.Event.LEDGER_TIERED, archived, ledgerArchive.getSegmentCount());
+            }
+            return archived;
+        } catch (IOException | RuntimeException e) {
+            audit.log(AuditLog.Event.LEDGER_TIERING_FAILED, e.getMessage());
+            return 0;
+        }
+    }
+
+    // Stops tiering and closes the archive segments
+    public void shutdown() {
+        tiering.shutdownNow();
+        ledgerArchive.close();
+    }
+
+    public static synchronized BankingService getInstance() {
+        if (instance == null) {
+            instance = new BankingService();
+        }
+        return instance;
+    }
+
+    public static BankingService createReplica(String name) {
+        return new BankingService(name, Integer.getInteger("bank.shards", 4));
+    }
+
+    // Failover: a caught-up replica becomes the writable service for this process
+    public static synchronized void promote(BankingService replica) {
+        replica.readOnly = false;
+        replica.fundsHolds.setFollowing(false);
+        replica.notificationOutbox.start(replica.committer);
+        instance = replica;
+    }
+
+    private void initializeSampleData() {
+        // Create sample users and accounts with sufficient balance
+        BankUser user1 = new BankUser("U001", "srisha", "password123", "sri@email.com", "1234567890");
+        BankUser user2 = new BankUser("U002", "shilki", "password456", "shilki@email.com", "0987654321");
+
+        // Create accounts with sufficient balance for testing transfers
+        SavingsAccount acc1 = new SavingsAccount("ACC001", "srisha", 50000.0);
+        CurrentAccount acc2 = new CurrentAccount("ACC002", "shilki", 100000.0);
+
+        user1.addAccount(acc1);
+        user2.addAccount(acc2);
+
+        indexUser(user1);
+        indexUser(user2);
+
+        // Add some initial transactions for testing
+        versionStore.registerAccount(acc1);
+        versionStore.registerAccount(acc2);
+        router.shardFor("ACC001").openAccount(acc1, new BankTransaction("ACC001", "DEPOSIT", 50000.0, "Initial deposit"));
+        router.shardFor("ACC002").openAccount(acc2, new BankTransaction("ACC002", "DEPOSIT", 100000.0, "Initial deposit"));
+        committer.userRegistered(user1);
+        committer.userRegistered(user2);
+        customerIndex.add(user1, acc1);
+        customerIndex.add(user2, acc2);
+    }
+
+    @Override
+    public BankUser authenticateUser(String username, String password) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String userId = userIdsByUsername.get(username);
+        BankUser user = userId != null ? users.get(userId) : null;
+        boolean authenticated = user != null && user.checkPassword(password);
+        if (authenticated) {
+            notificationOutbox.userSignedIn(user);
+        }
+        event.finish("authenticateUser", null, accountTypes, username, 0, 0,
+            authenticated ? BankEvents.OK : BankEvents.DECLINED);
+        return authenticated ? user : null;
+    }
+
+    // New method to register user
+    @Override
+    public String registerUser(String username, String password, String email, String phone, String accountType,
+                               String holder, String address, String dob, String gender) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String outcome = BankEvents.ERROR;
+        String accountNumber = null;
+        try {
+            accountNumber = register(username, password, email, phone, accountType, holder, address, dob, gender);
+            outcome = accountNumber != null ? BankEvents.OK : BankEvents.DECLINED;
+            return accountNumber;
+        } finally {
+            event.finish("registerUser", accountNumber, accountTypes, username, 0, 1, outcome);
+        }
+    }
+
+    // The bank picks the account number and the opening balance; nothing the
+    // caller sends can name or fund an existing account
+    private String register(String username, String password, String email, String phone, String accountType,
+                            String holder, String address, String dob, String gender) {
+        if (readOnly) {
+            return null;
+        }
+
+        // Check if username already exists and reserve it together with a new
+        // user id and an account number nobody holds
+        String userId;
+        String accountNumber;
+        synchronized (this) {
+            if (userIdsByUsername.containsKey(username)) {
+                return null;
+            }
+            do {
+                accountNumber = "ACC" + String.format("%03d", ++accountCount);
+            } while (accountInUse(accountNumber));
+            reservedAccounts.add(accountNumber);
+            userId = "U" + String.format("%03d", ++userCount);
+            userIdsByUsername.put(username, userId);
+        }
+
+        // Create new user with an opening deposit of Rs 10,000
+        BankAccount account = "Current".equals(accountType)
+            ? new CurrentAccount(accountNumber, holder, OPENING_BONUS, email, phone, address, dob, gender)
+            : new SavingsAccount(accountNumber, holder, OPENING_BONUS, email, phone, address, dob, gender);
+        BankUser newUser = new BankUser(userId, username, password, email, phone);
+        newUser.addAccount(account);
+
+        try {
+            versionStore.registerAccount(account);
+            router.shardFor(accountNumber).openAccount(account,
+                new BankTransaction(accountNumber, "DEPOSIT", OPENING_BONUS, "Account opening bonus"));
+        } finally {
+            synchronized (this) {
+                reservedAccounts.remove(accountNumber);
+            }
+        }
+        users.put(userId, newUser);
+        committer.userRegistered(newUser);
+        customerIndex.add(newUser, account);
+
+        return accountNumber;
+    }
+
+    // Open, or claimed by a registration still opening it
+    private boolean accountInUse(String accountNumber) {
+        return reservedAccounts.contains(accountNumber) || router.shardFor(accountNumber).getAccount(accountNumber) != null;
+    }
+
+    // Bulk onboarding: usernames and account numbers are checked and reserved
+    // for the whole batch at once, then each shard opens its accounts in one
+    // writer task, shards in parallel. Returns null for each registered
+    // request, otherwise why it was refused.
+    public String[] registerUsers(java.util.List<RegistrationRequest> requests) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String outcome = BankEvents.ERROR;
+        try {
+            String[] errors = registerAll(requests);
+            outcome = BankEvents.OK;
+            return errors;
+        } finally {
+            event.finish("registerUsers", null, accountTypes, null, 0, requests.size(), outcome);
+        }
+    }
+
+    private String[] registerAll(java.util.List<RegistrationRequest> requests) {
+        String[] errors = new String[requests.size()];
+        if (readOnly) {
+            Arrays.fill(errors, "Service is read-only");
+            return errors;
+        }
+
+        // Hashing is deliberately slow, so it runs in parallel and outside the lock
+        String[] passwordHashes = new String[requests.size()];
+        Arrays.parallelSetAll(passwordHashes, i -> PasswordHash.create(requests.get(i).getPassword()));
+
+        BankUser[] newUsers = new BankUser[requests.size()];
+        java.util.Set<String> batchAccounts = new java.util.HashSet<>();
+        synchronized (this) {
+            for (int i = 0; i < requests.size(); i++) {
+                RegistrationRequest request = requests.get(i);
+                String accountNumber = request.getAccount().getAccountNumber();
+                if (userIdsByUsername.containsKey(request.getUsername())) {
+                    errors[i] = "Username already registered";
+                } else if (!batchAccounts.add(accountNumber) || accountInUse(accountNumber)) {
+                    errors[i] = "Account number already in use";
+                } else {
+                    reservedAccounts.add(accountNumber);
+                    String userId = "U" + String.format("%03d", ++userCount);
+                    userIdsByUsername.put(request.getUsername(), userId);
+                    newUsers[i] = BankUser.withPasswordHash(userId, request.getUsername(), passwordHashes[i],
+                        request.getEmail(), request.getPhone());
+                    newUsers[i].addAccount(request.getAccount());
+                }
+            }
+        }
+
+        Map<AccountShard, java.util.List<Integer>> byShard = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (newUsers[i] != null) {
+                BankAccount account = requests.get(i).getAccount();
+                versionStore.registerAccount(account);
+                byShard.computeIfAbsent(router.shardFor(account.getAccountNumber()), shard -> new ArrayList<>()).add(i);
+            }
+        }
+        try {
+            byShard.entrySet().parallelStream().forEach(group -> {
+                java.util.List<BankAccount> accounts = new ArrayList<>(group.getValue().size());
+                java.util.List<BankTransaction> openings = new ArrayList<>(group.getValue().size());
+                for (int index : group.getValue()) {
+                    accounts.add(requests.get(index).getAccount());
+                    openings.add(requests.get(index).getOpeningTransaction());
+                }
+                boolean[] opened = group.getKey().openAccounts(accounts, openings);
+                for (int j = 0; j < opened.length; j++) {
+                    if (!opened[j]) {
+                        int index = group.getValue().get(j);
+                        errors[index] = "Account number already in use";
+                        userIdsByUsername.remove(requests.get(index).getUsername());
+                        newUsers[index] = null;
+                    }
+                }
+            });
+        } finally {
+            synchronized (this) {
+                reservedAccounts.removeAll(batchAccounts);
+            }
+        }
+
+        int registered = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (newUsers[i] != null) {
+                users.put(newUsers[i].getUserId(), newUsers[i]);
+                committer.userRegistered(newUsers[i]);
+                customerIndex.add(newUsers[i], requests.get(i).getAccount());
+                registered++;
+            }
+        }
+        audit.log(AuditLog.Event.BULK_REGISTERED, registered, requests.size());
+        return errors;
+    }
+
+    // The user registered under a username, if any
+    public BankUser getUserByUsername(String username) {
+        String userId = userIdsByUsername.get(username);
+        return userId != null ? users.get(userId) : null;
+    }
+
+    private synchronized void indexUser(BankUser user) {
+        users.put(user.getUserId(), user);
+        userIdsByUsername.put(user.getUsername(), user.getUserId());
+        userCount = Math.max(userCount, users.size());
+    }
+
+    @Override
+    public boolean transferMoney(String fromAccount, String toAccount, double amount, String description) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String outcome = BankEvents.ERROR;
+        try {
+            boolean success = transfer(fromAccount, toAccount, amount, description);
+            outcome = success ? BankEvents.OK : BankEvents.DECLINED;
+            return success;
+        } finally {
+            event.finish("transferMoney", fromAccount, accountTypes, toAccount, amount, 1, outcome);
+        }
+    }
+
+    private boolean transfer(String fromAccount, String toAccount, double amount, String description) {
+        audit.log(AuditLog.Event.TRANSFER_ATTEMPT, fromAccount, toAccount, amount);
+        
+        if (readOnly) {
+            audit.log(AuditLog.Event.TRANSFER_READ_ONLY, fromAccount, toAccount, amount);
+            return false;
+        }
+
+        AccountShard fromShard = router.shardFor(fromAccount);
+        AccountShard toShard = router.shardFor(toAccount);
+        BankAccount fromAcc = fromShard.getAccount(fromAccount);
+        BankAccount toAcc = toShard.getAccount(toAccount);
+
+        if (fromAcc == null) {
+            audit.log(AuditLog.Event.TRANSFER_UNKNOWN_ACCOUNT, fromAccount);
+            return false;
+        }
+        
+        if (toAcc == null) {
+            audit.log(AuditLog.Event.TRANSFER_UNKNOWN_ACCOUNT, toAccount);
+            return false;
+        }
+
+        if (fromAccount.equals(toAccount)) {
+            audit.log(AuditLog.Event.TRANSFER_SAME_ACCOUNT, fromAccount);
+            return false;
+        }
+
+        audit.log(AuditLog.Event.TRANSFER_BALANCES, fromAccount, toAccount, fromAcc.getBalance(), toAcc.getBalance());
+
+        // Same shard: one writer applies both legs; otherwise reserve, credit, then commit
+        boolean success = fromShard == toShard
+            ? fromShard.transfer(fromAccount, toAccount, amount, description)
+            : transferAcrossShards(fromShard, toShard, fromAccount, toAccount, amount, description);
+
+        if (success) {
+            audit.log(AuditLog.Event.TRANSFER_COMMITTED, fromAccount, toAccount, amount);
+            return true;
+        } else {
+            audit.log(AuditLog.Event.TRANSFER_DECLINED, fromAccount, toAccount, amount);
+            if (amount > 0) {
+                loanScoring.bounced(fromAccount, System.currentTimeMillis());
+            }
+            return false;
+        }
+    }
+
+    // Bulk path for schedulers and importers: each shard applies its same-shard
+    // transfers in one writer task, shards run in parallel, and cross-shard
+    // transfers take the two-phase path. Results line up with the requests.
+    public boolean[] transferMoneyBatch(java.util.List<TransferRequest> requests) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String outcome = BankEvents.ERROR;
+        try {
+            boolean[] results = transferAll(requests);
+            outcome = BankEvents.OK;
+            return results;
+        } finally {
+            event.finish("transferMoneyBatch", null, accountTypes, null, 0, requests.size(), outcome);
+        }
+    }
+
+    private boolean[] transferAll(java.util.List<TransferRequest> requests) {
+        boolean[] results = new boolean[requests.size()];
+        if (readOnly || requests.isEmpty()) {
+            return results;
+        }
+        Map<AccountShard, java.util.List<Integer>> sameShard = new HashMap<>();
+        java.util.List<Integer> crossShard = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            if (request.getFromAccount().equals(request.getToAccount()) || request.getAmount() <= 0) {
+                continue;
+            }
+            AccountShard fromShard = router.shardFor(request.getFromAccount());
+            if (fromShard == router.shardFor(request.getToAccount())) {
+                sameShard.computeIfAbsent(fromShard, shard -> new ArrayList<>()).add(i);
+            } else {
+                crossShard.add(i);
+            }
+        }
+
+        sameShard.entrySet().parallelStream().forEach(group -> {
+            java.util.List<TransferRequest> batch = new ArrayList<>(group.getValue().size());
+            for (int index : group.getValue()) {
+                batch.add(requests.get(index));
+            }
+            boolean[] applied = group.getKey().transferAll(batch);
+            for (int j = 0; j < applied.length; j++) {
+                results[group.getValue().get(j)] = applied[j];
+            }
+        });
+        crossShard.parallelStream().forEach(index -> {
+            TransferRequest request = requests.get(index);
+            results[index] = transferAcrossShards(router.shardFor(request.getFromAccount()),
+                router.shardFor(request.getToAccount()), request.getFromAccount(), request.getToAccount(),
+                request.getAmount(), request.getDescription());
+        });
+
+        int succeeded = 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < results.length; i++) {
+            TransferRequest request = requests.get(i);
+            if (results[i]) {
+                succeeded++;
+            } else if (request.getAmount() > 0 && !request.getFromAccount().equals(request.getToAccount())) {
+                loanScoring.bounced(request.getFromAccount(), now);
+            }
+        }
+        audit.log(AuditLog.Event.BATCH_TRANSFER, succeeded, requests.size());
+        return results;
+    }
+
+    private boolean transferAcrossShards(AccountShard fromShard, AccountShard toShard, String fromAccount,
+                                         String toAccount, double amount, String description) {
+        String transferId = UUID.randomUUID().toString();
+        if (!fromShard.prepareDebit(transferId, fromAccount, amount)) {
+            return false;
+        }
+        boolean credited;
+        try {
+            credited = toShard.credit(toAccount, fromAccount, amount, description);
+        } catch (RuntimeException e) {
+            fromShard.abortDebit(transferId);
+            throw e;
+        }
+        if (!credited) {
+            fromShard.abortDebit(transferId);
+            return false;
+        }
+        fromShard.commitDebit(transferId, toAccount, description);
+        return true;
+    }
+
+    // Support desk lookup by partial name, username, email or phone, best match first
+    public java.util.List<CustomerIndex.Match> searchCustomers(String query, int limit) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        java.util.List<CustomerIndex.Match> matches = customerIndex.search(query, limit);
+        event.finish("searchCustomers", null, accountTypes, null, 0, matches.size(), BankEvents.OK);
+        return matches;
+    }
+
+    // Served from the version store: never waits on a shard writer
+    public java.util.List<BankTransaction> getTransactionHistory(String accountNumber) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        AccountVersion version = versionStore.latest(accountNumber);
+        java.util.List<BankTransaction> history = version != null ? version.getTransactionHistory() : new ArrayList<>();
+        event.finish("getTransactionHistory", accountNumber, accountTypes, null, 0, history.size(),
+            version != null ? BankEvents.OK : BankEvents.DECLINED);
+        return history;
+    }
+
+    // History within [fromMillis, toMillis], oldest first; only the archive blocks
+    // covering the period are read
+    public java.util.List<BankTransaction> getTransactionHistory(String accountNumber, long fromMillis, long toMillis) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        AccountVersion version = versionStore.latest(accountNumber);
+        java.util.List<BankTransaction> history = version != null
+            ? version.getTransactionHistory(fromMillis, toMillis) : new ArrayList<>();
+        event.finish("getTransactionHistoryRange", accountNumber, accountTypes, null, 0, history.size(),
+            version != null ? BankEvents.OK : BankEvents.DECLINED);
+        return history;
+    }
+
+    @Override
+    public AccountVersion getAccountVersion(String accountNumber) {
+        return versionStore.latest(accountNumber);
+    }
+
+    @Override
+    public double[] getBalances(java.util.List<String> accountNumbers) {
+        double[] balances = new double[accountNumbers.size()];
+        try (LedgerSnapshot snapshot = versionStore.openSnapshot()) {
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = snapshot.getBalance(accountNumbers.get(i));
+            }
+        }
+        return balances;
+    }
+
+    public double getBalance(String accountNumber) {
+        AccountVersion version = versionStore.latest(accountNumber);
+        return version != null ? version.getBalance() : 0.0;
+    }
+
+    // Consistent view of every account at one commit sequence; close when done
+    public LedgerSnapshot openSnapshot() {
+        return versionStore.openSnapshot();
+    }
+
+    // A detached copy at the last committed balance; the shard keeps the live account
+    @Override
+    public BankAccount getAccount(String accountNumber) {
+        BankAccount account = liveAccount(accountNumber);
+        if (account == null) {
+            return null;
+        }
+        AccountVersion version = versionStore.latest(accountNumber);
+        return account.copy(version != null ? version.getBalance() : account.getBalance(), account.getHeldAmount());
+    }
+
+    private BankAccount liveAccount(String accountNumber) {
+        return router.shardFor(accountNumber).getAccount(accountNumber);
+    }
+
+    // Flight Recorder fields; only looked up for events being recorded
+    private String accountTypeOf(String accountNumber) {
+        BankAccount account = liveAccount(accountNumber);
+        return account != null ? account.getAccountType() : null;
+    }
+
+    @Override
+    public java.util.List<BankAccount> getUserAccounts(String userId) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        BankUser user = users.get(userId);
+        java.util.List<BankAccount> userAccounts = new ArrayList<>();
+        if (user != null) {
+            // Copies at the committed balance, resolved through the owning shard
+            for (BankAccount account : user.getAccounts()) {
+                BankAccount current = getAccount(account.getAccountNumber());
+                userAccounts.add(current != null ? current : account.copy(account.getBalance(), account.getHeldAmount()));
+            }
+        }
+        event.finish("getUserAccounts", null, accountTypes, userId, 0, userAccounts.size(),
+            user != null ? BankEvents.OK : BankEvents.DECLINED);
+        return userAccounts;
+    }
+
+    // Method to get all accounts for transfer
+    @Override
+    public java.util.List<BankAccount> getAllAccounts() {
+        java.util.List<BankAccount> allAccounts = new ArrayList<>();
+        for (AccountShard shard : router.getShards()) {
+            for (BankAccount account : shard.getAccounts()) {
+                allAccounts.add(getAccount(account.getAccountNumber()));
+            }
+        }
+        return allAccounts;
+    }
+
+    public NotificationOutbox getNotificationOutbox() {
+        return notificationOutbox;
+    }
+
+    // Front ends consult this before calling into the service
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @Override
+    public long acquireLogin(String username) {
+        return rateLimiter.acquireLogin(username, "local");
+    }
+
+    @Override
+    public long acquireTransfer(String userId, String accountNumber) {
+        return rateLimiter.acquireTransfer(userId, accountNumber);
+    }
+
+    public int getShardCount() {
+        return router.getShardCount();
+    }
+
+    // ===== ANALYTICS =====
+
+    // Day, month and year totals per account, maintained as postings commit
+    public SpendingRollups getSpendingRollups() {
+        return spendingRollups;
+    }
+
+    @Override
+    public java.util.List<SpendingRollups.Bucket> getSpendingBuckets(String accountNumber,
+            SpendingRollups.Granularity granularity, int fromPeriod, int toPeriod) {
+        return spendingRollups.buckets(accountNumber, granularity, fromPeriod, toPeriod);
+    }
+
+    // Totals across every account the user holds, maintained as postings commit
+    @Override
+    public PortfolioAggregates.Totals getPortfolio(String userId) {
+        return portfolios.totals(userId);
+    }
+
+    // Recomputes the rollups from the full ledger, archived history included
+    public void rebuildSpendingRollups() {
+        spendingRollups.rebuild(versionStore);
+    }
+
+    // ===== LOANS =====
+
+    // Eligibility and limit for one of LoanScoring.SCHEMES from the features of
+    // every account the user holds; null for an unknown user or scheme
+    @Override
+    public LoanScoring.Decision assessLoan(String userId, int scheme) {
+        BankUser user = users.get(userId);
+        if (user == null || scheme < 0 || scheme >= LoanScoring.SCHEMES.length) {
+            return null;
+        }
+        java.util.List<String> accountNumbers = new ArrayList<>(user.getAccounts().size());
+        for (BankAccount account : user.getAccounts()) {
+            accountNumbers.add(account.getAccountNumber());
+        }
+        LoanScoring.Decision decision = loanScoring.decide(LoanScoring.SCHEMES[scheme], accountNumbers);
+        audit.log(AuditLog.Event.LOAN_ASSESSED, userId, decision.getScheme(), decision.getLimit(), decision.getScore());
+        return decision;
+    }
+
+    // The nightly full-book re-score, on demand
+    public int rescoreLoans() throws InterruptedException {
+        return loanScoring.rescore(versionStore);
+    }
+
+    // ===== FUNDS HOLDS =====
+
+    // Reserves funds for up to ttlMillis; returns the hold id, or null when
+    // the available balance does not cover the amount
+    public String placeHold(String accountNumber, double amount, long ttlMillis, String description) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        String holdId = readOnly ? null : fundsHolds.placeHold(accountNumber, amount, ttlMillis, description);
+        event.finish("placeHold", accountNumber, accountTypes, holdId, amount, 1,
+            holdId != null ? BankEvents.OK : BankEvents.DECLINED);
+        return holdId;
+    }
+
+    // Debits up to the held amount; the remainder is released
+    public boolean captureHold(String holdId, double amount) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        FundsHolds.Hold hold = fundsHolds.getHold(holdId);
+        boolean captured = !readOnly && fundsHolds.capture(holdId, amount);
+        event.finish("captureHold", hold != null ? hold.getAccountNumber() : null, accountTypes, holdId, amount, 1,
+            captured ? BankEvents.OK : BankEvents.DECLINED);
+        return captured;
+    }
+
+    public boolean releaseHold(String holdId) {
+        BankEvents.OperationEvent event = new BankEvents.OperationEvent();
+        event.begin();
+        FundsHolds.Hold hold = fundsHolds.getHold(holdId);
+        boolean released = !readOnly && fundsHolds.release(holdId);
+        event.finish("releaseHold", hold != null ? hold.getAccountNumber() : null, accountTypes, holdId, 0, 1,
+            released ? BankEvents.OK : BankEvents.DECLINED);
+        return released;
+    }
+
+    public FundsHolds.Hold getHold(String holdId) {
+        return fundsHolds.getHold(holdId);
+    }
+
+    // Committed balance less open holds
+    public double getAvailableBalance(String accountNumber) {
+        return getBalance(accountNumber) - fundsHolds.getHeldAmount(accountNumber);
+    }
+
+    public FundsHolds getFundsHolds() {
+        return fundsHolds;
+    }
+
+    // ===== LEDGER AND REPLICATION =====
+
+    public void addLedgerListener(LedgerListener listener) {
+        committer.addListener(listener);
+    }
+
+    public void removeLedgerListener(LedgerListener listener) {
+        committer.removeListener(listener);
+    }
+
+    public long getLastCommittedSequence() {
+        return committer.getLastSequence();
+    }
+
+    public ReplicationLog getReplicationLog() {
+        return replicationLog;
+    }
+
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public void applyReplicated(LedgerRecord record) {
+        router.shardFor(record.getAccountNumber()).apply(record);
+    }
+
+    public void applyReplicatedUser(long sequence, String userId, String username, String passwordHash,
+                                    String email, String phone, String accountNumbers) {
+        BankUser user = BankUser.withPasswordHash(userId, username, passwordHash, email, phone);
+        for (String accountNumber : accountNumbers.split(",")) {
+            BankAccount account = liveAccount(accountNumber);
+            if (account != null) {
+                user.addAccount(account);
+                customerIndex.add(user, account);
+            }
+        }
+        indexUser(user);
+        committer.userReplicated(sequence, user);
+    }
+
+    // Recovery: a run of records in commit order. Each shard installs its part
+    // in one writer task, then the run is published in sequence order.
+    void applyReplicatedAll(java.util.List<LedgerRecord> records) {
+        Map<AccountShard, java.util.List<LedgerRecord>> byShard = new java.util.LinkedHashMap<>();
+        for (LedgerRecord record : records) {
+            byShard.computeIfAbsent(router.shardFor(record.getAccountNumber()), shard -> new ArrayList<>())
+                .add(record);
+        }
+        for (Map.Entry<AccountShard, java.util.List<LedgerRecord>> run : byShard.entrySet()) {
+            run.getKey().applyAll(run.getValue());
+        }
+        committer.commitReplicatedAll(records);
+    }
+
+    // Recovery: the profile of an account re-opened from the ledger, on the live
+    // account and on the metadata its versions carry
+    void restoreProfile(String accountNumber, String email, String phone, String address, String dob,
+                        String gender) {
+        BankAccount account = liveAccount(accountNumber);
+        if (account == null) {
+            return;
+        }
+        account.restoreProfile(email, phone, address, dob, gender);
+        AccountVersion head = versionStore.latest(accountNumber);
+        if (head != null) {
+            head.getAccount().restoreProfile(email, phone, address, dob, gender);
+        }
+        versionStore.registerAccount(account);
+    }
+
+    java.util.Collection<BankUser> getUsers() {
+        return users.values();
+    }
+
+    public DatabaseService getDatabase() {
+        return database;
+    }
+
+    // Method to get all accounts for debugging
+    public void printAllAccounts() {
+        System.out.println("=== ALL ACCOUNTS ===");
+        for (BankAccount account : getAllAccounts()) {
+            System.out.println(account.getAccountNumber() + " - " + account.getAccountHolder() + " - Balance: " + account.getBalance());
+        }
+    }
+}
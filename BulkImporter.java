@@ -0,0 +1,474 @@
+import java.io.*;                        // File and socket I/O
+import java.net.Socket;                  // Command-line client
+import java.nio.charset.StandardCharsets; // CSV encoding
+import java.nio.file.*;                  // Atomic checkpoint publish
+import java.util.ArrayDeque;             // Chunks in flight
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+import java.util.concurrent.*;           // Parse pool
+import java.util.function.Consumer;      // Progress callback
+import java.util.regex.Pattern;          // Account number check
+
+// ===== BULK IMPORT =====
+// Onboards customers migrated from another core system from a CSV file with
+// the header
+//   username,password,fullName,email,phone,address,dob,gender,accountType,accountNumber,openingBalance
+// The file is streamed, never loaded whole: one thread cuts it into chunks of
+// bank.import.batchSize (5000) raw records, a pool of bank.import.threads
+// (one per core) parses and validates chunks in parallel, and the calling
+// thread registers them in file order through BankingService.registerUsers,
+// keeping at most bank.import.inFlight chunks (twice the threads) read ahead.
+// Rejected rows are appended to <file>.errors.csv with their row number and
+// reason. After each chunk <file>.checkpoint records the byte offset reached,
+// so an interrupted import started again skips what was already committed;
+// rows of the last chunk that committed before its checkpoint are recognised
+// by username and account number and counted as already imported, and the
+// errors file is cut back to the length the checkpoint recorded.
+class BulkImporter {
+    static final String HEADER = "username,password,fullName,email,phone,address,dob,gender,accountType,accountNumber,openingBalance";
+    private static final int FIELDS = 11;
+    private static final Pattern ACCOUNT_NUMBER = Pattern.compile("[A-Za-z0-9-]{3,32}");
+    private static final String OPENING_DESCRIPTION = "Opening balance migrated from legacy core";
+
+    private final BankingService bankingService;
+    private final File file;
+    private final File checkpointFile;
+    private final File errorFile;
+    private final int batchSize = Integer.getInteger("bank.import.batchSize", 5000);
+    private final int threads = Integer.getInteger("bank.import.threads", Runtime.getRuntime().availableProcessors());
+    private final int inFlight = Integer.getInteger("bank.import.inFlight", 2 * threads);
+    private final AuditLog audit = AuditLog.getInstance();
+
+    // Where an import stands; also the checkpoint contents
+    static class Progress {
+        private long offset;                 // bytes of the file consumed
+        private long rows;                   // data rows consumed
+        private long imported;
+        private long skipped;                // already imported by an earlier run
+        private long failed;
+        private long errorBytes;             // length of the errors file at this point
+        private boolean finished;
+
+        public long getOffset() { return offset; }
+        public long getRows() { return rows; }
+        public long getImported() { return imported; }
+        public long getSkipped() { return skipped; }
+        public long getFailed() { return failed; }
+        public boolean isFinished() { return finished; }
+
+        public String summary() {
+            return String.format("%d rows: %d imported, %d already present, %d rejected%s",
+                rows, imported, skipped, failed, finished ? "" : " (incomplete)");
+        }
+    }
+
+    // One validated row, or the reason it was rejected
+    private static final class Row {
+        final long number;
+        final String username;
+        final RegistrationRequest request;
+        final String error;
+
+        Row(long number, String username, RegistrationRequest request, String error) {
+            this.number = number;
+            this.username = username;
+            this.request = request;
+            this.error = error;
+        }
+    }
+
+    // Raw records as cut by the reader, and the file position after the last
+    private static final class Chunk {
+        final long firstRow;
+        final List<byte[]> records;
+        final long endOffset;
+
+        Chunk(long firstRow, List<byte[]> records, long endOffset) {
+            this.firstRow = firstRow;
+            this.records = records;
+            this.endOffset = endOffset;
+        }
+    }
+
+    public BulkImporter(BankingService bankingService, File file) {
+        this.bankingService = bankingService;
+        this.file = file;
+        this.checkpointFile = new File(file.getPath() + ".checkpoint");
+        this.errorFile = new File(file.getPath() + ".errors.csv");
+    }
+
+    // Imports the file from its checkpoint, if any, reporting progress after
+    // every committed chunk. Returns the final progress.
+    public Progress run(Consumer<Progress> listener) throws IOException, InterruptedException {
+        Progress progress = readCheckpoint();
+        if (progress.finished) {
+            listener.accept(progress);
+            return progress;
+        }
+        boolean resumed = progress.offset > 0;
+        if (resumed && errorFile.length() > progress.errorBytes) {
+            // Rejections from chunks past the checkpoint are reported again
+            try (RandomAccessFile errors = new RandomAccessFile(errorFile, "rw")) {
+                errors.setLength(progress.errorBytes);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-import-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        try (FileInputStream input = new FileInputStream(file);
+             PrintWriter errors = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                 new FileOutputStream(errorFile, resumed), StandardCharsets.UTF_8)))) {
+            if (!resumed) {
+                errors.println("row,username,reason");
+            }
+            RecordReader reader = new RecordReader(input, progress.offset);
+            if (!resumed) {
+                byte[] header = reader.next();
+                if (header == null || !HEADER.equals(new String(header, StandardCharsets.UTF_8).trim())) {
+                    throw new IOException("Expected header " + HEADER);
+                }
+            }
+
+            ArrayDeque<Future<List<Row>>> pending = new ArrayDeque<>();
+            ArrayDeque<Chunk> pendingChunks = new ArrayDeque<>();
+            long nextRow = progress.rows + 1;
+            boolean more = true;
+            while (more || !pending.isEmpty()) {
+                while (more && pending.size() < inFlight) {
+                    List<byte[]> records = new ArrayList<>(batchSize);
+                    byte[] record;
+                    while (records.size() < batchSize && (record = reader.next()) != null) {
+                        records.add(record);
+                    }
+                    more = records.size() == batchSize;
+                    if (records.isEmpty()) {
+                        break;
+                    }
+                    Chunk chunk = new Chunk(nextRow, records, reader.offset());
+                    nextRow += records.size();
+                    pendingChunks.add(chunk);
+                    pending.add(pool.submit(() -> parse(chunk)));
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                List<Row> rows;
+                try {
+                    rows = pending.poll().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Import chunk failed", e.getCause());
+                }
+                Chunk chunk = pendingChunks.poll();
+                commit(rows, progress, errors);
+                errors.flush();
+                progress.errorBytes = errorFile.length();
+                progress.offset = chunk.endOffset;
+                progress.rows += chunk.records.size();
+                progress.finished = !more && pending.isEmpty();
+                writeCheckpoint(progress);
+                audit.log(AuditLog.Event.BULK_IMPORT_PROGRESS, file.getName(), null, progress.rows, progress.failed);
+                listener.accept(progress);
+            }
+            if (!progress.finished) {
+                // Empty file past the header, or the last chunk was exactly full
+                progress.finished = true;
+                writeCheckpoint(progress);
+                listener.accept(progress);
+            }
+            return progress;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void commit(List<Row> rows, Progress progress, PrintWriter errors) {
+        List<RegistrationRequest> requests = new ArrayList<>(rows.size());
+        List<Row> accepted = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (row.error != null) {
+                reject(errors, row, row.error, progress);
+            } else {
+                requests.add(row.request);
+                accepted.add(row);
+            }
+        }
+        String[] results = bankingService.registerUsers(requests);
+        for (int i = 0; i < results.length; i++) {
+            Row row = accepted.get(i);
+            if (results[i] == null) {
+                progress.imported++;
+            } else if (alreadyImported(row.request)) {
+                progress.skipped++;
+            } else {
+                reject(errors, row, results[i], progress);
+            }
+        }
+    }
+
+    private boolean alreadyImported(RegistrationRequest request) {
+        BankUser existing = bankingService.getUserByUsername(request.getUsername());
+        return existing != null && existing.getAccount(request.getAccount().getAccountNumber()) != null;
+    }
+
+    private static void reject(PrintWriter errors, Row row, String reason, Progress progress) {
+        progress.failed++;
+        errors.println(row.number + "," + csv(row.username) + "," + csv(reason));
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // ===== PARSING AND VALIDATION (pool threads) =====
+
+    private static List<Row> parse(Chunk chunk) {
+        List<Row> rows = new ArrayList<>(chunk.records.size());
+        long number = chunk.firstRow;
+        for (byte[] record : chunk.records) {
+            rows.add(parseRow(number++, record));
+        }
+        return rows;
+    }
+
+    private static Row parseRow(long number, byte[] record) {
+        List<String> f;
+        try {
+            f = splitFields(record);
+        } catch (IllegalArgumentException e) {
+            return new Row(number, null, null, e.getMessage());
+        }
+        String username = f.isEmpty() ? null : f.get(0);
+        if (f.size() != FIELDS) {
+            return new Row(number, username, null, "Expected " + FIELDS + " fields, found " + f.size());
+        }
+        String error = validate(f);
+        if (error != null) {
+            return new Row(number, username, null, error);
+        }
+
+        String accountNumber = f.get(9);
+        double openingBalance = Math.round(Double.parseDouble(f.get(10)) * 100) / 100.0;
+        BankAccount account = "Savings".equalsIgnoreCase(f.get(8))
+            ? new SavingsAccount(accountNumber, f.get(2), openingBalance, f.get(3), f.get(4), f.get(5), f.get(6), f.get(7))
+            : new CurrentAccount(accountNumber, f.get(2), openingBalance, f.get(3), f.get(4), f.get(5), f.get(6), f.get(7));
+        BankTransaction opening = openingBalance > 0
+            ? new BankTransaction(accountNumber, "DEPOSIT", openingBalance, OPENING_DESCRIPTION)
+            : null;
+        return new Row(number, username,
+            new RegistrationRequest(username, f.get(1), f.get(3), f.get(4), account, opening), null);
+    }
+
+    // Same rules as the registration form, plus what a migration can get wrong
+    private static String validate(List<String> f) {
+        String[] required = {"username", "password", "fullName", "email", "phone", null, null, null,
+            "accountType", "accountNumber", "openingBalance"};
+        for (int i = 0; i < required.length; i++) {
+            if (required[i] != null && f.get(i).isEmpty()) {
+                return "Missing " + required[i];
+            }
+        }
+        if (f.get(1).length() < 6) {
+            return "Password shorter than 6 characters";
+        }
+        if (f.get(3).indexOf('@') <= 0) {
+            return "Invalid email";
+        }
+        int digits = 0;
+        for (char c : f.get(4).toCharArray()) {
+            if (Character.isDigit(c)) {
+                digits++;
+            } else if ("+- ()".indexOf(c) < 0) {
+                return "Invalid phone";
+            }
+        }
+        if (digits < 7 || digits > 15) {
+            return "Invalid phone";
+        }
+        if (!"Savings".equalsIgnoreCase(f.get(8)) && !"Current".equalsIgnoreCase(f.get(8))) {
+            return "Account type must be Savings or Current";
+        }
+        if (!ACCOUNT_NUMBER.matcher(f.get(9)).matches()) {
+            return "Invalid account number";
+        }
+        try {
+            double balance = Double.parseDouble(f.get(10));
+            if (!(balance >= 0) || Double.isInfinite(balance)) {
+                return "Invalid opening balance";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid opening balance";
+        }
+        return null;
+    }
+
+    // RFC 4180 fields: quoted fields may hold commas, doubled quotes and
+    // newlines. Delimiters are ASCII, so the bytes can be split before decoding.
+    static List<String> splitFields(byte[] record) {
+        List<String> fields = new ArrayList<>(FIELDS);
+        ByteArrayOutputStream field = new ByteArrayOutputStream(32);
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < record.length; i++) {
+            byte b = record[i];
+            if (quoted) {
+                if (b != '"') {
+                    field.write(b);
+                } else if (i + 1 < record.length && record[i + 1] == '"') {
+                    field.write('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (b == ',') {
+                fields.add(decode(field, wasQuoted));
+                field.reset();
+                wasQuoted = false;
+            } else if (b == '"' && field.size() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else {
+                field.write(b);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(decode(field, wasQuoted));
+        return fields;
+    }
+
+    private static String decode(ByteArrayOutputStream field, boolean quoted) {
+        String value = new String(field.toByteArray(), StandardCharsets.UTF_8);
+        return quoted ? value : value.trim();
+    }
+
+    // ===== RECORD READER =====
+    // Cuts the byte stream into records at newlines outside quotes, tracking
+    // the byte offset so a checkpoint can seek straight back to it. Blank
+    // lines are skipped and a trailing carriage return is dropped.
+    private static final class RecordReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 20];
+        private int position;
+        private int limit;
+        private long offset;                 // file offset of buffer[position]
+        private ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+
+        RecordReader(FileInputStream in, long offset) throws IOException {
+            in.getChannel().position(offset);
+            this.in = in;
+            this.offset = offset;
+        }
+
+        long offset() {
+            return offset;
+        }
+
+        byte[] next() throws IOException {
+            boolean quoted = false;
+            record.reset();
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return record.size() > 0 ? trimmed() : null;
+                    }
+                }
+                int start = position;
+                while (position < limit) {
+                    byte b = buffer[position++];
+                    if (b == '"') {
+                        quoted = !quoted;
+                    } else if (b == '\n' && !quoted) {
+                        record.write(buffer, start, position - 1 - start);
+                        offset += position - start;
+                        if (record.size() == 0 || (record.size() == 1 && trimmed().length == 0)) {
+                            record.reset();
+                            start = position;
+                            continue;
+                        }
+                        return trimmed();
+                    }
+                }
+                record.write(buffer, start, position - start);
+                offset += position - start;
+            }
+        }
+
+        private byte[] trimmed() {
+            byte[] bytes = record.toByteArray();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                byte[] copy = new byte[length - 1];
+                System.arraycopy(bytes, 0, copy, 0, length - 1);
+                return copy;
+            }
+            return bytes;
+        }
+    }
+
+    // ===== CHECKPOINT =====
+
+    private Progress readCheckpoint() throws IOException {
+        Progress progress = new Progress();
+        if (!checkpointFile.exists()) {
+            return progress;
+        }
+        String line = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8).trim();
+        String[] f = WireFormat.decode(line);
+        if (f.length != 8 || !"CHECKPOINT".equals(f[0])) {
+            throw new IOException("Unreadable checkpoint " + checkpointFile);
+        }
+        progress.offset = Long.parseLong(f[1]);
+        progress.rows = Long.parseLong(f[2]);
+        progress.imported = Long.parseLong(f[3]);
+        progress.skipped = Long.parseLong(f[4]);
+        progress.failed = Long.parseLong(f[5]);
+        progress.errorBytes = Long.parseLong(f[6]);
+        progress.finished = Boolean.parseBoolean(f[7]);
+        return progress;
+    }
+
+    private void writeCheckpoint(Progress progress) throws IOException {
+        Path target = checkpointFile.toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, (WireFormat.encode("CHECKPOINT", progress.offset, progress.rows, progress.imported,
+            progress.skipped, progress.failed, progress.errorBytes, progress.finished) + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Runs an import on a running server: java BulkImporter <csv> [host] [port].
+    // The path is resolved by the server.
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java BulkImporter <csv> [host] [port]");
+            System.exit(2);
+        }
+        String host = args.length > 1 ? args[1] : "localhost";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 7070;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true)) {
+            out.println(WireFormat.encode("IMPORT", new File(args[0]).getAbsolutePath()));
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] reply = WireFormat.decode(line);
+                System.out.println(reply.length > 1 ? reply[1] : reply[0]);
+                if (!"PROGRESS".equals(reply[0])) {
+                    break;
+                }
+            }
+            out.println("QUIT");
+        }
+    }
+}
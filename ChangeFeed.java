@@ -0,0 +1,433 @@
+import java.io.*;                        // Segment files and the console client
+import java.net.Socket;                  // Console client
+import java.nio.charset.StandardCharsets; // Line decoding
+import java.util.ArrayList;              // List implementation
+import java.util.Arrays;                 // Segment ordering
+import java.util.List;                   // List interface
+
+// ===== CHANGE DATA CAPTURE =====
+// Every committed posting and user registration, in commit order, for the
+// warehouse and risk systems. One line per change:
+//   TX|seq|transactionId|account|accountType|type|amount|balanceAfter|millis|description
+//   USER|seq|userId|username|email|phone|accounts        (never the password)
+// The commit path only puts the record, which is immutable, into a ring
+// holding the latest bank.cdc.bufferEvents (65536) and onto the queue of the
+// "cdc-writer" thread; lines are encoded outside the commit lock. The writer
+// appends to segment files under bank.cdc.dir (data/cdc), rolled past
+// bank.cdc.segmentBytes (64 MB) and named after their first sequence. Readers
+// take a Cursor after a sequence: it serves from the ring while the changes
+// are still there and falls back to the segments when its consumer has fallen
+// behind, so a slow consumer costs disk reads, never commit latency or
+// memory. Sequences start over with the process, so each run writes its own
+// epoch directory; a consumer resuming with another epoch starts from the top.
+//   java ChangeFeed <host> <port> [afterSequence] [epoch]    follow a server
+//   java ChangeFeed --tail <dir> [afterSequence]              follow the files
+class ChangeFeed implements LedgerListener {
+    private static final String SEGMENT_PREFIX = "cdc-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final long epoch = System.currentTimeMillis();
+    private final File directory;
+    private final long segmentBytes = Long.getLong("bank.cdc.segmentBytes", 64L * 1024 * 1024);
+    private final int capacity = Math.max(1, Integer.getInteger("bank.cdc.bufferEvents", 65536));
+    private final Object[] ringChanges = new Object[capacity];      // guarded by this; records or USER lines
+    private final long[] ringSequences = new long[capacity];        // guarded by this
+    private long appended;                                          // guarded by this; lines ever added
+    private long lastSequence;                                      // guarded by this
+    private long evictedThrough;                                    // guarded by this; newest sequence overwritten
+    private List<Object> unwritten = new ArrayList<>();             // guarded by this
+    private long unwrittenThrough;                                  // guarded by this
+    private long writtenThrough;                                    // guarded by this
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ChangeFeed(File baseDirectory) {
+        this.directory = new File(baseDirectory, Long.toString(epoch));
+        Thread writer = new Thread(this::writeLoop, "cdc-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // ----- commit path -----
+
+    @Override
+    public void onCommit(LedgerRecord record) {
+        append(record.getSequence(), record);
+    }
+
+    // Users change later, so their line is taken now
+    @Override
+    public void onUserRegistered(long sequence, BankUser user) {
+        append(sequence, WireFormat.encode(WireFormat.concat(new Object[]{"USER", sequence},
+            WireFormat.profileFields(user))));
+    }
+
+    @Override
+    public synchronized void onBatchCommitted(long lastSequence) {
+        notifyAll();
+    }
+
+    private synchronized void append(long sequence, Object change) {
+        int slot = (int) (appended % capacity);
+        if (appended >= capacity) {
+            evictedThrough = ringSequences[slot];
+        }
+        ringChanges[slot] = change;
+        ringSequences[slot] = sequence;
+        appended++;
+        lastSequence = sequence;
+        unwritten.add(change);
+        unwrittenThrough = sequence;
+    }
+
+    static String lineOf(Object change) {
+        if (change instanceof LedgerRecord) {
+            return WireFormat.encode(WireFormat.concat(new Object[]{"TX"}, WireFormat.recordFields((LedgerRecord) change)));
+        }
+        return (String) change;
+    }
+
+    // ----- segment writer -----
+
+    private void writeLoop() {
+        Writer out = null;
+        File segment = null;
+        long segmentSize = 0;
+        while (true) {
+            List<Object> batch;
+            long through;
+            synchronized (this) {
+                while (unwritten.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = unwritten;
+                through = unwrittenThrough;
+                unwritten = new ArrayList<>(batch.size());
+            }
+            try {
+                for (Object change : batch) {
+                    String line = lineOf(change);
+                    if (out == null || segmentSize >= segmentBytes) {
+                        if (out != null) {
+                            out.close();
+                        }
+                        directory.mkdirs();
+                        segment = new File(directory, segmentName(sequenceOf(line)));
+                        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segment, true),
+                            StandardCharsets.UTF_8));
+                        segmentSize = segment.length();
+                    }
+                    out.write(line);
+                    out.write('\n');
+                    segmentSize += line.length() + 1;
+                }
+                out.flush();
+                synchronized (this) {
+                    writtenThrough = through;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                // Put the batch back in front and start a fresh segment after a pause
+                audit.log(AuditLog.Event.CDC_WRITE_FAILED, String.valueOf(segment), e.getMessage(), batch.size());
+                synchronized (this) {
+                    batch.addAll(unwritten);
+                    unwritten = batch;
+                }
+                try {
+                    if (out != null) {
+                        out.close();
+                    }
+                } catch (IOException ignored) {
+                    // Reopened below
+                }
+                out = null;
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    static long sequenceOf(String line) {
+        int start = line.indexOf(WireFormat.SEPARATOR) + 1;
+        int end = line.indexOf(WireFormat.SEPARATOR, start);
+        return Long.parseLong(line.substring(start, end < 0 ? line.length() : end));
+    }
+
+    // Segment files of one epoch, oldest first
+    static File[] segments(File directory) {
+        File[] files = directory.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    static long firstSequenceOf(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // ----- readers -----
+
+    public Cursor openCursor(long afterSequence) {
+        return new Cursor(afterSequence);
+    }
+
+    // One consumer's position in the feed. Not thread safe.
+    class Cursor implements Closeable {
+        private long after;
+        private SegmentTail tail;                // open while catching up from the segments
+
+        Cursor(long afterSequence) {
+            this.after = afterSequence;
+        }
+
+        public long getPosition() {
+            return after;
+        }
+
+        public boolean isCatchingUp() {
+            return tail != null;
+        }
+
+        // Up to max lines after the position, waiting up to timeoutMs for one
+        public List<String> next(int max, long timeoutMs) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            List<Object> changes = new ArrayList<>();
+            List<String> lines = new ArrayList<>();
+            synchronized (ChangeFeed.this) {
+                if (after >= evictedThrough) {
+                    if (tail != null) {
+                        tail.close();
+                        tail = null;
+                    }
+                    while (after >= lastSequence) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            return lines;
+                        }
+                        ChangeFeed.this.wait(remaining);
+                    }
+                    if (after >= evictedThrough) {
+                        fromRing(changes, max);
+                    }
+                }
+                // Fallen off the ring: only what the writer has finished is readable
+                while (changes.isEmpty() && writtenThrough <= after) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return lines;
+                    }
+                    ChangeFeed.this.wait(remaining);
+                }
+            }
+            if (!changes.isEmpty()) {
+                for (Object change : changes) {
+                    lines.add(lineOf(change));
+                }
+                return lines;
+            }
+            if (tail == null) {
+                audit.log(AuditLog.Event.CDC_CATCH_UP, directory.getName(), null, after);
+                tail = SegmentTail.after(directory, after);
+            }
+            String line;
+            while (lines.size() < max && (line = tail.readLine()) != null) {
+                long sequence = sequenceOf(line);
+                if (sequence > after) {
+                    lines.add(line);
+                    after = sequence;
+                }
+            }
+            return lines;
+        }
+
+        // Caller holds the feed's lock
+        private void fromRing(List<Object> changes, int max) {
+            long oldest = Math.max(0, appended - capacity);
+            long low = oldest;
+            long high = appended;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (ringSequences[(int) (mid % capacity)] <= after) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (long i = low; i < appended && changes.size() < max; i++) {
+                changes.add(ringChanges[(int) (i % capacity)]);
+                after = ringSequences[(int) (i % capacity)];
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tail != null) {
+                tail.close();
+                tail = null;
+            }
+        }
+    }
+
+    // Follows the segment files of one epoch in order, returning only complete
+    // lines so a reader never sees one the writer is still appending
+    static final class SegmentTail implements Closeable {
+        private final File directory;
+        private File segment;
+        private InputStream in;
+        private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+
+        private SegmentTail(File directory, File segment) throws IOException {
+            this.directory = directory;
+            open(segment);
+        }
+
+        // Positioned at the segment that can hold the line after the sequence
+        static SegmentTail after(File directory, long afterSequence) throws IOException {
+            File start = null;
+            for (File segment : segments(directory)) {
+                if (start == null || firstSequenceOf(segment) <= afterSequence + 1) {
+                    start = segment;
+                }
+            }
+            return new SegmentTail(directory, start);
+        }
+
+        private void open(File next) throws IOException {
+            if (in != null) {
+                in.close();
+            }
+            segment = next;
+            in = next != null ? new BufferedInputStream(new FileInputStream(next), 64 * 1024) : null;
+            partial.reset();
+        }
+
+        // The next complete line, or null if there is none yet
+        String readLine() throws IOException {
+            while (true) {
+                if (in == null) {
+                    File[] all = segments(directory);
+                    if (all.length == 0) {
+                        return null;
+                    }
+                    open(all[0]);
+                }
+                int b;
+                while ((b = in.read()) >= 0) {
+                    if (b == '\n') {
+                        String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+                        partial.reset();
+                        return line;
+                    }
+                    partial.write(b);
+                }
+                // End of this segment: move on only once the writer has rolled past it
+                File next = null;
+                for (File candidate : segments(directory)) {
+                    if (candidate.getName().compareTo(segment.getName()) > 0) {
+                        next = candidate;
+                        break;
+                    }
+                }
+                if (next == null || partial.size() > 0) {
+                    return null;
+                }
+                open(next);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+    }
+
+    // ----- console client -----
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ChangeFeed <host> <port> [afterSequence] [epoch] | --tail <dir> [afterSequence]");
+            System.exit(2);
+        }
+        long after = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        if (args[0].equals("--tail")) {
+            tail(new File(args[1]), after);
+            return;
+        }
+        long epoch = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true)) {
+            out.println(WireFormat.encode("SUBSCRIBE", "console-" + ProcessHandle.current().pid(), epoch, after));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("HB|")) {
+                    out.println(WireFormat.encode("ACK", after));
+                    continue;
+                }
+                if (line.startsWith("EPOCH|")) {
+                    String[] fields = WireFormat.decode(line);
+                    after = Long.parseLong(fields[2]);
+                    System.err.println("Epoch " + fields[1] + " after sequence " + after);
+                    continue;
+                }
+                System.out.println(line);
+                after = sequenceOf(line);
+            }
+        }
+    }
+
+    // Newest epoch under the directory, or the directory itself if it holds segments
+    private static void tail(File base, long after) throws IOException, InterruptedException {
+        File directory = base;
+        if (segments(base).length == 0) {
+            File[] epochs = base.listFiles(f -> f.isDirectory() && f.getName().matches("\\d+"));
+            if (epochs != null && epochs.length > 0) {
+                Arrays.sort(epochs, (a, b) -> Long.compare(Long.parseLong(a.getName()), Long.parseLong(b.getName())));
+                directory = epochs[epochs.length - 1];
+            }
+        }
+        System.err.println("Tailing " + directory);
+        try (SegmentTail tail = SegmentTail.after(directory, after)) {
+            while (true) {
+                String line = tail.readLine();
+                if (line == null) {
+                    System.out.flush();
+                    Thread.sleep(200);
+                    continue;
+                }
+                if (sequenceOf(line) > after) {
+                    System.out.println(line);
+                    after = sequenceOf(line);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Consumer acknowledgements
+
+// Serves the change feed to downstream consumers over a local socket. A
+// consumer opens with SUBSCRIBE|name|epoch|afterSequence and is answered with
+// EPOCH|epoch|afterSequence: the sequence it asked for if the epoch is the
+// running one, otherwise 0. Then come the feed lines from that point on, at
+// most bank.cdc.batchEvents (1024) per write, and HB|lastSequence|millis when
+// idle; consumers may answer with ACK|sequence to report their lag. Each
+// consumer has its own sender thread and cursor, so one that reads slowly
+// only holds up itself.
+class ChangeFeedServer {
+    static final long HEARTBEAT_MS = 500;
+
+    private final ChangeFeed feed;
+    private final int port;
+    private final int batchEvents = Integer.getInteger("bank.cdc.batchEvents", 1024);
+    private final Map<String, Long> acknowledged;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ChangeFeedServer(ChangeFeed feed, int port) {
+        this.feed = feed;
+        this.port = port;
+        this.acknowledged = new ConcurrentHashMap<>();
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::acceptConsumers, "cdc-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        audit.log(AuditLog.Event.CDC_LISTENING, serverSocket.getLocalPort(), feed.getEpoch());
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : -1;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    private void acceptConsumers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread sender = new Thread(() -> serveConsumer(socket), "cdc-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    audit.log(AuditLog.Event.CDC_ACCEPT_FAILED, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveConsumer(Socket socket) {
+        String consumer = "unknown";
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")))) {
+            s.setTcpNoDelay(true);
+            String[] hello = WireFormat.decode(in.readLine());
+            if (!"SUBSCRIBE".equals(hello[0])) {
+                return;
+            }
+            consumer = hello[1];
+            long after = Long.parseLong(hello[2]) == feed.getEpoch() ? Long.parseLong(hello[3]) : 0;
+            String name = consumer;
+            acknowledged.put(name, after);
+            startAckReader(in, name);
+            audit.log(AuditLog.Event.CDC_SUBSCRIBED, name, null, after);
+
+            out.println(WireFormat.encode("EPOCH", feed.getEpoch(), after));
+            out.flush();
+            try (ChangeFeed.Cursor cursor = feed.openCursor(after)) {
+                while (running) {
+                    List<String> lines = cursor.next(batchEvents, HEARTBEAT_MS);
+                    if (lines.isEmpty()) {
+                        out.println(WireFormat.encode("HB", feed.getLastSequence(), System.currentTimeMillis()));
+                    } else {
+                        for (String line : lines) {
+                            out.println(line);
+                        }
+                    }
+                    out.flush();
+                    if (out.checkError()) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Consumer disconnected; it resumes from the last sequence it kept
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            acknowledged.remove(consumer);
+            audit.log(AuditLog.Event.CDC_CONSUMER_LOST, consumer);
+        }
+    }
+
+    private void startAckReader(BufferedReader in, String consumer) {
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = WireFormat.decode(line);
+                    if ("ACK".equals(fields[0])) {
+                        acknowledged.put(consumer, Long.parseLong(fields[1]));
+                    }
+                }
+            } catch (IOException e) {
+                // Sender notices the broken socket on its next write
+            }
+        }, "cdc-ack-" + consumer);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Changes each connected consumer has yet to acknowledge
+    public Map<String, Long> getConsumerLag() {
+        long last = feed.getLastSequence();
+        Map<String, Long> lag = new HashMap<>();
+        for (Map.Entry<String, Long> entry : acknowledged.entrySet()) {
+            lag.put(entry.getKey(), Math.max(0, last - entry.getValue()));
+        }
+        return lag;
+    }
+}
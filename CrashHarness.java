@@ -0,0 +1,285 @@
+import java.io.*;                        // Input/Output operations
+import java.net.Socket;                  // Status commands
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.Random;                 // Kill timing and workload
+import java.util.concurrent.*;           // Worker threads
+import java.util.concurrent.atomic.AtomicInteger; // Transfer numbering
+
+// Crash-consistency harness for DatabaseService: runs a headless NetApp as a
+// child process on its own bank.db.dir, drives transfers at it through one
+// logged-in RemoteBankClient per seeded user, and kills it mid-write, alternately from outside
+// (destroyForcibly after a random delay) and from inside (bank.db.haltAfterBytes,
+// which leaves half a batch in the journal). After every restart it checks that
+// each acknowledged transfer has both legs, that RECONCILE is clean and that the
+// money in the book did not change, and reports the ledger size, the snapshot
+// age, the recovery time and the time until the server answered again.
+// Usage: java CrashHarness [--rounds=10] [--dir=data/crash-harness] [--accounts=200]
+//        [--threads=4] [--snapshotRecords=20000] [--port=7090] [--fsync=false]
+//        [--engine=sharded]
+class CrashHarness {
+    private static final long READY_TIMEOUT_MS = 120_000;
+    private static final long MAX_RUN_MS = 30_000;
+
+    private final File directory;
+    private final int rounds;
+    private final int accounts;
+    private final int threads;
+    private final int port;
+    private final Map<String, String> options;
+    private final Random random = new Random();
+    private final List<String[]> acknowledged = new ArrayList<>();   // from, to, description
+    private final List<String> accountNumbers = new ArrayList<>();   // user ch<i> holds the i-th, as assigned at seeding
+    private double expectedTotal = Double.NaN;
+
+    public CrashHarness(Map<String, String> options) {
+        this.options = options;
+        this.directory = new File(options.getOrDefault("dir", "data/crash-harness"));
+        this.rounds = Integer.parseInt(options.getOrDefault("rounds", "10"));
+        this.accounts = Integer.parseInt(options.getOrDefault("accounts", "200"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        this.port = Integer.parseInt(options.getOrDefault("port", "7090"));
+    }
+
+    // ----- child process -----
+
+    private Process launch(long haltAfterBytes) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dbank.db.dir=" + new File(directory, "db").getPath());
+        command.add("-Dbank.db.snapshotRecords=" + options.getOrDefault("snapshotRecords", "20000"));
+        command.add("-Dbank.db.fsync=" + options.getOrDefault("fsync", "false"));
+        command.add("-Dbank.engine=" + options.getOrDefault("engine", "sharded"));
+        command.add("-Dbank.server.port=" + port);
+        command.add("-Dbank.api.enabled=false");
+        command.add("-Dbank.ratelimit.enabled=false");
+        command.add("-Dbank.audit.dir=" + new File(directory, "audit").getPath());
+        if (haltAfterBytes > 0) {
+            command.add("-Dbank.db.haltAfterBytes=" + haltAfterBytes);
+        }
+        command.add("NetApp");
+        command.add("--headless");
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(directory, "server.log")));
+        return builder.start();
+    }
+
+    private void awaitReady(Process server) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with " + server.exitValue() + " while starting; see "
+                    + new File(directory, "server.log"));
+            }
+            try {
+                if ("PONG".equals(command("PING").get(0)[0])) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(20);
+        }
+        throw new IllegalStateException("Server did not answer within " + READY_TIMEOUT_MS + " ms");
+    }
+
+    // One status command on its own connection; replies up to END for the multi-line ones
+    private List<String[]> command(Object... fields) throws IOException {
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"))) {
+            out.println(WireFormat.encode(fields));
+            out.flush();
+            List<String[]> replies = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] reply = WireFormat.decode(line);
+                replies.add(reply);
+                if (!"RECONCILE".equals(fields[0]) || "END".equals(reply[0])) {
+                    break;
+                }
+            }
+            if (replies.isEmpty()) {
+                throw new EOFException("Server closed the connection");
+            }
+            return replies;
+        }
+    }
+
+    // ----- checks -----
+
+    private void verify(List<RemoteBankClient> users) throws IOException {
+        Map<String, List<String>> descriptions = new HashMap<>();
+        double total = 0;
+        for (int i = 0; i < accountNumbers.size(); i++) {
+            String accountNumber = accountNumbers.get(i);
+            List<String> seen = new ArrayList<>();
+            AccountVersion version = users.get(i).getAccountVersion(accountNumber);
+            if (version == null) {
+                throw new IllegalStateException("Account " + accountNumber + " was lost");
+            }
+            for (BankTransaction transaction : version.getTransactionHistory()) {
+                seen.add(transaction.getType() + " " + transaction.getDescription());
+            }
+            descriptions.put(accountNumber, seen);
+            total += version.getBalance();
+        }
+        for (String[] transfer : acknowledged) {
+            String debit = "DEBIT Transfer to " + transfer[1] + " - " + transfer[2];
+            String credit = "CREDIT Transfer from " + transfer[0] + " - " + transfer[2];
+            if (!descriptions.get(transfer[0]).contains(debit) || !descriptions.get(transfer[1]).contains(credit)) {
+                throw new IllegalStateException("Acknowledged transfer lost: " + String.join(" ", transfer));
+            }
+        }
+
+        List<String[]> report = command("RECONCILE");
+        if (report.size() > 2) {
+            throw new IllegalStateException("Reconciliation found " + (report.size() - 2) + " discrepancies, first: "
+                + report.get(1)[1]);
+        }
+
+        if (!Double.isNaN(expectedTotal) && Math.abs(total - expectedTotal) > 0.005) {
+            throw new IllegalStateException(String.format("Book holds %.2f, expected %.2f", total, expectedTotal));
+        }
+        expectedTotal = total;
+    }
+
+    // ----- workload -----
+
+    private void seed(RemoteBankClient client) {
+        for (int i = 0; i < accounts; i++) {
+            String accountNumber = client.registerUser("ch" + i, "pw" + i, "ch" + i + "@crash.test", "8" + i,
+                "Savings", "Crash User " + i, null, null, null);
+            if (accountNumber == null) {
+                throw new IllegalStateException("User ch" + i + " was not registered");
+            }
+            accountNumbers.add(accountNumber);
+        }
+    }
+
+    // The server only acts on the logged-in user's own accounts, so each user
+    // gets a client of its own, signed in on its single connection
+    private List<RemoteBankClient> logIn() {
+        List<RemoteBankClient> users = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            RemoteBankClient user = new RemoteBankClient("localhost", port, 1);
+            users.add(user);
+            if (user.authenticateUser("ch" + i, "pw" + i) == null) {
+                throw new IllegalStateException("User ch" + i + " cannot log in");
+            }
+        }
+        return users;
+    }
+
+    // Transfers until the server goes away; only OK replies count as acknowledged
+    private int drive(List<RemoteBankClient> users, int round) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<String[]> done = new CopyOnWriteArrayList<>();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.submit(() -> {
+                ThreadLocalRandom local = ThreadLocalRandom.current();
+                long stop = System.currentTimeMillis() + MAX_RUN_MS;
+                try {
+                    while (System.currentTimeMillis() < stop) {
+                        int from = local.nextInt(accounts);
+                        int to = (from + 1 + local.nextInt(accounts - 1)) % accounts;
+                        double amount = local.nextInt(1, 5000) / 100.0;
+                        String description = "crash r" + round + " t" + next.incrementAndGet();
+                        String fromAccount = accountNumbers.get(from);
+                        String toAccount = accountNumbers.get(to);
+                        if (users.get(from).transferMoney(fromAccount, toAccount, amount, description)) {
+                            done.add(new String[]{fromAccount, toAccount, description});
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // Server is gone
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(MAX_RUN_MS * 2, TimeUnit.MILLISECONDS);
+        acknowledged.addAll(done);
+        return done.size();
+    }
+
+    public void run(PrintStream report) throws Exception {
+        File database = new File(directory, "db");
+        File[] stale = database.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        database.mkdirs();
+        report.println(String.format("%-6s %-8s %9s %10s %10s %10s %9s %9s %9s",
+            "round", "kill", "acked", "ledger", "all acked", "snap age", "recov ms", "ready ms", "rolled"));
+
+        for (int round = 0; round <= rounds; round++) {
+            boolean last = round == rounds;
+            boolean halt = !last && round % 2 == 1;
+            long haltAfterBytes = halt ? 20_000 + random.nextInt(400_000) : 0;
+            long spawned = System.nanoTime();
+            Process server = launch(haltAfterBytes);
+            RemoteBankClient client = new RemoteBankClient("localhost", port);
+            List<RemoteBankClient> users = new ArrayList<>();
+            try {
+                awaitReady(server);
+                long readyMillis = (System.nanoTime() - spawned) / 1_000_000;
+                String[] status = command("DATABASE").get(0);
+                if (round == 0) {
+                    seed(client);
+                }
+                users = logIn();
+                verify(users);
+
+                int acked = 0;
+                String kill = last ? "-" : halt ? "halt" : "kill";
+                if (!last) {
+                    if (!halt) {
+                        long delay = 500 + random.nextInt(3000);
+                        Thread killer = new Thread(() -> {
+                            try {
+                                Thread.sleep(delay);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            server.destroyForcibly();
+                        }, "crash-killer");
+                        killer.setDaemon(true);
+                        killer.start();
+                    }
+                    acked = drive(users, round);
+                }
+                report.println(String.format("%-6d %-8s %9d %10s %10s %10s %9s %9d %9s",
+                    round, kill, acked, status[1], acknowledged.size(), status[3], status[5], readyMillis, status[6]));
+            } finally {
+                client.close();
+                for (RemoteBankClient user : users) {
+                    user.close();
+                }
+                server.destroyForcibly();
+                server.waitFor();
+            }
+        }
+        report.println(String.format("All %d acknowledged transfers survived %d crashes; book total %.2f",
+            acknowledged.size(), rounds, expectedTotal));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new CrashHarness(options).run(System.out);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,28 @@
+class CurrentAccount extends BankAccount {
+    private static final double INTEREST_RATE = 0.01;
+    private static final double MIN_BALANCE = 5000.0;
+
+    public CurrentAccount(String accountNumber, String accountHolder, double initialBalance) {
+        super(accountNumber, accountHolder, initialBalance, "Current");
+    }
+
+    public CurrentAccount(String accountNumber, String accountHolder, double initialBalance,
+                         String email, String phone, String address, String dob, String gender) {
+        super(accountNumber, accountHolder, initialBalance, "Current", email, phone, address, dob, gender);
+    }
+
+    @Override
+    public double calculateInterest() {
+        return balance * INTEREST_RATE;
+    }
+
+    @Override
+    public double getInterestRate() {
+        return INTEREST_RATE;
+    }
+
+    @Override
+    public double getMinimumBalance() {
+        return MIN_BALANCE;
+    }
+}
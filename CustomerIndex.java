@@ -0,0 +1,365 @@
+import java.util.ArrayList;              // Candidate and result lists
+import java.util.Arrays;                 // Posting list growth and probing
+import java.util.Collections;            // Heap drains worst first
+import java.util.HashMap;                // Trigram postings
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.PriorityQueue;          // Top-k ranking
+import java.util.TreeMap;                // Sorted token dictionary
+import java.util.concurrent.locks.ReentrantReadWriteLock; // Searches share, registrations exclude
+
+// ===== CUSTOMER SEARCH =====
+// In-memory index over customer profile fields so the support desk can find
+// customers by partial name, email or phone without scanning every account.
+// Each indexed account is a dense int document id. Two structures point at it:
+//   - a sorted token dictionary (whole words -> postings) for exact and prefix
+//     matches, including terms too short for trigrams
+//   - trigram postings for infix matches ("mith" finds "Smith")
+// Postings are int arrays appended in document order, so they stay sorted and
+// intersect with a merge. Candidates are verified against the stored fields and
+// ranked by where and how each term matched.
+class CustomerIndex {
+    private static final String[] FIELD_NAMES = {"name", "username", "email", "phone", "address", "dob"};
+    private static final int[] FIELD_WEIGHTS = {3, 3, 4, 4, 1, 1};
+    private static final int MAX_WEIGHT = 4;
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int INFIX = 1;
+    private static final int MAX_VERIFIED = 200_000;  // bounds the work for unselective terms
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> documentIds = new HashMap<>();
+    private final TreeMap<String, PostingList> tokens = new TreeMap<>();
+    private final Map<Long, PostingList> trigrams = new HashMap<>();
+
+    // One search hit, best first
+    static class Match {
+        private final String accountNumber;
+        private final String userId;
+        private final String accountHolder;
+        private final String email;
+        private final String phone;
+        private final int score;
+
+        Match(Document document, int score) {
+            this.accountNumber = document.accountNumber;
+            this.userId = document.userId;
+            this.accountHolder = document.displayName;
+            this.email = document.fields[2];
+            this.phone = document.fields[3];
+            this.score = score;
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public String getUserId() { return userId; }
+        public String getAccountHolder() { return accountHolder; }
+        public String getEmail() { return email; }
+        public String getPhone() { return phone; }
+        public int getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return accountNumber + " - " + accountHolder + " (" + email + ", " + phone + ") score " + score;
+        }
+    }
+
+    private static final class Document {
+        final String accountNumber;
+        final String userId;
+        final String displayName;
+        final String[] fields;           // normalized, indexed by FIELD_NAMES
+
+        Document(String accountNumber, String userId, String displayName, String[] fields) {
+            this.accountNumber = accountNumber;
+            this.userId = userId;
+            this.displayName = displayName;
+            this.fields = fields;
+        }
+    }
+
+    // Growable sorted int list; appends only, readers hold the read lock
+    private static final class PostingList {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    // Indexes one account with its owner's profile; the account's own email and
+    // phone win over the user's. Re-adding an account number is ignored.
+    public void add(BankUser user, BankAccount account) {
+        String[] fields = {
+            normalizeText(account.getAccountHolder()),
+            normalizeText(user != null ? user.getUsername() : null),
+            normalizeText(account.getEmail() != null ? account.getEmail() : user != null ? user.getEmail() : null),
+            normalizeDigits(account.getPhone() != null ? account.getPhone() : user != null ? user.getPhone() : null),
+            normalizeText(account.getAddress()),
+            normalizeText(account.getDob())
+        };
+        Document document = new Document(account.getAccountNumber(), user != null ? user.getUserId() : null,
+            account.getAccountHolder(), fields);
+
+        lock.writeLock().lock();
+        try {
+            if (documentIds.containsKey(document.accountNumber)) {
+                return;
+            }
+            int id = documents.size();
+            documents.add(document);
+            documentIds.put(document.accountNumber, id);
+            for (String field : fields) {
+                if (field.isEmpty()) {
+                    continue;
+                }
+                for (String token : tokenize(field)) {
+                    tokens.computeIfAbsent(token, t -> new PostingList()).add(id);
+                }
+                for (int i = 0; i + 3 <= field.length(); i++) {
+                    trigrams.computeIfAbsent(trigram(field, i), t -> new PostingList()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Every term must match some field; results are ordered by score, then by
+    // registration order
+    public List<Match> search(String query, int limit) {
+        // Digit groups typed with spaces or dashes ("98 1012 345") are one phone number
+        List<String> terms = new ArrayList<>();
+        String previous = null;
+        for (String term : tokenize(normalizeText(query))) {
+            if (previous != null && isDigits(previous) && isDigits(term)) {
+                terms.remove(previous);
+                term = previous + term;
+            }
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+            previous = term;
+        }
+        List<Match> results = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] candidates = null;
+            for (String term : terms) {
+                int[] matches = candidatesFor(term);
+                candidates = candidates == null ? matches : intersect(candidates, matches, matches.length);
+                if (candidates.length == 0) {
+                    return results;
+                }
+            }
+
+            // Min-heap of the best `limit` hits so far
+            PriorityQueue<long[]> best = new PriorityQueue<>(
+                (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+            // Later documents only win ties by losing them, so stop once the
+            // heap holds `limit` perfect scores
+            int perfect = terms.size() * EXACT * MAX_WEIGHT;
+            int verified = 0;
+            for (int id : candidates) {
+                if (++verified > MAX_VERIFIED
+                        || (best.size() == limit && best.peek()[0] >= perfect)) {
+                    break;
+                }
+                int score = score(documents.get(id), terms);
+                if (score == 0) {
+                    continue;
+                }
+                best.add(new long[]{score, id});
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            while (!best.isEmpty()) {
+                long[] hit = best.poll();
+                results.add(new Match(documents.get((int) hit[1]), (int) hit[0]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Trigrams narrow terms of three or more characters; shorter terms fall back
+    // to a prefix walk over the token dictionary
+    private int[] candidatesFor(String term) {
+        if (term.length() >= 3) {
+            List<PostingList> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                PostingList postings = trigrams.get(trigram(term, i));
+                if (postings == null) {
+                    return new int[0];
+                }
+                lists.add(postings);
+            }
+            // Rarest trigram first keeps every intermediate result small
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+            int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists.get(i).ids, lists.get(i).size);
+            }
+            return candidates;
+        }
+        // Gather every matching token's postings, then sort and drop duplicates
+        List<PostingList> lists = new ArrayList<>(tokens.subMap(term, term + Character.MAX_VALUE).values());
+        int total = 0;
+        for (PostingList postings : lists) {
+            total += postings.size;
+        }
+        int[] ids = new int[total];
+        int n = 0;
+        for (PostingList postings : lists) {
+            System.arraycopy(postings.ids, 0, ids, n, postings.size);
+            n += postings.size;
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || ids[unique - 1] != ids[i]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    private static int score(Document document, List<String> terms) {
+        int total = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (int f = 0; f < FIELD_NAMES.length; f++) {
+                int kind = matchKind(document.fields[f], term);
+                best = Math.max(best, kind * FIELD_WEIGHTS[f]);
+            }
+            if (best == 0) {
+                return 0;                // trigram false positive
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    private static int matchKind(String field, String term) {
+        int at = field.indexOf(term);
+        if (at < 0) {
+            return 0;
+        }
+        int kind = INFIX;
+        for (; at >= 0; at = field.indexOf(term, at + 1)) {
+            boolean startsToken = at == 0 || !Character.isLetterOrDigit(field.charAt(at - 1));
+            if (!startsToken) {
+                continue;
+            }
+            int end = at + term.length();
+            if (end == field.length() || !Character.isLetterOrDigit(field.charAt(end))) {
+                return EXACT;
+            }
+            kind = PREFIX;
+        }
+        return kind;
+    }
+
+    // Merges when the lists are of similar length, otherwise probes the long one
+    // by binary search
+    private static int[] intersect(int[] a, int[] b, int bSize) {
+        int[] out = new int[Math.min(a.length, bSize)];
+        int n = 0;
+        if (bSize > 16 * a.length) {
+            int from = 0;
+            for (int id : a) {
+                int at = Arrays.binarySearch(b, from, bSize, id);
+                if (at >= 0) {
+                    out[n++] = id;
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < bSize) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static List<String> tokenize(String normalized) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    private static boolean isDigits(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isDigit(term.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalizeText(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    // Phone numbers match on digits alone, whatever the formatting
+    private static String normalizeDigits(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isDigit(value.charAt(i))) {
+                digits.append(value.charAt(i));
+            }
+        }
+        return digits.toString();
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.ArrayList;              // Expired batch
+import java.util.Collections;            // Single ended hold
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Holds and totals
+import java.util.concurrent.atomic.AtomicLong; // Held paise
+
+// ===== FUNDS HOLDS =====
+// Card-style pre-authorisations. placeHold reserves funds on the account's
+// shard, which keeps a running held total per account and checks withdrawals
+// against balance minus that total, so the available balance never needs the
+// open holds counted. Here each hold is registered and scheduled on a
+// HierarchicalTimingWheel ticking every bank.holds.tickMillis (1000); the
+// "hold-expiry" thread advances it and releases whatever is due, touching only
+// due holds however many are open. A hold ends exactly once, by capture,
+// release or expiry, whichever claims it first. Holds are not ledger records,
+// but placing and ending one go through the committer with sequences of their
+// own, so the journal keeps them and replicas follow them; the hold id is
+// "H" and the placing sequence, never reused. Recovery and followers restore
+// them through restore and restoreEnd, and a replica leaves expiry to its
+// primary until promoted. A capture ends the hold before debiting, so a crash
+// between the two loses the unacknowledged capture rather than repeating it.
+// Holds last at most bank.holds.maxTtlSeconds (2592000, 30 days).
+class FundsHolds {
+    static final int ACTIVE = 0;
+    static final int CAPTURED = 1;
+    static final int RELEASED = 2;
+    static final int EXPIRED = 3;
+
+    private final ShardRouter router;
+    private final PortfolioAggregates portfolios;
+    private final LedgerCommitter committer;
+    private final long tickMillis = Long.getLong("bank.holds.tickMillis", 1000);
+    private final long maxTtlMillis = Math.multiplyExact(Long.getLong("bank.holds.maxTtlSeconds", 2_592_000), 1000L);
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> heldPaise = new ConcurrentHashMap<>();
+    private final HierarchicalTimingWheel wheel;     // guarded by this
+    private volatile boolean following;              // a replica: the primary expires holds
+    private final AuditLog audit = AuditLog.getInstance();
+
+    static final class Hold extends TimerEntry {
+        private final long sequence;
+        private final String holdId;
+        private final String accountNumber;
+        private final double amount;
+        private final String description;
+        private final long expiresAt;
+        private int state = ACTIVE;                  // guarded by the FundsHolds
+
+        Hold(long sequence, String holdId, String accountNumber, double amount, String description, long expiresAt) {
+            this.sequence = sequence;
+            this.holdId = holdId;
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+            this.description = description;
+            this.expiresAt = expiresAt;
+        }
+
+        public long getSequence() { return sequence; }
+        public String getHoldId() { return holdId; }
+        public String getAccountNumber() { return accountNumber; }
+        public double getAmount() { return amount; }
+        public String getDescription() { return description; }
+        public long getExpiresAt() { return expiresAt; }
+    }
+
+    public FundsHolds(ShardRouter router, PortfolioAggregates portfolios, LedgerCommitter committer) {
+        this.router = router;
+        this.portfolios = portfolios;
+        this.committer = committer;
+        this.wheel = new HierarchicalTimingWheel(System.currentTimeMillis() / tickMillis);
+        Thread expiry = new Thread(this::expiryLoop, "hold-expiry");
+        expiry.setDaemon(true);
+        expiry.start();
+    }
+
+    // Reserves the amount until capture, release or ttlMillis from now; returns
+    // the hold id, or null if the available balance is too low or the ttl is
+    // not within bank.holds.maxTtlSeconds
+    public String placeHold(String accountNumber, double amount, long ttlMillis, String description) {
+        if (ttlMillis <= 0 || ttlMillis > maxTtlMillis
+                || !router.shardFor(accountNumber).placeHold(accountNumber, amount)) {
+            return null;
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        Hold hold = committer.holdPlaced(sequence ->
+            new Hold(sequence, "H" + sequence, accountNumber, amount, description, expiresAt));
+        track(hold);
+        audit.log(AuditLog.Event.HOLD_PLACED, hold.holdId, accountNumber, amount);
+        return hold.holdId;
+    }
+
+    // Recovery and followers: a hold placed before, reserved again on its shard
+    // unless it is already open here
+    public void restore(long sequence, String holdId, String accountNumber, double amount, String description,
+                        long expiresAt) {
+        if (holds.containsKey(holdId) || !router.shardFor(accountNumber).placeHold(accountNumber, amount)) {
+            committer.advanceTo(sequence);
+            return;
+        }
+        Hold hold = new Hold(sequence, holdId, accountNumber, amount, description, expiresAt);
+        committer.holdReplicated(sequence, hold);
+        track(hold);
+    }
+
+    // Recovery and followers: a hold that ended before, released here
+    public void restoreEnd(long sequence, String holdId) {
+        committer.holdEndReplicated(sequence, holdId);
+        Hold hold = holds.get(holdId);
+        if (hold != null && finish(hold, RELEASED)) {
+            router.shardFor(hold.accountNumber).releaseHold(hold.accountNumber, hold.amount);
+            released(hold);
+        }
+    }
+
+    // Replicas follow their primary's expiries; a promoted one expires its own
+    public void setFollowing(boolean following) {
+        this.following = following;
+    }
+
+    // Every open hold, for a snapshot
+    public List<Hold> getOpenHolds() {
+        return new ArrayList<>(holds.values());
+    }
+
+    private void track(Hold hold) {
+        heldPaise.computeIfAbsent(hold.accountNumber, a -> new AtomicLong()).addAndGet(Math.round(hold.amount * 100));
+        portfolios.holdChanged(hold.accountNumber, Math.round(hold.amount * 100));
+        holds.put(hold.holdId, hold);
+        synchronized (this) {
+            wheel.schedule(hold, (hold.expiresAt + tickMillis - 1) / tickMillis);
+        }
+    }
+
+    // Debits up to the held amount and releases the rest
+    public boolean capture(String holdId, double amount) {
+        Hold hold = holds.get(holdId);
+        if (hold == null || amount <= 0 || amount > hold.amount || !finish(hold, CAPTURED)) {
+            return false;
+        }
+        committer.holdsEnded(Collections.singletonList(holdId));
+        boolean captured = router.shardFor(hold.accountNumber).captureHold(hold.accountNumber, hold.amount, amount,
+            "Card capture - " + hold.description);
+        released(hold);
+        audit.log(AuditLog.Event.HOLD_CAPTURED, holdId, hold.accountNumber, amount);
+        return captured;
+    }
+
+    public boolean release(String holdId) {
+        Hold hold = holds.get(holdId);
+        if (hold == null || !finish(hold, RELEASED)) {
+            return false;
+        }
+        committer.holdsEnded(Collections.singletonList(holdId));
+        router.shardFor(hold.accountNumber).releaseHold(hold.accountNumber, hold.amount);
+        released(hold);
+        audit.log(AuditLog.Event.HOLD_RELEASED, holdId, hold.accountNumber, hold.amount);
+        return true;
+    }
+
+    public Hold getHold(String holdId) {
+        return holds.get(holdId);
+    }
+
+    public int getOpenHoldCount() {
+        return holds.size();
+    }
+
+    // Sum of the account's open holds, kept as holds open and close
+    public double getHeldAmount(String accountNumber) {
+        AtomicLong paise = heldPaise.get(accountNumber);
+        return paise == null ? 0.0 : paise.get() / 100.0;
+    }
+
+    // Claims an active hold for one outcome and takes it off the wheel
+    private synchronized boolean finish(Hold hold, int outcome) {
+        if (hold.state != ACTIVE) {
+            return false;
+        }
+        hold.state = outcome;
+        wheel.cancel(hold);
+        return true;
+    }
+
+    private void released(Hold hold) {
+        holds.remove(hold.holdId);
+        heldPaise.get(hold.accountNumber).addAndGet(-Math.round(hold.amount * 100));
+        portfolios.holdChanged(hold.accountNumber, -Math.round(hold.amount * 100));
+    }
+
+    private void expiryLoop() {
+        List<TimerEntry> due = new ArrayList<>();
+        while (true) {
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (following) {
+                continue;
+            }
+            synchronized (this) {
+                wheel.advanceTo(System.currentTimeMillis() / tickMillis, due);
+                for (TimerEntry entry : due) {
+                    ((Hold) entry).state = EXPIRED;
+                }
+            }
+            if (due.isEmpty()) {
+                continue;
+            }
+            List<String> expired = new ArrayList<>();
+            for (TimerEntry entry : due) {
+                Hold hold = (Hold) entry;
+                try {
+                    router.shardFor(hold.accountNumber).releaseHold(hold.accountNumber, hold.amount);
+                    released(hold);
+                    expired.add(hold.holdId);
+                } catch (RuntimeException e) {
+                    // Shard unavailable; the hold stays reserved until it can be reached
+                    synchronized (this) {
+                        wheel.schedule(hold, wheel.getCurrentTick() + 1);
+                        hold.state = ACTIVE;
+                    }
+                }
+            }
+            committer.holdsEnded(expired);
+            audit.log(AuditLog.Event.HOLDS_EXPIRED, expired.size(), holds.size());
+            due.clear();
+        }
+    }
+}
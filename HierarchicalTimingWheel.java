@@ -0,0 +1,132 @@
+import java.util.List;                   // Expired entries
+
+// Four levels of 256 slots. An entry sits on the lowest level whose higher tick
+// bits match the current tick, so it is cascaded down exactly when the lower
+// levels wrap and expires on its own tick. Schedule and cancel are O(1); each
+// tick touches one level-0 slot plus occasional cascades. Deadlines beyond the
+// top level wait in an overflow list. Not thread-safe: callers serialize access.
+class HierarchicalTimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final Slot[][] levels;
+    private final Slot overflow;
+    private long currentTick;
+    private int size;
+
+    public HierarchicalTimingWheel(long startTick) {
+        levels = new Slot[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < SLOTS; i++) {
+                levels[level][i] = new Slot();
+            }
+        }
+        overflow = new Slot();
+        currentTick = startTick;
+    }
+
+    // Deadlines at or before the current tick fire on the next tick
+    public void schedule(TimerEntry entry, long deadlineTick) {
+        if (entry.slot != null) {
+            cancel(entry);
+        }
+        entry.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        place(entry, null);
+        size++;
+    }
+
+    public boolean cancel(TimerEntry entry) {
+        if (entry.slot == null) {
+            return false;
+        }
+        entry.slot.remove(entry);
+        size--;
+        return true;
+    }
+
+    // Moves time forward, appending every entry whose deadline is reached
+    public void advanceTo(long tick, List<TimerEntry> expired) {
+        while (currentTick < tick) {
+            currentTick++;
+            if ((currentTick & 0xFFFFFFFFL) == 0) {
+                cascade(overflow, expired);
+            }
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                long lowerBits = (1L << (SLOT_BITS * level)) - 1;
+                if ((currentTick & lowerBits) == 0) {
+                    cascade(levels[level][index(currentTick, level)], expired);
+                }
+            }
+            Slot due = levels[0][index(currentTick, 0)];
+            TimerEntry entry;
+            while ((entry = due.head) != null) {
+                due.remove(entry);
+                size--;
+                expired.add(entry);
+            }
+        }
+    }
+
+    private void cascade(Slot slot, List<TimerEntry> expired) {
+        TimerEntry entry;
+        while ((entry = slot.head) != null) {
+            slot.remove(entry);
+            place(entry, expired);
+        }
+    }
+
+    private void place(TimerEntry entry, List<TimerEntry> expired) {
+        long deadline = entry.deadlineTick;
+        if (deadline <= currentTick && expired != null) {
+            size--;
+            expired.add(entry);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int higherShift = SLOT_BITS * (level + 1);
+            if ((deadline >>> higherShift) == (currentTick >>> higherShift)) {
+                levels[level][index(deadline, level)].add(entry);
+                return;
+            }
+        }
+        overflow.add(entry);
+    }
+
+    private static int index(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    public long getCurrentTick() { return currentTick; }
+    public int size() { return size; }
+
+    // Intrusive doubly linked list of entries
+    static final class Slot {
+        TimerEntry head;
+
+        void add(TimerEntry entry) {
+            entry.slot = this;
+            entry.previous = null;
+            entry.next = head;
+            if (head != null) {
+                head.previous = entry;
+            }
+            head = entry;
+        }
+
+        void remove(TimerEntry entry) {
+            if (entry.previous != null) {
+                entry.previous.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            }
+            entry.previous = null;
+            entry.next = null;
+            entry.slot = null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+// Position in one account's history for paging newest first: the transaction
+// at (time, id), or none for the newest end. An account's transactions are
+// posted by its shard's single writer, so their timestamps never decrease along
+// the history and a walk from the newest end reaches the position as soon as it
+// meets the id or an earlier time. Feed it transactions newest first.
+final class HistoryCursor {
+    private final long time;
+    private final String id;
+    private boolean passed;
+
+    HistoryCursor(long time, String id) {
+        this.time = time;
+        this.id = id;
+        this.passed = id == null;
+    }
+
+    boolean passed() {
+        return passed;
+    }
+
+    // Whether the transaction comes before the position, so it belongs on the page
+    boolean older(BankTransaction transaction) {
+        if (passed) {
+            return true;
+        }
+        long at = transaction.getTimestamp().getTime();
+        if (at < time) {
+            passed = true;
+            return true;
+        }
+        // Later transactions, and those at the same time posted after the
+        // position's own, were on earlier pages; so was the position's own
+        if (at == time && id.equals(transaction.getTransactionId())) {
+            passed = true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.IOException;              // Writer failures
+import java.util.HashMap;                // Parsed objects
+import java.util.Map;                    // Map interface
+
+// ===== JSON =====
+// The small amount of JSON the HTTP gateway needs: a streaming writer that
+// emits values straight to a java.io.Writer, so large responses are never
+// assembled in memory, and a parser for flat request objects of strings,
+// numbers, booleans and nulls.
+final class Json {
+    private Json() {
+    }
+
+    // Streaming writer; commas between members and elements are inserted for
+    // the caller
+    static final class Writer {
+        private final java.io.Writer out;
+        private boolean needsComma;
+
+        Writer(java.io.Writer out) {
+            this.out = out;
+        }
+
+        public Writer beginObject() throws IOException {
+            separate();
+            out.write('{');
+            needsComma = false;
+            return this;
+        }
+
+        public Writer endObject() throws IOException {
+            out.write('}');
+            needsComma = true;
+            return this;
+        }
+
+        public Writer beginArray() throws IOException {
+            separate();
+            out.write('[');
+            needsComma = false;
+            return this;
+        }
+
+        public Writer endArray() throws IOException {
+            out.write(']');
+            needsComma = true;
+            return this;
+        }
+
+        public Writer name(String name) throws IOException {
+            separate();
+            string(name);
+            out.write(':');
+            needsComma = false;
+            return this;
+        }
+
+        public Writer value(String value) throws IOException {
+            separate();
+            if (value == null) {
+                out.write("null");
+            } else {
+                string(value);
+            }
+            needsComma = true;
+            return this;
+        }
+
+        public Writer value(long value) throws IOException {
+            separate();
+            out.write(Long.toString(value));
+            needsComma = true;
+            return this;
+        }
+
+        // Money is written with exactly two decimals, from whole paise so no
+        // formatter or locale is involved
+        public Writer money(double value) throws IOException {
+            separate();
+            long paise = Math.round(value * 100);
+            if (paise < 0) {
+                out.write('-');
+                paise = -paise;
+            }
+            out.write(Long.toString(paise / 100));
+            out.write('.');
+            out.write((char) ('0' + paise % 100 / 10));
+            out.write((char) ('0' + paise % 10));
+            needsComma = true;
+            return this;
+        }
+
+        public Writer value(boolean value) throws IOException {
+            separate();
+            out.write(value ? "true" : "false");
+            needsComma = true;
+            return this;
+        }
+
+        public Writer field(String name, String value) throws IOException {
+            return name(name).value(value);
+        }
+
+        public Writer field(String name, long value) throws IOException {
+            return name(name).value(value);
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void separate() throws IOException {
+            if (needsComma) {
+                out.write(',');
+            }
+        }
+
+        private void string(String value) throws IOException {
+            out.write('"');
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                String escape;
+                switch (c) {
+                    case '"': escape = "\\\""; break;
+                    case '\\': escape = "\\\\"; break;
+                    case '\n': escape = "\\n"; break;
+                    case '\r': escape = "\\r"; break;
+                    case '\t': escape = "\\t"; break;
+                    default:
+                        escape = c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+                }
+                if (escape != null) {
+                    out.write(value, start, i - start);
+                    out.write(escape);
+                    start = i + 1;
+                }
+            }
+            out.write(value, start, value.length() - start);
+            out.write('"');
+        }
+    }
+
+    // Parses {"name": value, ...}; strings stay strings, numbers become
+    // Double, true/false Boolean and null null. Nested values are rejected.
+    public static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> object = parser.object();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw parser.error("Trailing characters");
+        }
+        return object;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> object = new HashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                object.put(name, value());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return object;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("Unsupported value");
+            }
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error("Bad number");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Bad escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad escape");
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw error("Unexpected end");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + position);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.*;                        // Input/Output operations
+import java.nio.ByteBuffer;              // Block reads
+import java.nio.channels.FileChannel;    // Positional reads
+import java.nio.file.*;                  // Atomic segment publish
+import java.util.ArrayList;              // List implementation
+import java.util.Date;                   // Transaction timestamps
+import java.util.LinkedHashMap;          // Block cache
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Open segments by id
+import java.util.zip.DataFormatException; // Corrupt block
+import java.util.zip.Deflater;           // Block compression
+import java.util.zip.Inflater;           // Block decompression
+
+// ===== COLD LEDGER TIER =====
+// Transactions that age out of memory are written once into immutable segment
+// files and never change again. A segment holds one tiering pass, sorted by
+// account then time, cut into Deflate-compressed blocks of about BLOCK_BYTES.
+// A sparse index in the segment footer records, per block, the first and last
+// account and the time range, so a history read decompresses only the blocks
+// that can hold the account and the requested period. Recently read blocks are
+// cached decompressed.
+//
+// Segments live only as long as the process that wrote them: startup replays
+// the whole ledger into memory and tiers it again, so whatever an earlier run
+// left in the directory is superseded and is deleted when the archive opens.
+//
+// Segment layout:
+//   "BLSG" magic, blocks..., index, [long index offset]["BLSG"]
+//   index: [int blocks] then per block [long offset][int compressed][int raw]
+//          [UTF first account][UTF last account][long min time][long max time]
+//   block: records of [UTF account][UTF id][UTF type][double amount][long time][flag+UTF description]
+class LedgerArchive {
+    private static final int MAGIC = 0x424c5347;           // "BLSG"
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int CACHED_BLOCKS = 256;
+
+    private final File directory;
+    private final Map<Integer, Segment> segments;
+    private final Map<Long, List<BankTransaction>> blockCache;   // guarded by itself
+    private int nextSegmentId;                                    // guarded by this
+    private boolean closed;                                       // guarded by this
+
+    public LedgerArchive(File directory) {
+        this.directory = directory;
+        this.segments = new ConcurrentHashMap<>();
+        this.blockCache = new LinkedHashMap<Long, List<BankTransaction>>(CACHED_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<BankTransaction>> eldest) {
+                return size() > CACHED_BLOCKS;
+            }
+        };
+        File[] stale = directory.listFiles((dir, name) -> name.startsWith("segment-")
+            && (name.endsWith(".seg") || name.endsWith(".seg.tmp")));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    // Writes one tiering pass as a new segment and returns its id. Transactions
+    // must be grouped by account, each account's in time order.
+    public synchronized int writeSegment(List<List<BankTransaction>> accounts) throws IOException {
+        if (closed) {
+            throw new IOException("Ledger archive " + directory + " is closed");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        int id = nextSegmentId++;
+        List<List<BankTransaction>> sorted = new ArrayList<>(accounts);
+        sorted.sort((a, b) -> a.get(0).getAccountNumber().compareTo(b.get(0).getAccountNumber()));
+
+        File file = segmentFile(id);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        List<BlockIndex> index = new ArrayList<>();
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            long offset = 4;
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_BYTES * 2);
+            DataOutputStream block = new DataOutputStream(raw);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            byte[] compressed = new byte[BLOCK_BYTES];
+            BlockIndex current = null;
+            try {
+                for (List<BankTransaction> history : sorted) {
+                    for (BankTransaction t : history) {
+                        if (current == null) {
+                            current = new BlockIndex(t.getAccountNumber(), t.getTimestamp().getTime());
+                        }
+                        writeTransaction(block, t);
+                        current.include(t.getAccountNumber(), t.getTimestamp().getTime());
+                        if (raw.size() >= BLOCK_BYTES) {
+                            offset = flushBlock(out, offset, raw, deflater, compressed, current, index);
+                            current = null;
+                        }
+                    }
+                }
+                if (current != null) {
+                    offset = flushBlock(out, offset, raw, deflater, compressed, current, index);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            out.writeInt(index.size());
+            for (BlockIndex entry : index) {
+                out.writeLong(entry.offset);
+                out.writeInt(entry.compressedLength);
+                out.writeInt(entry.rawLength);
+                out.writeUTF(entry.firstAccount);
+                out.writeUTF(entry.lastAccount);
+                out.writeLong(entry.minTime);
+                out.writeLong(entry.maxTime);
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        segments.put(id, new Segment(id, file, index));
+        return id;
+    }
+
+    private static long flushBlock(DataOutputStream out, long offset, ByteArrayOutputStream raw, Deflater deflater,
+                                   byte[] buffer, BlockIndex entry, List<BlockIndex> index) throws IOException {
+        deflater.reset();
+        deflater.setInput(raw.toByteArray());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+            length += n;
+        }
+        entry.offset = offset;
+        entry.compressedLength = length;
+        entry.rawLength = raw.size();
+        index.add(entry);
+        raw.reset();
+        return offset + length;
+    }
+
+    // The account's transactions in the given segments (oldest segment first)
+    // whose timestamps fall in [fromMillis, toMillis], oldest first
+    public List<BankTransaction> read(String accountNumber, int[] segmentIds, long fromMillis, long toMillis) {
+        List<BankTransaction> transactions = new ArrayList<>();
+        for (int segmentId : segmentIds) {
+            Segment segment = segments.get(segmentId);
+            if (segment == null) {
+                throw new IllegalStateException("Ledger segment " + segmentId + " is not open");
+            }
+            for (int b = segment.firstBlockFor(accountNumber); b < segment.index.size(); b++) {
+                BlockIndex entry = segment.index.get(b);
+                if (entry.firstAccount.compareTo(accountNumber) > 0) {
+                    break;
+                }
+                if (entry.maxTime < fromMillis || entry.minTime > toMillis) {
+                    continue;
+                }
+                // Blocks are sorted by account too, so jump straight to its run
+                List<BankTransaction> records = block(segment, b);
+                for (int i = firstRecordFor(records, accountNumber); i < records.size(); i++) {
+                    BankTransaction t = records.get(i);
+                    if (!t.getAccountNumber().equals(accountNumber)) {
+                        break;
+                    }
+                    long time = t.getTimestamp().getTime();
+                    if (time >= fromMillis && time <= toMillis) {
+                        transactions.add(t);
+                    }
+                }
+            }
+        }
+        return transactions;
+    }
+
+    // Paging, newest first: up to limit of the account's transactions that come
+    // before the one at (beforeTime, beforeId), or the newest when beforeId is
+    // null. Segments and blocks are walked from the newest end, blocks wholly
+    // newer than the position are passed over on the index alone, and reading
+    // stops once the page is full.
+    public List<BankTransaction> readBefore(String accountNumber, int[] segmentIds, long beforeTime, String beforeId,
+                                            int limit) {
+        List<BankTransaction> transactions = new ArrayList<>();
+        HistoryCursor cursor = new HistoryCursor(beforeTime, beforeId);
+        for (int s = segmentIds.length - 1; s >= 0 && transactions.size() < limit; s--) {
+            Segment segment = segments.get(segmentIds[s]);
+            if (segment == null) {
+                throw new IllegalStateException("Ledger segment " + segmentIds[s] + " is not open");
+            }
+            int first = segment.firstBlockFor(accountNumber);
+            int last = first;
+            while (last < segment.index.size() && segment.index.get(last).firstAccount.compareTo(accountNumber) <= 0) {
+                last++;
+            }
+            for (int b = last - 1; b >= first && transactions.size() < limit; b--) {
+                if (!cursor.passed() && segment.index.get(b).minTime > beforeTime) {
+                    continue;
+                }
+                List<BankTransaction> records = block(segment, b);
+                int from = firstRecordFor(records, accountNumber);
+                int to = from;
+                while (to < records.size() && records.get(to).getAccountNumber().equals(accountNumber)) {
+                    to++;
+                }
+                for (int i = to - 1; i >= from && transactions.size() < limit; i--) {
+                    if (cursor.older(records.get(i))) {
+                        transactions.add(records.get(i));
+                    }
+                }
+            }
+        }
+        return transactions;
+    }
+
+    private static int firstRecordFor(List<BankTransaction> records, String accountNumber) {
+        int low = 0;
+        int high = records.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (records.get(mid).getAccountNumber().compareTo(accountNumber) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Releases every segment's file handle; reads fail from here on
+    public synchronized void close() {
+        closed = true;
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                // Read-only handle; nothing is lost
+            }
+        }
+        segments.clear();
+        synchronized (blockCache) {
+            blockCache.clear();
+        }
+    }
+
+    private List<BankTransaction> block(Segment segment, int blockNumber) {
+        long key = ((long) segment.id << 32) | blockNumber;
+        synchronized (blockCache) {
+            List<BankTransaction> cached = blockCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<BankTransaction> transactions = segment.readBlock(blockNumber);
+        synchronized (blockCache) {
+            blockCache.put(key, transactions);
+        }
+        return transactions;
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("segment-%06d.seg", id));
+    }
+
+    private static void writeTransaction(DataOutputStream out, BankTransaction t) throws IOException {
+        out.writeUTF(t.getAccountNumber());
+        out.writeUTF(t.getTransactionId());
+        out.writeUTF(t.getType());
+        out.writeDouble(t.getAmount());
+        out.writeLong(t.getTimestamp().getTime());
+        out.writeBoolean(t.getDescription() != null);
+        if (t.getDescription() != null) {
+            out.writeUTF(t.getDescription());
+        }
+    }
+
+    private static BankTransaction readTransaction(DataInputStream in) throws IOException {
+        String accountNumber = in.readUTF();
+        String transactionId = in.readUTF();
+        String type = in.readUTF();
+        double amount = in.readDouble();
+        Date timestamp = new Date(in.readLong());
+        String description = in.readBoolean() ? in.readUTF() : null;
+        return new BankTransaction(transactionId, accountNumber, type, amount, timestamp, description);
+    }
+
+    // Sparse index entry: one per compressed block
+    private static final class BlockIndex {
+        final String firstAccount;
+        String lastAccount;
+        long minTime;
+        long maxTime;
+        long offset;
+        int compressedLength;
+        int rawLength;
+
+        BlockIndex(String firstAccount, long time) {
+            this.firstAccount = firstAccount;
+            this.lastAccount = firstAccount;
+            this.minTime = time;
+            this.maxTime = time;
+        }
+
+        void include(String accountNumber, long time) {
+            lastAccount = accountNumber;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final List<BlockIndex> index;
+        final FileChannel channel;       // positional reads need no locking
+
+        Segment(int id, File file, List<BlockIndex> index) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.index = index;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        // First block whose account range can include the account
+        int firstBlockFor(String accountNumber) {
+            int low = 0;
+            int high = index.size() - 1;
+            int found = index.size();
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (index.get(mid).lastAccount.compareTo(accountNumber) >= 0) {
+                    found = mid;
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return found;
+        }
+
+        List<BankTransaction> readBlock(int blockNumber) {
+            BlockIndex entry = index.get(blockNumber);
+            byte[] compressed = new byte[entry.compressedLength];
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                long position = entry.offset;
+                while (buffer.hasRemaining()) {
+                    int n = channel.read(buffer, position);
+                    if (n < 0) {
+                        throw new EOFException("Truncated segment " + file);
+                    }
+                    position += n;
+                }
+                byte[] raw = new byte[entry.rawLength];
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    int length = 0;
+                    while (length < raw.length && !inflater.finished()) {
+                        int n = inflater.inflate(raw, length, raw.length - length);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new DataFormatException("Block ends after " + length + " of "
+                                + raw.length + " bytes");
+                        }
+                        length += n;
+                    }
+                } finally {
+                    inflater.end();
+                }
+                List<BankTransaction> transactions = new ArrayList<>();
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+                while (in.available() > 0) {
+                    transactions.add(readTransaction(in));
+                }
+                return transactions;
+            } catch (IOException | DataFormatException e) {
+                throw new IllegalStateException("Cannot read block " + blockNumber + " of " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.List;                   // List interface
+import java.util.concurrent.CopyOnWriteArrayList; // Listener registry
+
+// Assigns commit sequence numbers and publishes each commit to the registered
+// listeners. Shard writers call in from their own threads; publishing under one
+// lock keeps every listener's view in a single global order.
+class LedgerCommitter {
+    private final List<LedgerListener> listeners;
+    private long lastSequence;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public LedgerCommitter() {
+        listeners = new CopyOnWriteArrayList<>();
+    }
+
+    public void addListener(LedgerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LedgerListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized LedgerRecord commit(LedgerRecord draft) {
+        BankEvents.LedgerFlushEvent event = new BankEvents.LedgerFlushEvent();
+        event.begin();
+        LedgerRecord record = draft.withSequence(++lastSequence);
+        publish(record);
+        publishBatchEnd();
+        event.finish("commit", 1, lastSequence, lastSequence, false);
+        return record;
+    }
+
+    // Consecutive sequences, published as one unit
+    public synchronized void commitAll(List<LedgerRecord> drafts) {
+        if (drafts.isEmpty()) {
+            return;
+        }
+        BankEvents.LedgerFlushEvent event = new BankEvents.LedgerFlushEvent();
+        event.begin();
+        long first = lastSequence + 1;
+        for (LedgerRecord draft : drafts) {
+            publish(draft.withSequence(++lastSequence));
+        }
+        publishBatchEnd();
+        event.finish("commit", drafts.size(), first, lastSequence, false);
+    }
+
+    // Records replayed from a primary keep the sequence the primary assigned
+    public synchronized void commitReplicated(LedgerRecord record) {
+        lastSequence = Math.max(lastSequence, record.getSequence());
+        publish(record);
+        publishBatchEnd();
+    }
+
+    // Recovery: a run of replayed records, published as one unit
+    public synchronized void commitReplicatedAll(List<LedgerRecord> records) {
+        for (LedgerRecord record : records) {
+            lastSequence = Math.max(lastSequence, record.getSequence());
+            publish(record);
+        }
+        publishBatchEnd();
+    }
+
+    public synchronized long userRegistered(BankUser user) {
+        long sequence = ++lastSequence;
+        publishUser(sequence, user);
+        publishBatchEnd();
+        return sequence;
+    }
+
+    public synchronized void userReplicated(long sequence, BankUser user) {
+        lastSequence = Math.max(lastSequence, sequence);
+        publishUser(sequence, user);
+        publishBatchEnd();
+    }
+
+    // Like registrations, hold changes take sequences of their own so they are
+    // journaled and replicated in order with the records; the hold is built
+    // from its sequence
+    public synchronized FundsHolds.Hold holdPlaced(java.util.function.LongFunction<FundsHolds.Hold> hold) {
+        long sequence = ++lastSequence;
+        FundsHolds.Hold placed = hold.apply(sequence);
+        publishHold(sequence, placed);
+        publishBatchEnd();
+        return placed;
+    }
+
+    public synchronized void holdsEnded(List<String> holdIds) {
+        if (holdIds.isEmpty()) {
+            return;
+        }
+        for (String holdId : holdIds) {
+            publishHoldEnd(++lastSequence, holdId);
+        }
+        publishBatchEnd();
+    }
+
+    public synchronized void holdReplicated(long sequence, FundsHolds.Hold hold) {
+        lastSequence = Math.max(lastSequence, sequence);
+        publishHold(sequence, hold);
+        publishBatchEnd();
+    }
+
+    public synchronized void holdEndReplicated(long sequence, String holdId) {
+        lastSequence = Math.max(lastSequence, sequence);
+        publishHoldEnd(sequence, holdId);
+        publishBatchEnd();
+    }
+
+    // Recovery: sequences handed out before the restart are not handed out again
+    public synchronized void advanceTo(long sequence) {
+        lastSequence = Math.max(lastSequence, sequence);
+    }
+
+    // Runs the action between commits: nothing is published, or journaled, meanwhile
+    public synchronized void exclusively(Runnable action) {
+        action.run();
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    private void publish(LedgerRecord record) {
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.onCommit(record);
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LEDGER_LISTENER_FAILED, e.toString());
+            }
+        }
+    }
+
+    private void publishBatchEnd() {
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.onBatchCommitted(lastSequence);
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LEDGER_LISTENER_FAILED, e.toString());
+            }
+        }
+    }
+
+    private void publishHold(long sequence, FundsHolds.Hold hold) {
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.onHoldPlaced(sequence, hold);
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LEDGER_LISTENER_FAILED, e.toString());
+            }
+        }
+    }
+
+    private void publishHoldEnd(long sequence, String holdId) {
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.onHoldEnded(sequence, holdId);
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LEDGER_LISTENER_FAILED, e.toString());
+            }
+        }
+    }
+
+    private void publishUser(long sequence, BankUser user) {
+        for (LedgerListener listener : listeners) {
+            try {
+                listener.onUserRegistered(sequence, user);
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LEDGER_LISTENER_FAILED, e.toString());
+            }
+        }
+    }
+}
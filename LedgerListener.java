@@ -0,0 +1,20 @@
+// Receives every committed ledger change in sequence order. Called while the
+// commit is being published, so implementations must hand work off quickly.
+interface LedgerListener {
+    void onCommit(LedgerRecord record);
+
+    default void onUserRegistered(long sequence, BankUser user) {
+    }
+
+    // Funds holds are not postings; placing and ending one each take a sequence
+    default void onHoldPlaced(long sequence, FundsHolds.Hold hold) {
+    }
+
+    default void onHoldEnded(long sequence, String holdId) {
+    }
+
+    // Every record up to lastSequence has been delivered; records committed
+    // together (both legs of a transfer) are followed by a single call
+    default void onBatchCommitted(long lastSequence) {
+    }
+}
@@ -0,0 +1,391 @@
+import java.io.*;                        // Input/Output operations
+import java.net.Socket;                  // Remote report
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Unmatched transfer legs
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Partition workers
+
+// ===== RECONCILIATION =====
+// Rebuilds every balance from the ledger and checks the book's invariants
+// against one MVCC snapshot, so live transfers keep committing throughout:
+//   - balance: each account's balance equals its deposits and credits minus
+//     its debits and withdrawals (archived and hot history alike)
+//   - pairing: every DEBIT "Transfer to B - d" on A has a CREDIT
+//     "Transfer from A - d" of the same amount on B, and vice versa
+//   - conservation: book-wide credits equal debits, and the sum of balances
+//     equals money deposited minus money withdrawn
+// Accounts are split into contiguous number ranges, one per worker, which
+// keeps each worker on neighbouring archive blocks. Pairing is checked without
+// holding every transfer in memory: each leg adds (+1, hash) or (-1, -hash) to
+// one of PAIR_BUCKETS zero-sum buckets, and only legs in buckets that do not
+// cancel are collected in a second pass. Legs and balances that look wrong are
+// checked again against a newer snapshot; ones that settle there were transfers
+// in flight when the first snapshot was taken.
+// All money is summed in whole paise, so totals are exact.
+class LedgerReconciler {
+    private static final int PAIR_BUCKETS = 1 << 16;
+    private static final int MAX_REPORTED = 1000;
+
+    private final BankingService bankingService;
+    private final int workers;
+
+    public LedgerReconciler(BankingService bankingService) {
+        this(bankingService, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LedgerReconciler(BankingService bankingService, int workers) {
+        this.bankingService = bankingService;
+        this.workers = Math.max(1, workers);
+    }
+
+    public Report reconcile() throws InterruptedException {
+        long started = System.nanoTime();
+        Report report = new Report();
+        long balanceGap = 0;      // balance minus rebuilt balance, summed over accounts mid-transfer
+        long legImbalance = 0;    // debits minus credits, summed over transfer legs in flight
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "reconcile-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (LedgerSnapshot snapshot = bankingService.openSnapshot()) {
+            report.sequence = snapshot.getSequence();
+            List<String> accountNumbers = snapshot.getAccountNumbers();
+            List<List<String>> ranges = split(accountNumbers, workers);
+
+            // Pass 1: balances, totals and pairing fingerprints
+            List<Partition> partitions = runAll(pool, ranges, range -> {
+                Partition partition = new Partition();
+                for (String accountNumber : range) {
+                    partition.scan(snapshot, accountNumber);
+                }
+                return partition;
+            });
+            long[] counts = new long[PAIR_BUCKETS];
+            long[] hashes = new long[PAIR_BUCKETS];
+            Map<String, Long> suspectAccounts = new HashMap<>();
+            for (Partition partition : partitions) {
+                report.add(partition);
+                suspectAccounts.putAll(partition.balanceMismatches);
+                for (int b = 0; b < PAIR_BUCKETS; b++) {
+                    counts[b] += partition.pairCounts[b];
+                    hashes[b] += partition.pairHashes[b];
+                }
+            }
+            boolean[] dirty = new boolean[PAIR_BUCKETS];
+            boolean anyDirty = false;
+            for (int b = 0; b < PAIR_BUCKETS; b++) {
+                dirty[b] = counts[b] != 0 || hashes[b] != 0;
+                anyDirty |= dirty[b];
+            }
+
+            // Pass 2, only when some bucket did not cancel: collect its legs exactly
+            Map<TransferLeg, Integer> unmatched = new HashMap<>();
+            if (anyDirty) {
+                for (Map<TransferLeg, Integer> legs : runAll(pool, ranges,
+                        range -> collectLegs(snapshot, range, dirty))) {
+                    legs.forEach((leg, count) -> unmatched.merge(leg, count, Integer::sum));
+                }
+                unmatched.values().removeIf(count -> count == 0);
+            }
+
+            // Recheck suspects at a newer snapshot to tell in-flight work from real faults
+            try (LedgerSnapshot later = bankingService.openSnapshot()) {
+                for (Map.Entry<String, Long> suspect : suspectAccounts.entrySet()) {
+                    String accountNumber = suspect.getKey();
+                    Partition check = new Partition();
+                    check.scan(later, accountNumber);
+                    if (check.balanceMismatches.isEmpty()) {
+                        report.inFlight++;
+                        balanceGap += suspect.getValue();
+                    } else {
+                        report.discrepancy("BALANCE " + accountNumber + ": ledger " + paise(check.lastRebuilt)
+                            + " vs balance " + paise(check.lastBalance));
+                    }
+                }
+                for (Map.Entry<TransferLeg, Integer> entry : unmatched.entrySet()) {
+                    TransferLeg leg = entry.getKey();
+                    int count = 0;
+                    for (String accountNumber : new String[]{leg.from, leg.to}) {
+                        AccountVersion version = later.getAccount(accountNumber);
+                        if (version == null) {
+                            continue;
+                        }
+                        for (BankTransaction t : version.getTransactionHistory()) {
+                            TransferLeg other = TransferLeg.of(t);
+                            if (leg.equals(other)) {
+                                count += other.sign;
+                            }
+                        }
+                    }
+                    if (count == 0) {
+                        report.inFlight++;
+                        legImbalance += entry.getValue() * leg.amount;
+                    } else {
+                        report.discrepancy("UNPAIRED " + (count > 0 ? "DEBIT " : "CREDIT ") + leg.from + " -> "
+                            + leg.to + " " + paise(leg.amount) + " '" + leg.description + "' x" + Math.abs(count));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // Transfers in flight at the snapshot are set aside; anything else is money
+        // created or destroyed
+        if (report.credits - report.debits + legImbalance != 0) {
+            report.discrepancy("CONSERVATION credits " + paise(report.credits) + " vs debits " + paise(report.debits));
+        }
+        if (report.balances - report.roundingGap - balanceGap != report.deposits - report.withdrawals - legImbalance) {
+            report.discrepancy("CONSERVATION balances " + paise(report.balances) + " vs deposits less withdrawals "
+                + paise(report.deposits - report.withdrawals));
+        }
+        report.elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        return report;
+    }
+
+    private static Map<TransferLeg, Integer> collectLegs(LedgerSnapshot snapshot, List<String> range,
+                                                         boolean[] dirty) {
+        Map<TransferLeg, Integer> legs = new HashMap<>();
+        for (String accountNumber : range) {
+            for (BankTransaction t : snapshot.getAccount(accountNumber).getTransactionHistory()) {
+                TransferLeg leg = TransferLeg.of(t);
+                if (leg != null && dirty[leg.bucket()]) {
+                    legs.merge(leg, leg.sign, Integer::sum);
+                }
+            }
+        }
+        return legs;
+    }
+
+    private <T> List<T> runAll(ExecutorService pool, List<List<String>> ranges, RangeTask<T> task)
+            throws InterruptedException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (List<String> range : ranges) {
+            futures.add(pool.submit(() -> task.run(range)));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Reconciliation worker failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private interface RangeTask<T> {
+        T run(List<String> range);
+    }
+
+    private static List<List<String>> split(List<String> accountNumbers, int parts) {
+        List<List<String>> ranges = new ArrayList<>();
+        int size = (accountNumbers.size() + parts - 1) / parts;
+        for (int start = 0; start < accountNumbers.size(); start += Math.max(1, size)) {
+            ranges.add(accountNumbers.subList(start, Math.min(accountNumbers.size(), start + Math.max(1, size))));
+        }
+        return ranges;
+    }
+
+    static long toPaise(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    static String paise(long value) {
+        return String.format("%.2f", value / 100.0);
+    }
+
+    // One worker's share of pass 1
+    private static final class Partition {
+        final long[] pairCounts = new long[PAIR_BUCKETS];
+        final long[] pairHashes = new long[PAIR_BUCKETS];
+        final Map<String, Long> balanceMismatches = new HashMap<>();   // account -> balance minus rebuilt
+        long accounts;
+        long transactions;
+        long deposits;
+        long withdrawals;
+        long credits;
+        long debits;
+        long balances;
+        long roundingGap;                // sub-paisa drift between a double balance and its postings
+        long lastRebuilt;
+        long lastBalance;
+
+        void scan(LedgerSnapshot snapshot, String accountNumber) {
+            AccountVersion version = snapshot.getAccount(accountNumber);
+            if (version == null) {
+                return;
+            }
+            long rebuilt = 0;
+            for (BankTransaction t : version.getTransactionHistory()) {
+                long amount = toPaise(t.getAmount());
+                switch (t.getType()) {
+                    case "DEPOSIT":
+                        deposits += amount;
+                        rebuilt += amount;
+                        break;
+                    case "WITHDRAWAL":
+                    case "WITHDRAW":
+                        withdrawals += amount;
+                        rebuilt -= amount;
+                        break;
+                    case "CREDIT":
+                        credits += amount;
+                        rebuilt += amount;
+                        break;
+                    case "DEBIT":
+                        debits += amount;
+                        rebuilt -= amount;
+                        break;
+                    default:
+                        break;
+                }
+                TransferLeg leg = TransferLeg.of(t);
+                if (leg != null) {
+                    int bucket = leg.bucket();
+                    pairCounts[bucket] += leg.sign;
+                    pairHashes[bucket] += leg.sign * leg.hash();
+                }
+                transactions++;
+            }
+            long balance = toPaise(version.getBalance());
+            accounts++;
+            balances += balance;
+            lastRebuilt = rebuilt;
+            lastBalance = balance;
+            if (Math.abs(rebuilt - balance) > 1) {
+                balanceMismatches.put(accountNumber, balance - rebuilt);
+            } else {
+                roundingGap += balance - rebuilt;
+            }
+        }
+    }
+
+    // A transfer leg in the form both sides agree on; sign +1 for the debit side
+    private static final class TransferLeg {
+        final String from;
+        final String to;
+        final long amount;
+        final String description;
+        final int sign;
+
+        private TransferLeg(String from, String to, long amount, String description, int sign) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.description = description;
+            this.sign = sign;
+        }
+
+        static TransferLeg of(BankTransaction t) {
+            boolean debit = "DEBIT".equals(t.getType());
+            if (!debit && !"CREDIT".equals(t.getType())) {
+                return null;
+            }
+            String text = t.getDescription() == null ? "" : t.getDescription();
+            String prefix = debit ? "Transfer to " : "Transfer from ";
+            int separator = text.indexOf(" - ", prefix.length());
+            String counterparty = text.startsWith(prefix) && separator > 0
+                ? text.substring(prefix.length(), separator) : "?";
+            String description = separator > 0 ? text.substring(separator + 3) : text;
+            long amount = toPaise(t.getAmount());
+            return debit
+                ? new TransferLeg(t.getAccountNumber(), counterparty, amount, description, 1)
+                : new TransferLeg(counterparty, t.getAccountNumber(), amount, description, -1);
+        }
+
+        long hash() {
+            long h = from.hashCode();
+            h = h * 0x9E3779B97F4A7C15L + to.hashCode();
+            h = h * 0x9E3779B97F4A7C15L + amount;
+            h = h * 0x9E3779B97F4A7C15L + description.hashCode();
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        int bucket() {
+            return (int) (hash() >>> 48) & (PAIR_BUCKETS - 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TransferLeg)) {
+                return false;
+            }
+            TransferLeg other = (TransferLeg) o;
+            return amount == other.amount && from.equals(other.from) && to.equals(other.to)
+                && description.equals(other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash();
+        }
+    }
+
+    // Outcome of one reconciliation run
+    static class Report {
+        long sequence;
+        long accounts;
+        long transactions;
+        long deposits;
+        long withdrawals;
+        long credits;
+        long debits;
+        long balances;
+        long roundingGap;
+        long inFlight;
+        long discrepancyCount;
+        long elapsedMillis;
+        final List<String> discrepancies = new ArrayList<>();
+
+        void add(Partition partition) {
+            accounts += partition.accounts;
+            transactions += partition.transactions;
+            deposits += partition.deposits;
+            withdrawals += partition.withdrawals;
+            credits += partition.credits;
+            debits += partition.debits;
+            balances += partition.balances;
+            roundingGap += partition.roundingGap;
+        }
+
+        void discrepancy(String description) {
+            discrepancyCount++;
+            if (discrepancies.size() < MAX_REPORTED) {
+                discrepancies.add(description);
+            }
+        }
+
+        public boolean isClean() { return discrepancyCount == 0; }
+        public long getDiscrepancyCount() { return discrepancyCount; }
+        public List<String> getDiscrepancies() { return discrepancies; }
+
+        public String summary() {
+            return String.format("Reconciled %d accounts, %d transactions at sequence %d in %d ms: "
+                    + "%d discrepancies, %d in flight; balances %s, deposits %s, withdrawals %s, credits %s, debits %s",
+                accounts, transactions, sequence, elapsedMillis, discrepancyCount, inFlight, paise(balances),
+                paise(deposits), paise(withdrawals), paise(credits), paise(debits));
+        }
+    }
+
+    // Asks a running BankServer for a report: java LedgerReconciler [host] [port]
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true)) {
+            out.println("RECONCILE");
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("END")) {
+                String[] reply = WireFormat.decode(line);
+                System.out.println(reply.length > 1 ? reply[1] : reply[0]);
+            }
+            out.println("QUIT");
+        }
+    }
+}
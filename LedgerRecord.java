@@ -0,0 +1,77 @@
+import java.util.Date;                   // Transaction timestamps
+
+// ===== LEDGER =====
+// One committed change to the account book, stamped with a global commit
+// sequence number. Postings carry the account's balance after the change so a
+// replica can apply them without re-running the business rules. "OPEN" records
+// create an account; the holder name travels in the description.
+
+class LedgerRecord {
+    public static final String OPEN = "OPEN";
+
+    private final long sequence;
+    private final String transactionId;
+    private final String accountNumber;
+    private final String accountType;
+    private final String type;
+    private final double amount;
+    private final double balanceAfter;
+    private final long timestamp;
+    private final String description;
+
+    public LedgerRecord(long sequence, String transactionId, String accountNumber, String accountType,
+                        String type, double amount, double balanceAfter, long timestamp, String description) {
+        this.sequence = sequence;
+        this.transactionId = transactionId;
+        this.accountNumber = accountNumber;
+        this.accountType = accountType;
+        this.type = type;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.timestamp = timestamp;
+        this.description = description;
+    }
+
+    public static LedgerRecord opening(BankAccount account) {
+        return new LedgerRecord(0, account.getAccountNumber(), account.getAccountNumber(), account.getAccountType(),
+            OPEN, account.getBalance(), account.getBalance(), account.getCreatedDate().getTime(),
+            account.getAccountHolder());
+    }
+
+    public static LedgerRecord posting(BankAccount account, BankTransaction transaction) {
+        return new LedgerRecord(0, transaction.getTransactionId(), transaction.getAccountNumber(),
+            account.getAccountType(), transaction.getType(), transaction.getAmount(), account.getBalance(),
+            transaction.getTimestamp().getTime(), transaction.getDescription());
+    }
+
+    public LedgerRecord withSequence(long newSequence) {
+        return new LedgerRecord(newSequence, transactionId, accountNumber, accountType, type,
+            amount, balanceAfter, timestamp, description);
+    }
+
+    public boolean isOpening() {
+        return OPEN.equals(type);
+    }
+
+    public BankTransaction toTransaction() {
+        return new BankTransaction(transactionId, accountNumber, type, amount, new Date(timestamp), description);
+    }
+
+    public BankAccount toAccount() {
+        if ("Current".equals(accountType)) {
+            return new CurrentAccount(accountNumber, description, balanceAfter);
+        }
+        return new SavingsAccount(accountNumber, description, balanceAfter);
+    }
+
+    // Getters
+    public long getSequence() { return sequence; }
+    public String getTransactionId() { return transactionId; }
+    public String getAccountNumber() { return accountNumber; }
+    public String getAccountType() { return accountType; }
+    public String getType() { return type; }
+    public double getAmount() { return amount; }
+    public double getBalanceAfter() { return balanceAfter; }
+    public long getTimestamp() { return timestamp; }
+    public String getDescription() { return description; }
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+
+// Read-only view of the whole book at one commit sequence. Every read through
+// the same snapshot agrees with every other, however many transfers commit in
+// the meantime. Close it so older versions can be pruned.
+class LedgerSnapshot implements AutoCloseable {
+    private final VersionStore store;
+    private final long sequence;
+    private boolean closed;
+
+    LedgerSnapshot(VersionStore store, long sequence) {
+        this.store = store;
+        this.sequence = sequence;
+    }
+
+    public long getSequence() { return sequence; }
+
+    public AccountVersion getAccount(String accountNumber) {
+        return store.versionAt(accountNumber, sequence);
+    }
+
+    public double getBalance(String accountNumber) {
+        AccountVersion version = getAccount(accountNumber);
+        return version != null ? version.getBalance() : 0.0;
+    }
+
+    public List<BankTransaction> getTransactionHistory(String accountNumber) {
+        AccountVersion version = getAccount(accountNumber);
+        return version != null ? version.getTransactionHistory() : new ArrayList<>();
+    }
+
+    public List<BankTransaction> getTransactionHistory(String accountNumber, long fromMillis, long toMillis) {
+        AccountVersion version = getAccount(accountNumber);
+        return version != null ? version.getTransactionHistory(fromMillis, toMillis) : new ArrayList<>();
+    }
+
+    // A page of history newest first; see AccountVersion.getTransactionsBefore
+    public List<BankTransaction> getTransactionsBefore(String accountNumber, long beforeTime, String beforeId,
+                                                      int limit) {
+        AccountVersion version = getAccount(accountNumber);
+        return version != null ? version.getTransactionsBefore(beforeTime, beforeId, limit) : new ArrayList<>();
+    }
+
+    // Accounts that existed at this snapshot's sequence, in account number order
+    public List<String> getAccountNumbers() {
+        List<String> accountNumbers = new ArrayList<>();
+        for (String accountNumber : store.accountNumbers()) {
+            if (getAccount(accountNumber) != null) {
+                accountNumbers.add(accountNumber);
+            }
+        }
+        accountNumbers.sort(null);
+        return accountNumbers;
+    }
+
+    public List<AccountVersion> getAccounts(List<BankAccount> accounts) {
+        List<AccountVersion> versions = new ArrayList<>(accounts.size());
+        for (BankAccount account : accounts) {
+            AccountVersion version = getAccount(account.getAccountNumber());
+            if (version != null) {
+                versions.add(version);
+            }
+        }
+        return versions;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            store.release(sequence);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.*;                        // Input/Output operations
+import java.net.Socket;                  // Remote mode
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Worker threads
+import java.util.concurrent.atomic.AtomicInteger; // Seeding progress
+
+// Synthetic workload: seeds users through registerUser, remembering the account
+// number the bank assigns each of them, then replays a weighted
+// mix of logins, balance checks, history reads and transfers with Zipfian skew
+// toward hot accounts, and reports throughput and latency percentiles per
+// operation. Runs in-process or against a BankServer over localhost; in-process
+// runs compare engines with -Dbank.engine=sharded|sequencer. The server only
+// acts on the logged-in user's accounts, so a remote worker logs in as an
+// account's user before touching it whenever it last logged in as someone
+// else; remote servers should run with -Dbank.ratelimit.enabled=false.
+// Usage: java LoadDriver [--mode=inproc|remote] [--host=localhost] [--port=7070]
+//        [--users=100000] [--threads=8] [--duration=30] [--theta=0.99]
+//        [--mix=login:10,balance:40,history:20,transfer:30]
+class LoadDriver {
+    private static final String[] OPERATIONS = {"login", "balance", "history", "transfer"};
+
+    private final Map<String, String> options;
+    private final int users;
+    private final int threads;
+    private final long durationMillis;
+    private final int[] cumulativeWeights;
+    private final ZipfianGenerator hotAccounts;
+    private final String[] accountNumbers;                       // user ld<i> holds the i-th, assigned at seeding
+    private final Map<String, Long> owners = new ConcurrentHashMap<>();  // account number -> user index
+
+    public LoadDriver(Map<String, String> options) {
+        this.options = options;
+        this.users = Integer.parseInt(options.getOrDefault("users", "100000"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        this.durationMillis = Long.parseLong(options.getOrDefault("duration", "30")) * 1000;
+        this.cumulativeWeights = parseMix(options.getOrDefault("mix", "login:10,balance:40,history:20,transfer:30"));
+        this.hotAccounts = new ZipfianGenerator(users, Double.parseDouble(options.getOrDefault("theta", "0.99")));
+        this.accountNumbers = new String[users];
+    }
+
+    private static int[] parseMix(String mix) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.split(":");
+            weights.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        int[] cumulative = new int[OPERATIONS.length];
+        int sum = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            sum += weights.getOrDefault(OPERATIONS[i], 0);
+            cumulative[i] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("Operation mix has no weight: " + mix);
+        }
+        return cumulative;
+    }
+
+    static String username(long index) { return "ld" + index; }
+    static String password(long index) { return "pw" + index; }
+    private String accountNumber(long index) { return accountNumbers[(int) index]; }
+
+    private LoadClient newClient() throws IOException {
+        if ("remote".equals(options.get("mode"))) {
+            return new SocketClient(options.getOrDefault("host", "localhost"),
+                Integer.parseInt(options.getOrDefault("port", "7070")), owners);
+        }
+        return new InProcessClient(BankingService.getInstance());
+    }
+
+    public void seed(PrintStream report) throws Exception {
+        long start = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        runOnWorkers(() -> {
+            try (LoadClient client = newClient()) {
+                int i;
+                while ((i = next.getAndIncrement()) < users) {
+                    String accountNumber = client.register(username(i), password(i), "ld" + i + "@load.test", "9" + i,
+                        i % 2 == 0 ? "Savings" : "Current", "Load User " + i);
+                    if (accountNumber == null) {
+                        throw new IllegalStateException("User " + username(i) + " was not registered");
+                    }
+                    accountNumbers[i] = accountNumber;
+                    owners.put(accountNumber, (long) i);
+                }
+            }
+            return null;
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report.println(String.format("Seeded %d users in %.1f s (%.0f users/s)", users, seconds, users / seconds));
+    }
+
+    public void run(PrintStream report) throws Exception {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        List<Map<String, LatencyHistogram>> perThread = new CopyOnWriteArrayList<>();
+        List<Map<String, long[]>> failuresPerThread = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        runOnWorkers(() -> {
+            Map<String, LatencyHistogram> histograms = new HashMap<>();
+            Map<String, long[]> failures = new HashMap<>();
+            for (String operation : OPERATIONS) {
+                histograms.put(operation, new LatencyHistogram());
+                failures.put(operation, new long[1]);
+            }
+            try (LoadClient client = newClient()) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.currentTimeMillis() < deadline) {
+                    String operation = pickOperation(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+                    long account = hotAccounts.next();
+                    long began = System.nanoTime();
+                    boolean ok = execute(client, operation, account, random);
+                    histograms.get(operation).record(System.nanoTime() - began);
+                    if (!ok) {
+                        failures.get(operation)[0]++;
+                    }
+                }
+            }
+            perThread.add(histograms);
+            failuresPerThread.add(failures);
+            return null;
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report.println(String.format("%-9s %10s %10s %9s %9s %9s %9s %9s %8s",
+            "operation", "count", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "failed"));
+        long totalCount = 0;
+        for (String operation : OPERATIONS) {
+            LatencyHistogram merged = new LatencyHistogram();
+            long failed = 0;
+            for (Map<String, LatencyHistogram> histograms : perThread) {
+                merged.merge(histograms.get(operation));
+            }
+            for (Map<String, long[]> failures : failuresPerThread) {
+                failed += failures.get(operation)[0];
+            }
+            totalCount += merged.getCount();
+            report.println(String.format("%-9s %10d %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f %8d",
+                operation, merged.getCount(), merged.getCount() / seconds,
+                merged.percentile(50) / 1e3, merged.percentile(90) / 1e3, merged.percentile(99) / 1e3,
+                merged.percentile(99.9) / 1e3, merged.getMax() / 1e3, failed));
+        }
+        report.println(String.format("total     %10d %10.0f ops/s over %.1f s with %d threads",
+            totalCount, totalCount / seconds, seconds, threads));
+    }
+
+    private String pickOperation(int roll) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[OPERATIONS.length - 1];
+    }
+
+    private boolean execute(LoadClient client, String operation, long account, ThreadLocalRandom random)
+            throws IOException {
+        switch (operation) {
+            case "login":
+                return client.login(username(account), password(account));
+            case "balance":
+                return client.balance(accountNumber(account)) >= 0;
+            case "history":
+                return client.history(accountNumber(account)) >= 0;
+            default: {
+                long target = hotAccounts.next();
+                if (target == account) {
+                    target = (account + 1) % users;
+                }
+                return client.transfer(accountNumber(account), accountNumber(target), 1 + random.nextInt(100), "load");
+            }
+        }
+    }
+
+    private void runOnWorkers(Callable<Void> work) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(work));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        PrintStream report = System.out;
+        LoadDriver driver = new LoadDriver(options);
+        if (!"remote".equals(options.get("mode"))) {
+            report.println("Engine: " + System.getProperty("bank.engine", "sharded"));
+        }
+        driver.seed(report);
+        driver.run(report);
+        System.exit(0);
+    }
+
+    // ===== CLIENTS =====
+
+    interface LoadClient extends AutoCloseable {
+        // The account number the bank assigned, or null if refused
+        String register(String username, String password, String email, String phone, String accountType,
+                        String holder) throws IOException;
+        boolean login(String username, String password) throws IOException;
+        double balance(String accountNumber) throws IOException;
+        int history(String accountNumber) throws IOException;
+        boolean transfer(String from, String to, double amount, String description) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    static class InProcessClient implements LoadClient {
+        private final BankingService service;
+
+        InProcessClient(BankingService service) {
+            this.service = service;
+        }
+
+        public String register(String username, String password, String email, String phone, String accountType,
+                               String holder) {
+            return service.registerUser(username, password, email, phone, accountType, holder, null, null, null);
+        }
+
+        public boolean login(String username, String password) {
+            return service.authenticateUser(username, password) != null;
+        }
+
+        public double balance(String accountNumber) {
+            AccountVersion version = service.getAccountVersion(accountNumber);
+            return version != null ? version.getBalance() : -1;
+        }
+
+        public int history(String accountNumber) {
+            return service.getTransactionHistory(accountNumber).size();
+        }
+
+        public boolean transfer(String from, String to, double amount, String description) {
+            return service.transferMoney(from, to, amount, description);
+        }
+
+        public void close() {
+        }
+    }
+
+    static class SocketClient implements LoadClient {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private String username;                 // logged in on this connection, if anyone
+        private final Map<String, Long> owners;  // account number -> index of the user holding it
+
+        SocketClient(String host, int port, Map<String, Long> owners) throws IOException {
+            this.owners = owners;
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8")));
+        }
+
+        private String[] call(Object... fields) throws IOException {
+            out.println(WireFormat.encode(fields));
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("Server closed the connection");
+            }
+            return WireFormat.decode(line);
+        }
+
+        public String register(String username, String password, String email, String phone, String accountType,
+                               String holder) throws IOException {
+            String[] reply = call("REGISTER", username, password, email, phone, accountType, holder, null, null, null);
+            return "OK".equals(reply[0]) ? reply[1] : null;
+        }
+
+        public boolean login(String username, String password) throws IOException {
+            boolean ok = "USER".equals(call("LOGIN", username, password)[0]);
+            this.username = ok ? username : null;
+            return ok;
+        }
+
+        private void actAs(String accountNumber) throws IOException {
+            long index = owners.get(accountNumber);
+            if (!username(index).equals(username)) {
+                login(username(index), password(index));
+            }
+        }
+
+        public double balance(String accountNumber) throws IOException {
+            actAs(accountNumber);
+            String[] reply = call("BALANCE", accountNumber);
+            return "BALANCE".equals(reply[0]) ? Double.parseDouble(reply[1]) : -1;
+        }
+
+        public int history(String accountNumber) throws IOException {
+            actAs(accountNumber);
+            out.println(WireFormat.encode("HISTORY", accountNumber));
+            out.flush();
+            int count = 0;
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("END")) {
+                if (line.startsWith("ERROR")) {
+                    return -1;
+                }
+                count++;
+            }
+            return count;
+        }
+
+        public boolean transfer(String from, String to, double amount, String description) throws IOException {
+            actAs(from);
+            return "OK".equals(call("TRANSFER", from, to, amount, description)[0]);
+        }
+
+        public void close() throws IOException {
+            out.println("QUIT");
+            out.flush();
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,574 @@
+import java.time.Instant;                // Day and month boundaries
+import java.time.LocalDate;              // Calendar periods
+import java.time.LocalDateTime;          // Next nightly run
+import java.time.ZoneId;                 // Local calendar
+import java.util.ArrayList;              // List implementation
+import java.util.Arrays;                 // Slot initialisation
+import java.util.Collection;             // Accounts being scored
+import java.util.HashMap;                // Transfers in by counterparty
+import java.util.Iterator;               // Pruning stale counterparties
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Nightly re-score pool and schedule
+
+// ===== LOAN SCORING =====
+// Instant eligibility and limit decisions for the loan schemes offered in
+// NetApp. Each account keeps the raw material for its feature vector, updated
+// from every committed posting: income per month for the last MONTHS months,
+// a time-weighted balance per day for the last DAYS days, and declined
+// transfers (bounces) per day, which the transfer paths report since they
+// never reach the ledger. The vector is derived from that state on first read
+// and cached until the next posting or the next day, so a decision adds up the
+// cached vectors of the customer's accounts and scores them. Transfers in are
+// also kept per sending account, so money the customer moves between the
+// accounts being scored is taken back out of their income. Every night the
+// "loan-rescore" job re-extracts every account's state from its full history,
+// archived transactions included, in parallel across cores, dropping anything
+// the incremental path got wrong; commits during the run are replayed onto the
+// result, as SpendingRollups does. Bounces are kept in memory only.
+//   bank.loans.rescoreHour   local hour of the nightly re-score (2)
+//   bank.loans.threads       re-score parallelism (available processors)
+class LoanScoring implements LedgerListener {
+    static final int MONTHS = 12;
+    static final int DAYS = 90;
+    static final int INCOME_MONTHS = 6;           // months the income features look back over
+    private static final double DAY_MILLIS = 24 * 60 * 60 * 1000.0;
+
+    // A loan product: limit = average monthly income * incomeMultiple, scaled
+    // by the score and capped at maxLimit
+    static final class Scheme {
+        private final String name;
+        private final double incomeMultiple;
+        private final double maxLimit;
+        private final int minScore;
+        private final int maxBounces;
+
+        Scheme(String name, double incomeMultiple, double maxLimit, int minScore, int maxBounces) {
+            this.name = name;
+            this.incomeMultiple = incomeMultiple;
+            this.maxLimit = maxLimit;
+            this.minScore = minScore;
+            this.maxBounces = maxBounces;
+        }
+
+        public String getName() { return name; }
+        public double getMaxLimit() { return maxLimit; }
+        public int getMinScore() { return minScore; }
+    }
+
+    static final Scheme[] SCHEMES = {
+        new Scheme("Women Entrepreneurship Loan", 12, 1_000_000, 55, 2),
+        new Scheme("Education Loan for Women", 10, 750_000, 45, 3),
+        new Scheme("Home Loan (Special Women Scheme)", 60, 5_000_000, 65, 1),
+        new Scheme("Personal Loan for Women", 6, 300_000, 50, 2),
+        new Scheme("Business Loan for Women", 18, 2_000_000, 60, 2)
+    };
+
+    // The inputs to a decision, for one account or summed over several
+    static final class Features {
+        private final long[] monthlyIncomePaise;     // index 0 is the current month
+        private final Map<String, long[]> transfersInPaise;  // part of the income, by sending account
+        private final double averageBalance;         // time-weighted over the last DAYS days
+        private final int bounces;                   // declined transfers over the last DAYS days
+        private final int historyDays;
+
+        Features(long[] monthlyIncomePaise, Map<String, long[]> transfersInPaise, double averageBalance,
+                 int bounces, int historyDays) {
+            this.monthlyIncomePaise = monthlyIncomePaise;
+            this.transfersInPaise = transfersInPaise;
+            this.averageBalance = averageBalance;
+            this.bounces = bounces;
+            this.historyDays = historyDays;
+        }
+
+        // Sums the parts; transfers in from any of the accounts are not income
+        static Features combine(List<Features> parts, Collection<String> accountNumbers) {
+            long[] income = new long[INCOME_MONTHS];
+            double balance = 0;
+            int bounces = 0;
+            int days = 0;
+            for (Features part : parts) {
+                for (int i = 0; i < INCOME_MONTHS; i++) {
+                    income[i] += part.monthlyIncomePaise[i];
+                }
+                for (Map.Entry<String, long[]> transfers : part.transfersInPaise.entrySet()) {
+                    if (accountNumbers.contains(transfers.getKey())) {
+                        for (int i = 0; i < INCOME_MONTHS; i++) {
+                            income[i] -= transfers.getValue()[i];
+                        }
+                    }
+                }
+                balance += part.averageBalance;
+                bounces += part.bounces;
+                days = Math.max(days, part.historyDays);
+            }
+            return new Features(income, Map.of(), balance, bounces, days);
+        }
+
+        public int getMonthsWithIncome() {
+            int months = 0;
+            for (long paise : monthlyIncomePaise) {
+                if (paise > 0) {
+                    months++;
+                }
+            }
+            return months;
+        }
+
+        public double getAverageMonthlyIncome() {
+            long total = 0;
+            for (long paise : monthlyIncomePaise) {
+                total += paise;
+            }
+            return total / 100.0 / INCOME_MONTHS;
+        }
+
+        // Coefficient of variation of monthly income: 0 for the same amount every month
+        public double getIncomeVariation() {
+            double mean = getAverageMonthlyIncome();
+            if (mean <= 0) {
+                return 1;
+            }
+            double squares = 0;
+            for (long paise : monthlyIncomePaise) {
+                double deviation = paise / 100.0 - mean;
+                squares += deviation * deviation;
+            }
+            return Math.sqrt(squares / INCOME_MONTHS) / mean;
+        }
+
+        public double getAverageBalance() { return averageBalance; }
+        public int getBounces() { return bounces; }
+        public int getHistoryDays() { return historyDays; }
+    }
+
+    static final class Decision {
+        private final String scheme;
+        private final boolean eligible;
+        private final double limit;
+        private final int score;
+        private final int monthsWithIncome;
+        private final double averageMonthlyIncome;
+        private final double averageBalance;
+        private final int bounces;
+        private final String reason;
+
+        Decision(String scheme, boolean eligible, double limit, int score, int monthsWithIncome,
+                 double averageMonthlyIncome, double averageBalance, int bounces, String reason) {
+            this.scheme = scheme;
+            this.eligible = eligible;
+            this.limit = limit;
+            this.score = score;
+            this.monthsWithIncome = monthsWithIncome;
+            this.averageMonthlyIncome = averageMonthlyIncome;
+            this.averageBalance = averageBalance;
+            this.bounces = bounces;
+            this.reason = reason;
+        }
+
+        public String getScheme() { return scheme; }
+        public boolean isEligible() { return eligible; }
+        public double getLimit() { return limit; }
+        public int getScore() { return score; }
+        public int getMonthsWithIncome() { return monthsWithIncome; }
+        public double getAverageMonthlyIncome() { return averageMonthlyIncome; }
+        public double getAverageBalance() { return averageBalance; }
+        public int getBounces() { return bounces; }
+        public String getReason() { return reason; }
+    }
+
+    // Paise per month for the last MONTHS months, in slots reused as months roll
+    private static final class MonthlySums {
+        private final long[] paise = new long[MONTHS];
+        private final int[] month = new int[MONTHS];
+
+        MonthlySums() {
+            Arrays.fill(month, -1);
+        }
+
+        void add(int month, long paise) {
+            int slot = Math.floorMod(month, MONTHS);
+            if (this.month[slot] != month) {
+                this.month[slot] = month;
+                this.paise[slot] = 0;
+            }
+            this.paise[slot] += paise;
+        }
+
+        // The INCOME_MONTHS months up to and including month, newest first
+        long[] window(int month) {
+            long[] sums = new long[INCOME_MONTHS];
+            for (int i = 0; i < INCOME_MONTHS; i++) {
+                int slot = Math.floorMod(month - i, MONTHS);
+                sums[i] = this.month[slot] == month - i ? paise[slot] : 0;
+            }
+            return sums;
+        }
+    }
+
+    // One account's feature state; readers, the committer and the re-score
+    // synchronize on it
+    private static final class AccountState {
+        private final MonthlySums income = new MonthlySums();
+        private final Map<String, MonthlySums> transfersIn = new HashMap<>();  // by sending account
+        private final double[] balanceMillis = new double[DAYS];   // rupee-milliseconds held each day
+        private final int[] balanceDay = new int[DAYS];
+        private double balance;
+        private long since;                          // balance held from here on
+        private long openedAt;
+        private Features cached;
+        private int cachedDay;
+
+        AccountState(double openingBalance, long openedAt) {
+            this.balance = openingBalance;
+            this.since = openedAt;
+            this.openedAt = openedAt;
+            Arrays.fill(balanceDay, -1);
+        }
+    }
+
+    private static final class Bounces {             // guarded by itself
+        private final int[] count = new int[DAYS];
+        private final int[] day = new int[DAYS];
+
+        Bounces() {
+            Arrays.fill(day, -1);
+        }
+    }
+
+    // One local calendar day; postings mostly land on the day before them
+    private static final class Day {
+        private final long start;
+        private final long end;
+        private final int epochDay;
+        private final int month;
+
+        Day(long start, long end, int epochDay, int month) {
+            this.start = start;
+            this.end = end;
+            this.epochDay = epochDay;
+            this.month = month;
+        }
+    }
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile Day lastDay = new Day(0, 0, 0, 0);
+    private final int threads = Integer.getInteger("bank.loans.threads", Runtime.getRuntime().availableProcessors());
+    private volatile Map<String, AccountState> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Bounces> bounces = new ConcurrentHashMap<>();
+    private List<LedgerRecord> replay;               // guarded by this; commits seen during a re-score
+    private final AuditLog audit = AuditLog.getInstance();
+
+    // ----- incremental path -----
+
+    @Override
+    public synchronized void onCommit(LedgerRecord record) {
+        apply(accounts, record.getAccountNumber(), record.isOpening(), record.getType(), record.getAmount(),
+            record.getDescription(), record.getBalanceAfter(), record.getTimestamp());
+        if (replay != null) {
+            replay.add(record);
+        }
+    }
+
+    private void apply(Map<String, AccountState> target, String accountNumber, boolean opening, String type,
+                       double amount, String description, double balanceAfter, long millis) {
+        if (opening) {
+            target.putIfAbsent(accountNumber, new AccountState(balanceAfter, millis));
+            return;
+        }
+        AccountState state = target.computeIfAbsent(accountNumber,
+            a -> new AccountState(balanceAfter - signed(type, amount), millis));
+        synchronized (state) {
+            post(state, type, amount, description, balanceAfter, millis);
+        }
+    }
+
+    private void post(AccountState state, String type, double amount, String description, double balanceAfter,
+                      long millis) {
+        long at = Math.max(millis, state.since);
+        holdBalance(state, at);
+        if ("DEPOSIT".equals(type) || "CREDIT".equals(type)) {
+            int month = day(at).month;
+            long paise = Math.round(amount * 100);
+            state.income.add(month, paise);
+            String from = "CREDIT".equals(type) ? sender(description) : null;
+            if (from != null) {
+                state.transfersIn.computeIfAbsent(from, a -> new MonthlySums()).add(month, paise);
+            }
+        }
+        state.balance = balanceAfter;
+        state.cached = null;
+    }
+
+    // The sending account of a "Transfer from A - d" credit, as the reconciler reads it
+    private static String sender(String description) {
+        String prefix = "Transfer from ";
+        if (description == null || !description.startsWith(prefix)) {
+            return null;
+        }
+        int separator = description.indexOf(" - ", prefix.length());
+        return separator > 0 ? description.substring(prefix.length(), separator) : null;
+    }
+
+    // Credits the balance held since the last posting to the days it covered
+    private void holdBalance(AccountState state, long until) {
+        long from = Math.max(state.since, until - (long) (DAYS * DAY_MILLIS));
+        while (from < until) {
+            Day day = day(from);
+            long to = Math.min(until, day.end);
+            int slot = Math.floorMod(day.epochDay, DAYS);
+            if (state.balanceDay[slot] != day.epochDay) {
+                state.balanceDay[slot] = day.epochDay;
+                state.balanceMillis[slot] = 0;
+            }
+            state.balanceMillis[slot] += state.balance * (to - from);
+            from = to;
+        }
+        state.since = until;
+    }
+
+    // Called by the transfer paths when a debit is declined
+    public void bounced(String accountNumber, long millis) {
+        int day = (int) date(millis).toEpochDay();
+        Bounces account = bounces.computeIfAbsent(accountNumber, a -> new Bounces());
+        synchronized (account) {
+            int slot = Math.floorMod(day, DAYS);
+            if (account.day[slot] != day) {
+                account.day[slot] = day;
+                account.count[slot] = 0;
+            }
+            account.count[slot]++;
+        }
+        AccountState state = accounts.get(accountNumber);
+        if (state != null) {
+            synchronized (state) {
+                state.cached = null;
+            }
+        }
+    }
+
+    // ----- features -----
+
+    public Features features(String accountNumber) {
+        AccountState state = accounts.get(accountNumber);
+        if (state == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        int today = (int) date(now).toEpochDay();
+        synchronized (state) {
+            if (state.cached == null || state.cachedDay != today) {
+                state.cached = extract(state, accountNumber, now, today);
+                state.cachedDay = today;
+            }
+            return state.cached;
+        }
+    }
+
+    private Features extract(AccountState state, String accountNumber, long now, int today) {
+        int month = SpendingRollups.period(SpendingRollups.Granularity.MONTH, date(now));
+        long[] income = state.income.window(month);
+        Map<String, long[]> transfersIn = new HashMap<>();
+        for (Iterator<Map.Entry<String, MonthlySums>> it = state.transfersIn.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, MonthlySums> sender = it.next();
+            long[] window = sender.getValue().window(month);
+            if (Arrays.stream(window).allMatch(paise -> paise == 0)) {
+                it.remove();                         // nothing left in the income window
+            } else {
+                transfersIn.put(sender.getKey(), window);
+            }
+        }
+
+        // Whole days from the window start to today, plus today up to now
+        long windowStart = date(now).minusDays(DAYS - 1).atStartOfDay(zone).toInstant().toEpochMilli();
+        double held = 0;
+        for (int slot = 0; slot < DAYS; slot++) {
+            if (state.balanceDay[slot] > today - DAYS) {
+                held += state.balanceMillis[slot];
+            }
+        }
+        held += state.balance * Math.max(0, now - Math.max(state.since, windowStart));
+        long span = now - Math.max(state.openedAt, windowStart);
+        double averageBalance = span > 0 ? held / span : state.balance;
+
+        int declined = 0;
+        Bounces account = bounces.get(accountNumber);
+        if (account != null) {
+            synchronized (account) {
+                for (int slot = 0; slot < DAYS; slot++) {
+                    if (account.day[slot] > today - DAYS) {
+                        declined += account.count[slot];
+                    }
+                }
+            }
+        }
+        return new Features(income, transfersIn, averageBalance, declined,
+            (int) ((now - state.openedAt) / DAY_MILLIS));
+    }
+
+    // ----- decisions -----
+
+    public Decision decide(Scheme scheme, List<String> accountNumbers) {
+        List<Features> parts = new ArrayList<>(accountNumbers.size());
+        for (String accountNumber : accountNumbers) {
+            Features features = features(accountNumber);
+            if (features != null) {
+                parts.add(features);
+            }
+        }
+        return score(scheme, Features.combine(parts, accountNumbers));
+    }
+
+    // Out of 100: regular income 40, steady income 15, balance cushion 25, no bounces 20
+    static Decision score(Scheme scheme, Features f) {
+        double income = f.getAverageMonthlyIncome();
+        double regularity = f.getMonthsWithIncome() / (double) INCOME_MONTHS;
+        double steadiness = 1 - Math.min(1, f.getIncomeVariation());
+        double cushion = income > 0 ? Math.min(1, f.getAverageBalance() / income) : 0;
+        double clean = Math.max(0, 1 - f.getBounces() / 4.0);
+        int score = (int) Math.round(40 * regularity + 15 * steadiness + 25 * cushion + 20 * clean);
+
+        String reason;
+        if (f.getMonthsWithIncome() < INCOME_MONTHS / 2) {
+            reason = "Income in only " + f.getMonthsWithIncome() + " of the last " + INCOME_MONTHS + " months";
+        } else if (f.getBounces() > scheme.maxBounces) {
+            reason = f.getBounces() + " declined payments in the last " + DAYS + " days";
+        } else if (score < scheme.minScore) {
+            reason = "Score " + score + " is below the " + scheme.minScore + " this scheme needs";
+        } else {
+            reason = null;
+        }
+        double limit = 0;
+        if (reason == null) {
+            limit = Math.min(scheme.maxLimit, income * scheme.incomeMultiple * score / 100.0);
+            limit = Math.floor(limit / 1000) * 1000;
+            if (limit <= 0) {
+                reason = "Income too low for this scheme";
+            }
+        }
+        return new Decision(scheme.name, reason == null, reason == null ? limit : 0, score,
+            f.getMonthsWithIncome(), income, f.getAverageBalance(), f.getBounces(),
+            reason == null ? "Eligible" : reason);
+    }
+
+    // ----- nightly re-score -----
+
+    // Re-extracts every account from its full history as of one snapshot, in
+    // parallel, then replays the commits that arrived meanwhile and swaps the
+    // result in; returns the number of accounts
+    public int rescore(VersionStore versionStore) throws InterruptedException {
+        long started = System.nanoTime();
+        synchronized (this) {
+            replay = new ArrayList<>();
+        }
+        Map<String, AccountState> rebuilt = new ConcurrentHashMap<>();
+        long sequence;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try (LedgerSnapshot snapshot = versionStore.openSnapshot()) {
+            sequence = snapshot.getSequence();
+            List<String> accountNumbers = snapshot.getAccountNumbers();
+            pool.submit(() -> accountNumbers.parallelStream().forEach(accountNumber -> {
+                AccountVersion version = snapshot.getAccount(accountNumber);
+                rebuilt.put(accountNumber, extractHistory(version));
+            })).get();
+        } catch (ExecutionException | RuntimeException e) {
+            synchronized (this) {
+                replay = null;
+            }
+            throw new IllegalStateException("Loan re-score failed", e instanceof ExecutionException ? e.getCause() : e);
+        } finally {
+            pool.shutdown();
+        }
+        synchronized (this) {
+            for (LedgerRecord record : replay) {
+                if (record.getSequence() > sequence) {
+                    apply(rebuilt, record.getAccountNumber(), record.isOpening(), record.getType(),
+                        record.getAmount(), record.getDescription(), record.getBalanceAfter(), record.getTimestamp());
+                }
+            }
+            replay = null;
+            accounts = rebuilt;
+        }
+        audit.log(AuditLog.Event.LOANS_RESCORED, rebuilt.size(), (System.nanoTime() - started) / 1_000_000);
+        return rebuilt.size();
+    }
+
+    // The incremental path run over a history: the opening balance is what the
+    // postings do not account for
+    private AccountState extractHistory(AccountVersion version) {
+        List<BankTransaction> history = version.getTransactionHistory();
+        double opening = version.getBalance();
+        for (BankTransaction transaction : history) {
+            opening -= signed(transaction.getType(), transaction.getAmount());
+        }
+        long openedAt = version.getAccount().getCreatedDate().getTime();
+        if (!history.isEmpty()) {
+            openedAt = Math.min(openedAt, history.get(0).getTimestamp().getTime());
+        }
+        AccountState state = new AccountState(opening, openedAt);
+        double running = opening;
+        for (BankTransaction transaction : history) {
+            running += signed(transaction.getType(), transaction.getAmount());
+            post(state, transaction.getType(), transaction.getAmount(), transaction.getDescription(), running,
+                transaction.getTimestamp().getTime());
+        }
+        return state;
+    }
+
+    // Runs rescore daily at bank.loans.rescoreHour on the "loan-rescore" thread
+    public void scheduleNightly(VersionStore versionStore) {
+        int hour = Integer.getInteger("bank.loans.rescoreHour", 2);
+        LocalDateTime now = LocalDateTime.now(zone);
+        LocalDateTime next = now.toLocalDate().atTime(hour, 0);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        long delay = java.time.Duration.between(now, next).toMillis();
+        ScheduledExecutorService nightly = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "loan-rescore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        nightly.scheduleAtFixedRate(() -> {
+            try {
+                rescore(versionStore);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                audit.log(AuditLog.Event.LOANS_RESCORE_FAILED, e.toString());
+            }
+        }, delay, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    // Same sides as the reconciler
+    private static double signed(String type, double amount) {
+        switch (type) {
+            case "DEPOSIT":
+            case "CREDIT":
+                return amount;
+            case "WITHDRAWAL":
+            case "WITHDRAW":
+            case "DEBIT":
+                return -amount;
+            default:
+                return 0;
+        }
+    }
+
+    private LocalDate date(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+    }
+
+    private Day day(long millis) {
+        Day day = lastDay;
+        if (millis >= day.start && millis < day.end) {
+            return day;
+        }
+        LocalDate date = date(millis);
+        day = new Day(date.atStartOfDay(zone).toInstant().toEpochMilli(),
+            date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(), (int) date.toEpochDay(),
+            SpendingRollups.period(SpendingRollups.Granularity.MONTH, date));
+        lastDay = day;
+        return day;
+    }
+}
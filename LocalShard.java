@@ -0,0 +1,262 @@
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Single-writer executor
+
+// In-process shard: its own account store and a single writer thread that owns
+// every balance. Transaction history lives in the VersionStore, fed by the
+// ledger commits, so reading it never queues behind this writer.
+class LocalShard implements AccountShard {
+    private final int shardId;
+    private final Map<String, BankAccount> accounts;
+    private final Map<String, PendingDebit> pendingDebits; // writer thread only
+    private final List<LedgerRecord> pendingCommits;       // writer thread only
+    private final ExecutorService writer;
+    private final LedgerCommitter committer;
+
+    public LocalShard(int shardId, LedgerCommitter committer) {
+        this.shardId = shardId;
+        this.committer = committer;
+        this.accounts = new ConcurrentHashMap<>();
+        this.pendingDebits = new HashMap<>();
+        this.pendingCommits = new ArrayList<>();
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "shard-" + shardId + "-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private <T> T execute(Callable<T> operation) {
+        try {
+            // Everything one operation posts is committed, and becomes visible, together
+            return writer.submit(() -> {
+                try {
+                    return operation.call();
+                } finally {
+                    committer.commitAll(pendingCommits);
+                    pendingCommits.clear();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard " + shardId, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Shard " + shardId + " operation failed", e.getCause());
+        }
+    }
+
+    @Override
+    public int getShardId() { return shardId; }
+
+    @Override
+    public boolean openAccount(BankAccount account, BankTransaction openingTransaction) {
+        return execute(() -> open(account, openingTransaction));
+    }
+
+    // The whole batch is one writer task and one ledger commit
+    @Override
+    public boolean[] openAccounts(List<BankAccount> batch, List<BankTransaction> openingTransactions) {
+        return execute(() -> {
+            boolean[] opened = new boolean[batch.size()];
+            for (int i = 0; i < opened.length; i++) {
+                opened[i] = open(batch.get(i), openingTransactions.get(i));
+            }
+            return opened;
+        });
+    }
+
+    // Writer thread only; an open account is never replaced
+    private boolean open(BankAccount account, BankTransaction openingTransaction) {
+        if (accounts.putIfAbsent(account.getAccountNumber(), account) != null) {
+            return false;
+        }
+        pendingCommits.add(LedgerRecord.opening(account));
+        if (openingTransaction != null) {
+            post(account, openingTransaction);
+        }
+        return true;
+    }
+
+    @Override
+    public BankAccount getAccount(String accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    @Override
+    public List<BankAccount> getAccounts() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @Override
+    public boolean transfer(String fromAccount, String toAccount, double amount, String description) {
+        return execute(() -> {
+            BankAccount fromAcc = accounts.get(fromAccount);
+            BankAccount toAcc = accounts.get(toAccount);
+            if (fromAcc == null || toAcc == null || !fromAcc.withdraw(amount)) {
+                return false;
+            }
+            toAcc.deposit(amount);
+            post(fromAcc, new BankTransaction(fromAccount, "DEBIT", amount,
+                "Transfer to " + toAccount + " - " + description));
+            post(toAcc, new BankTransaction(toAccount, "CREDIT", amount,
+                "Transfer from " + fromAccount + " - " + description));
+            return true;
+        });
+    }
+
+    // Applies a whole batch in one writer task and one ledger commit
+    @Override
+    public boolean[] transferAll(List<TransferRequest> requests) {
+        return execute(() -> {
+            boolean[] results = new boolean[requests.size()];
+            for (int i = 0; i < results.length; i++) {
+                TransferRequest request = requests.get(i);
+                BankAccount fromAcc = accounts.get(request.getFromAccount());
+                BankAccount toAcc = accounts.get(request.getToAccount());
+                if (fromAcc == null || toAcc == null || fromAcc == toAcc || !fromAcc.withdraw(request.getAmount())) {
+                    continue;
+                }
+                toAcc.deposit(request.getAmount());
+                post(fromAcc, new BankTransaction(request.getFromAccount(), "DEBIT", request.getAmount(),
+                    "Transfer to " + request.getToAccount() + " - " + request.getDescription()));
+                post(toAcc, new BankTransaction(request.getToAccount(), "CREDIT", request.getAmount(),
+                    "Transfer from " + request.getFromAccount() + " - " + request.getDescription()));
+                results[i] = true;
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public boolean prepareDebit(String transferId, String fromAccount, double amount) {
+        return execute(() -> {
+            BankAccount fromAcc = accounts.get(fromAccount);
+            if (fromAcc == null || !fromAcc.withdraw(amount)) {
+                return false;
+            }
+            pendingDebits.put(transferId, new PendingDebit(fromAccount, amount));
+            return true;
+        });
+    }
+
+    @Override
+    public void commitDebit(String transferId, String toAccount, String description) {
+        execute(() -> {
+            PendingDebit debit = pendingDebits.remove(transferId);
+            if (debit != null) {
+                post(accounts.get(debit.accountNumber), new BankTransaction(debit.accountNumber, "DEBIT",
+                    debit.amount, "Transfer to " + toAccount + " - " + description));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void abortDebit(String transferId) {
+        execute(() -> {
+            PendingDebit debit = pendingDebits.remove(transferId);
+            if (debit != null) {
+                accounts.get(debit.accountNumber).deposit(debit.amount);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean credit(String toAccount, String fromAccount, double amount, String description) {
+        return execute(() -> {
+            BankAccount toAcc = accounts.get(toAccount);
+            if (toAcc == null || !toAcc.deposit(amount)) {
+                return false;
+            }
+            post(toAcc, new BankTransaction(toAccount, "CREDIT", amount,
+                "Transfer from " + fromAccount + " - " + description));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean placeHold(String accountNumber, double amount) {
+        return execute(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            return account != null && account.hold(amount);
+        });
+    }
+
+    @Override
+    public boolean captureHold(String accountNumber, double heldAmount, double amount, String description) {
+        return execute(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            if (account == null || !account.captureHold(heldAmount, amount)) {
+                return false;
+            }
+            post(account, new BankTransaction(accountNumber, "WITHDRAWAL", amount, description));
+            return true;
+        });
+    }
+
+    @Override
+    public void releaseHold(String accountNumber, double amount) {
+        execute(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            if (account != null) {
+                account.releaseHold(amount);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void apply(LedgerRecord record) {
+        execute(() -> {
+            install(record);
+            committer.commitReplicated(record);
+            return null;
+        });
+    }
+
+    @Override
+    public void applyAll(List<LedgerRecord> records) {
+        execute(() -> {
+            for (LedgerRecord record : records) {
+                install(record);
+            }
+            return null;
+        });
+    }
+
+    // Writer thread only
+    private void install(LedgerRecord record) {
+        if (record.isOpening()) {
+            accounts.putIfAbsent(record.getAccountNumber(), record.toAccount());
+        } else {
+            BankAccount account = accounts.get(record.getAccountNumber());
+            if (account != null) {
+                account.restoreBalance(record.getBalanceAfter());
+            }
+        }
+    }
+
+    // Writer thread only: queues the transaction for the ledger
+    private void post(BankAccount account, BankTransaction transaction) {
+        pendingCommits.add(LedgerRecord.posting(account, transaction));
+    }
+
+    @Override
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    // Funds withdrawn during prepare, held until the transfer commits or aborts
+    private static class PendingDebit {
+        final String accountNumber;
+        final double amount;
+
+        PendingDebit(String accountNumber, double amount) {
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+        }
+    }
+}
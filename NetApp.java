@@ -3,7 +3,7 @@ import javax.swing.table.DefaultTableModel; // Table data model
 import java.awt.*;                       // Layout managers and graphics
 import java.awt.event.*;                 // Event handling
 import java.io.*;                        // Input/Output operations
-import java.net.*;                       // Networking (not fully implemented)
+import java.net.*;                       // Networking
 import java.util.*;                      // Utility classes
 import java.util.Date;                   // Date handling
 import java.util.List;                   // List interface
@@ -11,395 +11,17 @@ import java.util.ArrayList;              // List implementation
 import java.util.HashMap;                // Map implementation
 import java.util.Map;                    // Map interface
 
-// ===== OBJECT-ORIENTED DESIGN =====
-
-abstract class BankAccount {
-    protected String accountNumber;
-    protected String accountHolder;
-    protected double balance;
-    protected String accountType;
-    protected Date createdDate;
-    protected String email;
-    protected String phone;
-    protected String address;
-    protected String dob;
-    protected String gender;
-
-    public BankAccount(String accountNumber, String accountHolder, double initialBalance, String accountType) {
-        this.accountNumber = accountNumber;
-        this.accountHolder = accountHolder;
-        this.balance = initialBalance;
-        this.accountType = accountType;
-        this.createdDate = new Date();
-    }
-
-    // Enhanced constructor with additional fields
-    public BankAccount(String accountNumber, String accountHolder, double initialBalance, String accountType, 
-                      String email, String phone, String address, String dob, String gender) {
-        this(accountNumber, accountHolder, initialBalance, accountType);
-        this.email = email;
-        this.phone = phone;
-        this.address = address;
-        this.dob = dob;
-        this.gender = gender;
-    }
-
-    // Abstract methods
-    public abstract double calculateInterest();
-    public abstract double getMinimumBalance();
-
-    // Concrete methods
-    public boolean deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            return true;
-        }
-        return false;
-    }
-
-    public boolean withdraw(double amount) {
-        if (amount > 0 && (balance - amount) >= getMinimumBalance()) {
-            balance -= amount;
-            return true;
-        }
-        return false;
-    }
-
-    public boolean transfer(BankAccount toAccount, double amount) {
-        if (this.withdraw(amount)) {
-            toAccount.deposit(amount);
-            return true;
-        }
-        return false;
-    }
-
-    // Getters
-    public String getAccountNumber() { return accountNumber; }
-    public String getAccountHolder() { return accountHolder; }
-    public double getBalance() { return balance; }
-    public String getAccountType() { return accountType; }
-    public Date getCreatedDate() { return createdDate; }
-    public String getEmail() { return email; }
-    public String getPhone() { return phone; }
-    public String getAddress() { return address; }
-    public String getDob() { return dob; }
-    public String getGender() { return gender; }
-
-    @Override
-    public String toString() {
-        return String.format("Account[%s, Holder: %s, Balance: Rs%.2f, Type: %s]", 
-                           accountNumber, accountHolder, balance, accountType);
-    }
-}
-
-class SavingsAccount extends BankAccount {
-    private static final double INTEREST_RATE = 0.02;
-    private static final double MIN_BALANCE = 100.0;
-
-    public SavingsAccount(String accountNumber, String accountHolder, double initialBalance) {
-        super(accountNumber, accountHolder, initialBalance, "Savings");
-    }
-
-    public SavingsAccount(String accountNumber, String accountHolder, double initialBalance,
-                         String email, String phone, String address, String dob, String gender) {
-        super(accountNumber, accountHolder, initialBalance, "Savings", email, phone, address, dob, gender);
-    }
-
-    @Override
-    public double calculateInterest() {
-        return balance * INTEREST_RATE;
-    }
-
-    @Override
-    public double getMinimumBalance() {
-        return MIN_BALANCE;
-    }
-}
-
-class CurrentAccount extends BankAccount {
-    private static final double INTEREST_RATE = 0.01;
-    private static final double MIN_BALANCE = 5000.0;
-
-    public CurrentAccount(String accountNumber, String accountHolder, double initialBalance) {
-        super(accountNumber, accountHolder, initialBalance, "Current");
-    }
-
-    public CurrentAccount(String accountNumber, String accountHolder, double initialBalance,
-                         String email, String phone, String address, String dob, String gender) {
-        super(accountNumber, accountHolder, initialBalance, "Current", email, phone, address, dob, gender);
-    }
-
-    @Override
-    public double calculateInterest() {
-        return balance * INTEREST_RATE;
-    }
-
-    @Override
-    public double getMinimumBalance() {
-        return MIN_BALANCE;
-    }
-}
-
-class BankTransaction {
-    private String transactionId;
-    private String accountNumber;
-    private String type;
-    private double amount;
-    private Date timestamp;
-    private String description;
-
-    public BankTransaction(String accountNumber, String type, double amount, String description) {
-        this.transactionId = UUID.randomUUID().toString().substring(0, 8);
-        this.accountNumber = accountNumber;
-        this.type = type;
-        this.amount = amount;
-        this.timestamp = new Date();
-        this.description = description;
-    }
-
-    // Getters
-    public String getTransactionId() { return transactionId; }
-    public String getAccountNumber() { return accountNumber; }
-    public String getType() { return type; }
-    public double getAmount() { return amount; }
-    public Date getTimestamp() { return timestamp; }
-    public String getDescription() { return description; }
-}
-
-class BankUser {
-    private String userId;
-    private String username;
-    private String password;
-    private String email;
-    private String phone;
-    private java.util.List<BankAccount> accounts;
-
-    public BankUser(String userId, String username, String password, String email, String phone) {
-        this.userId = userId;
-        this.username = username;
-        this.password = password;
-        this.email = email;
-        this.phone = phone;
-        this.accounts = new ArrayList<>();
-    }
-
-    public void addAccount(BankAccount account) {
-        accounts.add(account);
-    }
-
-    public BankAccount getAccount(String accountNumber) {
-        for (BankAccount account : accounts) {
-            if (account.getAccountNumber().equals(accountNumber)) {
-                return account;
-            }
-        }
-        return null;
-    }
-
-    // Getters
-    public String getUserId() { return userId; }
-    public String getUsername() { return username; }
-    public String getPassword() { return password; }
-    public String getEmail() { return email; }
-    public String getPhone() { return phone; }
-    public java.util.List<BankAccount> getAccounts() { return accounts; }
-}
-
-class BankingService {
-    private static BankingService instance;
-    private Map<String, BankUser> users;
-    private Map<String, BankAccount> accounts;
-    private java.util.List<BankTransaction> transactions;
-
-    private BankingService() {
-        users = new HashMap<>();
-        accounts = new HashMap<>();
-        transactions = new ArrayList<>();
-        initializeSampleData();
-    }
-
-    public static synchronized BankingService getInstance() {
-        if (instance == null) {
-            instance = new BankingService();
-        }
-        return instance;
-    }
-
-    private void initializeSampleData() {
-        // Create sample users and accounts with sufficient balance
-        BankUser user1 = new BankUser("U001", "srisha", "password123", "sri@email.com", "1234567890");
-        BankUser user2 = new BankUser("U002", "shilki", "password456", "shilki@email.com", "0987654321");
-
-        // Create accounts with sufficient balance for testing transfers
-        SavingsAccount acc1 = new SavingsAccount("ACC001", "srisha", 50000.0);
-        CurrentAccount acc2 = new CurrentAccount("ACC002", "shilki", 100000.0);
-
-        user1.addAccount(acc1);
-        user2.addAccount(acc2);
-
-        users.put(user1.getUserId(), user1);
-        users.put(user2.getUserId(), user2);
-        accounts.put(acc1.getAccountNumber(), acc1);
-        accounts.put(acc2.getAccountNumber(), acc2);
-
-        // Add some initial transactions for testing
-        transactions.add(new BankTransaction("ACC001", "DEPOSIT", 50000.0, "Initial deposit"));
-        transactions.add(new BankTransaction("ACC002", "DEPOSIT", 100000.0, "Initial deposit"));
-    }
-
-    public BankUser authenticateUser(String username, String password) {
-        for (BankUser user : users.values()) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                return user;
-            }
-        }
-        return null;
-    }
-
-    // New method to register user
-    public boolean registerUser(String username, String password, String email, String phone, 
-                               BankAccount account) {
-        // Check if username already exists
-        for (BankUser user : users.values()) {
-            if (user.getUsername().equals(username)) {
-                return false;
-            }
-        }
-
-        // Create new user
-        String userId = "U" + String.format("%03d", users.size() + 1);
-        BankUser newUser = new BankUser(userId, username, password, email, phone);
-        newUser.addAccount(account);
-
-        users.put(userId, newUser);
-        accounts.put(account.getAccountNumber(), account);
-
-        // Add initial deposit transaction of Rs 10,000
-        transactions.add(new BankTransaction(account.getAccountNumber(), "DEPOSIT", 10000.0, "Account opening bonus"));
-
-        return true;
-    }
-
-    public boolean transferMoney(String fromAccount, String toAccount, double amount, String description) {
-        System.out.println("Attempting transfer: " + fromAccount + " -> " + toAccount + " Amount: " + amount);
-        
-        BankAccount fromAcc = accounts.get(fromAccount);
-        BankAccount toAcc = accounts.get(toAccount);
-
-        if (fromAcc == null) {
-            System.out.println("From account not found: " + fromAccount);
-            return false;
-        }
-        
-        if (toAcc == null) {
-            System.out.println("To account not found: " + toAccount);
-            return false;
-        }
-
-        if (fromAcc.equals(toAcc)) {
-            System.out.println("Cannot transfer to same account");
-            return false;
-        }
-
-        System.out.println("From account balance: " + fromAcc.getBalance());
-        System.out.println("To account balance: " + toAcc.getBalance());
-
-        if (fromAcc.withdraw(amount)) {
-            toAcc.deposit(amount);
-            
-            // Record transactions
-            transactions.add(new BankTransaction(fromAccount, "DEBIT", amount, 
-                "Transfer to " + toAccount + " - " + description));
-            transactions.add(new BankTransaction(toAccount, "CREDIT", amount, 
-                "Transfer from " + fromAccount + " - " + description));
-            
-            System.out.println("Transfer successful!");
-            System.out.println("New from balance: " + fromAcc.getBalance());
-            System.out.println("New to balance: " + toAcc.getBalance());
-            return true;
-        } else {
-            System.out.println("Withdrawal failed - insufficient funds or below minimum balance");
-            return false;
-        }
-    }
-
-    public java.util.List<BankTransaction> getTransactionHistory(String accountNumber) {
-        java.util.List<BankTransaction> accountTransactions = new ArrayList<>();
-        for (BankTransaction t : transactions) {
-            if (t.getAccountNumber().equals(accountNumber)) {
-                accountTransactions.add(t);
-            }
-        }
-        return accountTransactions;
-    }
-
-    public BankAccount getAccount(String accountNumber) {
-        return accounts.get(accountNumber);
-    }
-
-    public java.util.List<BankAccount> getUserAccounts(String userId) {
-        BankUser user = users.get(userId);
-        return user != null ? user.getAccounts() : new ArrayList<>();
-    }
-
-    // Method to get all accounts for transfer
-    public java.util.List<BankAccount> getAllAccounts() {
-        return new ArrayList<>(accounts.values());
-    }
-
-    // Method to get all accounts for debugging
-    public void printAllAccounts() {
-        System.out.println("=== ALL ACCOUNTS ===");
-        for (BankAccount account : accounts.values()) {
-            System.out.println(account.getAccountNumber() + " - " + account.getAccountHolder() + " - Balance: " + account.getBalance());
-        }
-    }
-}
-
-// Simple DatabaseService without SQLite
-class DatabaseService {
-    public DatabaseService() {
-        System.out.println("Database service initialized (in-memory mode)");
-    }
-
-    public void saveTransaction(BankTransaction transaction) {
-        System.out.println("Saving transaction: " + transaction.getDescription());
-    }
-}
-
-// Simple BankServer without networking
-class BankServer {
-    private BankingService bankingService;
-    private boolean running;
-
-    public BankServer() {
-        bankingService = BankingService.getInstance();
-        running = true;
-        System.out.println("Bank for Women Server simulation started");
-    }
-
-    public void startServer() {
-        System.out.println("Server running in simulation mode...");
-        // No actual networking, just simulation
-    }
-
-    public void stopServer() {
-        running = false;
-        System.out.println("Server stopped");
-    }
-}
-
 // Registration Page
 class RegistrationPage extends JFrame {
-    private BankingService bankingService;
+    private final BankOperations bankingService;
     private JPanel mainPanel;
     private JTextField usernameField, fullNameField, emailField, phoneField, addressField, dobField;
     private JPasswordField passwordField, confirmPasswordField;
     private JComboBox<String> accountTypeCombo, genderCombo;
     private JButton registerButton, backButton;
 
-    public RegistrationPage() {
-        bankingService = BankingService.getInstance();
+    public RegistrationPage(BankOperations bankingService) {
+        this.bankingService = bankingService;
         initializeGUI();
     }
 
@@ -534,33 +156,26 @@ class RegistrationPage extends JFrame {
             return;
         }
 
-        // Generate account number
-        String accountNumber = "ACC" + (System.currentTimeMillis() % 100000);
-        
-        // Create account based on type with Rs 10,000 initial balance
-        BankAccount newAccount;
-        if (accountType.equals("Savings Account")) {
-            newAccount = new SavingsAccount(accountNumber, fullName, 10000.0, email, phone, address, dob, gender);
-        } else {
-            newAccount = new CurrentAccount(accountNumber, fullName, 10000.0, email, phone, address, dob, gender);
-        }
+        // The bank assigns the account number and the Rs 10,000 opening balance
+        String type = accountType.equals("Savings Account") ? "Savings" : "Current";
 
         // Register user
-        boolean success = bankingService.registerUser(username, password, email, phone, newAccount);
-        
-        if (success) {
-            JOptionPane.showMessageDialog(this, 
-                "Registration Successful!\n\n" +
-                "Your account has been created.\n" +
-                "Account Number: " + accountNumber + "\n" +
-                "Initial Balance: Rs 10,000.00\n" +
-                "You can now login with your credentials.",
-                "Success", JOptionPane.INFORMATION_MESSAGE);
-            goBackToLogin();
-        } else {
-            JOptionPane.showMessageDialog(this, "Username already exists!", 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        NetApp.background(this, () -> bankingService.registerUser(username, password, email, phone, type,
+                fullName, address, dob, gender), accountNumber -> {
+            if (accountNumber != null) {
+                JOptionPane.showMessageDialog(this, 
+                    "Registration Successful!\n\n" +
+                    "Your account has been created.\n" +
+                    "Account Number: " + accountNumber + "\n" +
+                    "Initial Balance: Rs 10,000.00\n" +
+                    "You can now login with your credentials.",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+                goBackToLogin();
+            } else {
+                JOptionPane.showMessageDialog(this, "Username already exists!", 
+                                            "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     private void goBackToLogin() {
@@ -569,7 +184,8 @@ class RegistrationPage extends JFrame {
 }
 
 public class NetApp extends JFrame {
-    private BankingService bankingService;
+    private final java.util.concurrent.CompletableFuture<BankOperations> serviceReady;
+    private volatile BankOperations bankingService; // set once serviceReady completes
     private BankUser currentUser;
     private BankAccount currentAccount;
 
@@ -585,10 +201,13 @@ public class NetApp extends JFrame {
     private JLabel welcomeLabel;
     private JComboBox<String> accountComboBox;
     private JLabel balanceLabel;
+    private JLabel portfolioLabel;
     private JTable transactionTable;
     private DefaultTableModel transactionModel;
     
     // Transfer Panel
+    private JLabel fromAccountLabel;
+    private JLabel ownAccountsLabel;
     private JTextField toAccountField;
     private JTextField amountField;
     private JTextArea descriptionArea;
@@ -597,16 +216,74 @@ public class NetApp extends JFrame {
     private JLabel profileNameLabel, profileEmailLabel, profilePhoneLabel, 
                    profileAddressLabel, profileDobLabel, profileGenderLabel;
 
+    // Analytics Panel
+    private JComboBox<String> analyticsPeriodBox;
+    private JLabel analyticsTotalsLabel;
+    private DefaultTableModel analyticsModel;
+
     // Map to store account selection
     private Map<String, BankAccount> accountMap;
 
+    // Panels other than login are built the first time they are shown
+    private final Map<String, java.util.function.Supplier<JPanel>> panelFactories = new HashMap<>();
+    private final Set<String> builtPanels = new HashSet<>();
+
     public NetApp() {
-        bankingService = BankingService.getInstance();
+        // The core starts behind the login screen instead of before it
+        serviceReady = java.util.concurrent.CompletableFuture.supplyAsync(NetApp::connect, r -> {
+            Thread thread = new Thread(r, "service-init");
+            thread.setDaemon(true);
+            thread.start();
+        });
         accountMap = new HashMap<>();
         initializeGUI();
         setupEventListeners();
     }
 
+    // The in-process core, or a thin client of the server named by bank.server
+    // (host:port, also --server)
+    private static BankOperations connect() {
+        String server = System.getProperty("bank.server");
+        return server != null ? RemoteBankClient.forAddress(server) : BankingService.getInstance();
+    }
+
+    // Called from background workers; blocks only if the user gets past the
+    // login screen before start-up finishes
+    private BankOperations service() {
+        if (bankingService == null) {
+            bankingService = serviceReady.join();
+        }
+        return bankingService;
+    }
+
+    // Service calls run on a SwingWorker, since a thin client waits on the
+    // network for every one of them; the result is handed to done on the EDT,
+    // and a failure is shown to the user instead
+    static <T> void background(Component parent, java.util.concurrent.Callable<T> call,
+                               java.util.function.Consumer<T> done) {
+        new SwingWorker<T, Void>() {
+            @Override
+            protected T doInBackground() throws Exception {
+                return call.call();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    done.accept(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    JOptionPane.showMessageDialog(parent, e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private <T> void background(java.util.concurrent.Callable<T> call, java.util.function.Consumer<T> done) {
+        background(this, call, done);
+    }
+
     private void initializeGUI() {
         setTitle("Bank for Women - Net Banking Application");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -621,9 +298,11 @@ public class NetApp extends JFrame {
 
         // Create different panels
         mainPanel.add(createLoginPanel(), "LOGIN");
-        mainPanel.add(createDashboardPanel(), "DASHBOARD");
-        mainPanel.add(createTransferPanel(), "TRANSFER");
-        mainPanel.add(createProfilePanel(), "PROFILE");
+        builtPanels.add("LOGIN");
+        panelFactories.put("DASHBOARD", this::createDashboardPanel);
+        panelFactories.put("TRANSFER", this::createTransferPanel);
+        panelFactories.put("PROFILE", this::createProfilePanel);
+        panelFactories.put("ANALYTICS", this::createAnalyticsPanel);
 
         add(mainPanel);
         showLoginPanel();
@@ -776,7 +455,18 @@ public class NetApp extends JFrame {
         balanceLabel.setForeground(new Color(199, 21, 133));
         accountSelectionPanel.add(balanceLabel);
 
-        accountPanel.add(accountSelectionPanel, BorderLayout.NORTH);
+        // Totals across all the user's accounts, read from the maintained aggregate
+        JPanel portfolioPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        portfolioPanel.setBackground(Color.WHITE);
+        portfolioLabel = new JLabel(" ");
+        portfolioLabel.setForeground(new Color(139, 69, 119));
+        portfolioPanel.add(portfolioLabel);
+
+        JPanel accountHeaderPanel = new JPanel(new GridLayout(2, 1));
+        accountHeaderPanel.setBackground(Color.WHITE);
+        accountHeaderPanel.add(accountSelectionPanel);
+        accountHeaderPanel.add(portfolioPanel);
+        accountPanel.add(accountHeaderPanel, BorderLayout.NORTH);
 
         // Transactions Table
         String[] columns = {"Date", "Type", "Amount", "Description"};
@@ -808,6 +498,11 @@ public class NetApp extends JFrame {
         refreshButton.addActionListener(e -> updateAccountInfo());
         actionPanel.add(refreshButton);
 
+        JButton analyticsButton = new JButton("Spending Analytics");
+        styleButton(analyticsButton, new Color(186, 85, 211));
+        analyticsButton.addActionListener(e -> showAnalyticsPanel());
+        actionPanel.add(analyticsButton);
+
         JButton loanButton = new JButton(" Apply for Loan");
         styleButton(loanButton, new Color(255, 105, 180));
         loanButton.addActionListener(e -> showLoanOptions());
@@ -854,11 +549,8 @@ public class NetApp extends JFrame {
 
             formGbc.gridx = 1;
             if (i == 0) {
-                // Show current user's account number with balance and holder name
-                String fromAccountText = currentAccount != null ? 
-                    currentAccount.getAccountNumber() + " (" + currentAccount.getAccountHolder() + ") - Balance: Rs" + 
-                    String.format("%.2f", currentAccount.getBalance()) : "No account selected";
-                JLabel fromAccountLabel = new JLabel(fromAccountText);
+                // Filled in by updateTransferInfo each time the panel is shown
+                fromAccountLabel = new JLabel("No account selected");
                 fromAccountLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
                 fromAccountLabel.setForeground(new Color(199, 21, 133));
                 formPanel.add(fromAccountLabel, formGbc);
@@ -877,32 +569,14 @@ public class NetApp extends JFrame {
             }
         }
 
-        // Help text - show available accounts for transfer
+        // Help text - the user's own other accounts, also filled in by updateTransferInfo
         formGbc.gridy = labels.length;
         formGbc.gridx = 0;
         formGbc.gridwidth = 2;
-        
-        // Get all available accounts for transfer
-        StringBuilder availableAccounts = new StringBuilder("Available accounts for transfer: ");
-        java.util.List<BankAccount> allAccounts = bankingService.getAllAccounts();
-        boolean first = true;
-        for (BankAccount acc : allAccounts) {
-            if (currentAccount != null && !acc.getAccountNumber().equals(currentAccount.getAccountNumber())) {
-                if (!first) {
-                    availableAccounts.append(", ");
-                }
-                availableAccounts.append(acc.getAccountNumber())
-                               .append(" (")
-                               .append(acc.getAccountHolder())
-                               .append(")");
-                first = false;
-            }
-        }
-        
-        JLabel helpLabel = new JLabel("<html>" + availableAccounts.toString() + "</html>");
-        helpLabel.setFont(new Font("Segoe UI", Font.ITALIC, 11));
-        helpLabel.setForeground(new Color(120, 120, 120));
-        formPanel.add(helpLabel, formGbc);
+        ownAccountsLabel = new JLabel(" ");
+        ownAccountsLabel.setFont(new Font("Segoe UI", Font.ITALIC, 11));
+        ownAccountsLabel.setForeground(new Color(120, 120, 120));
+        formPanel.add(ownAccountsLabel, formGbc);
 
         // Buttons
         formGbc.gridy = labels.length + 1;
@@ -994,6 +668,71 @@ public class NetApp extends JFrame {
         return panel;
     }
 
+    private JPanel createAnalyticsPanel() {
+        JPanel panel = new JPanel(new BorderLayout(15, 15));
+        panel.setBackground(new Color(255, 240, 245));
+        panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+
+        // Header
+        JLabel titleLabel = new JLabel("Spending Analytics", JLabel.CENTER);
+        titleLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
+        titleLabel.setForeground(new Color(219, 112, 147));
+        panel.add(titleLabel, BorderLayout.NORTH);
+
+        JPanel reportPanel = new JPanel(new BorderLayout(10, 10));
+        reportPanel.setBackground(Color.WHITE);
+        reportPanel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(219, 112, 147), 1),
+            BorderFactory.createEmptyBorder(15, 15, 15, 15)
+        ));
+
+        JPanel selectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        selectionPanel.setBackground(Color.WHITE);
+        selectionPanel.add(new JLabel("Show:"));
+        analyticsPeriodBox = new JComboBox<>(new String[]{"Last 30 days", "Last 12 months", "Last 5 years"});
+        analyticsPeriodBox.addActionListener(e -> updateAnalytics());
+        selectionPanel.add(analyticsPeriodBox);
+
+        analyticsTotalsLabel = new JLabel();
+        analyticsTotalsLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        analyticsTotalsLabel.setForeground(new Color(199, 21, 133));
+        selectionPanel.add(analyticsTotalsLabel);
+        reportPanel.add(selectionPanel, BorderLayout.NORTH);
+
+        // One row per period, one column per category
+        String[] columns = new String[4 + SpendingRollups.CATEGORIES.length];
+        columns[0] = "Period";
+        columns[1] = "Income";
+        columns[2] = "Spending";
+        columns[3] = "Net";
+        System.arraycopy(SpendingRollups.CATEGORIES, 0, columns, 4, SpendingRollups.CATEGORIES.length);
+        analyticsModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable analyticsTable = new JTable(analyticsModel);
+        analyticsTable.setBackground(new Color(255, 250, 250));
+        analyticsTable.setSelectionBackground(new Color(255, 182, 193));
+        reportPanel.add(new JScrollPane(analyticsTable), BorderLayout.CENTER);
+
+        panel.add(reportPanel, BorderLayout.CENTER);
+
+        // Back button
+        JPanel buttonPanel = new JPanel(new FlowLayout());
+        buttonPanel.setBackground(new Color(255, 240, 245));
+
+        JButton backButton = new JButton("Back to Dashboard");
+        styleButton(backButton, new Color(219, 112, 147));
+        backButton.addActionListener(e -> showDashboardPanel());
+        buttonPanel.add(backButton);
+
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+
+        return panel;
+    }
+
     private void styleButton(JButton button, Color backgroundColor) {
         button.setBackground(backgroundColor);
         button.setForeground(Color.WHITE);
@@ -1011,16 +750,25 @@ public class NetApp extends JFrame {
         String username = usernameField.getText();
         String password = new String(passwordField.getPassword());
 
-        currentUser = bankingService.authenticateUser(username, password);
-        if (currentUser != null) {
-            JOptionPane.showMessageDialog(this, "Login successful! Welcome to Bank for Women.", 
-                                        "Success", JOptionPane.INFORMATION_MESSAGE);
-            initializeUserDashboard();
-            showDashboardPanel();
-        } else {
-            JOptionPane.showMessageDialog(this, "Invalid credentials! Please try again.", 
-                                        "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        background(() -> service().acquireLogin(username), retryAfter -> {
+            if (retryAfter > 0) {
+                JOptionPane.showMessageDialog(this, "Too many login attempts! Please try again in " +
+                                            ((retryAfter + 999) / 1000) + " seconds.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            background(() -> service().authenticateUser(username, password), user -> {
+                currentUser = user;
+                if (currentUser != null) {
+                    JOptionPane.showMessageDialog(this, "Login successful! Welcome to Bank for Women.", 
+                                                "Success", JOptionPane.INFORMATION_MESSAGE);
+                    initializeUserDashboard();
+                    showDashboardPanel();
+                } else {
+                    JOptionPane.showMessageDialog(this, "Invalid credentials! Please try again.", 
+                                                "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        });
     }
 
     private void performLogout() {
@@ -1029,41 +777,116 @@ public class NetApp extends JFrame {
         usernameField.setText("");
         passwordField.setText("");
         accountMap.clear();
+        if (toAccountField != null) {
+            toAccountField.setText("");
+            amountField.setText("");
+            descriptionArea.setText("");
+        }
         showLoginPanel();
     }
 
     private void initializeUserDashboard() {
+        ensurePanel("DASHBOARD");
         welcomeLabel.setText("Welcome, " + currentUser.getUsername() + "!");
         
         // Populate account combo box
         accountComboBox.removeAllItems();
         accountMap.clear();
         
-        java.util.List<BankAccount> accounts = bankingService.getUserAccounts(currentUser.getUserId());
-        for (BankAccount account : accounts) {
-            String displayText = account.getAccountNumber() + " - " + account.getAccountType() + " - Balance: Rs" + account.getBalance();
-            accountComboBox.addItem(displayText);
-            accountMap.put(displayText, account);
-        }
-        
-        if (!accounts.isEmpty()) {
-            String firstItem = (String) accountComboBox.getItemAt(0);
-            currentAccount = accountMap.get(firstItem);
-            updateAccountInfo();
-        }
+        // Balances are not part of the entries: the selected account's balance and
+        // the portfolio totals are shown beside the list and kept current there
+        BankUser user = currentUser;
+        background(() -> service().getUserAccounts(user.getUserId()), accounts -> {
+            if (currentUser != user) {
+                return;              // logged out meanwhile
+            }
+            for (BankAccount account : accounts) {
+                String displayText = account.getAccountNumber() + " - " + account.getAccountType();
+                accountComboBox.addItem(displayText);
+                accountMap.put(displayText, account);
+            }
+
+            if (!accounts.isEmpty()) {
+                String firstItem = (String) accountComboBox.getItemAt(0);
+                currentAccount = accountMap.get(firstItem);
+                updateAccountInfo();
+            }
+        });
     }
 
     private void updateAccountInfo() {
         if (currentAccount != null) {
-            balanceLabel.setText(String.format("Balance: Rs %.2f", currentAccount.getBalance()));
-            updateTransactionHistory();
+            // Balance and history come from the same commit so they always agree;
+            // the account itself is re-read because shards and the server hand out copies
+            String accountNumber = currentAccount.getAccountNumber();
+            background(() -> service().getAccountVersion(accountNumber), version -> {
+                // Dropped if another account was selected meanwhile
+                if (version != null && currentAccount != null
+                        && accountNumber.equals(currentAccount.getAccountNumber())) {
+                    currentAccount = version.getAccount();
+                    balanceLabel.setText(String.format("Balance: Rs %.2f", version.getBalance()));
+                    updateTransactionHistory(version.getTransactionHistory());
+                }
+            });
+        }
+        updatePortfolioInfo();
+    }
+
+    // The panel outlives a session, so everything user-specific on it is
+    // re-read here: the balance as committed, and only this user's accounts
+    private void updateTransferInfo() {
+        if (currentAccount == null || currentUser == null) {
+            fromAccountLabel.setText("No account selected");
+            ownAccountsLabel.setText(" ");
+            return;
+        }
+        BankUser user = currentUser;
+        BankAccount account = currentAccount;
+        background(() -> service().getBalances(java.util.Collections.singletonList(account.getAccountNumber()))[0],
+            balance -> {
+                if (currentAccount == account) {
+                    fromAccountLabel.setText(account.getAccountNumber() + " (" + account.getAccountHolder()
+                        + ") - Balance: Rs" + String.format("%.2f", balance));
+                }
+            });
+
+        background(() -> service().getUserAccounts(user.getUserId()), accounts -> {
+            if (currentUser != user || currentAccount != account) {
+                return;
+            }
+            StringBuilder ownAccounts = new StringBuilder();
+            for (BankAccount acc : accounts) {
+                if (!acc.getAccountNumber().equals(account.getAccountNumber())) {
+                    ownAccounts.append(ownAccounts.length() == 0 ? "Your other accounts: " : ", ")
+                               .append(acc.getAccountNumber())
+                               .append(" (")
+                               .append(acc.getAccountType())
+                               .append(")");
+                }
+            }
+            ownAccountsLabel.setText(ownAccounts.length() == 0 ? " " : "<html>" + ownAccounts + "</html>");
+        });
+    }
+
+    private void updatePortfolioInfo() {
+        BankUser user = currentUser;
+        if (user == null) {
+            portfolioLabel.setText(" ");
+            return;
         }
+        background(() -> service().getPortfolio(user.getUserId()), totals -> {
+            if (currentUser != user) {
+                return;
+            }
+            portfolioLabel.setText(totals == null ? " " : String.format(
+                "All %d accounts - Total: Rs %.2f   Available: Rs %.2f   Interest accrued: Rs %.2f",
+                totals.getAccounts(), totals.getTotalBalance(), totals.getAvailableBalance(), totals.getInterestAccrued()));
+        });
     }
 
-    private void updateTransactionHistory() {
+    private void updateTransactionHistory(java.util.List<BankTransaction> transactions) {
         transactionModel.setRowCount(0);
         if (currentAccount != null) {
-            java.util.List<BankTransaction> transactions = bankingService.getTransactionHistory(currentAccount.getAccountNumber());
             // Sort transactions by timestamp (newest first)
             transactions.sort((t1, t2) -> t2.getTimestamp().compareTo(t1.getTimestamp()));
             
@@ -1078,6 +901,62 @@ public class NetApp extends JFrame {
         }
     }
 
+    // Reads the rollups, so the cost is one row per period however long the history
+    private void updateAnalytics() {
+        if (currentAccount == null) {
+            analyticsModel.setRowCount(0);
+            analyticsTotalsLabel.setText("");
+            return;
+        }
+        SpendingRollups.Granularity granularity;
+        int periods;
+        java.time.format.DateTimeFormatter format;
+        switch (analyticsPeriodBox.getSelectedIndex()) {
+            case 0:
+                granularity = SpendingRollups.Granularity.DAY;
+                periods = 30;
+                format = java.time.format.DateTimeFormatter.ofPattern("dd MMM yyyy");
+                break;
+            case 1:
+                granularity = SpendingRollups.Granularity.MONTH;
+                periods = 12;
+                format = java.time.format.DateTimeFormatter.ofPattern("MMM yyyy");
+                break;
+            default:
+                granularity = SpendingRollups.Granularity.YEAR;
+                periods = 5;
+                format = java.time.format.DateTimeFormatter.ofPattern("yyyy");
+                break;
+        }
+        int toPeriod = SpendingRollups.period(granularity, java.time.LocalDate.now());
+        int fromPeriod = toPeriod - periods + 1;
+
+        BankAccount account = currentAccount;
+        background(() -> service().getSpendingBuckets(account.getAccountNumber(), granularity, fromPeriod, toPeriod),
+            buckets -> {
+                if (currentAccount != account) {
+                    return;
+                }
+                analyticsModel.setRowCount(0);
+                // Newest first, like the transaction table
+                for (int i = buckets.size() - 1; i >= 0; i--) {
+                    SpendingRollups.Bucket bucket = buckets.get(i);
+                    Object[] row = new Object[4 + SpendingRollups.CATEGORIES.length];
+                    row[0] = SpendingRollups.startOf(granularity, bucket.getPeriod()).format(format);
+                    row[1] = String.format("Rs %.2f", bucket.getIncome());
+                    row[2] = String.format("Rs %.2f", bucket.getSpending());
+                    row[3] = String.format("Rs %.2f", bucket.getNet());
+                    for (int c = 0; c < SpendingRollups.CATEGORIES.length; c++) {
+                        row[4 + c] = String.format("Rs %.2f", bucket.getCategory(c));
+                    }
+                    analyticsModel.addRow(row);
+                }
+                SpendingRollups.Bucket total = SpendingRollups.total(buckets, fromPeriod);
+                analyticsTotalsLabel.setText(String.format("Income: Rs %.2f   Spending: Rs %.2f   Net: Rs %.2f",
+                    total.getIncome(), total.getSpending(), total.getNet()));
+            });
+    }
+
     private void updateProfileInfo() {
         if (currentAccount != null) {
             profileNameLabel.setText(currentAccount.getAccountHolder());
@@ -1089,43 +968,70 @@ public class NetApp extends JFrame {
         }
     }
 
+    private void ensurePanel(String name) {
+        if (builtPanels.add(name)) {
+            mainPanel.add(panelFactories.get(name).get(), name);
+        }
+    }
+
+    private void showCard(String name) {
+        showCard(name, null);
+    }
+
+    // Builds the panel on first use, refreshes it and shows it, recorded as a
+    // PanelEvent so slow rendering shows up next to the service calls
+    private void showCard(String name, Runnable refresh) {
+        BankEvents.PanelEvent event = new BankEvents.PanelEvent();
+        event.begin();
+        boolean built = !builtPanels.contains(name);
+        ensurePanel(name);
+        if (refresh != null) {
+            refresh.run();
+        }
+        cardLayout.show(mainPanel, name);
+        event.finish(name, built);
+    }
+
     private void showLoginPanel() {
-        cardLayout.show(mainPanel, "LOGIN");
+        showCard("LOGIN");
     }
 
     private void showDashboardPanel() {
-        cardLayout.show(mainPanel, "DASHBOARD");
+        showCard("DASHBOARD");
     }
 
     private void showTransferPanel() {
         // Ensure current account is selected
         if (currentAccount == null && currentUser != null) {
-            java.util.List<BankAccount> accounts = bankingService.getUserAccounts(currentUser.getUserId());
-            if (!accounts.isEmpty()) {
-                currentAccount = accounts.get(0);
-            }
+            BankUser user = currentUser;
+            background(() -> service().getUserAccounts(user.getUserId()), accounts -> {
+                if (currentAccount == null && currentUser == user && !accounts.isEmpty()) {
+                    currentAccount = accounts.get(0);
+                }
+                showCard("TRANSFER", this::updateTransferInfo);
+            });
+            return;
         }
-        cardLayout.show(mainPanel, "TRANSFER");
+        showCard("TRANSFER", this::updateTransferInfo);
     }
 
     private void showProfilePanel() {
-        updateProfileInfo();
-        cardLayout.show(mainPanel, "PROFILE");
+        showCard("PROFILE", this::updateProfileInfo);
+    }
+
+    private void showAnalyticsPanel() {
+        showCard("ANALYTICS", this::updateAnalytics);
     }
 
     private void showRegistrationPage() {
-        RegistrationPage registrationPage = new RegistrationPage();
-        registrationPage.setVisible(true);
+        background(this::service, service -> new RegistrationPage(service).setVisible(true));
     }
 
     private void showLoanOptions() {
-        String[] loanOptions = {
-            "Women Entrepreneurship Loan",
-            "Education Loan for Women",
-            "Home Loan (Special Women Scheme)",
-            "Personal Loan for Women",
-            "Business Loan for Women"
-        };
+        String[] loanOptions = new String[LoanScoring.SCHEMES.length];
+        for (int i = 0; i < loanOptions.length; i++) {
+            loanOptions[i] = LoanScoring.SCHEMES[i].getName();
+        }
 
         String selectedLoan = (String) JOptionPane.showInputDialog(this,
             "Select a loan option:",
@@ -1135,14 +1041,40 @@ public class NetApp extends JFrame {
             loanOptions,
             loanOptions[0]);
 
-        if (selectedLoan != null) {
+        if (selectedLoan == null || currentUser == null) {
+            return;
+        }
+        // Decided on the spot from the cached features of the customer's accounts
+        String userId = currentUser.getUserId();
+        int scheme = java.util.Arrays.asList(loanOptions).indexOf(selectedLoan);
+        background(() -> service().assessLoan(userId, scheme), decision -> {
+            if (decision != null) {
+                showLoanDecision(selectedLoan, decision);
+            }
+        });
+    }
+
+    private void showLoanDecision(String selectedLoan, LoanScoring.Decision decision) {
+        String features = String.format("Income in %d of the last %d months, Rs %.2f a month on average\n" +
+            "Average balance over %d days: Rs %.2f\nDeclined payments: %d\nScore: %d / 100",
+            decision.getMonthsWithIncome(), LoanScoring.INCOME_MONTHS, decision.getAverageMonthlyIncome(),
+            LoanScoring.DAYS, decision.getAverageBalance(), decision.getBounces(), decision.getScore());
+        if (decision.isEligible()) {
             JOptionPane.showMessageDialog(this,
                 "Loan Application Submitted!\n\n" +
                 "Loan Type: " + selectedLoan + "\n" +
+                String.format("You are eligible for up to Rs %.2f.%n%n", decision.getLimit()) +
+                features + "\n\n" +
                 "We will contact you within 2 business days.\n" +
                 "Special interest rates available for women applicants!",
                 "Application Received",
                 JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this,
+                "Loan Type: " + selectedLoan + "\n" +
+                "Not eligible yet: " + decision.getReason() + "\n\n" + features,
+                "Loan Eligibility",
+                JOptionPane.WARNING_MESSAGE);
         }
     }
 
@@ -1168,55 +1100,120 @@ public class NetApp extends JFrame {
                 return;
             }
 
-            // Check sufficient balance
-            if (amount > currentAccount.getBalance()) {
-                JOptionPane.showMessageDialog(this, 
-                    "Insufficient balance!\nAvailable: Rs" + currentAccount.getBalance() + 
-                    "\nRequired: Rs" + amount, "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-
-            boolean success = bankingService.transferMoney(
-                currentAccount.getAccountNumber(), toAccount, amount, description);
-
-            if (success) {
-                JOptionPane.showMessageDialog(this, 
-                    "Transfer completed successfully!\n\n" +
-                    "From: " + currentAccount.getAccountNumber() + "\n" +
-                    "To: " + toAccount + "\n" +
-                    "Amount: Rs" + amount + "\n" +
-                    "New Balance: Rs" + currentAccount.getBalance(),
-                    "Success", JOptionPane.INFORMATION_MESSAGE);
-                
-                toAccountField.setText("");
-                amountField.setText("");
-                descriptionArea.setText("");
-                updateAccountInfo();
-                showDashboardPanel();
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "Transfer failed!\n\n" +
-                    "Possible reasons:\n" +
-                    "- Recipient account not found\n" +
-                    "- Insufficient balance\n" +
-                    "- Amount below minimum balance requirement\n" +
-                    "- Invalid account number",
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            // Check sufficient balance; the held account may be a stale copy
+            String fromAccount = currentAccount.getAccountNumber();
+            String userId = currentUser != null ? currentUser.getUserId() : null;
+            background(() -> service().getBalances(java.util.Collections.singletonList(fromAccount))[0], balance -> {
+                if (amount > balance) {
+                    JOptionPane.showMessageDialog(this, 
+                        "Insufficient balance!\nAvailable: Rs" + balance + 
+                        "\nRequired: Rs" + amount, "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                background(() -> service().acquireTransfer(userId, fromAccount), retryAfter -> {
+                    if (retryAfter > 0) {
+                        JOptionPane.showMessageDialog(this, "Too many transfers! Please try again in " +
+                            ((retryAfter + 999) / 1000) + " seconds.", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    // The new balance, or null when the transfer was declined
+                    background(() -> service().transferMoney(fromAccount, toAccount, amount, description)
+                            ? service().getBalances(java.util.Collections.singletonList(fromAccount))[0] : null,
+                        newBalance -> showTransferResult(fromAccount, toAccount, amount, newBalance));
+                });
+            });
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Please enter a valid amount!", "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    private void showTransferResult(String fromAccount, String toAccount, double amount, Double newBalance) {
+        if (newBalance != null) {
+            JOptionPane.showMessageDialog(this, 
+                "Transfer completed successfully!\n\n" +
+                "From: " + fromAccount + "\n" +
+                "To: " + toAccount + "\n" +
+                "Amount: Rs" + amount + "\n" +
+                "New Balance: Rs" + newBalance,
+                "Success", JOptionPane.INFORMATION_MESSAGE);
+
+            toAccountField.setText("");
+            amountField.setText("");
+            descriptionArea.setText("");
+            updateAccountInfo();
+            showDashboardPanel();
+        } else {
+            JOptionPane.showMessageDialog(this, 
+                "Transfer failed!\n\n" +
+                "Possible reasons:\n" +
+                "- Recipient account not found\n" +
+                "- Insufficient balance\n" +
+                "- Amount below minimum balance requirement\n" +
+                "- Invalid account number",
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     // Main method to start the application
+    // java NetApp [--headless]: headless (also -Dbank.headless=true, or no
+    // display) starts only the banking core and the server
+    // java NetApp --server host:port: the GUI alone, as a client of that server
     public static void main(String[] args) {
-        // Start the bank server in simulation mode
-        BankServer server = new BankServer();
-        server.startServer();
+        int server = Arrays.asList(args).indexOf("--server");
+        if (server >= 0 && server + 1 < args.length) {
+            System.setProperty("bank.server", args[server + 1]);
+        }
+        boolean thinClient = System.getProperty("bank.server") != null;
+        if (!thinClient && (GraphicsEnvironment.isHeadless() || Boolean.getBoolean("bank.headless")
+                || Arrays.asList(args).contains("--headless"))) {
+            runHeadless();
+            return;
+        }
 
-        // Start the GUI
+        // Start the GUI first; the core and the server come up behind the login screen
+        StartupMetrics.setMode("gui");
         SwingUtilities.invokeLater(() -> {
-            new NetApp().setVisible(true);
+            NetApp app = new NetApp();
+            app.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    StartupMetrics.mark(StartupMetrics.LOGIN_SCREEN);
+                }
+            });
+            app.setVisible(true);
         });
+
+        // Start the bank server in simulation mode, unless one is already serving
+        if (!thinClient) {
+            startServer();
+        }
+    }
+
+    private static BankServer startServer() {
+        BankServer server = new BankServer();
+        StartupMetrics.mark(StartupMetrics.CORE_READY);
+        server.startServer();
+        StartupMetrics.mark(StartupMetrics.SERVER_READY);
+        return server;
+    }
+
+    private static void runHeadless() {
+        StartupMetrics.setMode("headless");
+        BankServer server = startServer();
+        System.out.println("Bank server listening on port " + server.getPort());
+
+        // Server threads are daemons; hold the process until it is told to stop
+        java.util.concurrent.CountDownLatch stopped = new java.util.concurrent.CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stopServer();
+            stopped.countDown();
+        }, "server-shutdown"));
+        while (stopped.getCount() > 0) {
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                // Keep serving until shutdown
+            }
+        }
     }
 }
\ No newline at end of file
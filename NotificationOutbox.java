@@ -0,0 +1,397 @@
+import java.util.ArrayDeque;             // Pending entries
+import java.util.ArrayList;              // List implementation
+import java.util.LinkedHashMap;          // Coalescing in arrival order
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Contacts by account
+
+// ===== NOTIFICATIONS =====
+// Customer alerts for postings, sign-ins and registration. Alerts for ledger
+// changes are queued by the committer while it publishes the commit, so an
+// alert exists exactly when its posting does and carries the same sequence;
+// the commit path only appends a reference, and all formatting and I/O happen
+// on the "notification-dispatcher" thread. That thread waits up to
+// bank.notify.batchMillis (200) to gather a batch of at most
+// bank.notify.batchSize (500) entries, coalesces each customer's entries into
+// one message, and hands the batch to the bank.notify.sink NotificationSink.
+// A failed batch is retried, backing off from bank.notify.retryMillis (500)
+// up to bank.notify.maxRetryMillis (30000). Replicas learn contacts but queue
+// nothing until promoted.
+//
+// With bank.db.dir the journal is the outbox: postings and registrations are
+// in the batch that commits them, sign-ins are journaled as batches of their
+// own, and each batch records the oldest sequence that may still be
+// undelivered. Only journaled alerts are sent. Past bank.notify.maxPending
+// (100000) queued alerts the queue stops taking more and the dispatcher reads
+// them back from the journal once it has room, and after a restart it resumes
+// from the recorded sequence, so nothing is dropped; an alert sharing that
+// sequence may be sent twice. Without a journal the queue is memory only and
+// holds whatever is pending.
+class NotificationOutbox implements LedgerListener {
+    private static final int DIGEST_LINES = 5;
+
+    private final NotificationSink sink;
+    private final int batchSize = Integer.getInteger("bank.notify.batchSize", 500);
+    private final long batchMillis = Long.getLong("bank.notify.batchMillis", 200);
+    private final int maxPending = Integer.getInteger("bank.notify.maxPending", 100_000);
+    private final long retryMillis = Long.getLong("bank.notify.retryMillis", 500);
+    private final long maxRetryMillis = Long.getLong("bank.notify.maxRetryMillis", 30_000);
+    private final Map<String, BankUser> ownersByAccount = new ConcurrentHashMap<>();
+    private final Map<String, BankUser> usersById = new ConcurrentHashMap<>();
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();   // guarded by this
+    private volatile boolean active;
+    private Thread dispatcher;                   // guarded by this
+    private LedgerCommitter committer;           // set by start
+    private DatabaseService journal;             // set before start; null keeps alerts in memory only
+    private long restoredFrom = -1;              // guarded by this; recovered resume sequence
+    private boolean spilling;                    // guarded by this; alerts from spillNext on are in the journal only
+    private long spillNext;                      // guarded by this
+    private long inFlight = -1;                  // guarded by this; first sequence of the batch being sent
+    private long deliveredThrough;               // guarded by this
+    private volatile long resumeSequence = Long.MAX_VALUE;
+    private volatile long delivered;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    // A queued alert; postings keep the ledger record and are worded later
+    private static final class Entry {
+        final long sequence;
+        final BankUser user;
+        final String kind;
+        final LedgerRecord record;
+        final String text;
+
+        Entry(long sequence, BankUser user, String kind, LedgerRecord record, String text) {
+            this.sequence = sequence;
+            this.user = user;
+            this.kind = kind;
+            this.record = record;
+            this.text = text;
+        }
+    }
+
+    // One message to one customer, possibly several alerts coalesced
+    static final class Notification {
+        private final long sequence;
+        private final String userId;
+        private final String email;
+        private final String phone;
+        private final String kind;
+        private final String text;
+
+        Notification(long sequence, String userId, String email, String phone, String kind, String text) {
+            this.sequence = sequence;
+            this.userId = userId;
+            this.email = email;
+            this.phone = phone;
+            this.kind = kind;
+            this.text = text;
+        }
+
+        public long getSequence() { return sequence; }
+        public String getUserId() { return userId; }
+        public String getEmail() { return email; }
+        public String getPhone() { return phone; }
+        public String getKind() { return kind; }
+        public String getText() { return text; }
+    }
+
+    public NotificationOutbox(NotificationSink sink) {
+        this.sink = sink;
+    }
+
+    public static NotificationOutbox fromSystemProperties() {
+        return new NotificationOutbox(NotificationSink.fromSpec(
+            System.getProperty("bank.notify.sink", "file:data/notifications.log")));
+    }
+
+    // Called before recovery: alerts are journaled and read back from there
+    public synchronized void useJournal(DatabaseService journal) {
+        this.journal = journal;
+    }
+
+    // Recovery: the journal's alerts from this sequence on were not known to be sent
+    public synchronized void restore(long resumeFrom) {
+        restoredFrom = resumeFrom;
+    }
+
+    // Starts queueing and dispatching; until then only contacts are tracked
+    public synchronized void start(LedgerCommitter committer) {
+        if (!Boolean.parseBoolean(System.getProperty("bank.notify.enabled", "true")) || dispatcher != null) {
+            return;
+        }
+        this.committer = committer;
+        long lastSequence = committer.getLastSequence();
+        deliveredThrough = lastSequence;
+        if (journal != null && restoredFrom >= 0 && restoredFrom <= lastSequence) {
+            spilling = true;
+            spillNext = restoredFrom;
+            audit.log(AuditLog.Event.NOTIFICATIONS_RESUMED, restoredFrom, lastSequence);
+        }
+        updateResume();
+        active = true;
+        dispatcher = new Thread(this::dispatchLoop, "notification-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void onCommit(LedgerRecord record) {
+        if (!active || record.isOpening()) {
+            return;
+        }
+        BankUser owner = ownersByAccount.get(record.getAccountNumber());
+        if (owner != null) {
+            enqueue(new Entry(record.getSequence(), owner, record.getType(), record, null));
+        }
+    }
+
+    @Override
+    public void onUserRegistered(long sequence, BankUser user) {
+        usersById.put(user.getUserId(), user);
+        for (BankAccount account : user.getAccounts()) {
+            ownersByAccount.put(account.getAccountNumber(), user);
+        }
+        if (active) {
+            enqueue(welcome(sequence, user));
+        }
+    }
+
+    private static Entry welcome(long sequence, BankUser user) {
+        return new Entry(sequence, user, "WELCOME", null, "Welcome, " + user.getUsername() + ". Your account is ready.");
+    }
+
+    // Sign-ins are not ledger changes: each takes the sequence of the next commit,
+    // and is queued and journaled between commits so it keeps its place
+    public void userSignedIn(BankUser user) {
+        if (!active) {
+            return;
+        }
+        String text = "New sign-in to your account at " + new java.util.Date() + ".";
+        committer.exclusively(() -> {
+            long sequence = committer.getLastSequence() + 1;
+            enqueue(new Entry(sequence, user, "SIGN_IN", null, text));
+            if (journal != null) {
+                journal.journalAlert(sequence, user.getUserId(), "SIGN_IN", text);
+            }
+        });
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getDeliveredCount() {
+        return delivered;
+    }
+
+    // Oldest sequence that may still have an undelivered alert; Long.MAX_VALUE
+    // until started
+    public long getResumeSequence() {
+        return resumeSequence;
+    }
+
+    // Committer's lock held, so entries arrive in sequence order. With a journal,
+    // a full queue stops at the next sequence and leaves the rest in the journal.
+    private synchronized void enqueue(Entry entry) {
+        if (!spilling && journal != null && pending.size() >= maxPending
+                && entry.sequence > pending.peekLast().sequence) {
+            spilling = true;
+            spillNext = entry.sequence;
+            audit.log(AuditLog.Event.NOTIFICATIONS_SPILLED, entry.sequence, pending.size());
+        }
+        if (spilling) {
+            return;
+        }
+        pending.add(entry);
+        if (pending.size() == 1) {
+            updateResume();
+        }
+        if (pending.size() == 1 || pending.size() == batchSize) {
+            notifyAll();
+        }
+    }
+
+    // Guarded by this
+    private void updateResume() {
+        if (inFlight >= 0) {
+            resumeSequence = inFlight;
+        } else if (!pending.isEmpty()) {
+            resumeSequence = pending.peek().sequence;
+        } else {
+            resumeSequence = spilling ? spillNext : deliveredThrough + 1;
+        }
+    }
+
+    // Dispatcher thread: reads the alerts left in the journal back into the
+    // queue. Everything through the newest journaled sequence is complete there;
+    // the rest is read with commits paused, so spilling ends without a gap.
+    private void refill() throws java.io.IOException {
+        long from;
+        int room;
+        synchronized (this) {
+            if (!spilling || pending.size() >= maxPending / 2) {
+                return;
+            }
+            from = spillNext;
+            room = maxPending - pending.size();
+        }
+        long through = journal.getJournaledSequence();
+        if (through >= from) {
+            List<String[]> lines = journal.readAlerts(from, through, room);
+            synchronized (this) {
+                queueJournaled(lines);
+                spillNext = lines.size() >= room ? Long.parseLong(lines.get(lines.size() - 1)[1]) + 1 : through + 1;
+                updateResume();
+            }
+            if (lines.size() >= room) {
+                return;
+            }
+        }
+        committer.exclusively(() -> {
+            synchronized (this) {
+                try {
+                    queueJournaled(journal.readAlerts(spillNext, Long.MAX_VALUE, Integer.MAX_VALUE));
+                } catch (java.io.IOException e) {
+                    throw new IllegalStateException("Cannot read alerts back from the journal", e);
+                }
+                spilling = false;
+                updateResume();
+            }
+        });
+    }
+
+    // Guarded by this: REC, USER and ALERT lines as DatabaseService journals them
+    private void queueJournaled(List<String[]> lines) {
+        for (String[] f : lines) {
+            if ("REC".equals(f[0])) {
+                LedgerRecord record = WireFormat.decodeRecord(f, 1);
+                BankUser owner = record.isOpening() ? null : ownersByAccount.get(record.getAccountNumber());
+                if (owner != null) {
+                    pending.add(new Entry(record.getSequence(), owner, record.getType(), record, null));
+                }
+            } else {
+                BankUser user = usersById.get(f[2]);
+                if (user != null) {
+                    pending.add("USER".equals(f[0]) ? welcome(Long.parseLong(f[1]), user)
+                        : new Entry(Long.parseLong(f[1]), user, f[3], null, f[4]));
+                }
+            }
+        }
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (true) {
+                if (journal != null) {
+                    try {
+                        refill();
+                    } catch (java.io.IOException | RuntimeException e) {
+                        audit.log(AuditLog.Event.NOTIFICATIONS_FAILED, e.toString(), null, 0, retryMillis);
+                        Thread.sleep(retryMillis);
+                        continue;
+                    }
+                }
+                List<Entry> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                List<Notification> messages = coalesce(batch);
+                long backoff = retryMillis;
+                while (true) {
+                    try {
+                        sink.deliver(messages);
+                        break;
+                    } catch (java.io.IOException | RuntimeException e) {
+                        audit.log(AuditLog.Event.NOTIFICATIONS_FAILED, e.toString(), null, messages.size(), backoff);
+                        Thread.sleep(backoff);
+                        backoff = Math.min(maxRetryMillis, backoff * 2);
+                    }
+                }
+                delivered += messages.size();
+                synchronized (this) {
+                    inFlight = -1;
+                    deliveredThrough = batch.get(batch.size() - 1).sequence;
+                    updateResume();
+                }
+                audit.log(AuditLog.Event.NOTIFICATIONS_SENT, messages.size(), batch.size());
+            }
+        } catch (InterruptedException e) {
+            sink.close();
+        }
+    }
+
+    // Waits for the first entry, then lets a batch gather for batchMillis; with
+    // a journal, only alerts already in it are taken (sign-ins go in first)
+    private synchronized List<Entry> takeBatch() throws InterruptedException {
+        while (pending.isEmpty() && !spilling) {
+            wait();
+        }
+        long deadline = System.currentTimeMillis() + batchMillis;
+        long remaining;
+        while (pending.size() < batchSize && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+        }
+        long journaled = journal != null ? journal.getJournaledSequence() : Long.MAX_VALUE;
+        List<Entry> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        while (batch.size() < batchSize && !pending.isEmpty()
+                && (pending.peek().sequence <= journaled || "SIGN_IN".equals(pending.peek().kind))) {
+            batch.add(pending.poll());
+        }
+        if (!batch.isEmpty()) {
+            inFlight = batch.get(0).sequence;
+        }
+        return batch;
+    }
+
+    // One message per customer: a single alert as is, several as a digest
+    private static List<Notification> coalesce(List<Entry> batch) {
+        Map<String, List<Entry>> byUser = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            byUser.computeIfAbsent(entry.user.getUserId(), id -> new ArrayList<>()).add(entry);
+        }
+        List<Notification> messages = new ArrayList<>(byUser.size());
+        for (List<Entry> entries : byUser.values()) {
+            BankUser user = entries.get(0).user;
+            Entry last = entries.get(entries.size() - 1);
+            String kind = entries.size() == 1 ? last.kind : "DIGEST";
+            String text;
+            if (entries.size() == 1) {
+                text = describe(last);
+            } else {
+                StringBuilder digest = new StringBuilder(entries.size() + " alerts:");
+                for (int i = 0; i < Math.min(DIGEST_LINES, entries.size()); i++) {
+                    digest.append('\n').append(describe(entries.get(i)));
+                }
+                if (entries.size() > DIGEST_LINES) {
+                    digest.append("\n...and ").append(entries.size() - DIGEST_LINES).append(" more.");
+                }
+                text = digest.toString();
+            }
+            messages.add(new Notification(last.sequence, user.getUserId(), user.getEmail(), user.getPhone(), kind, text));
+        }
+        return messages;
+    }
+
+    private static String describe(Entry entry) {
+        LedgerRecord r = entry.record;
+        if (r == null) {
+            return entry.text;
+        }
+        String verb;
+        switch (r.getType()) {
+            case "CREDIT":
+            case "DEPOSIT":
+                verb = "credited to";
+                break;
+            case "DEBIT":
+            case "WITHDRAWAL":
+            case "WITHDRAW":
+                verb = "debited from";
+                break;
+            default:
+                verb = "posted to";
+        }
+        return String.format("Rs%.2f %s %s (%s). Balance Rs%.2f.",
+            r.getAmount(), verb, r.getAccountNumber(), r.getDescription(), r.getBalanceAfter());
+    }
+}
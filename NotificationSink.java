@@ -0,0 +1,112 @@
+import java.io.*;                        // Sink output
+import java.net.InetSocketAddress;       // Gateway address
+import java.net.Socket;                  // Gateway connection
+import java.nio.charset.StandardCharsets; // Line encoding
+import java.util.List;                   // List interface
+
+// ===== NOTIFICATION SINKS =====
+// Where the notification dispatcher hands customer alerts. Each message goes
+// out as one WireFormat line
+//   NOTIFY|sequence|userId|email|phone|kind|text
+// A sink either takes a whole batch or throws, and the dispatcher retries the
+// batch, so gateways must tolerate the occasional repeat.
+interface NotificationSink {
+    void deliver(List<NotificationOutbox.Notification> batch) throws IOException;
+
+    default void close() {
+    }
+
+    // bank.notify.sink: "file:<path>" (default file:data/notifications.log)
+    // or "socket:<host>:<port>"
+    static NotificationSink fromSpec(String spec) {
+        if (spec.startsWith("socket:")) {
+            int colon = spec.lastIndexOf(':');
+            return new SocketSink(spec.substring("socket:".length(), colon), Integer.parseInt(spec.substring(colon + 1)));
+        }
+        return new FileSink(new File(spec.startsWith("file:") ? spec.substring("file:".length()) : spec));
+    }
+
+    static String encode(NotificationOutbox.Notification n) {
+        return WireFormat.encode("NOTIFY", n.getSequence(), n.getUserId(), n.getEmail(), n.getPhone(),
+            n.getKind(), n.getText());
+    }
+
+    // Appends to a local file, standing in for a mail or SMS gateway
+    final class FileSink implements NotificationSink {
+        private final File file;
+
+        FileSink(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void deliver(List<NotificationOutbox.Notification> batch) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), StandardCharsets.UTF_8))) {
+                for (NotificationOutbox.Notification n : batch) {
+                    out.write(encode(n));
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    // Streams batches to a gateway over one kept-open connection: the
+    // NOTIFY lines, then END, acknowledged by OK
+    final class SocketSink implements NotificationSink {
+        private static final int TIMEOUT_MS = 5000;
+
+        private final String host;
+        private final int port;
+        private Socket socket;
+        private BufferedReader in;
+        private PrintWriter out;
+
+        SocketSink(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void deliver(List<NotificationOutbox.Notification> batch) throws IOException {
+            try {
+                if (socket == null) {
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress(host, port), TIMEOUT_MS);
+                    socket.setSoTimeout(TIMEOUT_MS);
+                    in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        socket.getOutputStream(), StandardCharsets.UTF_8)));
+                }
+                for (NotificationOutbox.Notification n : batch) {
+                    out.println(encode(n));
+                }
+                out.println("END");
+                out.flush();
+                String reply = in.readLine();
+                if (!"OK".equals(reply)) {
+                    throw new IOException("Gateway replied " + reply);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already broken
+                }
+                socket = null;
+            }
+        }
+    }
+}
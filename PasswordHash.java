@@ -0,0 +1,59 @@
+import java.security.GeneralSecurityException; // Missing PBKDF2 provider
+import java.security.MessageDigest;      // Constant-time comparison
+import java.security.SecureRandom;       // Salts
+import java.util.Base64;                 // Text encoding of salt and hash
+import javax.crypto.SecretKeyFactory;    // PBKDF2
+import javax.crypto.spec.PBEKeySpec;     // PBKDF2 parameters
+
+// ===== PASSWORD HASHING =====
+// Users keep only a salted PBKDF2-HMAC-SHA256 hash of their password, and that
+// hash is what the journal, snapshots and the replication stream carry. The
+// stored form is self-describing, "pbkdf2$<iterations>$<salt>$<hash>", so the
+// work factor can be raised without invalidating existing hashes.
+//   bank.password.iterations  PBKDF2 iterations for new hashes (10000)
+final class PasswordHash {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHash() {
+    }
+
+    public static String create(String password) {
+        int iterations = Math.max(1, Integer.getInteger("bank.password.iterations", 10000));
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+            + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    public static boolean matches(String stored, String password) {
+        if (stored == null || password == null || !isHash(stored)) {
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[3]);
+        return MessageDigest.isEqual(expected, derive(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+    }
+
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.Arrays;                 // Growing owner lists
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Holdings and portfolios
+
+// ===== PORTFOLIO AGGREGATES =====
+// Per-user totals across every linked account: balance, available balance
+// (less open holds) and interest accrued to date, kept current from each
+// committed posting and each hold change, so a dashboard for a user with
+// hundreds of accounts reads one entry instead of every balance. Interest
+// accrues continuously at the account's annual rate on the balance it held,
+// timed by the ledger's own timestamps, so replicas and a recovered ledger
+// arrive at the same figure. Each portfolio keeps the sum of its accounts'
+// accrual as a constant plus a rate times the clock, which a posting adjusts
+// in place and a read evaluates at the current time.
+class PortfolioAggregates implements LedgerListener {
+    static final double YEAR_MILLIS = 365.0 * 24 * 60 * 60 * 1000;
+
+    // One account's position; fields other than heldPaise belong to the commit thread
+    private static final class Holding {
+        private final double rate;
+        private long balancePaise;
+        private long heldPaise;                         // guarded by the holding
+        private double accrued;                         // interest up to updatedAt
+        private long updatedAt;
+        private volatile Portfolio[] owners = new Portfolio[0];
+
+        Holding(double rate, long balancePaise, long updatedAt) {
+            this.rate = rate;
+            this.balancePaise = balancePaise;
+            this.updatedAt = updatedAt;
+        }
+
+        // Interest a year at this balance pays, in rupees
+        double yearly() {
+            return balancePaise * rate / 100.0;
+        }
+
+        // Accrued at time t is this constant plus yearly() * t / YEAR_MILLIS
+        double accrualBase() {
+            return accrued - yearly() * updatedAt / YEAR_MILLIS;
+        }
+    }
+
+    private static final class Portfolio {              // guarded by itself
+        private int accounts;
+        private long balancePaise;
+        private long heldPaise;
+        private double accrualBase;
+        private double yearly;
+
+        void add(int accountDelta, long balanceDelta, long heldDelta, double baseDelta, double yearlyDelta) {
+            accounts += accountDelta;
+            balancePaise += balanceDelta;
+            heldPaise += heldDelta;
+            accrualBase += baseDelta;
+            yearly += yearlyDelta;
+        }
+    }
+
+    // A user's totals at one moment
+    static final class Totals {
+        private final int accounts;
+        private final double totalBalance;
+        private final double availableBalance;
+        private final double interestAccrued;
+        private final long asOf;
+
+        Totals(int accounts, double totalBalance, double availableBalance, double interestAccrued, long asOf) {
+            this.accounts = accounts;
+            this.totalBalance = totalBalance;
+            this.availableBalance = availableBalance;
+            this.interestAccrued = interestAccrued;
+            this.asOf = asOf;
+        }
+
+        public int getAccounts() { return accounts; }
+        public double getTotalBalance() { return totalBalance; }
+        public double getAvailableBalance() { return availableBalance; }
+        public double getInterestAccrued() { return interestAccrued; }
+        public long getAsOf() { return asOf; }
+    }
+
+    private final Map<String, Holding> holdings = new ConcurrentHashMap<>();
+    private final Map<String, Portfolio> portfolios = new ConcurrentHashMap<>();
+
+    @Override
+    public void onCommit(LedgerRecord record) {
+        Holding holding = holdings.get(record.getAccountNumber());
+        long balancePaise = Math.round(record.getBalanceAfter() * 100);
+        if (holding == null) {
+            holdings.put(record.getAccountNumber(),
+                new Holding(record.toAccount().getInterestRate(), balancePaise, record.getTimestamp()));
+            return;
+        }
+        double oldBase = holding.accrualBase();
+        double oldYearly = holding.yearly();
+        long oldBalance = holding.balancePaise;
+        if (record.getTimestamp() > holding.updatedAt) {
+            holding.accrued += oldYearly * (record.getTimestamp() - holding.updatedAt) / YEAR_MILLIS;
+            holding.updatedAt = record.getTimestamp();
+        }
+        holding.balancePaise = balancePaise;
+        for (Portfolio portfolio : holding.owners) {
+            synchronized (portfolio) {
+                portfolio.add(0, balancePaise - oldBalance, 0, holding.accrualBase() - oldBase,
+                    holding.yearly() - oldYearly);
+            }
+        }
+    }
+
+    // Links the user's accounts to the user's portfolio; an account already
+    // linked is left alone, so a replayed registration changes nothing
+    @Override
+    public void onUserRegistered(long sequence, BankUser user) {
+        Portfolio portfolio = portfolios.computeIfAbsent(user.getUserId(), id -> new Portfolio());
+        for (BankAccount account : user.getAccounts()) {
+            Holding holding = holdings.computeIfAbsent(account.getAccountNumber(), number -> new Holding(
+                account.getInterestRate(), Math.round(account.getBalance() * 100), account.getCreatedDate().getTime()));
+            Portfolio[] owners = holding.owners;
+            boolean linked = false;
+            for (Portfolio owner : owners) {
+                linked |= owner == portfolio;
+            }
+            if (linked) {
+                continue;
+            }
+            Portfolio[] grown = Arrays.copyOf(owners, owners.length + 1);
+            grown[owners.length] = portfolio;
+            long held;
+            synchronized (holding) {
+                holding.owners = grown;
+                held = holding.heldPaise;
+            }
+            synchronized (portfolio) {
+                portfolio.add(1, holding.balancePaise, held, holding.accrualBase(), holding.yearly());
+            }
+        }
+    }
+
+    // Called by FundsHolds as holds open and close
+    public void holdChanged(String accountNumber, long paise) {
+        Holding holding = holdings.get(accountNumber);
+        if (holding == null) {
+            return;
+        }
+        Portfolio[] owners;
+        synchronized (holding) {
+            holding.heldPaise += paise;
+            owners = holding.owners;
+        }
+        for (Portfolio portfolio : owners) {
+            synchronized (portfolio) {
+                portfolio.add(0, 0, paise, 0, 0);
+            }
+        }
+    }
+
+    // The user's totals now, or null for an unknown user
+    public Totals totals(String userId) {
+        Portfolio portfolio = portfolios.get(userId);
+        if (portfolio == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (portfolio) {
+            return new Totals(portfolio.accounts, portfolio.balancePaise / 100.0,
+                (portfolio.balancePaise - portfolio.heldPaise) / 100.0,
+                portfolio.accrualBase + portfolio.yearly * now / YEAR_MILLIS, now);
+        }
+    }
+}
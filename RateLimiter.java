@@ -0,0 +1,139 @@
+import java.util.List;                   // Bucket maps to sweep
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Bucket maps and sweeper
+
+// Per-user, per-account and global token buckets in front of BankingService
+// operations. Buckets live in their own maps, apart from account data, and are
+// evicted by a background sweep once they have refilled. Limits are
+// "permitsPerSecond:burst" system properties:
+//   bank.ratelimit.login     per username and client address, guards password
+//                            guessing without letting others lock a user out (default 0.2:5)
+//   bank.ratelimit.loginSource  per client address, across usernames (default 1:20)
+//   bank.ratelimit.user      per user, all operations               (default 50:100)
+//   bank.ratelimit.account   per source account, transfers          (default 20:40)
+//   bank.ratelimit.global    whole service                          (default 50000:100000)
+//   bank.ratelimit.enabled   false turns every check into a no-op
+class RateLimiter {
+    private static final long SWEEP_INTERVAL_SECONDS = 30;
+
+    private final boolean enabled;
+    private final TokenBucket.Limit loginLimit;
+    private final TokenBucket.Limit loginSourceLimit;
+    private final TokenBucket.Limit userLimit;
+    private final TokenBucket.Limit accountLimit;
+    private final TokenBucket.Limit globalLimit;
+    private final Map<String, TokenBucket> loginBuckets;
+    private final Map<String, TokenBucket> loginSourceBuckets;
+    private final Map<String, TokenBucket> userBuckets;
+    private final Map<String, TokenBucket> accountBuckets;
+    private final TokenBucket globalBucket;
+
+    public RateLimiter() {
+        enabled = Boolean.parseBoolean(System.getProperty("bank.ratelimit.enabled", "true"));
+        loginLimit = TokenBucket.Limit.parse(System.getProperty("bank.ratelimit.login", "0.2:5"));
+        loginSourceLimit = TokenBucket.Limit.parse(System.getProperty("bank.ratelimit.loginSource", "1:20"));
+        userLimit = TokenBucket.Limit.parse(System.getProperty("bank.ratelimit.user", "50:100"));
+        accountLimit = TokenBucket.Limit.parse(System.getProperty("bank.ratelimit.account", "20:40"));
+        globalLimit = TokenBucket.Limit.parse(System.getProperty("bank.ratelimit.global", "50000:100000"));
+        loginBuckets = new ConcurrentHashMap<>();
+        loginSourceBuckets = new ConcurrentHashMap<>();
+        userBuckets = new ConcurrentHashMap<>();
+        accountBuckets = new ConcurrentHashMap<>();
+        globalBucket = new TokenBucket(System.nanoTime());
+        if (enabled) {
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rate-limit-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::evictIdle, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        }
+    }
+
+    // Each check returns 0 when admitted, otherwise milliseconds to wait before retrying
+
+    // `source` is the client address, or "local" for an in-process front end
+    public long acquireLogin(String username, String source) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        TokenBucket perSource = bucket(loginSourceBuckets, source, now);
+        long wait = acquire(now, globalBucket, globalLimit, perSource, loginSourceLimit);
+        if (wait > 0) {
+            return wait;
+        }
+        long userWait = bucket(loginBuckets, source + "|" + username, now).tryAcquire(loginLimit, now);
+        if (userWait > 0) {
+            globalBucket.refund(globalLimit);
+            perSource.refund(loginSourceLimit);
+            return toMillis(userWait);
+        }
+        return 0;
+    }
+
+    public long acquireRead(String userKey) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return acquire(now, globalBucket, globalLimit, bucket(userBuckets, userKey, now), userLimit);
+    }
+
+    public long acquireTransfer(String userKey, String fromAccount) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        TokenBucket user = bucket(userBuckets, userKey, now);
+        long wait = acquire(now, globalBucket, globalLimit, user, userLimit);
+        if (wait > 0) {
+            return wait;
+        }
+        long accountWait = bucket(accountBuckets, fromAccount, now).tryAcquire(accountLimit, now);
+        if (accountWait > 0) {
+            globalBucket.refund(globalLimit);
+            user.refund(userLimit);
+            return toMillis(accountWait);
+        }
+        return 0;
+    }
+
+    private long acquire(long now, TokenBucket first, TokenBucket.Limit firstLimit,
+                         TokenBucket second, TokenBucket.Limit secondLimit) {
+        long wait = first.tryAcquire(firstLimit, now);
+        if (wait > 0) {
+            return toMillis(wait);
+        }
+        wait = second.tryAcquire(secondLimit, now);
+        if (wait > 0) {
+            first.refund(firstLimit);
+            return toMillis(wait);
+        }
+        return 0;
+    }
+
+    private static TokenBucket bucket(Map<String, TokenBucket> buckets, String key, long now) {
+        TokenBucket bucket = buckets.get(key == null ? "" : key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key == null ? "" : key, k -> new TokenBucket(now));
+        }
+        return bucket;
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+    }
+
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (Map<String, TokenBucket> buckets : List.of(loginBuckets, loginSourceBuckets, userBuckets, accountBuckets)) {
+            buckets.entrySet().removeIf(entry -> entry.getValue().isIdle(now));
+        }
+    }
+
+    public int getTrackedBucketCount() {
+        return loginBuckets.size() + loginSourceBuckets.size() + userBuckets.size() + accountBuckets.size();
+    }
+}
@@ -0,0 +1,27 @@
+// One new customer in a batch submitted through BankingService.registerUsers
+class RegistrationRequest {
+    private final String username;
+    private final String password;
+    private final String email;
+    private final String phone;
+    private final BankAccount account;
+    private final BankTransaction openingTransaction;
+
+    public RegistrationRequest(String username, String password, String email, String phone,
+                               BankAccount account, BankTransaction openingTransaction) {
+        this.username = username;
+        this.password = password;
+        this.email = email;
+        this.phone = phone;
+        this.account = account;
+        this.openingTransaction = openingTransaction;
+    }
+
+    // Getters
+    public String getUsername() { return username; }
+    public String getPassword() { return password; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public BankAccount getAccount() { return account; }
+    public BankTransaction getOpeningTransaction() { return openingTransaction; }
+}
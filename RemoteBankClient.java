@@ -0,0 +1,510 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+import java.util.ArrayList;              // List implementation
+import java.util.LinkedHashMap;          // Cache in access order
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.*;           // Pending replies
+
+// ===== REMOTE CLIENT =====
+// BankOperations over the BankServer line protocol, for front ends running
+// against a shared server. Calls are spread over bank.client.connections (2)
+// connections, each used by many callers at once: a request is written as
+// soon as it is made, without waiting for earlier replies, and one reader
+// thread per connection hands replies back in order, since the server answers
+// each connection in order. The async methods return as soon as the request
+// is written, so a caller can pipeline a burst and then collect the results.
+// A broken connection fails its outstanding calls and is reopened by the next
+// call. Account metadata (holder, type, profile) is cached for
+// bank.client.cacheMillis (5000), at most bank.client.cacheSize (1024)
+// accounts. The cache keeps no balance: a hit reads the current balance with
+// BALANCES and hands out a fresh copy carrying it. A RETRY from the
+// server's rate limiter is waited out once if it is short, and remembered so
+// acquireLogin and acquireTransfer report it to the front end afterwards.
+// The server ties a login to one connection, so once authenticateUser
+// succeeds every other connection, and any reopened one, logs in again with
+// the same credentials before its next request.
+class RemoteBankClient implements BankOperations {
+    private static final long MAX_RETRY_WAIT_MS = 2000;
+
+    private final String host;
+    private final int port;
+    private final Connection[] connections;
+    private final long timeoutMillis = Long.getLong("bank.client.timeoutMillis", 10_000);
+    private final long cacheMillis = Long.getLong("bank.client.cacheMillis", 5000);
+    private final int cacheSize = Integer.getInteger("bank.client.cacheSize", 1024);
+    private final Map<String, CachedAccount> accountCache;          // guarded by itself
+    private final Map<String, Long> retryDeadlines = new ConcurrentHashMap<>();
+    private volatile Object[] login;                                 // LOGIN request of the signed-in user
+
+    private static final class CachedAccount {
+        final BankAccount account;               // metadata only; balance and held are zero
+        final long expiresAt;
+
+        CachedAccount(BankAccount account, long expiresAt) {
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // One outstanding request: single-line replies end at the first line,
+    // listings at END or at an ERROR, RETRY or NONE in place of the first line
+    private static final class Call {
+        final boolean multiLine;
+        Object[] login;                          // the request, when it is a LOGIN
+        final List<String[]> lines = new ArrayList<>();
+        final CompletableFuture<List<String[]>> reply = new CompletableFuture<>();
+
+        Call(boolean multiLine) {
+            this.multiLine = multiLine;
+        }
+
+        boolean accept(String[] line) {
+            boolean terminal = !multiLine || "END".equals(line[0])
+                || (lines.isEmpty() && ("ERROR".equals(line[0]) || "RETRY".equals(line[0]) || "NONE".equals(line[0])));
+            lines.add(line);
+            return terminal;
+        }
+    }
+
+    private final class Connection {
+        private final int index;
+        private final ConcurrentLinkedQueue<Call> inFlight = new ConcurrentLinkedQueue<>();
+        private Socket socket;                   // guarded by this
+        private PrintWriter out;                 // guarded by this
+        private Object[] loggedIn;               // guarded by this; the LOGIN this socket last sent
+
+        Connection(int index) {
+            this.index = index;
+        }
+
+        int load() {
+            return inFlight.size();
+        }
+
+        synchronized void send(List<Call> calls, List<String> lines) {
+            try {
+                if (socket == null) {
+                    open();
+                }
+                Object[] current = login;
+                if (current != null && current != loggedIn && calls.get(0).login == null) {
+                    // Its reply is dropped; if it fails, the requests behind it say so
+                    inFlight.add(new Call(false));
+                    out.println(WireFormat.encode(current));
+                    loggedIn = current;
+                }
+                for (int i = 0; i < calls.size(); i++) {
+                    inFlight.add(calls.get(i));
+                    out.println(lines.get(i));
+                    if (calls.get(i).login != null) {
+                        loggedIn = calls.get(i).login;
+                    }
+                }
+                out.flush();
+                if (out.checkError()) {
+                    throw new IOException("Write to bank server failed");
+                }
+            } catch (IOException e) {
+                fail(socket, e);
+            }
+        }
+
+        private void open() throws IOException {
+            Socket s = new Socket();
+            s.connect(new InetSocketAddress(host, port), (int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+            s.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")));
+            socket = s;
+            loggedIn = null;
+            Thread reader = new Thread(() -> read(s, in), "bank-client-" + index);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read(Socket s, BufferedReader in) {
+            try {
+                Call call = null;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (call == null) {
+                        call = inFlight.peek();
+                        if (call == null) {
+                            throw new IOException("Unexpected reply " + line);
+                        }
+                    }
+                    if (call.accept(WireFormat.decode(line))) {
+                        inFlight.poll();
+                        call.reply.complete(call.lines);
+                        call = null;
+                    }
+                }
+                fail(s, new EOFException("Bank server closed the connection"));
+            } catch (IOException e) {
+                fail(s, e);
+            }
+        }
+
+        // Closes the connection if it is still the current one and fails what
+        // was waiting on it
+        private synchronized void fail(Socket broken, IOException cause) {
+            if (broken == null || broken != socket) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+            socket = null;
+            Call call;
+            while ((call = inFlight.poll()) != null) {
+                call.reply.completeExceptionally(cause);
+            }
+        }
+
+        synchronized void close() {
+            fail(socket, new IOException("Client closed"));
+        }
+    }
+
+    public RemoteBankClient(String host, int port) {
+        this(host, port, Integer.getInteger("bank.client.connections", 2));
+    }
+
+    public RemoteBankClient(String host, int port, int connectionCount) {
+        this.host = host;
+        this.port = port;
+        this.connections = new Connection[Math.max(1, connectionCount)];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection(i);
+        }
+        this.accountCache = new LinkedHashMap<String, CachedAccount>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAccount> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // "host:port", as given to NetApp --server
+    public static RemoteBankClient forAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new RemoteBankClient(address, 7070);
+        }
+        return new RemoteBankClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    public void close() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    // ----- requests -----
+
+    private Connection leastLoaded() {
+        Connection best = connections[0];
+        for (int i = 1; i < connections.length; i++) {
+            if (connections[i].load() < best.load()) {
+                best = connections[i];
+            }
+        }
+        return best;
+    }
+
+    private CompletableFuture<List<String[]>> submit(boolean multiLine, Object... fields) {
+        Call call = new Call(multiLine);
+        if ("LOGIN".equals(fields[0])) {
+            call.login = fields;
+        }
+        List<Call> calls = new ArrayList<>(1);
+        calls.add(call);
+        List<String> lines = new ArrayList<>(1);
+        lines.add(WireFormat.encode(fields));
+        leastLoaded().send(calls, lines);
+        return call.reply;
+    }
+
+    private List<String[]> await(CompletableFuture<List<String[]>> reply) {
+        try {
+            List<String[]> lines = reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if ("ERROR".equals(lines.get(0)[0])) {
+                throw new IllegalStateException("Bank server: " + lines.get(0)[1]);
+            }
+            return lines;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the bank server", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bank server unavailable", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Bank server did not answer within " + timeoutMillis + " ms", e);
+        }
+    }
+
+    // Every command is rate limited on the server: a short RETRY is waited out
+    // once, a long one is remembered under the key and handed back
+    private List<String[]> call(String key, boolean multiLine, Object... fields) {
+        for (int attempt = 0; ; attempt++) {
+            List<String[]> lines = await(submit(multiLine, fields));
+            if (!"RETRY".equals(lines.get(0)[0])) {
+                return lines;
+            }
+            long wait = throttled(key, lines.get(0));
+            if (attempt > 0 || wait > MAX_RETRY_WAIT_MS) {
+                return lines;
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return lines;
+            }
+        }
+    }
+
+    // Reads have no way to say no, so a RETRY that outlasts the wait fails them
+    private List<String[]> request(boolean multiLine, Object... fields) {
+        List<String[]> lines = call("read", multiLine, fields);
+        if ("RETRY".equals(lines.get(0)[0])) {
+            throw new IllegalStateException("Bank server is busy; try again in " + lines.get(0)[1] + " ms");
+        }
+        return lines;
+    }
+
+    private String[] limited(String key, Object... fields) {
+        return call(key, false, fields).get(0);
+    }
+
+    private long throttled(String key, String[] reply) {
+        long wait = Long.parseLong(reply[1]);
+        retryDeadlines.put(key, System.currentTimeMillis() + wait);
+        return wait;
+    }
+
+    private long remaining(String key) {
+        Long deadline = retryDeadlines.get(key);
+        if (deadline == null) {
+            return 0;
+        }
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+            retryDeadlines.remove(key, deadline);
+            return 0;
+        }
+        return wait;
+    }
+
+    private BankAccount cache(BankAccount account) {
+        synchronized (accountCache) {
+            accountCache.put(account.getAccountNumber(),
+                new CachedAccount(account.copy(0.0, 0.0), System.currentTimeMillis() + cacheMillis));
+        }
+        return account;
+    }
+
+    private void invalidate(String accountNumber) {
+        synchronized (accountCache) {
+            accountCache.remove(accountNumber);
+        }
+    }
+
+    // ----- BankOperations -----
+
+    @Override
+    public BankUser authenticateUser(String username, String password) {
+        Object[] request = {"LOGIN", username, password};
+        // Whatever connection answers, the others must not stay signed in as
+        // someone else; they send this LOGIN again before their next request
+        login = null;
+        String[] reply = limited("login:" + username, request);
+        if (!"USER".equals(reply[0])) {
+            return null;
+        }
+        login = request;
+        retryDeadlines.remove("login:" + username);
+        BankUser user = BankUser.withPasswordHash(reply[1], reply[2], null, reply[3], reply[4]);
+        for (BankAccount account : getUserAccounts(user.getUserId())) {
+            user.addAccount(account);
+        }
+        return user;
+    }
+
+    @Override
+    public String registerUser(String username, String password, String email, String phone, String accountType,
+                               String holder, String address, String dob, String gender) {
+        String[] reply = request(false, "REGISTER", username, password, email, phone, accountType, holder,
+            address, dob, gender).get(0);
+        return "OK".equals(reply[0]) ? reply[1] : null;
+    }
+
+    // Read-through: metadata comes from the cache while fresh, the balance
+    // from the server every time
+    @Override
+    public BankAccount getAccount(String accountNumber) {
+        BankAccount metadata = null;
+        synchronized (accountCache) {
+            CachedAccount cached = accountCache.get(accountNumber);
+            if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+                metadata = cached.account;
+            }
+        }
+        if (metadata != null) {
+            return metadata.copy(getBalances(List.of(accountNumber))[0], 0.0);
+        }
+        String[] reply = request(false, "ACCOUNT", accountNumber).get(0);
+        return "ACCOUNT".equals(reply[0]) ? cache(WireFormat.decodeAccount(reply, 1)) : null;
+    }
+
+    @Override
+    public List<BankAccount> getUserAccounts(String userId) {
+        return accounts(request(true, "ACCOUNTS", userId));
+    }
+
+    @Override
+    public List<BankAccount> getAllAccounts() {
+        return accounts(request(true, "ALLACCOUNTS"));
+    }
+
+    private List<BankAccount> accounts(List<String[]> replies) {
+        List<BankAccount> accounts = new ArrayList<>();
+        for (String[] reply : replies) {
+            if ("ACCOUNT".equals(reply[0])) {
+                accounts.add(cache(WireFormat.decodeAccount(reply, 1)));
+            }
+        }
+        return accounts;
+    }
+
+    @Override
+    public AccountVersion getAccountVersion(String accountNumber) {
+        List<String[]> replies = request(true, "VERSION", accountNumber);
+        String[] head = replies.get(0);
+        if (!"VERSION".equals(head[0])) {
+            return null;
+        }
+        List<BankTransaction> history = new ArrayList<>(replies.size());
+        for (String[] reply : replies) {
+            if ("TX".equals(reply[0])) {
+                history.add(WireFormat.decodeTransaction(reply, 1));
+            }
+        }
+        BankAccount account = cache(WireFormat.decodeAccount(head, 3));
+        return AccountVersion.received(account, Long.parseLong(head[1]), Double.parseDouble(head[2]), history);
+    }
+
+    @Override
+    public double[] getBalances(List<String> accountNumbers) {
+        Object[] fields = new Object[accountNumbers.size() + 1];
+        fields[0] = "BALANCES";
+        for (int i = 0; i < accountNumbers.size(); i++) {
+            fields[i + 1] = accountNumbers.get(i);
+        }
+        String[] reply = request(false, fields).get(0);
+        double[] balances = new double[accountNumbers.size()];
+        for (int i = 0; i < balances.length; i++) {
+            balances[i] = Double.parseDouble(reply[i + 2]);
+        }
+        return balances;
+    }
+
+    @Override
+    public boolean transferMoney(String fromAccount, String toAccount, double amount, String description) {
+        String[] reply = limited("transfer:" + fromAccount, "TRANSFER", fromAccount, toAccount, amount, description);
+        invalidate(fromAccount);
+        invalidate(toAccount);
+        return "OK".equals(reply[0]);
+    }
+
+    // Pipelined: written at once, answered when the server gets to it. A
+    // rate-limited transfer completes false and is not retried.
+    public CompletableFuture<Boolean> transferMoneyAsync(String fromAccount, String toAccount, double amount,
+                                                         String description) {
+        return submit(false, "TRANSFER", fromAccount, toAccount, amount, description)
+            .thenApply(lines -> {
+                if ("RETRY".equals(lines.get(0)[0])) {
+                    throttled("transfer:" + fromAccount, lines.get(0));
+                }
+                invalidate(fromAccount);
+                invalidate(toAccount);
+                return "OK".equals(lines.get(0)[0]);
+            });
+    }
+
+    // A whole batch written back to back on one connection and then awaited;
+    // results line up with the requests
+    public boolean[] transferMoneyBatch(List<TransferRequest> requests) {
+        List<Call> calls = new ArrayList<>(requests.size());
+        List<String> lines = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            calls.add(new Call(false));
+            lines.add(WireFormat.encode("TRANSFER", request.getFromAccount(), request.getToAccount(),
+                request.getAmount(), request.getDescription()));
+        }
+        leastLoaded().send(calls, lines);
+        boolean[] results = new boolean[requests.size()];
+        for (int i = 0; i < results.length; i++) {
+            String[] reply = await(calls.get(i).reply).get(0);
+            if ("RETRY".equals(reply[0])) {
+                throttled("transfer:" + requests.get(i).getFromAccount(), reply);
+            }
+            results[i] = "OK".equals(reply[0]);
+            invalidate(requests.get(i).getFromAccount());
+            invalidate(requests.get(i).getToAccount());
+        }
+        return results;
+    }
+
+    @Override
+    public List<SpendingRollups.Bucket> getSpendingBuckets(String accountNumber, SpendingRollups.Granularity granularity,
+                                                           int fromPeriod, int toPeriod) {
+        List<SpendingRollups.Bucket> buckets = new ArrayList<>();
+        for (String[] reply : request(true, "ROLLUP", accountNumber, granularity.name(), fromPeriod, toPeriod)) {
+            if (!"BUCKET".equals(reply[0])) {
+                continue;
+            }
+            double[] categories = new double[SpendingRollups.CATEGORIES.length];
+            for (int c = 0; c < categories.length; c++) {
+                categories[c] = Double.parseDouble(reply[4 + c]);
+            }
+            buckets.add(SpendingRollups.Bucket.received(Integer.parseInt(reply[1]), Double.parseDouble(reply[2]),
+                Double.parseDouble(reply[3]), categories, Integer.parseInt(reply[reply.length - 1])));
+        }
+        return buckets;
+    }
+
+    @Override
+    public PortfolioAggregates.Totals getPortfolio(String userId) {
+        String[] reply = request(false, "PORTFOLIO", userId).get(0);
+        if (!"PORTFOLIO".equals(reply[0])) {
+            return null;
+        }
+        return new PortfolioAggregates.Totals(Integer.parseInt(reply[1]), Double.parseDouble(reply[2]),
+            Double.parseDouble(reply[3]), Double.parseDouble(reply[4]), Long.parseLong(reply[5]));
+    }
+
+    @Override
+    public LoanScoring.Decision assessLoan(String userId, int scheme) {
+        String[] reply = request(false, "LOAN", userId, scheme).get(0);
+        if (!"LOAN".equals(reply[0])) {
+            return null;
+        }
+        return new LoanScoring.Decision(reply[1], Boolean.parseBoolean(reply[2]), Double.parseDouble(reply[3]),
+            Integer.parseInt(reply[4]), Integer.parseInt(reply[5]), Double.parseDouble(reply[6]),
+            Double.parseDouble(reply[7]), Integer.parseInt(reply[8]), reply[9]);
+    }
+
+    // The server enforces the limits; these report what it last said
+    @Override
+    public long acquireLogin(String username) {
+        return remaining("login:" + username);
+    }
+
+    @Override
+    public long acquireTransfer(String userId, String accountNumber) {
+        return remaining("transfer:" + accountNumber);
+    }
+}
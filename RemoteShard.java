@@ -0,0 +1,241 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+import java.util.ArrayList;              // List implementation
+import java.util.Arrays;                 // Batched request fields
+import java.util.Collections;            // Absent opening transactions
+import java.util.List;                   // List interface
+
+// Client side of a ShardServer running in another local process. Accounts and
+// transactions returned here are copies; the owning process keeps the originals.
+// The ledger records a request committed in the shard process arrive ahead of
+// its reply and are committed here as one batch before the call returns, so
+// both legs of a transfer land together and the caller can read its own write.
+// Replay is not served: replicas run in-process shards, and bank.db.dir is
+// refused together with shard processes.
+class RemoteShard implements AccountShard {
+    private static final int CONNECT_ATTEMPTS = 50;
+    private static final long CONNECT_RETRY_MS = 100;
+
+    private final int shardId;
+    private final String host;
+    private final int port;
+    private final Process process;          // null when the shard was started elsewhere
+    private final LedgerCommitter committer;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+
+    public RemoteShard(int shardId, String host, int port, Process process, LedgerCommitter committer) {
+        this.shardId = shardId;
+        this.host = host;
+        this.port = port;
+        this.process = process;
+        this.committer = committer;
+    }
+
+    private void connect() throws IOException {
+        socket = open();
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8")));
+    }
+
+    private Socket open() throws IOException {
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt < CONNECT_ATTEMPTS; attempt++) {
+            try {
+                Socket s = new Socket(host, port);
+                s.setTcpNoDelay(true);
+                return s;
+            } catch (ConnectException e) {
+                lastFailure = e;   // shard process may still be starting
+                try {
+                    Thread.sleep(CONNECT_RETRY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        throw new IOException("Cannot reach shard " + shardId + " at " + host + ":" + port, lastFailure);
+    }
+
+    // Sends one command and reads replies up to and including a terminal line.
+    // The records it committed are re-sequenced into this process's ledger
+    // first, still under this shard's lock so they keep the shard's order.
+    private synchronized List<String[]> request(boolean multiLine, Object... fields) {
+        try {
+            if (socket == null) {
+                connect();
+            }
+            out.println(WireFormat.encode(fields));
+            out.flush();
+            List<LedgerRecord> records = new ArrayList<>();
+            List<String[]> replies = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] reply = WireFormat.decode(line);
+                if ("REC".equals(reply[0])) {
+                    records.add(WireFormat.decodeRecord(reply, 1));
+                    continue;
+                }
+                if (replies.isEmpty()) {
+                    committer.commitAll(records);
+                }
+                if ("ERROR".equals(reply[0])) {
+                    throw new IllegalStateException("Shard " + shardId + ": " + reply[1]);
+                }
+                replies.add(reply);
+                if (!multiLine || "END".equals(reply[0])) {
+                    return replies;
+                }
+            }
+            throw new IOException("Shard " + shardId + " closed the connection");
+        } catch (IOException e) {
+            closeQuietly();
+            throw new IllegalStateException("Shard " + shardId + " unavailable", e);
+        }
+    }
+
+    private boolean ok(Object... fields) {
+        return "OK".equals(request(false, fields).get(0)[0]);
+    }
+
+    // RESULTS|OK or FAIL per item
+    private boolean[] results(Object... fields) {
+        String[] reply = request(false, fields).get(0);
+        boolean[] results = new boolean[reply.length - 1];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = "OK".equals(reply[i + 1]);
+        }
+        return results;
+    }
+
+    private void closeQuietly() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // Already broken
+        }
+        socket = null;
+    }
+
+    @Override
+    public int getShardId() { return shardId; }
+
+    @Override
+    public boolean openAccount(BankAccount account, BankTransaction openingTransaction) {
+        Object[] fields = WireFormat.concat(new Object[]{"OPEN"}, WireFormat.accountFields(account));
+        if (openingTransaction != null) {
+            fields = WireFormat.concat(fields, WireFormat.transactionFields(openingTransaction));
+        }
+        return ok(fields);
+    }
+
+    // One request, one writer task and one ledger commit for the whole batch
+    @Override
+    public boolean[] openAccounts(List<BankAccount> accounts, List<BankTransaction> openingTransactions) {
+        List<Object> fields = new ArrayList<>(1 + 15 * accounts.size());
+        fields.add("OPENS");
+        for (int i = 0; i < accounts.size(); i++) {
+            BankTransaction opening = openingTransactions.get(i);
+            fields.addAll(Arrays.asList(WireFormat.accountFields(accounts.get(i))));
+            fields.addAll(opening != null ? Arrays.asList(WireFormat.transactionFields(opening))
+                : Collections.nCopies(6, null));
+        }
+        return results(fields.toArray());
+    }
+
+    @Override
+    public BankAccount getAccount(String accountNumber) {
+        String[] reply = request(false, "GET", accountNumber).get(0);
+        return "ACCOUNT".equals(reply[0]) ? WireFormat.decodeAccount(reply, 1) : null;
+    }
+
+    @Override
+    public List<BankAccount> getAccounts() {
+        List<BankAccount> accounts = new ArrayList<>();
+        for (String[] reply : request(true, "ACCOUNTS")) {
+            if ("ACCOUNT".equals(reply[0])) {
+                accounts.add(WireFormat.decodeAccount(reply, 1));
+            }
+        }
+        return accounts;
+    }
+
+    @Override
+    public boolean transfer(String fromAccount, String toAccount, double amount, String description) {
+        return ok("TRANSFER", fromAccount, toAccount, amount, description);
+    }
+
+    // Likewise one request for the whole batch
+    @Override
+    public boolean[] transferAll(List<TransferRequest> requests) {
+        Object[] fields = new Object[1 + 4 * requests.size()];
+        fields[0] = "TRANSFERS";
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            fields[1 + 4 * i] = request.getFromAccount();
+            fields[2 + 4 * i] = request.getToAccount();
+            fields[3 + 4 * i] = request.getAmount();
+            fields[4 + 4 * i] = request.getDescription();
+        }
+        return results(fields);
+    }
+
+    @Override
+    public boolean prepareDebit(String transferId, String fromAccount, double amount) {
+        return ok("PREPARE", transferId, fromAccount, amount);
+    }
+
+    @Override
+    public void commitDebit(String transferId, String toAccount, String description) {
+        request(false, "COMMIT", transferId, toAccount, description);
+    }
+
+    @Override
+    public void abortDebit(String transferId) {
+        request(false, "ABORT", transferId);
+    }
+
+    @Override
+    public boolean credit(String toAccount, String fromAccount, double amount, String description) {
+        return ok("CREDIT", toAccount, fromAccount, amount, description);
+    }
+
+    @Override
+    public boolean placeHold(String accountNumber, double amount) {
+        return ok("HOLD", accountNumber, amount);
+    }
+
+    @Override
+    public boolean captureHold(String accountNumber, double heldAmount, double amount, String description) {
+        return ok("CAPTURE", accountNumber, heldAmount, amount, description);
+    }
+
+    @Override
+    public void releaseHold(String accountNumber, double amount) {
+        request(false, "RELEASE", accountNumber, amount);
+    }
+
+    @Override
+    public void apply(LedgerRecord record) {
+        // Unreachable: replicas always run in-process shards
+        throw new UnsupportedOperationException("Replication replay requires in-process shards");
+    }
+
+    @Override
+    public void applyAll(List<LedgerRecord> records) {
+        // Unreachable: BankingService refuses bank.db.dir with shard processes
+        throw new UnsupportedOperationException("Ledger recovery requires in-process shards");
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        closeQuietly();
+        if (process != null) {
+            process.destroy();
+        }
+    }
+}
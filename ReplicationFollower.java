@@ -0,0 +1,199 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+
+// Hot standby: tails a ReplicationPrimary and applies each record, registration
+// and funds hold change to an in-memory BankingService replica, which the follower's own BankServer
+// listener (bank.server.port) serves read-only balance and history queries
+// from. A refused or dropped connection is retried. Only once a primary that
+// was streaming has been silent for longer than the failover timeout, and a
+// promote port was given, does the follower promote itself: the replica
+// becomes writable for its clients and starts shipping its own log to the
+// remaining followers.
+// Usage: java -Dbank.server.port=<clientPort> ReplicationFollower <primaryHost> <primaryPort> <name> [promotePort]
+class ReplicationFollower {
+    private static final long ACK_INTERVAL_MS = 200;
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final String primaryHost;
+    private final int primaryPort;
+    private final String name;
+    private final int promotePort;          // 0 disables automatic promotion
+    private final long failoverTimeoutMs;
+    private final BankingService replica;
+    private final ReplicationLog replicaLog;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lagMillis;
+    private volatile long lastHeard;        // when the primary last sent a line; 0 until it has
+    private volatile boolean following;
+    private ReplicationPrimary promotedPrimary;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ReplicationFollower(String primaryHost, int primaryPort, String name, int promotePort) {
+        this.primaryHost = primaryHost;
+        this.primaryPort = primaryPort;
+        this.name = name;
+        this.promotePort = promotePort;
+        this.failoverTimeoutMs = Long.getLong("bank.replication.failoverMs", 3000);
+        this.replica = BankingService.createReplica(name);
+        this.replicaLog = replica.getReplicationLog();
+    }
+
+    public void start() {
+        following = true;
+        Thread thread = new Thread(this::followLoop, "replication-follower-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void followLoop() {
+        while (following) {
+            try {
+                follow();
+            } catch (IOException e) {
+                audit.log(AuditLog.Event.REPLICATION_PRIMARY_LOST, primaryHost + ":" + primaryPort, e.getMessage(), 0);
+            }
+            if (!following) {
+                return;
+            }
+            if (promotePort > 0 && lastHeard > 0 && System.currentTimeMillis() - lastHeard >= failoverTimeoutMs) {
+                promote();
+                return;
+            }
+            sleepQuietly(RECONNECT_DELAY_MS);
+        }
+    }
+
+    private void follow() throws IOException {
+        try (Socket socket = connect();
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"))) {
+            socket.setSoTimeout((int) failoverTimeoutMs);   // heartbeats arrive well inside this
+            out.println(WireFormat.encode("FOLLOW", name, appliedSequence));
+            out.flush();
+            audit.log(AuditLog.Event.REPLICATION_FOLLOWING, appliedSequence, 0);
+
+            long lastAck = 0;
+            String line;
+            while (following && (line = in.readLine()) != null) {
+                lastHeard = System.currentTimeMillis();
+                String[] fields = WireFormat.decode(line);
+                switch (fields[0]) {
+                    case "REC": {
+                        LedgerRecord record = WireFormat.decodeRecord(fields, 1);
+                        if (record.getSequence() > appliedSequence) {
+                            replica.applyReplicated(record);
+                            appliedSequence = record.getSequence();
+                            lagMillis = Math.max(0, System.currentTimeMillis() - record.getTimestamp());
+                        }
+                        primarySequence = Math.max(primarySequence, record.getSequence());
+                        break;
+                    }
+                    case "USER": {
+                        long sequence = Long.parseLong(fields[1]);
+                        if (sequence > appliedSequence) {
+                            replica.applyReplicatedUser(sequence, fields[2], fields[3], fields[4], fields[5],
+                                fields[6], fields[7]);
+                            appliedSequence = sequence;
+                        }
+                        primarySequence = Math.max(primarySequence, sequence);
+                        break;
+                    }
+                    case "HOLD":
+                    case "HOLD_END": {
+                        long sequence = Long.parseLong(fields[1]);
+                        if (sequence > appliedSequence) {
+                            if ("HOLD".equals(fields[0])) {
+                                replica.getFundsHolds().restore(sequence, fields[2], fields[3],
+                                    Double.parseDouble(fields[4]), fields[5], Long.parseLong(fields[6]));
+                            } else {
+                                replica.getFundsHolds().restoreEnd(sequence, fields[2]);
+                            }
+                            appliedSequence = sequence;
+                        }
+                        primarySequence = Math.max(primarySequence, sequence);
+                        break;
+                    }
+                    case "HB":
+                        primarySequence = Long.parseLong(fields[1]);
+                        if (appliedSequence >= primarySequence) {
+                            lagMillis = 0;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastAck >= ACK_INTERVAL_MS) {
+                    out.println(WireFormat.encode("ACK", appliedSequence));
+                    out.flush();
+                    lastAck = now;
+                }
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(primaryHost, primaryPort), (int) failoverTimeoutMs);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    // Takes over as primary: accept writes and serve the log to other followers
+    public synchronized void promote() {
+        if (promotedPrimary != null) {
+            return;
+        }
+        following = false;
+        BankingService.promote(replica);
+        promotedPrimary = new ReplicationPrimary(replicaLog, promotePort);
+        String failure = null;
+        try {
+            promotedPrimary.start();
+        } catch (IOException e) {
+            failure = e.getMessage();
+        }
+        audit.log(AuditLog.Event.REPLICATION_PROMOTED, name, failure, appliedSequence);
+    }
+
+    public void stop() {
+        following = false;
+    }
+
+    public BankingService getReplica() { return replica; }
+    public long getAppliedSequence() { return appliedSequence; }
+    public long getLagRecords() { return Math.max(0, primarySequence - appliedSequence); }
+    public long getLagMillis() { return lagMillis; }
+    public boolean isPromoted() { return promotedPrimary != null; }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java -Dbank.server.port=<clientPort> ReplicationFollower"
+                + " <primaryHost> <primaryPort> <name> [promotePort]");
+            return;
+        }
+        int promotePort = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        ReplicationFollower follower = new ReplicationFollower(args[0], Integer.parseInt(args[1]), args[2], promotePort);
+        follower.start();
+        new BankServer(follower.getReplica()).startClientListener();
+        while (true) {
+            sleepQuietly(5000);
+            System.out.println(String.format("Replication %s: applied=%d lag=%d records (%d ms)%s",
+                args[2], follower.getAppliedSequence(), follower.getLagRecords(), follower.getLagMillis(),
+                follower.isPromoted() ? " [primary]" : ""));
+        }
+    }
+}
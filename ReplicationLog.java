@@ -0,0 +1,192 @@
+import java.io.*;                        // Sealed segment files
+import java.nio.charset.StandardCharsets; // Line encoding
+import java.util.ArrayList;              // List implementation
+import java.util.Arrays;                 // Growing the sequence index
+import java.util.List;                   // List interface
+
+// ===== REPLICATION =====
+// Retains every committed ledger record, user registration and funds hold
+// change as an encoded wire line, in commit order, so followers can catch up from any sequence and
+// then keep tailing. Appends never wait on followers. Positions count lines
+// from the start of the log. Only the newest segment is held in memory: once it
+// reaches bank.replication.segmentLines lines it is written to a file and
+// dropped, and a follower that is further behind reads it back from there. The
+// directory is emptied at startup, since the committer replays the whole book
+// into the log whether it came from sample data, the database or a primary.
+//   bank.replication.dir           sealed segments (data/replication)
+//   bank.replication.segmentLines  lines per segment (65536)
+
+class ReplicationLog implements LedgerListener {
+    private static final String SEGMENT_PREFIX = "replication-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // A sealed segment: immutable once written, so it is read without the lock
+    private static final class Segment {
+        final File file;
+        final long start;                  // position of its first line
+        final int lines;
+        final long lastSequence;
+
+        Segment(File file, long start, int lines, long lastSequence) {
+            this.file = file;
+            this.start = start;
+            this.lines = lines;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    private final File directory;
+    private final int segmentLines;
+    private final List<Segment> sealed = new ArrayList<>();
+    private final List<String> tail = new ArrayList<>();   // lines from tailStart on
+    private long[] tailSequences;
+    private long tailStart;
+    private long lastSequence;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ReplicationLog(File directory) {
+        this.directory = directory;
+        this.segmentLines = Math.max(1, Integer.getInteger("bank.replication.segmentLines", 65536));
+        this.tailSequences = new long[Math.min(segmentLines, 4096)];
+        directory.mkdirs();
+        File[] stale = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public void onCommit(LedgerRecord record) {
+        append(record.getSequence(),
+            WireFormat.encode(WireFormat.concat(new Object[]{"REC"}, WireFormat.recordFields(record))));
+    }
+
+    @Override
+    public void onUserRegistered(long sequence, BankUser user) {
+        append(sequence, WireFormat.encode(WireFormat.concat(new Object[]{"USER", sequence}, WireFormat.userFields(user))));
+    }
+
+    @Override
+    public void onHoldPlaced(long sequence, FundsHolds.Hold hold) {
+        append(sequence, WireFormat.encode(WireFormat.concat(new Object[]{"HOLD", sequence}, WireFormat.holdFields(hold))));
+    }
+
+    @Override
+    public void onHoldEnded(long sequence, String holdId) {
+        append(sequence, WireFormat.encode("HOLD_END", sequence, holdId));
+    }
+
+    private synchronized void append(long sequence, String line) {
+        if (tail.size() == tailSequences.length) {
+            tailSequences = Arrays.copyOf(tailSequences, tailSequences.length * 2);
+        }
+        tailSequences[tail.size()] = sequence;
+        tail.add(line);
+        lastSequence = sequence;
+        // A failed write is retried a segment later; the lines stay in memory meanwhile
+        if (tail.size() % segmentLines == 0) {
+            seal();
+        }
+        notifyAll();
+    }
+
+    // Lock held: writes the tail out as the next segment and starts a new one
+    private void seal() {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, tailStart, SEGMENT_SUFFIX));
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (String line : tail) {
+                out.write(line);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            audit.log(AuditLog.Event.REPLICATION_SPILL_FAILED, file.getPath(), e.getMessage(), tail.size());
+            return;
+        }
+        sealed.add(new Segment(file, tailStart, tail.size(), lastSequence));
+        tailStart += tail.size();
+        tail.clear();
+    }
+
+    // Position of the first line committed after the given sequence
+    public long positionAfter(long sequence) throws IOException {
+        Segment segment = null;
+        synchronized (this) {
+            for (Segment candidate : sealed) {
+                if (candidate.lastSequence > sequence) {
+                    segment = candidate;
+                    break;
+                }
+            }
+            if (segment == null) {
+                int low = 0;
+                int high = tail.size();
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (tailSequences[mid] <= sequence) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                return tailStart + low;
+            }
+        }
+        long position = segment.start;
+        for (String line : read(segment, segment.start)) {
+            if (Long.parseLong(WireFormat.decode(line)[1]) > sequence) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    // Lines from the position onward, waiting up to timeoutMs for at least one;
+    // a position in a sealed segment gets the rest of that segment
+    public List<String> awaitLines(long position, long timeoutMs) throws InterruptedException, IOException {
+        Segment segment = null;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (position >= tailStart && tailStart + tail.size() <= position) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return new ArrayList<>();
+                }
+                wait(remaining);
+            }
+            if (position >= tailStart) {
+                return new ArrayList<>(tail.subList((int) (position - tailStart), tail.size()));
+            }
+            for (Segment candidate : sealed) {
+                if (position < candidate.start + candidate.lines) {
+                    segment = candidate;
+                    break;
+                }
+            }
+        }
+        return read(segment, position);
+    }
+
+    private static List<String> read(Segment segment, long position) throws IOException {
+        List<String> lines = new ArrayList<>(segment.lines);
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(segment.file), StandardCharsets.UTF_8))) {
+            long skip = position - segment.start;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.ConcurrentHashMap; // Follower acknowledgements
+
+// Ships the replication log to followers over a local socket. Each follower
+// opens with FOLLOW|name|lastAppliedSequence, receives everything after that
+// point, then tails live commits. Idle streams carry HB|lastSequence heartbeats
+// and followers answer with ACK|appliedSequence, which drives the lag metric.
+class ReplicationPrimary {
+    static final long HEARTBEAT_MS = 500;
+
+    private final ReplicationLog log;
+    private final int port;
+    private final Map<String, Long> acknowledged;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ReplicationPrimary(ReplicationLog log, int port) {
+        this.log = log;
+        this.port = port;
+        this.acknowledged = new ConcurrentHashMap<>();
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        audit.log(AuditLog.Event.REPLICATION_LISTENING, serverSocket.getLocalPort(), 0);
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread sender = new Thread(() -> serveFollower(socket), "replication-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    audit.log(AuditLog.Event.REPLICATION_ACCEPT_FAILED, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveFollower(Socket socket) {
+        String follower = "unknown";
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")))) {
+            s.setTcpNoDelay(true);
+            String[] hello = WireFormat.decode(in.readLine());
+            if (!"FOLLOW".equals(hello[0])) {
+                return;
+            }
+            follower = hello[1];
+            String name = follower;
+            acknowledged.put(name, Long.parseLong(hello[2]));
+            startAckReader(in, name);
+
+            long position = log.positionAfter(Long.parseLong(hello[2]));
+            while (running) {
+                List<String> lines = log.awaitLines(position, HEARTBEAT_MS);
+                if (lines.isEmpty()) {
+                    out.println(WireFormat.encode("HB", log.getLastSequence(), System.currentTimeMillis()));
+                } else {
+                    for (String line : lines) {
+                        out.println(line);
+                    }
+                    position += lines.size();
+                }
+                out.flush();
+                if (out.checkError()) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Follower disconnected; it resumes from its last applied sequence
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            acknowledged.remove(follower);
+            audit.log(AuditLog.Event.REPLICATION_FOLLOWER_LOST, follower);
+        }
+    }
+
+    private void startAckReader(BufferedReader in, String follower) {
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = WireFormat.decode(line);
+                    if ("ACK".equals(fields[0])) {
+                        acknowledged.put(follower, Long.parseLong(fields[1]));
+                    }
+                }
+            } catch (IOException e) {
+                // Sender notices the broken socket on its next write
+            }
+        }, "replication-ack-" + follower);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Records each connected follower still has to apply
+    public Map<String, Long> getFollowerLag() {
+        long last = log.getLastSequence();
+        Map<String, Long> lag = new HashMap<>();
+        for (Map.Entry<String, Long> entry : acknowledged.entrySet()) {
+            lag.put(entry.getKey(), Math.max(0, last - entry.getValue()));
+        }
+        return lag;
+    }
+}
@@ -0,0 +1,28 @@
+class SavingsAccount extends BankAccount {
+    private static final double INTEREST_RATE = 0.02;
+    private static final double MIN_BALANCE = 100.0;
+
+    public SavingsAccount(String accountNumber, String accountHolder, double initialBalance) {
+        super(accountNumber, accountHolder, initialBalance, "Savings");
+    }
+
+    public SavingsAccount(String accountNumber, String accountHolder, double initialBalance,
+                         String email, String phone, String address, String dob, String gender) {
+        super(accountNumber, accountHolder, initialBalance, "Savings", email, phone, address, dob, gender);
+    }
+
+    @Override
+    public double calculateInterest() {
+        return balance * INTEREST_RATE;
+    }
+
+    @Override
+    public double getInterestRate() {
+        return INTEREST_RATE;
+    }
+
+    @Override
+    public double getMinimumBalance() {
+        return MIN_BALANCE;
+    }
+}
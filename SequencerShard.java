@@ -0,0 +1,531 @@
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Pending debits
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.concurrent.Callable;    // Non-transfer commands
+import java.util.concurrent.ConcurrentHashMap; // Account directory
+import java.util.concurrent.atomic.AtomicLong; // Producer cursor
+import java.util.concurrent.locks.LockSupport; // Stage idling and caller wake-up
+
+// ===== SEQUENCER ENGINE =====
+// The whole book as one shard driven by a single-writer pipeline instead of
+// per-shard executors (-Dbank.engine=sequencer). Callers claim a slot in a
+// preallocated ring, fill in their command and publish it; two stages follow
+// the ring with their own cursors:
+//
+//   callers --> [ring] --> business logic  one thread owns every balance
+//                                  |
+//                                  +--> publisher  commits the resulting records in
+//                                                  batches (MVCC store, replication,
+//                                                  database journal)
+//
+// The publisher trails the business logic. A caller returns once its command
+// is published, so its next read sees its own write. Durability is the
+// committer's, as for LocalShard: with bank.db.dir set, DatabaseService
+// journals every batch and restores the book from it at startup.
+// A stage that throws stops the engine: the failure goes to the audit log and
+// every caller, current and later, gets it as the cause of its exception.
+//   bank.sequencer.ringSize  slots, rounded up to a power of two (65536)
+class SequencerShard implements AccountShard {
+    private static final int TRANSFER = 1;
+    private static final int TASK = 2;       // any other command, run on the business-logic thread
+    private static final int SPINS_BEFORE_PARK = 100;
+
+    // One reusable ring entry. The caller writes `published` last when it hands
+    // the command over and `released` last once it has read the outcome.
+    private static final class Command {
+        volatile long published = -1;
+        volatile long released;
+        int kind;
+        String fromAccount;
+        String toAccount;
+        double amount;
+        String description;
+        Callable<?> task;
+        Thread waiter;
+        // Outcome, written by the business-logic thread
+        boolean succeeded;
+        Object result;
+        RuntimeException failure;
+        final List<LedgerRecord> records = new ArrayList<>(2);
+    }
+
+    private final int shardId;
+    private final LedgerCommitter committer;
+    private final Command[] ring;
+    private final int mask;
+    private final int batchWindow;                   // slots one transferAll call may hold
+    private final AtomicLong claimed = new AtomicLong();
+    private final Stage businessLogic;
+    private final Stage publisher;
+    private volatile boolean running = true;
+    private volatile Throwable stopCause;            // set when a stage dies
+    private final AuditLog audit = AuditLog.getInstance();
+
+    // Business-logic thread only, apart from lookups in the account directory
+    private final Map<String, BankAccount> accounts;
+    private final Map<String, PendingDebit> pendingDebits;
+    private List<LedgerRecord> taskRecords;          // records of the task being run
+
+    // Publisher thread only
+    private final List<LedgerRecord> batch = new ArrayList<>();
+
+    public SequencerShard(int shardId, LedgerCommitter committer) {
+        this.shardId = shardId;
+        this.committer = committer;
+        int requested = Math.max(2, Integer.getInteger("bank.sequencer.ringSize", 65536));
+        int size = Integer.highestOneBit(requested - 1) << 1;
+        ring = new Command[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Command();
+            ring[i].released = i - size;     // free for the first lap
+        }
+        mask = size - 1;
+        batchWindow = Math.max(1, Math.min(256, size / 16));
+        accounts = new ConcurrentHashMap<>();
+        pendingDebits = new HashMap<>();
+
+        businessLogic = new Stage("sequencer-logic", this::process);
+        publisher = new Stage("sequencer-publish", this::commitRecords);
+        businessLogic.start();
+        publisher.start();
+    }
+
+    // ----- callers -----
+
+    private Command claim() {
+        long sequence = claimed.getAndIncrement();
+        Command command = ring[(int) sequence & mask];
+        // The previous lap's caller may still be reading its outcome
+        while (command.released != sequence - ring.length) {
+            checkRunning();
+            Thread.yield();
+        }
+        command.records.clear();
+        command.result = null;
+        command.failure = null;
+        command.succeeded = false;
+        command.waiter = Thread.currentThread();
+        return command;
+    }
+
+    private long publish(Command command) {
+        long sequence = command.released + ring.length;
+        command.published = sequence;
+        businessLogic.wake();
+        return sequence;
+    }
+
+    // Blocks until the command is published
+    private void await(long sequence) {
+        while (publisher.cursor < sequence) {
+            checkRunning();
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new IllegalStateException("Sequencer stopped", stopCause);
+        }
+    }
+
+    private void release(Command command, long sequence) {
+        command.fromAccount = null;
+        command.toAccount = null;
+        command.description = null;
+        command.task = null;
+        command.waiter = null;
+        command.released = sequence;
+    }
+
+    private Command transferCommand(String fromAccount, String toAccount, double amount, String description) {
+        Command command = claim();
+        command.kind = TRANSFER;
+        command.fromAccount = fromAccount;
+        command.toAccount = toAccount;
+        command.amount = amount;
+        command.description = description;
+        return command;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T submit(Callable<T> task) {
+        Command command = claim();
+        command.kind = TASK;
+        command.task = task;
+        long sequence = publish(command);
+        await(sequence);
+        T result = (T) command.result;
+        RuntimeException failure = command.failure;
+        release(command, sequence);
+        if (failure != null) {
+            throw new IllegalStateException("Sequencer command failed", failure);
+        }
+        return result;
+    }
+
+    // Last sequence published without gaps from `next` on
+    private long publishedThrough(long next) {
+        long sequence = next;
+        while (ring[(int) sequence & mask].published == sequence) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    // ----- stages -----
+
+    private long process(long next) {
+        long last = publishedThrough(next);
+        for (long sequence = next; sequence <= last; sequence++) {
+            Command command = ring[(int) sequence & mask];
+            try {
+                if (command.kind == TRANSFER) {
+                    command.succeeded = applyTransfer(command.fromAccount, command.toAccount, command.amount,
+                        command.description, command.records);
+                } else {
+                    taskRecords = command.records;
+                    command.result = command.task.call();
+                }
+            } catch (RuntimeException e) {
+                command.failure = e;
+            } catch (Exception e) {
+                command.failure = new IllegalStateException(e);
+            } finally {
+                taskRecords = null;
+            }
+        }
+        return last;
+    }
+
+    private long commitRecords(long next) {
+        long last = businessLogic.cursor;
+        if (last < next) {
+            return last;
+        }
+        for (long sequence = next; sequence <= last; sequence++) {
+            batch.addAll(ring[(int) sequence & mask].records);
+        }
+        committer.commitAll(batch);
+        batch.clear();
+        return last;
+    }
+
+    // Wakes the callers whose commands the publisher has committed
+    private void wakeCallers(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            Thread waiter = ring[(int) sequence & mask].waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    private boolean applyTransfer(String fromAccount, String toAccount, double amount, String description,
+                                  List<LedgerRecord> records) {
+        BankAccount fromAcc = accounts.get(fromAccount);
+        BankAccount toAcc = accounts.get(toAccount);
+        if (fromAcc == null || toAcc == null || fromAcc == toAcc || !fromAcc.withdraw(amount)) {
+            return false;
+        }
+        toAcc.deposit(amount);
+        post(fromAcc, new BankTransaction(fromAccount, "DEBIT", amount,
+            "Transfer to " + toAccount + " - " + description), records);
+        post(toAcc, new BankTransaction(toAccount, "CREDIT", amount,
+            "Transfer from " + fromAccount + " - " + description), records);
+        return true;
+    }
+
+    // Business-logic thread only: queues the transaction for the publisher
+    private void post(BankAccount account, BankTransaction transaction, List<LedgerRecord> records) {
+        records.add(LedgerRecord.posting(account, transaction));
+    }
+
+    private interface StageWork {
+        long run(long next) throws Exception;    // returns the last sequence now handled
+    }
+
+    // One consumer thread and its cursor. An idle stage spins briefly, then parks
+    // until a producer or the upstream stage wakes it.
+    private final class Stage implements Runnable {
+        final String name;
+        final StageWork work;
+        final Thread thread;
+        volatile long cursor = -1;
+        volatile boolean sleeping;
+
+        Stage(String name, StageWork work) {
+            this.name = name;
+            this.work = work;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void wake() {
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            try {
+                while (running) {
+                    if (advance()) {
+                        idle = 0;
+                    } else if (++idle < SPINS_BEFORE_PARK) {
+                        Thread.onSpinWait();
+                    } else {
+                        // Look once more after raising the flag, so a publish
+                        // that just missed it is still picked up
+                        sleeping = true;
+                        if (!advance()) {
+                            LockSupport.parkNanos(this, 1_000_000);
+                        }
+                        sleeping = false;
+                    }
+                }
+            } catch (Exception | Error e) {
+                // A stage that cannot make progress would stall every caller;
+                // stop them all with the reason instead
+                stopCause = e;
+                running = false;
+                audit.log(AuditLog.Event.SEQUENCER_STOPPED, name, String.valueOf(e), 0);
+                LockSupport.unpark(otherStage(this).thread);
+            }
+        }
+
+        private boolean advance() throws Exception {
+            long before = cursor;
+            long after = work.run(before + 1);
+            if (after <= before) {
+                return false;
+            }
+            cursor = after;
+            if (this == businessLogic) {
+                publisher.wake();
+            } else {
+                wakeCallers(before + 1, after);
+            }
+            return true;
+        }
+    }
+
+    private Stage otherStage(Stage stage) {
+        return stage == businessLogic ? publisher : businessLogic;
+    }
+
+    // ----- AccountShard -----
+
+    @Override
+    public int getShardId() { return shardId; }
+
+    @Override
+    public boolean openAccount(BankAccount account, BankTransaction openingTransaction) {
+        return submit(() -> open(account, openingTransaction));
+    }
+
+    @Override
+    public boolean[] openAccounts(List<BankAccount> batch, List<BankTransaction> openingTransactions) {
+        return submit(() -> {
+            boolean[] opened = new boolean[batch.size()];
+            for (int i = 0; i < opened.length; i++) {
+                opened[i] = open(batch.get(i), openingTransactions.get(i));
+            }
+            return opened;
+        });
+    }
+
+    // Business-logic thread only; an open account is never replaced
+    private boolean open(BankAccount account, BankTransaction openingTransaction) {
+        if (accounts.putIfAbsent(account.getAccountNumber(), account) != null) {
+            return false;
+        }
+        taskRecords.add(LedgerRecord.opening(account));
+        if (openingTransaction != null) {
+            post(account, openingTransaction, taskRecords);
+        }
+        return true;
+    }
+
+    @Override
+    public BankAccount getAccount(String accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    @Override
+    public List<BankAccount> getAccounts() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @Override
+    public boolean transfer(String fromAccount, String toAccount, double amount, String description) {
+        Command command = transferCommand(fromAccount, toAccount, amount, description);
+        long sequence = publish(command);
+        await(sequence);
+        boolean succeeded = command.succeeded;
+        release(command, sequence);
+        return succeeded;
+    }
+
+    // Publishes a window of the batch before waiting, so it flows through the
+    // stages back to back and reaches the ledger in few commits. The window is
+    // bounded so a caller never holds a large share of the ring.
+    @Override
+    public boolean[] transferAll(List<TransferRequest> requests) {
+        boolean[] results = new boolean[requests.size()];
+        Command[] commands = new Command[Math.min(results.length, batchWindow)];
+        long[] sequences = new long[commands.length];
+        for (int start = 0; start < results.length; start += commands.length) {
+            int count = Math.min(commands.length, results.length - start);
+            for (int i = 0; i < count; i++) {
+                TransferRequest request = requests.get(start + i);
+                commands[i] = transferCommand(request.getFromAccount(), request.getToAccount(),
+                    request.getAmount(), request.getDescription());
+                sequences[i] = publish(commands[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                await(sequences[i]);
+                results[start + i] = commands[i].succeeded;
+                release(commands[i], sequences[i]);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean prepareDebit(String transferId, String fromAccount, double amount) {
+        return submit(() -> {
+            BankAccount fromAcc = accounts.get(fromAccount);
+            if (fromAcc == null || !fromAcc.withdraw(amount)) {
+                return false;
+            }
+            pendingDebits.put(transferId, new PendingDebit(fromAccount, amount));
+            return true;
+        });
+    }
+
+    @Override
+    public void commitDebit(String transferId, String toAccount, String description) {
+        submit(() -> {
+            PendingDebit debit = pendingDebits.remove(transferId);
+            if (debit != null) {
+                post(accounts.get(debit.accountNumber), new BankTransaction(debit.accountNumber, "DEBIT",
+                    debit.amount, "Transfer to " + toAccount + " - " + description), taskRecords);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void abortDebit(String transferId) {
+        submit(() -> {
+            PendingDebit debit = pendingDebits.remove(transferId);
+            if (debit != null) {
+                accounts.get(debit.accountNumber).deposit(debit.amount);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean credit(String toAccount, String fromAccount, double amount, String description) {
+        return submit(() -> {
+            BankAccount toAcc = accounts.get(toAccount);
+            if (toAcc == null || !toAcc.deposit(amount)) {
+                return false;
+            }
+            post(toAcc, new BankTransaction(toAccount, "CREDIT", amount,
+                "Transfer from " + fromAccount + " - " + description), taskRecords);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean placeHold(String accountNumber, double amount) {
+        return submit(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            return account != null && account.hold(amount);
+        });
+    }
+
+    @Override
+    public boolean captureHold(String accountNumber, double heldAmount, double amount, String description) {
+        return submit(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            if (account == null || !account.captureHold(heldAmount, amount)) {
+                return false;
+            }
+            post(account, new BankTransaction(accountNumber, "WITHDRAWAL", amount, description), taskRecords);
+            return true;
+        });
+    }
+
+    @Override
+    public void releaseHold(String accountNumber, double amount) {
+        submit(() -> {
+            BankAccount account = accounts.get(accountNumber);
+            if (account != null) {
+                account.releaseHold(amount);
+            }
+            return null;
+        });
+    }
+
+    // Replicated records keep their primary's sequence, so they go straight to
+    // the committer as in LocalShard
+    @Override
+    public void apply(LedgerRecord record) {
+        submit(() -> {
+            install(record);
+            committer.commitReplicated(record);
+            return null;
+        });
+    }
+
+    @Override
+    public void applyAll(List<LedgerRecord> records) {
+        submit(() -> {
+            for (LedgerRecord record : records) {
+                install(record);
+            }
+            return null;
+        });
+    }
+
+    // Business-logic thread only
+    private void install(LedgerRecord record) {
+        if (record.isOpening()) {
+            accounts.putIfAbsent(record.getAccountNumber(), record.toAccount());
+        } else {
+            BankAccount account = accounts.get(record.getAccountNumber());
+            if (account != null) {
+                account.restoreBalance(record.getBalanceAfter());
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(businessLogic.thread);
+        LockSupport.unpark(publisher.thread);
+    }
+
+    // Funds withdrawn during prepare, held until the transfer commits or aborts
+    private static class PendingDebit {
+        final String accountNumber;
+        final double amount;
+
+        PendingDebit(String accountNumber, double amount) {
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+        }
+    }
+}
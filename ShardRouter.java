@@ -0,0 +1,81 @@
+import java.io.IOException;              // Shard process startup
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+
+// Maps account numbers to shards. Configured with system properties:
+//   bank.shards          number of shards (default 4)
+//   bank.shard.mode      "local" for in-process shards, "process" for one child JVM per shard
+//                        (not with bank.db.dir: shard processes cannot replay a ledger)
+//   bank.shard.basePort  first port used by shard processes (default 7101)
+//   bank.engine          "sharded" for the shards above, "sequencer" for one
+//                        SequencerShard holding the whole book (default sharded)
+class ShardRouter {
+    private final AccountShard[] shards;
+
+    public ShardRouter(AccountShard[] shards) {
+        this.shards = shards;
+    }
+
+    // Whether fromSystemProperties would launch shard processes
+    public static boolean usesShardProcesses() {
+        return !"sequencer".equals(System.getProperty("bank.engine", "sharded"))
+            && "process".equals(System.getProperty("bank.shard.mode", "local"));
+    }
+
+    public static ShardRouter fromSystemProperties(LedgerCommitter committer) {
+        if ("sequencer".equals(System.getProperty("bank.engine", "sharded"))) {
+            return new ShardRouter(new AccountShard[]{new SequencerShard(0, committer)});
+        }
+        int count = Math.max(1, Integer.getInteger("bank.shards", 4));
+        String mode = System.getProperty("bank.shard.mode", "local");
+        int basePort = Integer.getInteger("bank.shard.basePort", 7101);
+
+        AccountShard[] shards = new AccountShard[count];
+        for (int i = 0; i < count; i++) {
+            if ("process".equals(mode)) {
+                try {
+                    Process process = ShardServer.launch(i, basePort + i);
+                    shards[i] = new RemoteShard(i, "localhost", basePort + i, process, committer);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not start shard process " + i, e);
+                }
+            } else {
+                shards[i] = new LocalShard(i, committer);
+            }
+        }
+        ShardRouter router = new ShardRouter(shards);
+        if ("process".equals(mode)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(router::shutdown, "shard-shutdown"));
+        }
+        return router;
+    }
+
+    // Replicas and tools always run their shards in-process
+    public static ShardRouter local(int count, LedgerCommitter committer) {
+        AccountShard[] shards = new AccountShard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new LocalShard(i, committer);
+        }
+        return new ShardRouter(shards);
+    }
+
+    public AccountShard shardFor(String accountNumber) {
+        return shards[Math.floorMod(accountNumber.hashCode(), shards.length)];
+    }
+
+    public int getShardCount() { return shards.length; }
+
+    public List<AccountShard> getShards() {
+        List<AccountShard> all = new ArrayList<>(shards.length);
+        for (AccountShard shard : shards) {
+            all.add(shard);
+        }
+        return all;
+    }
+
+    public void shutdown() {
+        for (AccountShard shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.io.*;                        // Input/Output operations
+import java.net.*;                       // Sockets
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+
+// Hosts one LocalShard in its own JVM and serves it to RemoteShard clients.
+// Every reply is preceded by REC|<record fields> for each ledger record the
+// request committed here, so the client commits them to its own ledger, as one
+// batch, before it hands the result back. Requests run one at a time, which
+// keeps each reply's records apart from any other request's.
+//   OPENS|<account fields>|<transaction fields or nulls>|...  -> RESULTS|OK or FAIL per account
+//   TRANSFERS|from|to|amount|desc|...                         -> RESULTS|OK or FAIL per transfer
+// Usage: java ShardServer <shardId> <port>
+class ShardServer {
+    private static final int OPEN_FIELDS = 15;       // 9 account fields, 6 opening transaction fields
+    private static final int TRANSFER_FIELDS = 4;
+
+    private final LedgerCommitter committer;
+    private final LocalShard shard;
+    private final ServerSocket serverSocket;
+    private final Object requestLock = new Object();                 // one request at a time
+    private final List<LedgerRecord> committed = new ArrayList<>();  // by the writer while a request runs
+    private volatile boolean running;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public ShardServer(int shardId, int port) throws IOException {
+        this.committer = new LedgerCommitter();
+        this.committer.addListener(record -> committed.add(record));
+        this.shard = new LocalShard(shardId, committer);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.running = true;
+    }
+
+    public void serve() {
+        audit.log(AuditLog.Event.SHARD_LISTENING, String.valueOf(shard.getShardId()), null, serverSocket.getLocalPort());
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> handle(socket), "shard-" + shard.getShardId() + "-conn");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    audit.log(AuditLog.Event.SHARD_ACCEPT_FAILED, String.valueOf(shard.getShardId()), e.getMessage(), 0);
+                }
+            }
+        }
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        serverSocket.close();
+        shard.shutdown();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8")))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                for (String reply : serve(WireFormat.decode(line))) {
+                    out.println(reply);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client went away; nothing to clean up beyond the socket
+        }
+    }
+
+    // The records the request committed, then its reply. The shard's writer
+    // commits before the call returns, so they are all collected by then, even
+    // when the request fails part way.
+    private List<String> serve(String[] request) {
+        synchronized (requestLock) {
+            List<String> replies;
+            try {
+                replies = dispatch(request);
+            } catch (RuntimeException e) {
+                replies = List.of(WireFormat.encode("ERROR", e.getMessage()));
+            }
+            List<String> lines = new ArrayList<>(committed.size() + replies.size());
+            for (LedgerRecord record : committed) {
+                lines.add(WireFormat.encode(WireFormat.concat(new Object[]{"REC"}, WireFormat.recordFields(record))));
+            }
+            committed.clear();
+            lines.addAll(replies);
+            return lines;
+        }
+    }
+
+    private List<String> dispatch(String[] f) {
+        List<String> replies = new ArrayList<>();
+        switch (f[0]) {
+            case "OPEN": {
+                BankAccount account = WireFormat.decodeAccount(f, 1);
+                BankTransaction opening = f.length > 10 ? WireFormat.decodeTransaction(f, 10) : null;
+                replies.add(result(shard.openAccount(account, opening)));
+                break;
+            }
+            case "OPENS": {
+                List<BankAccount> accounts = new ArrayList<>();
+                List<BankTransaction> openings = new ArrayList<>();
+                for (int i = 1; i + OPEN_FIELDS <= f.length; i += OPEN_FIELDS) {
+                    accounts.add(WireFormat.decodeAccount(f, i));
+                    openings.add(f[i + 9] != null ? WireFormat.decodeTransaction(f, i + 9) : null);
+                }
+                replies.add(results(shard.openAccounts(accounts, openings)));
+                break;
+            }
+            case "TRANSFERS": {
+                List<TransferRequest> requests = new ArrayList<>();
+                for (int i = 1; i + TRANSFER_FIELDS <= f.length; i += TRANSFER_FIELDS) {
+                    requests.add(new TransferRequest(f[i], f[i + 1], Double.parseDouble(f[i + 2]), f[i + 3]));
+                }
+                replies.add(results(shard.transferAll(requests)));
+                break;
+            }
+            case "GET": {
+                BankAccount account = shard.getAccount(f[1]);
+                replies.add(account == null ? "NONE"
+                    : WireFormat.encode(WireFormat.concat(new Object[]{"ACCOUNT"}, WireFormat.accountFields(account))));
+                break;
+            }
+            case "ACCOUNTS":
+                for (BankAccount account : shard.getAccounts()) {
+                    replies.add(WireFormat.encode(WireFormat.concat(new Object[]{"ACCOUNT"}, WireFormat.accountFields(account))));
+                }
+                replies.add("END");
+                break;
+            case "TRANSFER":
+                replies.add(result(shard.transfer(f[1], f[2], Double.parseDouble(f[3]), f[4])));
+                break;
+            case "PREPARE":
+                replies.add(result(shard.prepareDebit(f[1], f[2], Double.parseDouble(f[3]))));
+                break;
+            case "COMMIT":
+                shard.commitDebit(f[1], f[2], f[3]);
+                replies.add("OK");
+                break;
+            case "ABORT":
+                shard.abortDebit(f[1]);
+                replies.add("OK");
+                break;
+            case "CREDIT":
+                replies.add(result(shard.credit(f[1], f[2], Double.parseDouble(f[3]), f[4])));
+                break;
+            case "HOLD":
+                replies.add(result(shard.placeHold(f[1], Double.parseDouble(f[2]))));
+                break;
+            case "CAPTURE":
+                replies.add(result(shard.captureHold(f[1], Double.parseDouble(f[2]), Double.parseDouble(f[3]), f[4])));
+                break;
+            case "RELEASE":
+                shard.releaseHold(f[1], Double.parseDouble(f[2]));
+                replies.add("OK");
+                break;
+            default:
+                replies.add(WireFormat.encode("ERROR", "Unknown command " + f[0]));
+        }
+        return replies;
+    }
+
+    private static String result(boolean success) {
+        return success ? "OK" : "FAIL";
+    }
+
+    private static String results(boolean[] successes) {
+        Object[] fields = new Object[successes.length + 1];
+        fields[0] = "RESULTS";
+        for (int i = 0; i < successes.length; i++) {
+            fields[i + 1] = result(successes[i]);
+        }
+        return WireFormat.encode(fields);
+    }
+
+    // Spawns a ShardServer child JVM using this JVM's runtime and classpath;
+    // the audit settings carry over so its records land beside ours
+    public static Process launch(int shardId, int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path")));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("bank.audit.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("ShardServer");
+        command.add(String.valueOf(shardId));
+        command.add(String.valueOf(port));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.inheritIO();
+        return builder.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java ShardServer <shardId> <port>");
+            return;
+        }
+        // A shard process never outlives the JVM that launched it
+        ProcessHandle.current().parent().ifPresent(parent -> parent.onExit().thenRun(() -> System.exit(0)));
+        new ShardServer(Integer.parseInt(args[0]), Integer.parseInt(args[1])).serve();
+    }
+}
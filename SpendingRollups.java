@@ -0,0 +1,230 @@
+import java.time.Instant;                // Bucket boundaries
+import java.time.LocalDate;              // Calendar periods
+import java.time.ZoneId;                 // Local calendar
+import java.util.ArrayList;              // List implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.TreeMap;                // Buckets in period order
+import java.util.concurrent.ConcurrentHashMap; // Rollups by account
+
+// ===== SPENDING ANALYTICS =====
+// Per-account income and spending totals kept at day, month and year
+// granularity, updated from every committed posting, so a dashboard range
+// query adds up one bucket per period instead of scanning the history.
+// Amounts are kept in paise so repeated additions never drift. Periods follow
+// the local calendar and are numbered so consecutive periods are consecutive
+// integers: epoch day, year * 12 + month - 1, and year.
+class SpendingRollups implements LedgerListener {
+    enum Granularity { DAY, MONTH, YEAR }
+
+    static final String[] CATEGORIES = {"Transfers in", "Deposits", "Transfers out", "Withdrawals", "Other"};
+    private static final int TRANSFERS_IN = 0;
+    private static final int DEPOSITS = 1;
+    private static final int TRANSFERS_OUT = 2;
+    private static final int WITHDRAWALS = 3;
+    private static final int OTHER = 4;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile Map<String, AccountRollup> accounts = new ConcurrentHashMap<>();
+    private List<LedgerRecord> replay;                // guarded by this; commits seen during a rebuild
+
+    // Totals for one period (or a whole range, from total())
+    static class Bucket {
+        private final int period;
+        private long incomePaise;
+        private long spendingPaise;
+        private final long[] categoryPaise = new long[CATEGORIES.length];
+        private int transactions;
+
+        Bucket(int period) {
+            this.period = period;
+        }
+
+        private void add(int category, long paise) {
+            categoryPaise[category] += paise;
+            if (category <= DEPOSITS) {
+                incomePaise += paise;
+            } else if (category != OTHER) {
+                spendingPaise += paise;
+            }
+            transactions++;
+        }
+
+        private void addAll(Bucket other) {
+            incomePaise += other.incomePaise;
+            spendingPaise += other.spendingPaise;
+            for (int i = 0; i < categoryPaise.length; i++) {
+                categoryPaise[i] += other.categoryPaise[i];
+            }
+            transactions += other.transactions;
+        }
+
+        private Bucket copy() {
+            Bucket copy = new Bucket(period);
+            copy.addAll(this);
+            return copy;
+        }
+
+        // A bucket received from a server, from the amounts its getters report
+        static Bucket received(int period, double income, double spending, double[] categories, int transactions) {
+            Bucket bucket = new Bucket(period);
+            bucket.incomePaise = Math.round(income * 100);
+            bucket.spendingPaise = Math.round(spending * 100);
+            for (int i = 0; i < bucket.categoryPaise.length; i++) {
+                bucket.categoryPaise[i] = Math.round(categories[i] * 100);
+            }
+            bucket.transactions = transactions;
+            return bucket;
+        }
+
+        public int getPeriod() { return period; }
+        public double getIncome() { return incomePaise / 100.0; }
+        public double getSpending() { return spendingPaise / 100.0; }
+        public double getNet() { return (incomePaise - spendingPaise) / 100.0; }
+        public double getCategory(int category) { return categoryPaise[category] / 100.0; }
+        public int getTransactionCount() { return transactions; }
+    }
+
+    // One account's buckets at every granularity; readers and the committer
+    // synchronize on it
+    private static final class AccountRollup {
+        final List<TreeMap<Integer, Bucket>> levels = new ArrayList<>();
+
+        AccountRollup() {
+            for (int i = 0; i < Granularity.values().length; i++) {
+                levels.add(new TreeMap<>());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onCommit(LedgerRecord record) {
+        if (record.isOpening()) {
+            return;
+        }
+        add(accounts, record.getAccountNumber(), record.getType(), record.getAmount(), record.getTimestamp());
+        if (replay != null) {
+            replay.add(record);
+        }
+    }
+
+    // Recomputes every account from the ledger, including archived history.
+    // Commits keep flowing meanwhile; those past the snapshot are replayed
+    // onto the new rollups before they replace the old.
+    public void rebuild(VersionStore versionStore) {
+        synchronized (this) {
+            replay = new ArrayList<>();
+        }
+        Map<String, AccountRollup> rebuilt = new ConcurrentHashMap<>();
+        long sequence;
+        try (LedgerSnapshot snapshot = versionStore.openSnapshot()) {
+            sequence = snapshot.getSequence();
+            for (String accountNumber : snapshot.getAccountNumbers()) {
+                rebuilt.put(accountNumber, new AccountRollup());
+                for (BankTransaction t : snapshot.getTransactionHistory(accountNumber)) {
+                    add(rebuilt, accountNumber, t.getType(), t.getAmount(), t.getTimestamp().getTime());
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                replay = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            for (LedgerRecord record : replay) {
+                if (record.getSequence() > sequence) {
+                    add(rebuilt, record.getAccountNumber(), record.getType(), record.getAmount(), record.getTimestamp());
+                }
+            }
+            replay = null;
+            accounts = rebuilt;
+        }
+    }
+
+    // Buckets with activity in [fromPeriod, toPeriod], oldest first
+    public List<Bucket> buckets(String accountNumber, Granularity granularity, int fromPeriod, int toPeriod) {
+        List<Bucket> buckets = new ArrayList<>();
+        AccountRollup rollup = accounts.get(accountNumber);
+        if (rollup == null) {
+            return buckets;
+        }
+        synchronized (rollup) {
+            for (Bucket bucket : rollup.levels.get(granularity.ordinal())
+                    .subMap(fromPeriod, true, toPeriod, true).values()) {
+                buckets.add(bucket.copy());
+            }
+        }
+        return buckets;
+    }
+
+    // Sum of the buckets in [fromPeriod, toPeriod]
+    public Bucket total(String accountNumber, Granularity granularity, int fromPeriod, int toPeriod) {
+        return total(buckets(accountNumber, granularity, fromPeriod, toPeriod), fromPeriod);
+    }
+
+    public static Bucket total(List<Bucket> buckets, int fromPeriod) {
+        Bucket total = new Bucket(fromPeriod);
+        for (Bucket bucket : buckets) {
+            total.addAll(bucket);
+        }
+        return total;
+    }
+
+    public int period(Granularity granularity, long millis) {
+        return period(granularity, Instant.ofEpochMilli(millis).atZone(zone).toLocalDate());
+    }
+
+    public static int period(Granularity granularity, LocalDate date) {
+        switch (granularity) {
+            case DAY:
+                return (int) date.toEpochDay();
+            case MONTH:
+                return date.getYear() * 12 + date.getMonthValue() - 1;
+            default:
+                return date.getYear();
+        }
+    }
+
+    // First day of a period, for labels
+    public static LocalDate startOf(Granularity granularity, int period) {
+        switch (granularity) {
+            case DAY:
+                return LocalDate.ofEpochDay(period);
+            case MONTH:
+                return LocalDate.of(period / 12, period % 12 + 1, 1);
+            default:
+                return LocalDate.of(period, 1, 1);
+        }
+    }
+
+    private void add(Map<String, AccountRollup> target, String accountNumber, String type, double amount, long millis) {
+        int category = category(type);
+        long paise = Math.round(amount * 100);
+        LocalDate date = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+        AccountRollup rollup = target.computeIfAbsent(accountNumber, a -> new AccountRollup());
+        synchronized (rollup) {
+            for (Granularity granularity : Granularity.values()) {
+                int period = period(granularity, date);
+                rollup.levels.get(granularity.ordinal()).computeIfAbsent(period, Bucket::new).add(category, paise);
+            }
+        }
+    }
+
+    // Same sides as the reconciler: deposits and credits in, withdrawals and debits out
+    private static int category(String type) {
+        switch (type) {
+            case "CREDIT":
+                return TRANSFERS_IN;
+            case "DEPOSIT":
+                return DEPOSITS;
+            case "DEBIT":
+                return TRANSFERS_OUT;
+            case "WITHDRAWAL":
+            case "WITHDRAW":
+                return WITHDRAWALS;
+            default:
+                return OTHER;
+        }
+    }
+}
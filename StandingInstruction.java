@@ -0,0 +1,79 @@
+import java.util.Calendar;               // Calendar arithmetic for recurrences
+
+// ===== STANDING INSTRUCTIONS =====
+// A recurring transfer (rent, SIP, salary). Lives on the scheduler's timing
+// wheel; the tick is the next fire time in epoch seconds.
+
+class StandingInstruction extends TimerEntry {
+    public static final String ONCE = "ONCE";
+    public static final String DAILY = "DAILY";
+    public static final String WEEKLY = "WEEKLY";
+    public static final String MONTHLY = "MONTHLY";
+    public static final String YEARLY = "YEARLY";
+
+    private final String instructionId;
+    private final String fromAccount;
+    private final String toAccount;
+    private final double amount;
+    private final String description;
+    private final String frequency;
+    private long nextFireTime;              // epoch millis
+    private long firing;                    // fire time whose intent is recorded but not yet settled, else 0
+    private int failures;
+
+    public StandingInstruction(String instructionId, String fromAccount, String toAccount, double amount,
+                               String description, String frequency, long nextFireTime) {
+        this.instructionId = instructionId;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.description = description;
+        this.frequency = frequency;
+        this.nextFireTime = nextFireTime;
+    }
+
+    // Advances to the following occurrence; false once a one-off instruction has run
+    public boolean advance() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(nextFireTime);
+        switch (frequency) {
+            case DAILY: calendar.add(Calendar.DAY_OF_MONTH, 1); break;
+            case WEEKLY: calendar.add(Calendar.WEEK_OF_YEAR, 1); break;
+            case MONTHLY: calendar.add(Calendar.MONTH, 1); break;
+            case YEARLY: calendar.add(Calendar.YEAR, 1); break;
+            default: return false;
+        }
+        nextFireTime = calendar.getTimeInMillis();
+        return true;
+    }
+
+    // The transfer carries the idempotency key, so the ledger shows whether a
+    // recorded fire went through
+    public TransferRequest toTransferRequest() {
+        return new TransferRequest(fromAccount, toAccount, amount,
+            "Standing instruction - " + description + " " + fireKey());
+    }
+
+    // Names one occurrence: this instruction at its current fire time
+    public String fireKey() {
+        return "[" + instructionId + "@" + nextFireTime + "]";
+    }
+
+    void recordFailure() { failures++; }
+    void setNextFireTime(long nextFireTime) {
+        this.nextFireTime = nextFireTime;
+        this.firing = 0;
+    }
+    void setFiring(long fireTime) { this.firing = fireTime; }
+    boolean isFiring() { return firing != 0 && firing == nextFireTime; }
+
+    // Getters
+    public String getInstructionId() { return instructionId; }
+    public String getFromAccount() { return fromAccount; }
+    public String getToAccount() { return toAccount; }
+    public double getAmount() { return amount; }
+    public String getDescription() { return description; }
+    public String getFrequency() { return frequency; }
+    public long getNextFireTime() { return nextFireTime; }
+    public int getFailures() { return failures; }
+}
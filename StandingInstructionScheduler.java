@@ -0,0 +1,231 @@
+import java.io.File;                     // Store location
+import java.io.IOException;              // Store failures
+import java.util.ArrayList;              // List implementation
+import java.util.HashMap;                // Map implementation
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.Set;                    // Accounts a caller owns
+import java.util.UUID;                   // Instruction ids
+
+// Fires standing instructions from a hierarchical timing wheel with one-second
+// ticks. Everything due on the same tick (the 1st of the month at 00:00) is
+// handed to BankingService as one batch, and the new fire times are written
+// back in one synced append. Instructions missed while the process was down
+// fire on the first tick after startup.
+//
+// Each occurrence is recorded as firing before its transfer runs, and the
+// transfer description carries the occurrence's key. An occurrence that was
+// recorded but never settled, because the process died or the batch failed,
+// is looked up in the payer's history before it runs again, so it is paid
+// once. A failed batch puts its instructions back on the wheel to retry after
+// RETRY_MILLIS rather than dropping them. Clients create and cancel
+// instructions through BankServerSession and ApiGateway.
+class StandingInstructionScheduler {
+    private static final long TICK_MILLIS = 1000;
+    private static final long RETRY_MILLIS = 60_000;
+
+    private final BankingService bankingService;
+    private final StandingInstructionStore store;
+    private final Map<String, StandingInstruction> instructions;   // guarded by this
+    private HierarchicalTimingWheel wheel;                         // guarded by this
+    private volatile boolean running;
+    private long firedCount;
+    private long failedCount;
+    private final AuditLog audit = AuditLog.getInstance();
+
+    public StandingInstructionScheduler(BankingService bankingService, File storeFile) {
+        this.bankingService = bankingService;
+        this.store = new StandingInstructionStore(storeFile);
+        this.instructions = new HashMap<>();
+    }
+
+    public synchronized void start() throws IOException {
+        wheel = new HierarchicalTimingWheel(toTick(System.currentTimeMillis()));
+        instructions.putAll(store.load());
+        for (StandingInstruction instruction : instructions.values()) {
+            wheel.schedule(instruction, toTick(instruction.getNextFireTime()));
+        }
+        running = true;
+        Thread driver = new Thread(this::run, "standing-instructions");
+        driver.setDaemon(true);
+        driver.start();
+        audit.log(AuditLog.Event.SCHEDULER_STARTED, instructions.size(), 0);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public synchronized String schedule(String fromAccount, String toAccount, double amount, String description,
+                                        String frequency, long firstFireTime) throws IOException {
+        if (!StandingInstruction.ONCE.equals(frequency) && !StandingInstruction.DAILY.equals(frequency)
+                && !StandingInstruction.WEEKLY.equals(frequency) && !StandingInstruction.MONTHLY.equals(frequency)
+                && !StandingInstruction.YEARLY.equals(frequency)) {
+            throw new IllegalArgumentException("Unknown frequency " + frequency);
+        }
+        if (amount <= 0 || fromAccount.equals(toAccount)) {
+            throw new IllegalArgumentException("A standing instruction needs a positive amount and two accounts");
+        }
+        String instructionId = UUID.randomUUID().toString();
+        StandingInstruction instruction = new StandingInstruction(instructionId, fromAccount, toAccount, amount,
+            description, frequency, firstFireTime);
+        store.recordAdded(instruction);
+        instructions.put(instructionId, instruction);
+        wheel.schedule(instruction, toTick(firstFireTime));
+        return instructionId;
+    }
+
+    public synchronized boolean cancel(String instructionId) throws IOException {
+        StandingInstruction instruction = instructions.remove(instructionId);
+        if (instruction == null) {
+            return false;
+        }
+        wheel.cancel(instruction);
+        store.recordCancelled(instructionId);
+        return true;
+    }
+
+    public synchronized StandingInstruction getInstruction(String instructionId) {
+        return instructions.get(instructionId);
+    }
+
+    // Instructions paying out of any of the given accounts
+    public synchronized List<StandingInstruction> getInstructionsFrom(Set<String> accountNumbers) {
+        List<StandingInstruction> found = new ArrayList<>();
+        for (StandingInstruction instruction : instructions.values()) {
+            if (accountNumbers.contains(instruction.getFromAccount())) {
+                found.add(instruction);
+            }
+        }
+        return found;
+    }
+
+    public synchronized int getInstructionCount() {
+        return instructions.size();
+    }
+
+    public synchronized long getFiredCount() { return firedCount; }
+    public synchronized long getFailedCount() { return failedCount; }
+
+    private void run() {
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                Thread.sleep(TICK_MILLIS - (now % TICK_MILLIS));
+                fireDue(toTick(System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                audit.log(AuditLog.Event.SCHEDULER_BATCH_FAILED, e.getMessage());
+            }
+        }
+    }
+
+    // Runs every instruction due up to the tick as one batch
+    void fireDue(long tick) throws IOException {
+        List<StandingInstruction> due = new ArrayList<>();
+        synchronized (this) {
+            List<TimerEntry> expired = new ArrayList<>();
+            wheel.advanceTo(tick, expired);
+            for (TimerEntry entry : expired) {
+                due.add((StandingInstruction) entry);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        boolean[] results;
+        try {
+            results = execute(due);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                long retryTick = toTick(System.currentTimeMillis() + RETRY_MILLIS);
+                for (StandingInstruction instruction : due) {
+                    if (instructions.containsKey(instruction.getInstructionId())) {
+                        wheel.schedule(instruction, retryTick);
+                    }
+                }
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            List<StandingInstruction> rescheduled = new ArrayList<>();
+            List<String> finished = new ArrayList<>();
+            int failed = 0;
+            for (int i = 0; i < due.size(); i++) {
+                StandingInstruction instruction = due.get(i);
+                if (!results[i]) {
+                    instruction.recordFailure();
+                    failed++;
+                }
+                if (!instructions.containsKey(instruction.getInstructionId())) {
+                    continue;   // cancelled while its transfer was running
+                }
+                if (instruction.advance()) {
+                    wheel.schedule(instruction, toTick(instruction.getNextFireTime()));
+                    rescheduled.add(instruction);
+                } else {
+                    instructions.remove(instruction.getInstructionId());
+                    finished.add(instruction.getInstructionId());
+                }
+            }
+            store.recordFired(rescheduled, finished);
+            store.compactIfNeeded(instructions.values());
+            firedCount += due.size();
+            failedCount += failed;
+            audit.log(AuditLog.Event.SCHEDULER_FIRED, due.size(), failed);
+        }
+    }
+
+    // Records the batch as firing, then runs what the ledger does not already show
+    private boolean[] execute(List<StandingInstruction> due) throws IOException {
+        boolean[] results = new boolean[due.size()];
+        boolean[] settled = new boolean[due.size()];
+        for (int i = 0; i < due.size(); i++) {
+            StandingInstruction instruction = due.get(i);
+            settled[i] = instruction.isFiring() && alreadyPosted(instruction);
+            results[i] = settled[i];
+        }
+        synchronized (this) {
+            store.recordFiring(due);
+            for (StandingInstruction instruction : due) {
+                instruction.setFiring(instruction.getNextFireTime());
+            }
+        }
+
+        List<TransferRequest> requests = new ArrayList<>(due.size());
+        List<Integer> positions = new ArrayList<>(due.size());
+        for (int i = 0; i < due.size(); i++) {
+            if (!settled[i]) {
+                requests.add(due.get(i).toTransferRequest());
+                positions.add(i);
+            }
+        }
+        if (!requests.isEmpty()) {
+            boolean[] ran = bankingService.transferMoneyBatch(requests);
+            for (int j = 0; j < ran.length; j++) {
+                results[positions.get(j)] = ran[j];
+            }
+        }
+        return results;
+    }
+
+    // Whether the payer's history already holds this occurrence's debit
+    private boolean alreadyPosted(StandingInstruction instruction) {
+        String key = instruction.fireKey();
+        for (BankTransaction transaction : bankingService.getTransactionHistory(instruction.getFromAccount(),
+                instruction.getNextFireTime(), Long.MAX_VALUE)) {
+            if ("DEBIT".equals(transaction.getType()) && transaction.getDescription().endsWith(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long toTick(long epochMillis) {
+        return epochMillis / TICK_MILLIS;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.*;                        // Input/Output operations
+import java.nio.charset.StandardCharsets; // File encoding
+import java.util.Collection;             // Live instructions
+import java.util.LinkedHashMap;          // Replay order
+import java.util.Map;                    // Map interface
+
+// Durable home of standing instructions: an append-only log of ADD, FIRE, NEXT
+// and CANCEL lines. A batch about to fire appends FIRE|id|fireTime for each
+// instruction in one synced write before any transfer runs, and appends its new
+// fire times in another once they have; a FIRE with no NEXT after it marks an
+// occurrence whose outcome the ledger has to settle. The log is rewritten from
+// the live set when it grows well past it.
+class StandingInstructionStore {
+    private static final int COMPACT_MIN_LINES = 10000;
+
+    private final File file;
+    private Writer writer;
+    private FileOutputStream stream;
+    private long lineCount;
+
+    public StandingInstructionStore(File file) {
+        this.file = file;
+    }
+
+    public Map<String, StandingInstruction> load() throws IOException {
+        Map<String, StandingInstruction> instructions = new LinkedHashMap<>();
+        lineCount = 0;
+        if (file.exists()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lineCount++;
+                    String[] f = WireFormat.decode(line);
+                    try {
+                        switch (f[0]) {
+                            case "ADD":
+                                instructions.put(f[1], new StandingInstruction(f[1], f[2], f[3],
+                                    Double.parseDouble(f[4]), f[5], f[6], Long.parseLong(f[7])));
+                                break;
+                            case "FIRE": {
+                                StandingInstruction instruction = instructions.get(f[1]);
+                                if (instruction != null) {
+                                    instruction.setFiring(Long.parseLong(f[2]));
+                                }
+                                break;
+                            }
+                            case "NEXT": {
+                                StandingInstruction instruction = instructions.get(f[1]);
+                                if (instruction != null) {
+                                    instruction.setNextFireTime(Long.parseLong(f[2]));
+                                }
+                                break;
+                            }
+                            case "CANCEL":
+                                instructions.remove(f[1]);
+                                break;
+                            default:
+                                break;
+                        }
+                    } catch (RuntimeException e) {
+                        break;   // torn tail from a crash mid-write; everything before it is intact
+                    }
+                }
+            }
+        }
+        openForAppend();
+        return instructions;
+    }
+
+    private void openForAppend() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        stream = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    public void recordAdded(StandingInstruction instruction) throws IOException {
+        append(addLine(instruction));
+        sync();
+    }
+
+    public void recordCancelled(String instructionId) throws IOException {
+        append(WireFormat.encode("CANCEL", instructionId));
+        sync();
+    }
+
+    // One write and one sync for the whole batch, before its transfers run
+    public void recordFiring(Collection<StandingInstruction> due) throws IOException {
+        for (StandingInstruction instruction : due) {
+            append(WireFormat.encode("FIRE", instruction.getInstructionId(), instruction.getNextFireTime()));
+        }
+        sync();
+    }
+
+    // One write and one sync for the whole fired batch
+    public void recordFired(Collection<StandingInstruction> rescheduled, Collection<String> finished) throws IOException {
+        for (StandingInstruction instruction : rescheduled) {
+            append(WireFormat.encode("NEXT", instruction.getInstructionId(), instruction.getNextFireTime()));
+        }
+        for (String instructionId : finished) {
+            append(WireFormat.encode("CANCEL", instructionId));
+        }
+        sync();
+    }
+
+    // Rewrites the log from the live set once it is mostly superseded lines
+    public void compactIfNeeded(Collection<StandingInstruction> live) throws IOException {
+        if (lineCount < COMPACT_MIN_LINES || lineCount < 2L * live.size()) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             Writer compacted = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (StandingInstruction instruction : live) {
+                compacted.write(addLine(instruction));
+                compacted.write('\n');
+                if (instruction.isFiring()) {
+                    compacted.write(WireFormat.encode("FIRE", instruction.getInstructionId(),
+                        instruction.getNextFireTime()));
+                    compacted.write('\n');
+                }
+            }
+            compacted.flush();
+            out.getFD().sync();
+        }
+        close();
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        }
+        lineCount = live.size();
+        openForAppend();
+    }
+
+    private static String addLine(StandingInstruction instruction) {
+        return WireFormat.encode("ADD", instruction.getInstructionId(), instruction.getFromAccount(),
+            instruction.getToAccount(), instruction.getAmount(), instruction.getDescription(),
+            instruction.getFrequency(), instruction.getNextFireTime());
+    }
+
+    private void append(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        lineCount++;
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        stream.getFD().sync();
+    }
+
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+// ===== TIMING WHEEL =====
+// Base class for anything scheduled on a HierarchicalTimingWheel. The links are
+// intrusive so scheduling and cancelling never allocate or search.
+
+class TimerEntry {
+    long deadlineTick;
+    TimerEntry previous;
+    TimerEntry next;
+    HierarchicalTimingWheel.Slot slot;
+
+    public boolean isScheduled() {
+        return slot != null;
+    }
+
+    public long getDeadlineTick() {
+        return deadlineTick;
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.concurrent.atomic.AtomicLong; // Lock-free bucket state
+
+// ===== RATE LIMITING =====
+// Token bucket kept as a single long: the theoretical arrival time of the next
+// request (GCRA). A request is admitted while that time is at most `burst`
+// ahead of now, which is exactly a bucket of burst/interval tokens refilling one
+// token per interval. One CAS per admission, no locks, no allocation.
+
+final class TokenBucket extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    // Refill rate and capacity shared by every bucket of one kind
+    static final class Limit {
+        final long intervalNanos;
+        final long burstNanos;
+
+        Limit(double permitsPerSecond, int burst) {
+            this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+            this.burstNanos = intervalNanos * Math.max(0, burst - 1);
+        }
+
+        // Parses "permitsPerSecond:burst", e.g. "0.1:5" for five attempts then one per 10 s
+        static Limit parse(String spec) {
+            String[] parts = spec.split(":");
+            return new Limit(Double.parseDouble(parts[0]), Integer.parseInt(parts[1]));
+        }
+    }
+
+    TokenBucket(long nowNanos) {
+        super(nowNanos);
+    }
+
+    // 0 if admitted, otherwise nanoseconds until a token will be available
+    long tryAcquire(Limit limit, long nowNanos) {
+        while (true) {
+            long arrival = get();
+            long next = Math.max(arrival, nowNanos) + limit.intervalNanos;
+            long ahead = next - nowNanos;
+            if (ahead > limit.burstNanos + limit.intervalNanos) {
+                return ahead - limit.burstNanos - limit.intervalNanos;
+            }
+            if (compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Gives back a token taken by a request that a later bucket refused
+    void refund(Limit limit) {
+        addAndGet(-limit.intervalNanos);
+    }
+
+    // A full bucket carries no information and can be dropped
+    boolean isIdle(long nowNanos) {
+        return get() <= nowNanos;
+    }
+}
@@ -0,0 +1,20 @@
+// One transfer in a batch submitted through BankingService.transferMoneyBatch
+class TransferRequest {
+    private final String fromAccount;
+    private final String toAccount;
+    private final double amount;
+    private final String description;
+
+    public TransferRequest(String fromAccount, String toAccount, double amount, String description) {
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    // Getters
+    public String getFromAccount() { return fromAccount; }
+    public String getToAccount() { return toAccount; }
+    public double getAmount() { return amount; }
+    public String getDescription() { return description; }
+}
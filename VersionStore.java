@@ -0,0 +1,148 @@
+import java.io.IOException;              // Archive writes
+import java.util.ArrayList;              // Tiering candidates
+import java.util.List;                   // List interface
+import java.util.Map;                    // Map interface
+import java.util.TreeMap;                // Open snapshots by sequence
+import java.util.concurrent.ConcurrentHashMap; // Lock-free version heads
+
+// Maintains the newest AccountVersion of every account from the ledger stream.
+// Versions are installed inside the commit, and the visible sequence only moves
+// once a whole commit batch is installed, so a snapshot never sees half of a
+// same-shard transfer. Readers never touch shard writers or their locks.
+// Aged history is tiered out to a LedgerArchive by archiveBefore.
+class VersionStore implements LedgerListener {
+    private final Map<String, AccountVersion> heads;
+    private final TreeMap<Long, Integer> openSnapshots;   // guarded by itself
+    private final Map<String, BankAccount> metadata;
+    private final Object installLock = new Object();      // commits and tiering replace heads in turn
+    private volatile long visibleSequence;
+
+    public VersionStore() {
+        heads = new ConcurrentHashMap<>();
+        openSnapshots = new TreeMap<>();
+        metadata = new ConcurrentHashMap<>();
+    }
+
+    // A detached copy of the account supplies the static fields shown alongside
+    // a version; the balance a version carries is its own
+    public void registerAccount(BankAccount account) {
+        metadata.put(account.getAccountNumber(), account.copy(0.0, 0.0));
+    }
+
+    @Override
+    public void onCommit(LedgerRecord record) {
+        String accountNumber = record.getAccountNumber();
+        synchronized (installLock) {
+            AccountVersion head = heads.get(accountNumber);
+            BankAccount account = metadata.get(accountNumber);
+            if (account == null) {
+                account = head != null ? head.getAccount() : record.toAccount();
+            }
+            AccountVersion.HistoryNode history = head != null ? head.getHistory() : null;
+            if (!record.isOpening()) {
+                history = new AccountVersion.HistoryNode(record.toTransaction(), history);
+            }
+            AccountVersion version = new AccountVersion(account, record.getSequence(), record.getBalanceAfter(),
+                history, head != null ? head.getCold() : null, head);
+            version.pruneBefore(pruneHorizon(record.getSequence()));
+            heads.put(accountNumber, version);
+        }
+    }
+
+    // Moves every transaction older than the cutoff into one new archive segment
+    // and replaces each affected head with a same-sequence version whose hot
+    // history stops short of it. Older versions keep their full hot history, so
+    // open snapshots read the same transactions either way. Returns the number
+    // of transactions archived.
+    public synchronized int archiveBefore(long cutoffMillis, LedgerArchive archive) throws IOException {
+        Map<String, AccountVersion.HistoryNode> oldestKept = new java.util.HashMap<>();
+        List<List<BankTransaction>> aged = new ArrayList<>();
+        int count = 0;
+        for (Map.Entry<String, AccountVersion> entry : heads.entrySet()) {
+            // History is newest first, so the aged part is a suffix of the list
+            AccountVersion.HistoryNode node = entry.getValue().getHistory();
+            while (node != null && node.transaction.getTimestamp().getTime() >= cutoffMillis) {
+                node = node.next;
+            }
+            if (node == null) {
+                continue;
+            }
+            List<BankTransaction> transactions = new ArrayList<>(node.size);
+            for (AccountVersion.HistoryNode n = node; n != null; n = n.next) {
+                transactions.add(n.transaction);
+            }
+            java.util.Collections.reverse(transactions);
+            oldestKept.put(entry.getKey(), node);
+            aged.add(transactions);
+            count += transactions.size();
+        }
+        if (aged.isEmpty()) {
+            return 0;
+        }
+
+        // Durable first: heads only drop history the archive already holds
+        int segmentId = archive.writeSegment(aged);
+        for (Map.Entry<String, AccountVersion.HistoryNode> entry : oldestKept.entrySet()) {
+            synchronized (installLock) {
+                AccountVersion head = heads.get(entry.getKey());
+                heads.put(entry.getKey(), head.withArchived(entry.getValue(), archive, segmentId));
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void onBatchCommitted(long lastSequence) {
+        visibleSequence = lastSequence;
+    }
+
+    private long pruneHorizon(long newest) {
+        synchronized (openSnapshots) {
+            long horizon = Math.min(visibleSequence, newest);
+            return openSnapshots.isEmpty() ? horizon : Math.min(horizon, openSnapshots.firstKey());
+        }
+    }
+
+    public LedgerSnapshot openSnapshot() {
+        long sequence;
+        synchronized (openSnapshots) {
+            sequence = visibleSequence;
+            openSnapshots.merge(sequence, 1, Integer::sum);
+        }
+        return new LedgerSnapshot(this, sequence);
+    }
+
+    void release(long sequence) {
+        synchronized (openSnapshots) {
+            openSnapshots.computeIfPresent(sequence, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    AccountVersion versionAt(String accountNumber, long sequence) {
+        AccountVersion head = heads.get(accountNumber);
+        return head == null ? null : head.asOf(sequence);
+    }
+
+    // Latest committed state without pinning a snapshot
+    public AccountVersion latest(String accountNumber) {
+        // Unpinned: a concurrent prune may pass our sequence, so retry at the newer one
+        long sequence = visibleSequence;
+        while (true) {
+            AccountVersion version = versionAt(accountNumber, sequence);
+            long current = visibleSequence;
+            if (version != null || current == sequence) {
+                return version;
+            }
+            sequence = current;
+        }
+    }
+
+    // Every account that has a version; a snapshot filters out ones opened after it
+    List<String> accountNumbers() {
+        return new ArrayList<>(heads.keySet());
+    }
+
+    public long getVisibleSequence() {
+        return visibleSequence;
+    }
+}
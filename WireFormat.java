@@ -0,0 +1,163 @@
+import java.util.ArrayList;              // Field buffer
+import java.util.Date;                   // Transaction timestamps
+import java.util.List;                   // List interface
+
+// ===== WIRE FORMAT =====
+// Line-oriented encoding shared by the socket protocols. One message per line,
+// fields separated by '|', with '\' escapes so descriptions can carry any text.
+
+final class WireFormat {
+    static final char SEPARATOR = '|';
+    private static final String NULL_FIELD = "\\0";
+
+    private WireFormat() {
+    }
+
+    public static String encode(Object... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(SEPARATOR);
+            }
+            appendField(line, fields[i]);
+        }
+        return line.toString();
+    }
+
+    private static void appendField(StringBuilder line, Object field) {
+        if (field == null) {
+            line.append(NULL_FIELD);
+            return;
+        }
+        String text = field.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': line.append("\\\\"); break;
+                case SEPARATOR: line.append("\\p"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                default: line.append(c);
+            }
+        }
+    }
+
+    public static String[] decode(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean nullField = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == SEPARATOR) {
+                fields.add(nullField ? null : field.toString());
+                field.setLength(0);
+                nullField = false;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                switch (next) {
+                    case 'p': field.append(SEPARATOR); break;
+                    case 'n': field.append('\n'); break;
+                    case 'r': field.append('\r'); break;
+                    case '0': nullField = true; break;
+                    default: field.append(next);
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(nullField ? null : field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    // Accounts travel as: type, number, holder, balance, email, phone, address, dob, gender
+    public static Object[] accountFields(BankAccount account) {
+        return new Object[]{
+            account.getAccountType(), account.getAccountNumber(), account.getAccountHolder(),
+            account.getBalance(), account.getEmail(), account.getPhone(),
+            account.getAddress(), account.getDob(), account.getGender()
+        };
+    }
+
+    public static BankAccount decodeAccount(String[] fields, int offset) {
+        String type = fields[offset];
+        String number = fields[offset + 1];
+        String holder = fields[offset + 2];
+        double balance = Double.parseDouble(fields[offset + 3]);
+        String email = fields[offset + 4];
+        String phone = fields[offset + 5];
+        String address = fields[offset + 6];
+        String dob = fields[offset + 7];
+        String gender = fields[offset + 8];
+        if ("Current".equals(type)) {
+            return new CurrentAccount(number, holder, balance, email, phone, address, dob, gender);
+        }
+        return new SavingsAccount(number, holder, balance, email, phone, address, dob, gender);
+    }
+
+    // Transactions travel as: id, account, type, amount, timestamp millis, description
+    public static Object[] transactionFields(BankTransaction transaction) {
+        return new Object[]{
+            transaction.getTransactionId(), transaction.getAccountNumber(), transaction.getType(),
+            transaction.getAmount(), transaction.getTimestamp().getTime(), transaction.getDescription()
+        };
+    }
+
+    public static BankTransaction decodeTransaction(String[] fields, int offset) {
+        return new BankTransaction(fields[offset], fields[offset + 1], fields[offset + 2],
+            Double.parseDouble(fields[offset + 3]), new Date(Long.parseLong(fields[offset + 4])),
+            fields[offset + 5]);
+    }
+
+    // Ledger records travel as: sequence, id, account, account type, type, amount, balance after, timestamp, description
+    public static Object[] recordFields(LedgerRecord record) {
+        return new Object[]{
+            record.getSequence(), record.getTransactionId(), record.getAccountNumber(), record.getAccountType(),
+            record.getType(), record.getAmount(), record.getBalanceAfter(), record.getTimestamp(),
+            record.getDescription()
+        };
+    }
+
+    public static LedgerRecord decodeRecord(String[] fields, int offset) {
+        return new LedgerRecord(Long.parseLong(fields[offset]), fields[offset + 1], fields[offset + 2],
+            fields[offset + 3], fields[offset + 4], Double.parseDouble(fields[offset + 5]),
+            Double.parseDouble(fields[offset + 6]), Long.parseLong(fields[offset + 7]), fields[offset + 8]);
+    }
+
+    // Users travel as: id, username, password hash, email, phone, comma-separated account numbers
+    public static Object[] userFields(BankUser user) {
+        return new Object[]{
+            user.getUserId(), user.getUsername(), user.getPasswordHash(), user.getEmail(), user.getPhone(),
+            accountNumbers(user)
+        };
+    }
+
+    // Funds holds travel as: id, account, amount, description, expiry in epoch millis
+    public static Object[] holdFields(FundsHolds.Hold hold) {
+        return new Object[]{
+            hold.getHoldId(), hold.getAccountNumber(), hold.getAmount(), hold.getDescription(), hold.getExpiresAt()
+        };
+    }
+
+    // What clients and downstream consumers see: userFields without the hash
+    public static Object[] profileFields(BankUser user) {
+        return new Object[]{user.getUserId(), user.getUsername(), user.getEmail(), user.getPhone(), accountNumbers(user)};
+    }
+
+    private static String accountNumbers(BankUser user) {
+        StringBuilder accountNumbers = new StringBuilder();
+        for (BankAccount account : user.getAccounts()) {
+            if (accountNumbers.length() > 0) {
+                accountNumbers.append(',');
+            }
+            accountNumbers.append(account.getAccountNumber());
+        }
+        return accountNumbers.toString();
+    }
+
+    public static Object[] concat(Object[] first, Object... rest) {
+        Object[] all = new Object[first.length + rest.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(rest, 0, all, first.length, rest.length);
+        return all;
+    }
+}
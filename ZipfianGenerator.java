@@ -0,0 +1,48 @@
+import java.util.concurrent.ThreadLocalRandom; // Per-thread randomness
+
+// ===== LOAD TESTING =====
+// Draws item indexes in [0, items) with a Zipfian skew: with theta 0.99 a few
+// hot accounts receive most of the traffic, as in production. Uses the
+// closed-form method of Gray et al., so each draw is O(1) after an O(n) setup.
+
+class ZipfianGenerator {
+    private final long items;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+    private final double halfPowTheta;
+
+    public ZipfianGenerator(long items, double theta) {
+        this.items = items;
+        this.theta = theta;
+        this.zetaN = zeta(items, theta);
+        double zeta2 = zeta(2, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+        this.halfPowTheta = 1.0 + Math.pow(0.5, theta);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    public long next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < halfPowTheta) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    public long getItems() { return items; }
+    public double getTheta() { return theta; }
+}